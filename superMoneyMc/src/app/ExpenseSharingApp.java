@@ -1,53 +1,131 @@
 package app;
 
+import fx.FixedFxRateProvider;
+import fx.FxConversionCache;
+import fx.FxRateProvider;
 import model.Expense;
+import model.ParticipantGroup;
+import model.RecurringExpenseTemplate;
 import model.User;
+import recurring.RecurringExpenseScheduler;
+import service.ArrayBalanceEngine;
 import service.BalanceService;
+import service.ExpenseIdGenerator;
 import service.ExpenseService;
+import service.GroupService;
+import service.LedgerInvariantChecker;
 import service.PassbookService;
+import service.ShadowLedger;
 import service.UserService;
+import storage.BalanceFormat;
+import telemetry.CommandEvent;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.rmi.NotBoundException;
+import java.time.Clock;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
 import java.util.List;
-import java.util.UUID;
+import java.util.Map;
+import java.util.stream.Stream;
 
 /**
  * Main class for expense sharing.
  * Handles input parsing and sends call to  appropriate services.
  */
 public class ExpenseSharingApp {
+    private static final int SEARCH_PAGE_SIZE = 20;
+
     private final UserService userService;
+    private final GroupService groupService;
     private final ExpenseService expenseService;
     private final BalanceService balanceService;
     private final PassbookService passbookService;
+    private final RecurringExpenseScheduler recurringScheduler;
+    private final ExpenseIdGenerator expenseIdGenerator;
+    private final FixedFxRateProvider rateTable; // null when rates come from another provider
 
     public ExpenseSharingApp() {
+        this(new FixedFxRateProvider());
+    }
+
+    public ExpenseSharingApp(FxRateProvider fxRateProvider) {
         this.userService = new UserService();
-        this.expenseService = new ExpenseService(userService);
+        this.groupService = new GroupService(userService);
+        this.expenseService = new ExpenseService(userService,
+                new FxConversionCache(fxRateProvider, FxConversionCache.DEFAULT_BUCKET_MILLIS, Clock.systemUTC()));
         this.balanceService = new BalanceService(expenseService);
         this.passbookService = new PassbookService(expenseService);
+        this.recurringScheduler = new RecurringExpenseScheduler(expenseService);
+        this.expenseIdGenerator = new ExpenseIdGenerator(Clock.systemUTC(), 0);
+        this.rateTable = fxRateProvider instanceof FixedFxRateProvider ? (FixedFxRateProvider) fxRateProvider : null;
     }
 
     public ExpenseService getExpenseService() {
         return expenseService;
     }
 
+    /**
+     * Keeps only the newest hotLimit expenses on the heap and spills older ones to the given directory.
+     */
+    public void enableTieredStorage(Path directory, int hotLimit, int cacheSize) throws IOException {
+        expenseService.enableTieredStorage(directory, hotLimit, cacheSize, groupService);
+    }
+
+    public RecurringExpenseScheduler getRecurringScheduler() {
+        return recurringScheduler;
+    }
+
     public void processCommand(String command)  {
+        CommandEvent event = new CommandEvent();
+        event.begin();
+        long parseStart = event.isEnabled() ? System.nanoTime() : 0L;
         String[] parts = command.trim().split("\\s+");
-        
+        if (event.isEnabled()) {
+            event.parseNanos = System.nanoTime() - parseStart;
+        }
+
         if (parts.length == 0) {
             return;
         }
 
+        try {
+            dispatch(parts);
+        } finally {
+            event.end();
+            if (event.shouldCommit()) {
+                event.action = parts[0];
+                event.argumentCount = parts.length - 1;
+                event.commit();
+            }
+        }
+    }
+
+    private void dispatch(String[] parts) {
         String action = parts[0];
 
         switch (action) {
             case "SHOW":
-                if (parts.length == 1) {
+                if (parts.length >= 3 && parts[parts.length - 2].equals("--as-of")) {
+                    processShowAsOf(parts);
+                } else if (parts.length == 1) {
                     balanceService.showAllBalances();
                 } else if (parts.length == 2) {
                     balanceService.showUserBalances(parts[1]);
+                } else if (parts.length == 4 && parts[3].equals("--detail")) {
+                    balanceService.showPairDetail(parts[1], parts[2]);
                 } else {
                     System.out.println("Invalid SHOW command");
                 }
@@ -70,15 +148,92 @@ public class ExpenseSharingApp {
                 break;
 
             case "SIMPLIFY":
-                if (parts.length == 2) {
+                if (parts.length == 2 && parts[1].equalsIgnoreCase("CONSTRAINED")) {
+                    expenseService.setConstrainedSimplification(true);
+                    expenseService.setSimplifyExpenses(true);
+                    System.out.println("Expense simplification enabled (constrained to contacts)");
+                } else if (parts.length == 2) {
                     boolean enable = Boolean.parseBoolean(parts[1]);
+                    expenseService.setConstrainedSimplification(false);
                     expenseService.setSimplifyExpenses(enable);
                     System.out.println("Expense simplification " + (enable ? "enabled" : "disabled"));
                 } else {
-                    System.out.println("Invalid SIMPLIFY command. Usage: SIMPLIFY <true|false>");
+                    System.out.println("Invalid SIMPLIFY command. Usage: SIMPLIFY <true|false|constrained>");
                 }
                 break;
 
+            case "CONTACT":
+                processContact(parts);
+                break;
+
+            case "COMPACT":
+                if (parts.length == 1) {
+                    System.out.println("Reclaimed " + expenseService.compactBalances() + " balance pairs");
+                } else {
+                    System.out.println("Invalid COMPACT command. Usage: COMPACT");
+                }
+                break;
+
+            case "EXPORT":
+                processExport(parts);
+                break;
+
+            case "SNAPSHOT":
+                processSnapshot(parts);
+                break;
+
+            case "SEARCH":
+                processSearch(parts);
+                break;
+
+            case "GROUP":
+                processGroup(parts);
+                break;
+
+            case "RECURRING":
+                processRecurring(parts);
+                break;
+
+            case "TICK":
+                processTick(parts);
+                break;
+
+            case "HOME_CURRENCY":
+                processHomeCurrency(parts);
+                break;
+
+            case "FX_RATES":
+                processFxRates(parts);
+                break;
+
+            case "TOP":
+                processTop(parts);
+                break;
+
+            case "SPEND":
+                processSpend(parts);
+                break;
+
+            case "CHECK":
+                processCheck(parts);
+                break;
+
+            case "SHADOW":
+                processShadow(parts);
+                break;
+
+            case "IMPORT_USERS":
+                processImportUsers(parts);
+                break;
+
+            case "FIND_USER":
+                processFindUser(parts);
+                break;
+
+            case "MATCH_CONTACTS":
+                processMatchContacts(parts);
+                break;
+
             default:
                 System.out.println("Unknown command: " + action);
         }
@@ -86,98 +241,493 @@ public class ExpenseSharingApp {
 
     private void processExpense(String[] parts) {
         try {
-            if (parts.length < 5) {
-                System.out.println("Invalid EXPENSE command. Not enough parameters.");
-                return;
+            String idempotencyKey = null;
+            int keyIndex = Arrays.asList(parts).indexOf("--idempotency-key");
+            if (keyIndex >= 0) {
+                if (keyIndex + 1 >= parts.length) {
+                    System.out.println("Invalid EXPENSE command. Missing idempotency key.");
+                    return;
+                }
+                idempotencyKey = parts[keyIndex + 1];
+                parts = removeOption(parts, keyIndex);
+
+                String existingId = expenseService.findExpenseIdByIdempotencyKey(idempotencyKey);
+                if (existingId != null) {
+                    System.out.println("Duplicate request, expense already recorded: " + existingId);
+                    return;
+                }
+            }
+
+            String category = null;
+            int categoryIndex = Arrays.asList(parts).indexOf("--category");
+            if (categoryIndex >= 0) {
+                if (categoryIndex + 1 >= parts.length) {
+                    System.out.println("Invalid EXPENSE command. Missing category.");
+                    return;
+                }
+                category = parts[categoryIndex + 1];
+                parts = removeOption(parts, categoryIndex);
+            }
+
+            Expense expense = parseExpense(parts, expenseIdGenerator.nextId());
+            if (expense != null) {
+                if (category != null) {
+                    expense.setCategory(category);
+                }
+                expenseService.addExpense(expense, idempotencyKey);
             }
+        } catch (NumberFormatException e) {
+            System.out.println("Invalid number format: " + e.getMessage());
+        } catch (IllegalArgumentException e) {
+            System.out.println("Error: " + e.getMessage());
+        } catch (Exception e) {
+            System.out.println("Unexpected error: " + e.getMessage());
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Parses an EXPENSE command into an expense with the given id.
+     * Prints the problem and returns null if the command is invalid.
+     */
+    private Expense parseExpense(String[] parts, String expenseId) throws NotBoundException {
+        String currency = Expense.DEFAULT_CURRENCY;
+        int currencyIndex = Arrays.asList(parts).indexOf("--currency");
+        if (currencyIndex >= 0) {
+            if (currencyIndex + 1 >= parts.length) {
+                System.out.println("Invalid EXPENSE command. Missing currency code.");
+                return null;
+            }
+            currency = parts[currencyIndex + 1].toUpperCase();
+            parts = removeOption(parts, currencyIndex);
+        }
 
-            String paidByUserId = parts[1];
-            double amount = Double.parseDouble(parts[2]);
-            int numUsers = Integer.parseInt(parts[3]);
+        if (parts.length < 5) {
+            System.out.println("Invalid EXPENSE command. Not enough parameters.");
+            return null;
+        }
+
+        String paidByUserId = parts[1];
+        double amount = Double.parseDouble(parts[2]);
+
+        if(amount <0){
+            throw new NotBoundException("Amount should be in positive");
+        }
 
-            if(amount <0){
-                throw new NotBoundException("Amount should be in positive");
+        // Participants are either "<count> <user-ids...>" or "@<group-id>"
+        ParticipantGroup group = null;
+        List<User> participants;
+        int numUsers;
+        int splitTypeIndex;
+        if (parts[3].startsWith("@")) {
+            group = groupService.getGroup(parts[3].substring(1));
+            if (group == null) {
+                System.out.println("Group not found: " + parts[3].substring(1));
+                return null;
             }
+            participants = group.getMembers();
+            numUsers = group.size();
+            splitTypeIndex = 4;
+        } else {
+            numUsers = Integer.parseInt(parts[3]);
+            splitTypeIndex = 4 + numUsers;
 
             if (parts.length < 4 + numUsers + 1) {
                 System.out.println("Invalid EXPENSE command. Not enough user IDs.");
-                return;
+                return null;
             }
 
-            List<User> participants = new ArrayList<>();
+            participants = new ArrayList<>();
             for (int i = 4; i < 4 + numUsers; i++) {
                 User user = userService.getUser(parts[i]);
                 if (user == null) {
                     System.out.println("User not found: " + parts[i]);
-                    return;
+                    return null;
                 }
                 participants.add(user);
             }
+        }
 
-            String splitTypeStr = parts[4 + numUsers];
-            Expense.SplitType splitType = Expense.SplitType.valueOf(splitTypeStr);
+        String splitTypeStr = parts[splitTypeIndex];
+        Expense.SplitType splitType = Expense.SplitType.valueOf(splitTypeStr);
 
-            List<Double> splitValues = new ArrayList<>();
-            if (splitType != Expense.SplitType.EQUAL) {
-                int startIndex = 4 + numUsers + 1;
-                if (parts.length < startIndex + numUsers) {
-                    System.out.println("Invalid EXPENSE command. Not enough split values.");
-                    return;
-                }
-                for (int i = startIndex; i < startIndex + numUsers; i++) {
-                    splitValues.add(Double.parseDouble(parts[i]));
-                }
+        List<Double> splitValues = new ArrayList<>();
+        if (splitType != Expense.SplitType.EQUAL) {
+            int startIndex = splitTypeIndex + 1;
+            if (parts.length < startIndex + numUsers) {
+                System.out.println("Invalid EXPENSE command. Not enough split values.");
+                return null;
             }
-
-            User paidBy = userService.getUser(paidByUserId);
-            if (paidBy == null) {
-                System.out.println("User not found: " + paidByUserId);
-                return;
+            for (int i = startIndex; i < startIndex + numUsers; i++) {
+                splitValues.add(Double.parseDouble(parts[i]));
             }
+        }
 
-            String expenseId = UUID.randomUUID().toString();
-            
-            // Parse optional fields: expense name, notes, and image URLs
-            int splitValuesEndIndex = splitType == Expense.SplitType.EQUAL 
-                    ? 4 + numUsers + 1 
-                    : 4 + numUsers + 1 + numUsers;
-            
-            String expenseName = "Expense " + expenseId.substring(0, 8);
-            String notes = "";
-            List<String> imageUrls = new ArrayList<>();
+        User paidBy = userService.getUser(paidByUserId);
+        if (paidBy == null) {
+            System.out.println("User not found: " + paidByUserId);
+            return null;
+        }
+
+        // Parse optional fields: expense name, notes, and image URLs
+        int splitValuesEndIndex = splitType == Expense.SplitType.EQUAL 
+                ? splitTypeIndex + 1 
+                : splitTypeIndex + 1 + numUsers;
+        
+        String expenseName = "Expense " + expenseId.substring(0, Math.min(8, expenseId.length()));
+        String notes = "";
+        List<String> imageUrls = new ArrayList<>();
+        
+        if (parts.length > splitValuesEndIndex) {
+            // First optional argument is expense name
+            expenseName = parts[splitValuesEndIndex];
+            splitValuesEndIndex++;
             
-            if (parts.length > splitValuesEndIndex) {
-                // First optional argument is expense name
-                expenseName = parts[splitValuesEndIndex];
+            // Second optional argument is notes (if not a URL)
+            if (parts.length > splitValuesEndIndex && 
+                !parts[splitValuesEndIndex].startsWith("http://") && 
+                !parts[splitValuesEndIndex].startsWith("https://")) {
+                notes = parts[splitValuesEndIndex];
                 splitValuesEndIndex++;
-                
-                // Second optional argument is notes (if not a URL)
-                if (parts.length > splitValuesEndIndex && 
-                    !parts[splitValuesEndIndex].startsWith("http://") && 
-                    !parts[splitValuesEndIndex].startsWith("https://")) {
-                    notes = parts[splitValuesEndIndex];
-                    splitValuesEndIndex++;
+            }
+            
+            // Remaining arguments are image URLs
+            for (int i = splitValuesEndIndex; i < parts.length; i++) {
+                if (parts[i].startsWith("http://") || parts[i].startsWith("https://")) {
+                    imageUrls.add(parts[i]);
                 }
-                
-                // Remaining arguments are image URLs
-                for (int i = splitValuesEndIndex; i < parts.length; i++) {
-                    if (parts[i].startsWith("http://") || parts[i].startsWith("https://")) {
-                        imageUrls.add(parts[i]);
+            }
+        }
+
+        Expense expense = new Expense(expenseId, paidBy, amount, expenseName, 
+                splitType, participants, splitValues);
+        
+        expense.setCurrency(currency);
+        expense.setParticipantGroup(group);
+        if (!notes.isEmpty()) {
+            expense.setNotes(notes);
+        }
+        for (String imageUrl : imageUrls) {
+            expense.addImageUrl(imageUrl);
+        }
+        
+        return expense;
+    }
+
+    private void processSearch(String[] parts) {
+        try {
+            String userId = null;
+            boolean prefix = false;
+            int page = 0;
+            StringBuilder query = new StringBuilder();
+            for (int i = 1; i < parts.length; i++) {
+                if (parts[i].equals("--user") && i + 1 < parts.length) {
+                    userId = parts[++i];
+                } else if (parts[i].equals("--page") && i + 1 < parts.length) {
+                    page = Integer.parseInt(parts[++i]);
+                } else if (parts[i].equals("--prefix")) {
+                    prefix = true;
+                } else {
+                    query.append(parts[i]).append(' ');
+                }
+            }
+            if (query.length() == 0) {
+                System.out.println("Invalid SEARCH command. Usage: SEARCH <terms...> [--user <user-id>] [--prefix] [--page <n>]");
+                return;
+            }
+            passbookService.showSearchResults(
+                    expenseService.searchExpenses(query.toString(), prefix, userId, page, SEARCH_PAGE_SIZE));
+        } catch (NumberFormatException e) {
+            System.out.println("Invalid number format: " + e.getMessage());
+        } catch (IllegalArgumentException e) {
+            System.out.println("Error: " + e.getMessage());
+        }
+    }
+
+    private void processSnapshot(String[] parts) {
+        if (parts.length != 3 || !(parts[1].equalsIgnoreCase("SAVE") || parts[1].equalsIgnoreCase("LOAD"))) {
+            System.out.println("Invalid SNAPSHOT command. Usage: SNAPSHOT <SAVE|LOAD> <file>");
+            return;
+        }
+        try {
+            if (parts[1].equalsIgnoreCase("SAVE")) {
+                expenseService.saveSnapshot(Paths.get(parts[2]));
+                System.out.println("Snapshot saved to " + parts[2]);
+            } else {
+                expenseService.loadSnapshot(Paths.get(parts[2]));
+                System.out.println("Snapshot loaded from " + parts[2]);
+            }
+        } catch (IOException | IllegalArgumentException e) {
+            System.out.println("Error: " + e.getMessage());
+        }
+    }
+
+    private void processExport(String[] parts) {
+        boolean simplified = parts.length == 4 && parts[3].equals("--simplified");
+        if (parts.length != 3 && !simplified) {
+            System.out.println("Invalid EXPORT command. Usage: EXPORT <file> <CSV|BINARY> [--simplified]");
+            return;
+        }
+        BalanceFormat format;
+        try {
+            format = BalanceFormat.valueOf(parts[2].toUpperCase());
+        } catch (IllegalArgumentException e) {
+            System.out.println("Error: Unknown export format: " + parts[2]);
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(Paths.get(parts[1]), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            long records = expenseService.exportBalances(channel, format, simplified);
+            System.out.println("Exported " + records + " balances to " + parts[1]);
+        } catch (IOException e) {
+            System.out.println("Error: " + e.getMessage());
+        }
+    }
+
+    private void processCheck(String[] parts) {
+        if (parts.length == 4 && parts[1].equalsIgnoreCase("SAMPLED")) {
+            try {
+                int interval = Integer.parseInt(parts[2]);
+                int sampleSize = Integer.parseInt(parts[3]);
+                expenseService.enableInvariantChecks(interval, sampleSize);
+                System.out.println("Checking up to " + sampleSize + " users every " + interval + " expenses");
+            } catch (NumberFormatException e) {
+                System.out.println("Invalid number format: " + e.getMessage());
+            } catch (IllegalArgumentException e) {
+                System.out.println("Error: " + e.getMessage());
+            }
+            return;
+        }
+        if (parts.length != 1) {
+            System.out.println("Invalid CHECK command. Usage: CHECK [SAMPLED <interval> <sample-size>]");
+            return;
+        }
+        List<LedgerInvariantChecker.Violation> violations = expenseService.checkInvariants();
+        if (violations.isEmpty()) {
+            System.out.println("Ledger invariants hold");
+        }
+        for (LedgerInvariantChecker.Violation violation : violations) {
+            System.out.println("Violation: " + violation);
+        }
+    }
+
+    private void processImportUsers(String[] parts) {
+        if (parts.length != 2) {
+            System.out.println("Invalid IMPORT_USERS command. Usage: IMPORT_USERS <file>");
+            return;
+        }
+        Path file = Paths.get(parts[1]);
+        try (Stream<String> lines = Files.lines(file, StandardCharsets.UTF_8)) {
+            int expectedCount = countLines(file);
+            Iterator<User> users = lines.map(String::trim)
+                    .filter(line -> !line.isEmpty() && !line.startsWith("#"))
+                    .map(ExpenseSharingApp::parseUserLine)
+                    .iterator();
+            System.out.println("Imported " + userService.importUsers(users, expectedCount) + " users");
+        } catch (IOException | UncheckedIOException | IllegalArgumentException e) {
+            System.out.println("Error: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Counts the lines of a file without decoding it. Blank and comment lines are included,
+     * so the count is an upper bound on the number of entries.
+     */
+    private static int countLines(Path file) throws IOException {
+        long lines = 0;
+        int last = '\n';
+        byte[] buffer = new byte[64 * 1024];
+        try (InputStream in = Files.newInputStream(file)) {
+            for (int read = in.read(buffer); read > 0; read = in.read(buffer)) {
+                for (int i = 0; i < read; i++) {
+                    if (buffer[i] == '\n') {
+                        lines++;
                     }
                 }
+                last = buffer[read - 1];
             }
+        }
+        if (last != '\n') {
+            lines++;
+        }
+        return (int) Math.min(Integer.MAX_VALUE, lines);
+    }
 
-            Expense expense = new Expense(expenseId, paidBy, amount, expenseName, 
-                    splitType, participants, splitValues);
-            
-            if (!notes.isEmpty()) {
-                expense.setNotes(notes);
+    /**
+     * Parses a "userId,name,email,mobileNumber" line; email and mobile number may be empty.
+     */
+    private static User parseUserLine(String line) {
+        String[] fields = line.split(",", -1);
+        if (fields.length != 4) {
+            throw new IllegalArgumentException("Invalid user entry: " + line);
+        }
+        return new User(fields[0].trim(), fields[1].trim(),
+                fields[2].trim().isEmpty() ? null : fields[2].trim(),
+                fields[3].trim().isEmpty() ? null : fields[3].trim());
+    }
+
+    private void processFindUser(String[] parts) {
+        if (parts.length != 2) {
+            System.out.println("Invalid FIND_USER command. Usage: FIND_USER <email|mobile-number>");
+            return;
+        }
+        User user = parts[1].contains("@") ? userService.findUserByEmail(parts[1])
+                : userService.findUserByMobileNumber(parts[1]);
+        if (user == null) {
+            System.out.println("No user found for " + parts[1]);
+        } else {
+            System.out.println(user.getUserId() + ": " + user.getName());
+        }
+    }
+
+    private void processMatchContacts(String[] parts) {
+        if (parts.length < 2) {
+            System.out.println("Invalid MATCH_CONTACTS command. Usage: MATCH_CONTACTS <mobile-number>...");
+            return;
+        }
+        List<String> numbers = Arrays.asList(parts).subList(1, parts.length);
+        Map<String, String> matches = userService.matchMobileNumbers(numbers);
+        for (Map.Entry<String, String> match : matches.entrySet()) {
+            System.out.println(match.getKey() + " -> " + match.getValue());
+        }
+        System.out.println("Matched " + matches.size() + " of " + numbers.size() + " numbers");
+    }
+
+    private void processShadow(String[] parts) {
+        if (parts.length == 3 && parts[1].equalsIgnoreCase("ON")) {
+            try {
+                int sampleInterval = Integer.parseInt(parts[2]);
+                expenseService.enableShadowEngine(new ArrayBalanceEngine(), sampleInterval);
+                System.out.println("Shadow engine enabled, comparing every " + sampleInterval + " reads");
+            } catch (NumberFormatException e) {
+                System.out.println("Invalid number format: " + e.getMessage());
+            } catch (IllegalArgumentException e) {
+                System.out.println("Error: " + e.getMessage());
             }
-            for (String imageUrl : imageUrls) {
-                expense.addImageUrl(imageUrl);
+        } else if (parts.length == 2 && parts[1].equalsIgnoreCase("OFF")) {
+            expenseService.disableShadowEngine();
+            System.out.println("Shadow engine disabled");
+        } else if (parts.length == 1) {
+            ShadowLedger shadow = expenseService.getShadowLedger();
+            if (shadow == null) {
+                System.out.println("Shadow engine is not enabled");
+                return;
+            }
+            shadow.flush();
+            printWriteStats("Primary", shadow.getPrimaryStats());
+            printWriteStats("Shadow", shadow.getShadowStats());
+            System.out.println("Comparisons: " + shadow.getComparisonCount()
+                    + ", divergences: " + shadow.getDivergenceCount());
+            if (shadow.getDroppedWriteCount() > 0 || shadow.getSkippedComparisonCount() > 0) {
+                System.out.println("Dropped writes: " + shadow.getDroppedWriteCount()
+                        + ", skipped comparisons: " + shadow.getSkippedComparisonCount());
+            }
+            if (!shadow.isInSync()) {
+                System.out.println("Shadow engine fell behind and stopped; run SHADOW ON to reseed it");
+            }
+            for (String divergence : shadow.getDivergences()) {
+                System.out.println("Divergence: " + divergence);
+            }
+        } else {
+            System.out.println("Invalid SHADOW command. Usage: SHADOW [ON <sample-interval> | OFF]");
+        }
+    }
+
+    private void printWriteStats(String engine, ShadowLedger.WriteStats stats) {
+        System.out.printf("%s: %d writes, mean %.1f us, max %.1f us, %.0f bytes/write%n", engine,
+                stats.getWrites(), stats.getMeanNanos() / 1000.0, stats.getMaxNanos() / 1000.0,
+                stats.getBytesPerWrite());
+    }
+
+    private void processSpend(String[] parts) {
+        if (parts.length != 4 && parts.length != 5) {
+            System.out.println("Invalid SPEND command. Usage: SPEND <user-id> <from-date> <to-date> [category]");
+            return;
+        }
+        try {
+            LocalDate from = LocalDate.parse(parts[2]);
+            LocalDate to = LocalDate.parse(parts[3]);
+            if (parts.length == 5) {
+                balanceService.showSpend(parts[1], parts[4], from, to);
+            } else {
+                balanceService.showSpendByCategory(parts[1], from, to);
+            }
+        } catch (DateTimeParseException e) {
+            System.out.println("Error: Invalid date: " + e.getParsedString());
+        } catch (IllegalArgumentException e) {
+            System.out.println("Error: " + e.getMessage());
+        }
+    }
+
+    private void processShowAsOf(String[] parts) {
+        if (parts.length > 4) {
+            System.out.println("Invalid SHOW command. Usage: SHOW [user-id] --as-of <yyyy-mm-dd[Thh:mm[:ss]]>");
+            return;
+        }
+        LocalDateTime time;
+        try {
+            String value = parts[parts.length - 1];
+            // A bare date means the end of that day
+            time = value.contains("T") ? LocalDateTime.parse(value)
+                    : LocalDate.parse(value).plusDays(1).atStartOfDay().minusNanos(1);
+        } catch (DateTimeParseException e) {
+            System.out.println("Error: Invalid date: " + parts[parts.length - 1]);
+            return;
+        }
+        if (parts.length == 4) {
+            balanceService.showUserBalancesAsOf(parts[1], time);
+        } else {
+            balanceService.showAllBalancesAsOf(time);
+        }
+    }
+
+    private void processContact(String[] parts) {
+        if (parts.length != 3) {
+            System.out.println("Invalid CONTACT command. Usage: CONTACT <user-id> <user-id>");
+            return;
+        }
+        try {
+            expenseService.allowContact(parts[1], parts[2]);
+            System.out.println(parts[1] + " and " + parts[2] + " can settle directly");
+        } catch (IllegalArgumentException e) {
+            System.out.println("Error: " + e.getMessage());
+        }
+    }
+
+    private void processGroup(String[] parts) {
+        try {
+            if (parts.length < 3) {
+                System.out.println("Invalid GROUP command. Usage: GROUP <group-id> <no-of-users> <space-separated-user-ids>");
+                return;
+            }
+            int numUsers = Integer.parseInt(parts[2]);
+            if (parts.length != 3 + numUsers) {
+                System.out.println("Invalid GROUP command. Expected " + numUsers + " user IDs.");
+                return;
+            }
+            ParticipantGroup group = groupService.createGroup(parts[1],
+                    Arrays.asList(Arrays.copyOfRange(parts, 3, parts.length)));
+            System.out.println("Group created: " + group.getGroupId() + " (" + group.size() + " members)");
+        } catch (NumberFormatException e) {
+            System.out.println("Invalid number format: " + e.getMessage());
+        } catch (IllegalArgumentException e) {
+            System.out.println("Error: " + e.getMessage());
+        }
+    }
+
+    private void processRecurring(String[] parts) {
+        try {
+            if (parts.length < 3 || !parts[2].equals("EXPENSE")) {
+                System.out.println("Invalid RECURRING command. Usage: RECURRING <interval-ticks> EXPENSE ...");
+                return;
+            }
+            long intervalTicks = Long.parseLong(parts[1]);
+            String[] expenseParts = Arrays.copyOfRange(parts, 2, parts.length);
+            Expense prototype = parseExpense(expenseParts, recurringScheduler.nextTemplateId());
+            if (prototype != null) {
+                RecurringExpenseTemplate template = recurringScheduler.addTemplate(prototype, intervalTicks);
+                System.out.println("Recurring expense registered: " + template.getTemplateId());
             }
-            
-            expenseService.addExpense(expense);
         } catch (NumberFormatException e) {
             System.out.println("Invalid number format: " + e.getMessage());
         } catch (IllegalArgumentException e) {
@@ -188,10 +738,26 @@ public class ExpenseSharingApp {
         }
     }
 
+    private void processTick(String[] parts) {
+        try {
+            int ticks = parts.length > 1 ? Integer.parseInt(parts[1]) : 1;
+            if (ticks <= 0) {
+                System.out.println("Error: Tick count must be positive");
+                return;
+            }
+            int materialized = recurringScheduler.advance(ticks);
+            System.out.println("Materialized " + materialized + " recurring expense(s)");
+        } catch (NumberFormatException e) {
+            System.out.println("Invalid number format: " + e.getMessage());
+        } catch (IllegalArgumentException e) {
+            System.out.println("Error: " + e.getMessage());
+        }
+    }
+
     private void processUpdateExpense(String[] parts) {
         try {
             if (parts.length < 2) {
-                System.out.println("Invalid UPDATE_EXPENSE command. Usage: UPDATE_EXPENSE <expense-id> [--name \"name\"] [--notes \"notes\"] [--images url1 url2 ...]");
+                System.out.println("Invalid UPDATE_EXPENSE command. Usage: UPDATE_EXPENSE <expense-id> [--name \"name\"] [--notes \"notes\"] [--category category] [--images url1 url2 ...]");
                 return;
             }
 
@@ -204,6 +770,7 @@ public class ExpenseSharingApp {
 
             String expenseName = null;
             String notes = null;
+            String category = null;
             List<String> imageUrls = null;
 
             // Parse optional flags
@@ -212,6 +779,8 @@ public class ExpenseSharingApp {
                     expenseName = removeQuotes(parts[++i]);
                 } else if (parts[i].equals("--notes") && i + 1 < parts.length) {
                     notes = removeQuotes(parts[++i]);
+                } else if (parts[i].equals("--category") && i + 1 < parts.length) {
+                    category = parts[++i];
                 } else if (parts[i].equals("--images")) {
                     imageUrls = new ArrayList<>();
                     i++;
@@ -222,7 +791,7 @@ public class ExpenseSharingApp {
                 }
             }
 
-            expenseService.updateExpense(expenseId, expenseName, notes, imageUrls);
+            expenseService.updateExpense(expenseId, expenseName, notes, imageUrls, category);
             System.out.println("Expense updated successfully: " + expenseId);
         } catch (IllegalArgumentException e) {
             System.out.println("Error: " + e.getMessage());
@@ -233,6 +802,75 @@ public class ExpenseSharingApp {
 //        }
     }
 
+    private void processFxRates(String[] parts) {
+        if (parts.length != 2) {
+            System.out.println("Invalid FX_RATES command. Usage: FX_RATES <file>");
+            return;
+        }
+        if (rateTable == null) {
+            System.out.println("Error: FX rates come from a custom provider and cannot be loaded from a file");
+            return;
+        }
+        try {
+            int entries = rateTable.load(Paths.get(parts[1]));
+            expenseService.refreshFxRates();
+            System.out.println("Loaded " + entries + " FX rates from " + parts[1]);
+        } catch (IOException | IllegalArgumentException e) {
+            System.out.println("Error: " + e.getMessage());
+        }
+    }
+
+    private void processHomeCurrency(String[] parts) {
+        if (parts.length != 3) {
+            System.out.println("Invalid HOME_CURRENCY command. Usage: HOME_CURRENCY <user-id> <currency>");
+            return;
+        }
+        User user = userService.getUser(parts[1]);
+        if (user == null) {
+            System.out.println("User not found: " + parts[1]);
+            return;
+        }
+        user.setHomeCurrency(parts[2].toUpperCase());
+        System.out.println("Home currency for " + parts[1] + " set to " + user.getHomeCurrency());
+    }
+
+    private void processTop(String[] parts) {
+        if (parts.length != 3) {
+            System.out.println("Invalid TOP command. Usage: TOP <DEBTORS|CREDITORS> <n>");
+            return;
+        }
+        int n;
+        try {
+            n = Integer.parseInt(parts[2]);
+        } catch (NumberFormatException e) {
+            System.out.println("Invalid number format: " + e.getMessage());
+            return;
+        }
+        if (n <= 0) {
+            System.out.println("Error: n must be positive");
+            return;
+        }
+        switch (parts[1]) {
+            case "DEBTORS":
+                balanceService.showTopDebtors(n);
+                break;
+            case "CREDITORS":
+                balanceService.showTopCreditors(n);
+                break;
+            default:
+                System.out.println("Invalid TOP command. Usage: TOP <DEBTORS|CREDITORS> <n>");
+        }
+    }
+
+    /**
+     * Removes an option and its value from the command parts.
+     */
+    private static String[] removeOption(String[] parts, int optionIndex) {
+        List<String> remaining = new ArrayList<>(Arrays.asList(parts));
+        remaining.subList(optionIndex, optionIndex + 2).clear();
+        return remaining.toArray(new String[0]);
+    }
+
     private String removeQuotes(String str) {
         if (str == null) return null;
         str = str.trim();
@@ -246,5 +884,9 @@ public class ExpenseSharingApp {
     public void addUser(User user) {
         userService.addUser(user);
     }
+
+    public GroupService getGroupService() {
+        return groupService;
+    }
 }
 
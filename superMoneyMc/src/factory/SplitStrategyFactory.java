@@ -1,7 +1,11 @@
 package factory;
 
 import model.Expense;
+import model.User;
 import strategy.*;
+import telemetry.SplitEvent;
+
+import java.util.Map;
 
 /**
  * Factory class for creating SplitStrategy instances based on expense split type.
@@ -21,5 +25,24 @@ public class SplitStrategyFactory {
                 throw new IllegalArgumentException("Unknown split type: " + splitType);
         }
     }
+
+    /**
+     * Splits the expense with the strategy for its split type and records a {@link SplitEvent}.
+     */
+    public static Map<User, Double> calculateSplit(Expense expense) {
+        SplitStrategy strategy = createStrategy(expense.getSplitType());
+        SplitEvent event = new SplitEvent();
+        event.begin();
+        Map<User, Double> splitMap = strategy.calculateSplit(expense);
+        event.end();
+        if (event.shouldCommit()) {
+            event.splitType = expense.getSplitType().name();
+            event.strategy = strategy.getClass().getSimpleName();
+            event.participantCount = splitMap.size();
+            event.currency = expense.getCurrency();
+            event.commit();
+        }
+        return splitMap;
+    }
 }
 
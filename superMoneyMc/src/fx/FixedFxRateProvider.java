@@ -0,0 +1,86 @@
+package fx;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Rate provider backed by a local rate table.
+ * Inverse rates are derived automatically, so only one direction needs to be configured.
+ */
+public class FixedFxRateProvider implements FxRateProvider {
+    private final Map<String, Double> rates;
+
+    public FixedFxRateProvider() {
+        this.rates = new HashMap<>();
+    }
+
+    /**
+     * Loads a rate table from a file with one "FROM TO RATE" entry per line.
+     * Blank lines and lines starting with '#' are ignored.
+     */
+    public static FixedFxRateProvider fromFile(Path path) throws IOException {
+        FixedFxRateProvider provider = new FixedFxRateProvider();
+        provider.load(path);
+        return provider;
+    }
+
+    /**
+     * Adds the entries of a rate file in the {@link #fromFile} format, replacing rates already set
+     * for the same pairs. Nothing is changed if any entry is invalid.
+     *
+     * @return Number of entries loaded
+     */
+    public int load(Path path) throws IOException {
+        FixedFxRateProvider loaded = new FixedFxRateProvider();
+        int entries = 0;
+        try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            String line;
+            int lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                String[] parts = line.split("\\s+");
+                if (parts.length != 3) {
+                    throw new IllegalArgumentException("Invalid rate entry at line " + lineNumber + ": " + line);
+                }
+                loaded.setRate(parts[0], parts[1], Double.parseDouble(parts[2]));
+                entries++;
+            }
+        }
+        rates.putAll(loaded.rates);
+        return entries;
+    }
+
+    public void setRate(String fromCurrency, String toCurrency, double rate) {
+        if (rate <= 0) {
+            throw new IllegalArgumentException("FX rate must be positive");
+        }
+        rates.put(key(fromCurrency, toCurrency), rate);
+        rates.put(key(toCurrency, fromCurrency), 1.0 / rate);
+    }
+
+    @Override
+    public double getRate(String fromCurrency, String toCurrency, Instant at) {
+        if (fromCurrency.equals(toCurrency)) {
+            return 1.0;
+        }
+        Double rate = rates.get(key(fromCurrency, toCurrency));
+        if (rate == null) {
+            throw new IllegalArgumentException("No FX rate from " + fromCurrency + " to " + toCurrency);
+        }
+        return rate;
+    }
+
+    private static String key(String fromCurrency, String toCurrency) {
+        return fromCurrency + "/" + toCurrency;
+    }
+}
@@ -0,0 +1,76 @@
+package fx;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Caches FX rates in fixed time buckets.
+ * A rate is fetched from the provider at most once per currency pair per bucket,
+ * and only the latest bucket is retained for each pair.
+ */
+public class FxConversionCache {
+    public static final long DEFAULT_BUCKET_MILLIS = 60 * 60 * 1000L;
+
+    private final FxRateProvider provider;
+    private final long bucketMillis;
+    private final Clock clock;
+    private final Map<String, CachedRate> cache;
+
+    public FxConversionCache(FxRateProvider provider, long bucketMillis, Clock clock) {
+        if (provider == null) {
+            throw new IllegalArgumentException("FxRateProvider cannot be null");
+        }
+        if (bucketMillis <= 0) {
+            throw new IllegalArgumentException("Bucket size must be positive");
+        }
+        this.provider = provider;
+        this.bucketMillis = bucketMillis;
+        this.clock = clock;
+        this.cache = new HashMap<>();
+    }
+
+    /**
+     * Returns the bucket the current time falls into.
+     */
+    public long currentBucket() {
+        return clock.millis() / bucketMillis;
+    }
+
+    public double getRate(String fromCurrency, String toCurrency) {
+        if (fromCurrency.equals(toCurrency)) {
+            return 1.0;
+        }
+        long bucket = currentBucket();
+        String key = fromCurrency + "/" + toCurrency;
+        CachedRate cached = cache.get(key);
+        if (cached == null || cached.bucket != bucket) {
+            double rate = provider.getRate(fromCurrency, toCurrency, Instant.ofEpochMilli(bucket * bucketMillis));
+            cached = new CachedRate(bucket, rate);
+            cache.put(key, cached);
+        }
+        return cached.rate;
+    }
+
+    /**
+     * Drops every cached rate, so the next lookup asks the provider again.
+     */
+    public void invalidate() {
+        cache.clear();
+    }
+
+    public double convert(double amount, String fromCurrency, String toCurrency) {
+        return amount * getRate(fromCurrency, toCurrency);
+    }
+
+    private static final class CachedRate {
+        private final long bucket;
+        private final double rate;
+
+        private CachedRate(long bucket, double rate) {
+            this.bucket = bucket;
+            this.rate = rate;
+        }
+    }
+}
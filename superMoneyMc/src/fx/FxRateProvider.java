@@ -0,0 +1,19 @@
+package fx;
+
+import java.time.Instant;
+
+/**
+ * Source of foreign exchange rates.
+ */
+public interface FxRateProvider {
+    /**
+     * Returns how many units of the target currency one unit of the source currency buys.
+     *
+     * @param fromCurrency Source currency code
+     * @param toCurrency   Target currency code
+     * @param at           Point in time the rate is requested for
+     * @return Conversion rate
+     * @throws IllegalArgumentException if no rate is known for the pair
+     */
+    double getRate(String fromCurrency, String toCurrency, Instant at) throws IllegalArgumentException;
+}
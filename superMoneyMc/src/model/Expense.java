@@ -11,24 +11,34 @@ import java.util.List;
  *
  */
 public class Expense {
+    public static final String DEFAULT_CURRENCY = "INR";
+    public static final String DEFAULT_CATEGORY = "general";
+
     private String expenseId;
     private User paidBy;
     private double amount;
+    private String currency;
+    private double baseRate;
     private String expenseName;
     private String notes;
+    private String category;
     private List<String> imageUrls;
     private LocalDateTime createdAt;
     private SplitType splitType;
     private List<User> participants;
     private List<Double> splitValues;
+    private ParticipantGroup participantGroup;
 
     public Expense(String expenseId, User paidBy, double amount, String expenseName,
                    SplitType splitType, List<User> participants, List<Double> splitValues) {
         this.expenseId = expenseId;
         this.paidBy = paidBy;
         this.amount = amount;
+        this.currency = DEFAULT_CURRENCY;
+        this.baseRate = 1.0;
         this.expenseName = expenseName;
         this.notes = "";
+        this.category = DEFAULT_CATEGORY;
         this.imageUrls = new ArrayList<>();
         this.createdAt = LocalDateTime.now();
         this.splitType = splitType;
@@ -48,6 +58,25 @@ public class Expense {
         return amount;
     }
 
+    public String getCurrency() {
+        return currency;
+    }
+
+    public void setCurrency(String currency) {
+        this.currency = currency;
+    }
+
+    /**
+     * Returns the rate from the expense currency to the base currency that the expense was recorded with.
+     */
+    public double getBaseRate() {
+        return baseRate;
+    }
+
+    public void setBaseRate(double baseRate) {
+        this.baseRate = baseRate;
+    }
+
     public String getExpenseName() {
         return expenseName;
     }
@@ -64,6 +93,20 @@ public class Expense {
         this.notes = notes;
     }
 
+    public String getCategory() {
+        return category;
+    }
+
+    /**
+     * Sets the category used for spend rollups. Categories are case-insensitive and stored in lower case.
+     */
+    public void setCategory(String category) {
+        if (category == null || category.trim().isEmpty()) {
+            throw new IllegalArgumentException("Category cannot be empty");
+        }
+        this.category = category.trim().toLowerCase();
+    }
+
     public List<String> getImageUrls() {
         return imageUrls;
     }
@@ -76,6 +119,10 @@ public class Expense {
         return createdAt;
     }
 
+    public void setCreatedAt(LocalDateTime createdAt) {
+        this.createdAt = createdAt;
+    }
+
     public SplitType getSplitType() {
         return splitType;
     }
@@ -88,6 +135,35 @@ public class Expense {
         return splitValues;
     }
 
+    /**
+     * Returns the group the expense was split across, or null for an ad-hoc participant list.
+     */
+    public ParticipantGroup getParticipantGroup() {
+        return participantGroup;
+    }
+
+    public void setParticipantGroup(ParticipantGroup participantGroup) {
+        this.participantGroup = participantGroup;
+    }
+
+    /**
+     * Checks whether the user paid for or took part in the expense.
+     */
+    public boolean involves(String userId) {
+        if (paidBy.getUserId().equals(userId)) {
+            return true;
+        }
+        if (participantGroup != null) {
+            return participantGroup.contains(userId);
+        }
+        for (User participant : participants) {
+            if (participant.getUserId().equals(userId)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     public enum SplitType {
         EQUAL, EXACT, PERCENT, SHARE
     }
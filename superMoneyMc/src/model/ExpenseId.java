@@ -0,0 +1,55 @@
+package model;
+
+import java.util.Arrays;
+
+/**
+ * Text form of generated 64-bit expense ids.
+ * Ids are written as 13 Crockford base32 digits, so the text sorts in the same order as the number.
+ */
+public final class ExpenseId {
+    public static final int TEXT_LENGTH = 13;
+
+    private static final char[] DIGITS = "0123456789ABCDEFGHJKMNPQRSTVWXYZ".toCharArray();
+    private static final byte[] VALUES = new byte[128];
+
+    static {
+        Arrays.fill(VALUES, (byte) -1);
+        for (int i = 0; i < DIGITS.length; i++) {
+            VALUES[DIGITS[i]] = (byte) i;
+        }
+    }
+
+    private ExpenseId() {
+    }
+
+    public static String toText(long id) {
+        if (id < 0) {
+            throw new IllegalArgumentException("Expense id cannot be negative: " + id);
+        }
+        char[] text = new char[TEXT_LENGTH];
+        for (int i = TEXT_LENGTH - 1; i >= 0; i--) {
+            text[i] = DIGITS[(int) (id & 31)];
+            id >>>= 5;
+        }
+        return new String(text);
+    }
+
+    /**
+     * Returns the numeric id for text produced by {@link #toText}, or -1 if the text is not a generated id.
+     */
+    public static long parse(String text) {
+        if (text == null || text.length() != TEXT_LENGTH || text.charAt(0) > '7') {
+            return -1;
+        }
+        long id = 0;
+        for (int i = 0; i < TEXT_LENGTH; i++) {
+            char c = text.charAt(i);
+            int value = c < 128 ? VALUES[c] : -1;
+            if (value < 0) {
+                return -1;
+            }
+            id = (id << 5) | value;
+        }
+        return id;
+    }
+}
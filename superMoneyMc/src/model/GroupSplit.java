@@ -0,0 +1,128 @@
+package model;
+
+import strategy.SplitKernel;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compact description of an EQUAL or SHARE split over a participant group.
+ * Individual shares are computed on demand with the same rounding as the split strategies:
+ * every member but the last gets their rounded share and the last member absorbs the remainder.
+ * SHARE splits are worked out in cents with {@link SplitKernel} the first time a share is read.
+ */
+public class GroupSplit {
+    private final ParticipantGroup group;
+    private final Expense.SplitType rule;
+    private final double amount;
+    private final double[] weights;
+    private final double totalWeight;
+    private final double equalShare;
+    private double lastShare;
+    private boolean lastShareComputed;
+    private long[] shareCents; // SHARE splits only, filled on first read
+
+    public GroupSplit(ParticipantGroup group, Expense.SplitType rule, double amount, List<Double> weights) {
+        if (group.size() == 0) {
+            throw new IllegalArgumentException("Group cannot be empty");
+        }
+        this.group = group;
+        this.rule = rule;
+        this.amount = amount;
+
+        if (rule == Expense.SplitType.EQUAL) {
+            this.weights = null;
+            this.totalWeight = group.size();
+            this.equalShare = SplitKernel.roundToTwoDecimals(amount / group.size());
+        } else if (rule == Expense.SplitType.SHARE) {
+            if (weights.size() != group.size()) {
+                throw new IllegalArgumentException("Number of participants must match number of shares");
+            }
+            double[] values = new double[weights.size()];
+            double total = 0.0;
+            for (int i = 0; i < values.length; i++) {
+                values[i] = weights.get(i);
+                if (values[i] < 0) {
+                    throw new IllegalArgumentException("Share values cannot be negative");
+                }
+                total += values[i];
+            }
+            if (total == 0) {
+                throw new IllegalArgumentException("Total shares cannot be zero");
+            }
+            this.weights = values;
+            this.totalWeight = total;
+            this.equalShare = 0.0;
+        } else {
+            throw new IllegalArgumentException("Group splits support only EQUAL and SHARE, got: " + rule);
+        }
+    }
+
+    public ParticipantGroup getGroup() {
+        return group;
+    }
+
+    public Expense.SplitType getRule() {
+        return rule;
+    }
+
+    public double getAmount() {
+        return amount;
+    }
+
+    /**
+     * Returns the share of the member at the given position in the group.
+     */
+    public double getShare(int memberIndex) {
+        if (rule == Expense.SplitType.SHARE) {
+            return shareCents()[memberIndex] / 100.0;
+        }
+        if (memberIndex == group.size() - 1) {
+            return getLastShare();
+        }
+        return equalShare;
+    }
+
+    /**
+     * Returns the share of every member except the last for an EQUAL split.
+     */
+    public double getEqualShare() {
+        return equalShare;
+    }
+
+    /**
+     * Returns the last member's share, which carries the rounding remainder.
+     */
+    public double getLastShare() {
+        if (rule == Expense.SplitType.SHARE) {
+            return shareCents()[group.size() - 1] / 100.0;
+        }
+        if (!lastShareComputed) {
+            lastShare = SplitKernel.roundToTwoDecimals(amount - equalShare * (group.size() - 1));
+            lastShareComputed = true;
+        }
+        return lastShare;
+    }
+
+    /**
+     * Expands the descriptor into one entry per member.
+     */
+    public Map<User, Double> expand() {
+        List<User> members = group.getMembers();
+        Map<User, Double> splitMap = new HashMap<>();
+        for (int i = 0; i < members.size(); i++) {
+            splitMap.put(members.get(i), getShare(i));
+        }
+        return splitMap;
+    }
+
+    private long[] shareCents() {
+        if (shareCents == null) {
+            long[] cents = new long[weights.length];
+            SplitKernel.split(amount, totalWeight, weights, 0, weights.length, cents);
+            shareCents = cents;
+        }
+        return shareCents;
+    }
+}
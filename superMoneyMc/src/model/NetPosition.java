@@ -0,0 +1,47 @@
+package model;
+
+import java.util.Objects;
+
+/**
+ * Represents a user's net position across all balances.
+ * Positive amount means the user is owed money, negative means the user owes money.
+ */
+public class NetPosition {
+    private final String userId;
+    private final double amount;
+
+    public NetPosition(String userId, double amount) {
+        this.userId = userId;
+        this.amount = amount;
+    }
+
+    public String getUserId() {
+        return userId;
+    }
+
+    public double getAmount() {
+        return amount;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        NetPosition that = (NetPosition) o;
+        return Double.compare(that.amount, amount) == 0 &&
+                Objects.equals(userId, that.userId);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(userId, amount);
+    }
+
+    @Override
+    public String toString() {
+        return "NetPosition{" +
+                "userId='" + userId + '\'' +
+                ", amount=" + amount +
+                '}';
+    }
+}
@@ -0,0 +1,58 @@
+package model;
+
+import java.util.Objects;
+
+/**
+ * One expense's contribution to the balance between two users.
+ * Positive amount means the first user of the pair owes the second, in the base currency.
+ */
+public class PairContribution {
+    private final String expenseId;
+    private final int ordinal;
+    private final double amount;
+
+    public PairContribution(String expenseId, int ordinal, double amount) {
+        this.expenseId = expenseId;
+        this.ordinal = ordinal;
+        this.amount = amount;
+    }
+
+    public String getExpenseId() {
+        return expenseId;
+    }
+
+    /**
+     * Returns the expense's position in creation order, for reading it without an id lookup.
+     */
+    public int getOrdinal() {
+        return ordinal;
+    }
+
+    public double getAmount() {
+        return amount;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        PairContribution that = (PairContribution) o;
+        return ordinal == that.ordinal &&
+                Double.compare(that.amount, amount) == 0 &&
+                Objects.equals(expenseId, that.expenseId);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(expenseId, ordinal, amount);
+    }
+
+    @Override
+    public String toString() {
+        return "PairContribution{" +
+                "expenseId='" + expenseId + '\'' +
+                ", ordinal=" + ordinal +
+                ", amount=" + amount +
+                '}';
+    }
+}
@@ -0,0 +1,72 @@
+package model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * A named, fixed set of users that expenses can be split across.
+ * Expenses on a group share its member list instead of keeping their own copy.
+ */
+public class ParticipantGroup {
+    private final String groupId;
+    private final List<User> members;
+    private final Map<String, Integer> memberIndexes;
+
+    public ParticipantGroup(String groupId, List<User> members) {
+        this.groupId = groupId;
+        this.members = Collections.unmodifiableList(new ArrayList<>(members));
+        this.memberIndexes = new HashMap<>();
+        for (int i = 0; i < members.size(); i++) {
+            memberIndexes.put(members.get(i).getUserId(), i);
+        }
+    }
+
+    public String getGroupId() {
+        return groupId;
+    }
+
+    public List<User> getMembers() {
+        return members;
+    }
+
+    public int size() {
+        return members.size();
+    }
+
+    public boolean contains(String userId) {
+        return memberIndexes.containsKey(userId);
+    }
+
+    /**
+     * Returns the position of the user in the member list, or -1 if not a member.
+     */
+    public int indexOf(String userId) {
+        Integer index = memberIndexes.get(userId);
+        return index == null ? -1 : index;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        ParticipantGroup that = (ParticipantGroup) o;
+        return Objects.equals(groupId, that.groupId);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(groupId);
+    }
+
+    @Override
+    public String toString() {
+        return "ParticipantGroup{" +
+                "groupId='" + groupId + '\'' +
+                ", members=" + members.size() +
+                '}';
+    }
+}
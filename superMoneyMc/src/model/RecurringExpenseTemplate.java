@@ -0,0 +1,84 @@
+package model;
+
+import java.util.Map;
+
+/**
+ * Template for an expense that repeats every fixed number of scheduler ticks.
+ * The split is calculated once when the template is created and reused for every occurrence,
+ * except for group splits, whose occurrences are split over the group when they are added.
+ */
+public class RecurringExpenseTemplate {
+    private final String templateId;
+    private final Expense prototype;
+    private final Map<User, Double> split;
+    private final long intervalTicks;
+    private long occurrences;
+
+    public RecurringExpenseTemplate(String templateId, Expense prototype, Map<User, Double> split,
+                                    long intervalTicks) {
+        this.templateId = templateId;
+        this.prototype = prototype;
+        this.split = split;
+        this.intervalTicks = intervalTicks;
+        this.occurrences = 0;
+    }
+
+    public String getTemplateId() {
+        return templateId;
+    }
+
+    public User getPaidBy() {
+        return prototype.getPaidBy();
+    }
+
+    public double getAmount() {
+        return prototype.getAmount();
+    }
+
+    public Expense.SplitType getSplitType() {
+        return prototype.getSplitType();
+    }
+
+    /**
+     * Returns the precalculated split, or null if occurrences are group splits.
+     */
+    public Map<User, Double> getSplit() {
+        return split;
+    }
+
+    public long getIntervalTicks() {
+        return intervalTicks;
+    }
+
+    public long getOccurrences() {
+        return occurrences;
+    }
+
+    /**
+     * Creates the next occurrence of this template as a concrete expense.
+     */
+    public Expense nextOccurrence() {
+        occurrences++;
+        Expense expense = new Expense(templateId + "-" + occurrences, prototype.getPaidBy(),
+                prototype.getAmount(), prototype.getExpenseName(), prototype.getSplitType(),
+                prototype.getParticipants(), prototype.getSplitValues());
+        expense.setCurrency(prototype.getCurrency());
+        expense.setParticipantGroup(prototype.getParticipantGroup());
+        expense.setNotes(prototype.getNotes());
+        expense.setCategory(prototype.getCategory());
+        for (String imageUrl : prototype.getImageUrls()) {
+            expense.addImageUrl(imageUrl);
+        }
+        return expense;
+    }
+
+    @Override
+    public String toString() {
+        return "RecurringExpenseTemplate{" +
+                "templateId='" + templateId + '\'' +
+                ", paidBy=" + prototype.getPaidBy().getUserId() +
+                ", amount=" + prototype.getAmount() +
+                ", intervalTicks=" + intervalTicks +
+                '}';
+    }
+}
@@ -0,0 +1,66 @@
+package model;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * One page of expense search results, newest expense first.
+ */
+public class SearchPage {
+    private final List<String> expenseIds;
+    private final int[] ordinals;
+    private final int page;
+    private final int pageSize;
+    private final int totalMatches;
+
+    /**
+     * @param ordinals Positions in creation order of the expenses in expenseIds, in the same order
+     */
+    public SearchPage(List<String> expenseIds, int[] ordinals, int page, int pageSize, int totalMatches) {
+        if (ordinals.length != expenseIds.size()) {
+            throw new IllegalArgumentException("Number of ordinals must match number of expense ids");
+        }
+        this.expenseIds = Collections.unmodifiableList(expenseIds);
+        this.ordinals = ordinals.clone();
+        this.page = page;
+        this.pageSize = pageSize;
+        this.totalMatches = totalMatches;
+    }
+
+    public List<String> getExpenseIds() {
+        return expenseIds;
+    }
+
+    /**
+     * Returns the ordinal of the expense at the given position on this page.
+     */
+    public int getOrdinal(int index) {
+        return ordinals[index];
+    }
+
+    public int getPage() {
+        return page;
+    }
+
+    public int getPageSize() {
+        return pageSize;
+    }
+
+    public int getTotalMatches() {
+        return totalMatches;
+    }
+
+    public boolean hasMore() {
+        return (long) (page + 1) * pageSize < totalMatches;
+    }
+
+    @Override
+    public String toString() {
+        return "SearchPage{" +
+                "expenseIds=" + expenseIds +
+                ", page=" + page +
+                ", pageSize=" + pageSize +
+                ", totalMatches=" + totalMatches +
+                '}';
+    }
+}
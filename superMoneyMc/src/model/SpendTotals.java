@@ -0,0 +1,35 @@
+package model;
+
+/**
+ * Spend totals for one user over a period, in the base currency.
+ * Paid is what the user paid for expenses; share is the user's own part of the expenses they took part in.
+ */
+public class SpendTotals {
+    private final double paid;
+    private final double share;
+
+    public SpendTotals(double paid, double share) {
+        this.paid = paid;
+        this.share = share;
+    }
+
+    public double getPaid() {
+        return paid;
+    }
+
+    public double getShare() {
+        return share;
+    }
+
+    public boolean isEmpty() {
+        return paid == 0.0 && share == 0.0;
+    }
+
+    @Override
+    public String toString() {
+        return "SpendTotals{" +
+                "paid=" + paid +
+                ", share=" + share +
+                '}';
+    }
+}
@@ -10,6 +10,7 @@ public class User {
     private String name;
     private String email;
     private String mobileNumber;
+    private String homeCurrency;
 
     public User(String userId, String name, String email, String mobileNumber) {
         this.userId = userId;
@@ -50,6 +51,14 @@ public class User {
         this.mobileNumber = mobileNumber;
     }
 
+    public String getHomeCurrency() {
+        return homeCurrency;
+    }
+
+    public void setHomeCurrency(String homeCurrency) {
+        this.homeCurrency = homeCurrency;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
@@ -0,0 +1,122 @@
+package recurring;
+
+import factory.SplitStrategyFactory;
+import model.Expense;
+import model.GroupSplit;
+import model.RecurringExpenseTemplate;
+import model.User;
+import service.ExpenseService;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Schedules recurring expense templates on a timer wheel.
+ * On every tick all due occurrences are materialized and applied to the ledger as one batch.
+ */
+public class RecurringExpenseScheduler {
+    private static final int DEFAULT_WHEEL_SIZE = 512;
+
+    private final ExpenseService expenseService;
+    private final TimerWheel<RecurringExpenseTemplate> wheel;
+    private final Map<String, RecurringExpenseTemplate> templates;
+    private int nextTemplateNumber;
+
+    public RecurringExpenseScheduler(ExpenseService expenseService) {
+        this(expenseService, DEFAULT_WHEEL_SIZE);
+    }
+
+    public RecurringExpenseScheduler(ExpenseService expenseService, int wheelSize) {
+        if (expenseService == null) {
+            throw new IllegalArgumentException("ExpenseService cannot be null");
+        }
+        this.expenseService = expenseService;
+        this.wheel = new TimerWheel<>(wheelSize);
+        this.templates = new HashMap<>();
+        this.nextTemplateNumber = 1;
+    }
+
+    /**
+     * Returns the id the next registered template will get.
+     */
+    public String nextTemplateId() {
+        return "R" + nextTemplateNumber;
+    }
+
+    /**
+     * Registers a template built from a prototype expense. The split is validated and
+     * calculated once here; group splits are only validated, since the service keeps them
+     * in compact form. The first occurrence is due after one interval.
+     *
+     * @throws IllegalArgumentException if the split values are invalid
+     */
+    public RecurringExpenseTemplate addTemplate(Expense prototype, long intervalTicks) {
+        if (intervalTicks <= 0) {
+            throw new IllegalArgumentException("Interval must be at least one tick");
+        }
+        Map<User, Double> split = null;
+        if (ExpenseService.isGroupSplit(prototype)) {
+            new GroupSplit(prototype.getParticipantGroup(), prototype.getSplitType(),
+                    prototype.getAmount(), prototype.getSplitValues());
+        } else {
+            split = Collections.unmodifiableMap(SplitStrategyFactory.calculateSplit(prototype));
+        }
+
+        RecurringExpenseTemplate template = new RecurringExpenseTemplate(
+                nextTemplateId(), prototype, split, intervalTicks);
+        nextTemplateNumber++;
+        templates.put(template.getTemplateId(), template);
+        wheel.schedule(template, intervalTicks);
+        return template;
+    }
+
+    public RecurringExpenseTemplate getTemplate(String templateId) {
+        return templates.get(templateId);
+    }
+
+    /**
+     * Advances the scheduler by the given number of ticks.
+     *
+     * @return Number of expenses materialized
+     */
+    public int advance(int ticks) {
+        int materialized = 0;
+        for (int i = 0; i < ticks; i++) {
+            materialized += tick();
+        }
+        return materialized;
+    }
+
+    private int tick() {
+        List<RecurringExpenseTemplate> due = wheel.advance();
+        if (due.isEmpty()) {
+            return 0;
+        }
+
+        List<Expense> batch = new ArrayList<>(due.size());
+        List<Map<User, Double>> splits = new ArrayList<>(due.size());
+        for (RecurringExpenseTemplate template : due) {
+            batch.add(template.nextOccurrence());
+            splits.add(template.getSplit());
+        }
+        try {
+            expenseService.addExpenses(batch, splits);
+        } finally {
+            for (RecurringExpenseTemplate template : due) {
+                wheel.schedule(template, template.getIntervalTicks());
+            }
+        }
+        return batch.size();
+    }
+
+    public long getCurrentTick() {
+        return wheel.getCurrentTick();
+    }
+
+    public int getTemplateCount() {
+        return templates.size();
+    }
+}
@@ -0,0 +1,82 @@
+package recurring;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Hashed timer wheel.
+ * Items are placed in the slot of their deadline tick, so advancing one tick only looks at a
+ * single slot. Deadlines further away than one revolution stay in their slot until due.
+ *
+ * @param <T> Type of scheduled item
+ */
+public class TimerWheel<T> {
+    private final List<List<Timeout<T>>> slots;
+    private long currentTick;
+    private int size;
+
+    public TimerWheel(int wheelSize) {
+        if (wheelSize <= 0) {
+            throw new IllegalArgumentException("Wheel size must be positive");
+        }
+        this.slots = new ArrayList<>(wheelSize);
+        for (int i = 0; i < wheelSize; i++) {
+            slots.add(new ArrayList<>());
+        }
+        this.currentTick = 0;
+        this.size = 0;
+    }
+
+    /**
+     * Schedules an item to become due after the given number of ticks.
+     */
+    public void schedule(T item, long delayTicks) {
+        if (delayTicks <= 0) {
+            throw new IllegalArgumentException("Delay must be at least one tick");
+        }
+        long deadline = currentTick + delayTicks;
+        slots.get(slotFor(deadline)).add(new Timeout<>(item, deadline));
+        size++;
+    }
+
+    /**
+     * Advances the wheel by one tick and returns the items that became due.
+     */
+    public List<T> advance() {
+        currentTick++;
+        List<T> due = new ArrayList<>();
+        Iterator<Timeout<T>> it = slots.get(slotFor(currentTick)).iterator();
+        while (it.hasNext()) {
+            Timeout<T> timeout = it.next();
+            if (timeout.deadline <= currentTick) {
+                due.add(timeout.item);
+                it.remove();
+                size--;
+            }
+        }
+        return due;
+    }
+
+    public long getCurrentTick() {
+        return currentTick;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private int slotFor(long tick) {
+        return (int) (tick % slots.size());
+    }
+
+    private static final class Timeout<T> {
+        private final T item;
+        private final long deadline;
+
+        private Timeout(T item, long deadline) {
+            this.item = item;
+            this.deadline = deadline;
+        }
+    }
+}
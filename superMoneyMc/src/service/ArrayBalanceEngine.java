@@ -0,0 +1,169 @@
+package service;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Balance engine built on primitive arrays.
+ * Users get dense ordinals. Net positions are a long[] indexed by ordinal, and each pair's net is
+ * one slot in an open-addressing table keyed by the two ordinals, so a write does not allocate
+ * once both users and their pair are known. Per-user neighbour lists make a user's pairs
+ * enumerable. Not thread-safe.
+ */
+public class ArrayBalanceEngine implements BalanceEngine {
+    private final Map<String, Integer> ordinals;
+    private String[] userIds;
+    private long[] nets;
+    private int[][] neighbours;
+    private int[] degrees;
+    private int userCount;
+
+    // Pair table: key = (lower ordinal << 32 | higher ordinal), value = cents the higher owes the lower
+    private long[] keys;
+    private long[] values;
+    private int pairCount;
+
+    public ArrayBalanceEngine() {
+        this.ordinals = new HashMap<>();
+        this.userIds = new String[16];
+        this.nets = new long[16];
+        this.neighbours = new int[16][];
+        this.degrees = new int[16];
+        this.keys = new long[64];
+        this.values = new long[64];
+    }
+
+    @Override
+    public void record(String debtorId, String creditorId, long cents) {
+        if (cents == 0 || debtorId.equals(creditorId)) {
+            return;
+        }
+        int debtor = ordinalOf(debtorId);
+        int creditor = ordinalOf(creditorId);
+        nets[debtor] -= cents;
+        nets[creditor] += cents;
+        int slot = slotFor(debtor, creditor);
+        values[slot] += debtor > creditor ? cents : -cents;
+    }
+
+    @Override
+    public void adjustNet(String userId, long cents) {
+        if (cents != 0) {
+            nets[ordinalOf(userId)] += cents;
+        }
+    }
+
+    @Override
+    public long getNetCents(String userId) {
+        Integer ordinal = ordinals.get(userId);
+        return ordinal == null ? 0L : nets[ordinal];
+    }
+
+    @Override
+    public Map<String, Long> getPairCents(String userId) {
+        Map<String, Long> pairs = new HashMap<>();
+        Integer ordinal = ordinals.get(userId);
+        if (ordinal == null) {
+            return pairs;
+        }
+        for (int i = 0; i < degrees[ordinal]; i++) {
+            int other = neighbours[ordinal][i];
+            long cents = values[find(pack(ordinal, other))];
+            // The table stores what the higher ordinal owes the lower one
+            long owedToUser = ordinal < other ? cents : -cents;
+            if (owedToUser != 0) {
+                pairs.put(userIds[other], owedToUser);
+            }
+        }
+        return pairs;
+    }
+
+    public int getUserCount() {
+        return userCount;
+    }
+
+    public int getPairCount() {
+        return pairCount;
+    }
+
+    private int ordinalOf(String userId) {
+        Integer ordinal = ordinals.get(userId);
+        if (ordinal != null) {
+            return ordinal;
+        }
+        if (userCount == userIds.length) {
+            int capacity = userCount * 2;
+            userIds = Arrays.copyOf(userIds, capacity);
+            nets = Arrays.copyOf(nets, capacity);
+            neighbours = Arrays.copyOf(neighbours, capacity);
+            degrees = Arrays.copyOf(degrees, capacity);
+        }
+        userIds[userCount] = userId;
+        neighbours[userCount] = new int[4];
+        ordinals.put(userId, userCount);
+        return userCount++;
+    }
+
+    /**
+     * Returns the table slot for a pair, adding the pair if it is new.
+     */
+    private int slotFor(int a, int b) {
+        long key = pack(a, b);
+        int slot = find(key);
+        if (keys[slot] == key) {
+            return slot;
+        }
+        if ((pairCount + 1) * 2 > keys.length) {
+            grow();
+            slot = find(key);
+        }
+        keys[slot] = key;
+        pairCount++;
+        addNeighbour(a, b);
+        addNeighbour(b, a);
+        return slot;
+    }
+
+    /**
+     * Returns the slot holding the key, or the empty slot where it would go.
+     */
+    private int find(long key) {
+        int mask = keys.length - 1;
+        int slot = (int) ((key * 0x9E3779B97F4A7C15L) >>> 40) & mask;
+        while (keys[slot] != 0 && keys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void grow() {
+        long[] oldKeys = keys;
+        long[] oldValues = values;
+        keys = new long[oldKeys.length * 2];
+        values = new long[oldKeys.length * 2];
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != 0) {
+                int slot = find(oldKeys[i]);
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+
+    private void addNeighbour(int user, int other) {
+        if (degrees[user] == neighbours[user].length) {
+            neighbours[user] = Arrays.copyOf(neighbours[user], degrees[user] * 2);
+        }
+        neighbours[user][degrees[user]++] = other;
+    }
+
+    /**
+     * Packs two distinct ordinals into a non-zero key, lower ordinal first.
+     */
+    private static long pack(int a, int b) {
+        int lower = Math.min(a, b);
+        int higher = Math.max(a, b);
+        return ((long) lower << 32) | higher;
+    }
+}
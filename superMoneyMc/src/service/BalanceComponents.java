@@ -0,0 +1,142 @@
+package service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Union-find over users who have shared a balance, so that each connected component of the
+ * debt graph can be simplified on its own. Components are merged as expenses arrive and are
+ * never split; a settled component simply has no balances left. Each component is marked
+ * dirty when one of its balances changes, so that only those components are re-solved.
+ */
+public class BalanceComponents {
+    private final Map<String, Integer> nodes;
+    private final List<String> userIds;
+    private int[] parent;
+    private int[] rank;
+    // root -> member user ids, merged smaller into larger
+    private final Map<Integer, List<String>> members;
+    private final Set<Integer> dirty;
+
+    public BalanceComponents() {
+        this.nodes = new HashMap<>();
+        this.userIds = new ArrayList<>();
+        this.parent = new int[16];
+        this.rank = new int[16];
+        this.members = new HashMap<>();
+        this.dirty = new LinkedHashSet<>();
+    }
+
+    /**
+     * Records that the two users share a balance and marks their component dirty.
+     */
+    public void connect(String userId, String otherUserId) {
+        int root = find(nodeFor(userId));
+        int otherRoot = find(nodeFor(otherUserId));
+        if (root != otherRoot) {
+            if (rank[root] < rank[otherRoot]) {
+                int swap = root;
+                root = otherRoot;
+                otherRoot = swap;
+            }
+            parent[otherRoot] = root;
+            if (rank[root] == rank[otherRoot]) {
+                rank[root]++;
+            }
+            List<String> absorbed = members.remove(otherRoot);
+            List<String> kept = members.get(root);
+            if (absorbed.size() > kept.size()) {
+                absorbed.addAll(kept);
+                kept = absorbed;
+            } else {
+                kept.addAll(absorbed);
+            }
+            members.put(root, kept);
+            dirty.remove(otherRoot);
+        }
+        dirty.add(root);
+    }
+
+    /**
+     * Returns the component id of the user, or -1 if the user has never had a balance.
+     */
+    public int componentOf(String userId) {
+        Integer node = nodes.get(userId);
+        return node == null ? -1 : find(node);
+    }
+
+    public void markDirty(String userId) {
+        int component = componentOf(userId);
+        if (component >= 0) {
+            dirty.add(component);
+        }
+    }
+
+    public void markAllDirty() {
+        dirty.addAll(members.keySet());
+    }
+
+    /**
+     * Returns the components changed since the last call and clears the dirty set.
+     */
+    public List<Integer> drainDirty() {
+        List<Integer> changed = new ArrayList<>(dirty);
+        dirty.clear();
+        return changed;
+    }
+
+    /**
+     * Clears the component's dirty mark and returns whether it was set.
+     */
+    public boolean clearDirty(int component) {
+        return dirty.remove(component);
+    }
+
+    public List<String> getMembers(int component) {
+        return Collections.unmodifiableList(members.getOrDefault(component, Collections.emptyList()));
+    }
+
+    public int getComponentCount() {
+        return members.size();
+    }
+
+    private int nodeFor(String userId) {
+        Integer node = nodes.get(userId);
+        if (node != null) {
+            return node;
+        }
+        node = userIds.size();
+        if (node == parent.length) {
+            parent = Arrays.copyOf(parent, node * 2);
+            rank = Arrays.copyOf(rank, node * 2);
+        }
+        parent[node] = node;
+        rank[node] = 0;
+        nodes.put(userId, node);
+        userIds.add(userId);
+        List<String> component = new ArrayList<>();
+        component.add(userId);
+        members.put(node, component);
+        return node;
+    }
+
+    private int find(int node) {
+        int root = node;
+        while (parent[root] != root) {
+            root = parent[root];
+        }
+        // Path compression
+        while (parent[node] != root) {
+            int next = parent[node];
+            parent[node] = root;
+            node = next;
+        }
+        return root;
+    }
+}
@@ -0,0 +1,30 @@
+package service;
+
+import java.util.Map;
+
+/**
+ * A balance ledger that can run alongside the one in {@link ExpenseService} as a shadow.
+ * See {@link ShadowLedger}. Amounts are in cents of the base currency.
+ */
+public interface BalanceEngine {
+    /**
+     * Records that the debtor owes the creditor the given cents more.
+     */
+    void record(String debtorId, String creditorId, long cents);
+
+    /**
+     * Adjusts a user's net position without touching pairwise balances.
+     */
+    void adjustNet(String userId, long cents);
+
+    /**
+     * Returns the user's net position. Positive means the user is owed money.
+     */
+    long getNetCents(String userId);
+
+    /**
+     * Returns the user's non-zero pairwise balances keyed by counterparty.
+     * Positive means the counterparty owes the user.
+     */
+    Map<String, Long> getPairCents(String userId);
+}
@@ -0,0 +1,336 @@
+package service;
+
+import model.GroupSplit;
+import model.User;
+import strategy.SplitKernel;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Time-indexed log of pairwise balance changes, in cents of the base currency, with periodic
+ * checkpoints of the net ledger. A balance as of time T is rebuilt from the last checkpoint
+ * taken before T plus the changes logged between the checkpoint and T.
+ *
+ * Group expenses are logged as a single entry and only expanded into member shares on replay.
+ * A checkpoint is taken once the changes logged since the previous one reach the larger of the
+ * minimum interval and the number of open pairs, so copying the ledger costs O(1) per change
+ * amortized. Times only move forward: an entry older than the previous one is logged at the
+ * previous entry's time.
+ */
+public class BalanceHistory {
+    private final int minCheckpointInterval;
+    private final Map<String, Integer> userIndexes;
+    private final List<String> userIds;
+    private final List<GroupEntry> groupEntries;
+    private final List<Checkpoint> checkpoints;
+    private final Map<Long, Long> ledger; // pair key -> cents, positive = lower user index owes the other
+    private int ledgerPosition; // number of log entries applied to the ledger
+
+    // Log entries; debtor is -1 - group entry index for a group expense, whose creditor is the payer
+    private long[] times;
+    private int[] debtors;
+    private int[] creditors;
+    private long[] amounts;
+    private int size;
+
+    public BalanceHistory(int minCheckpointInterval) {
+        if (minCheckpointInterval <= 0) {
+            throw new IllegalArgumentException("Checkpoint interval must be positive");
+        }
+        this.minCheckpointInterval = minCheckpointInterval;
+        this.userIndexes = new HashMap<>();
+        this.userIds = new ArrayList<>();
+        this.groupEntries = new ArrayList<>();
+        this.checkpoints = new ArrayList<>();
+        this.ledger = new HashMap<>();
+        this.times = new long[64];
+        this.debtors = new int[64];
+        this.creditors = new int[64];
+        this.amounts = new long[64];
+        checkpoints.add(new Checkpoint(0, new int[1], new int[0], new long[0]));
+    }
+
+    /**
+     * Logs that the debtor owes the creditor an additional amount from the given time.
+     */
+    public void record(long time, String debtorId, String creditorId, long cents) {
+        if (cents == 0 || debtorId.equals(creditorId)) {
+            return;
+        }
+        append(time, indexOf(debtorId), indexOf(creditorId), cents);
+    }
+
+    /**
+     * Logs a group expense paid by the given user. Every member is indexed here so that reads
+     * never register users.
+     *
+     * @param baseRate Rate from the expense currency to the base currency
+     */
+    public void recordGroup(long time, String paidById, GroupSplit split, double baseRate) {
+        List<User> members = split.getGroup().getMembers();
+        int[] memberIndexes = new int[members.size()];
+        for (int m = 0; m < memberIndexes.length; m++) {
+            memberIndexes[m] = indexOf(members.get(m).getUserId());
+        }
+        groupEntries.add(new GroupEntry(split, baseRate, memberIndexes));
+        append(time, -groupEntries.size(), indexOf(paidById), 0);
+    }
+
+    /**
+     * Visits the user's non-zero balances as of the given time.
+     *
+     * @return Number of balances visited
+     */
+    public int forEachUserBalanceAsOf(String userId, long time, BalanceVisitor visitor) {
+        Integer user = userIndexes.get(userId);
+        if (user == null) {
+            return 0;
+        }
+        int end = positionAt(time);
+        Checkpoint checkpoint = checkpointAt(end);
+        Map<Integer, Long> nets = new HashMap<>(); // counterparty -> cents, positive = user owes
+        if (user + 1 < checkpoint.offsets.length) {
+            for (int i = checkpoint.offsets[user]; i < checkpoint.offsets[user + 1]; i++) {
+                nets.put(checkpoint.counterparties[i], checkpoint.cents[i]);
+            }
+        }
+        for (int i = checkpoint.position; i < end; i++) {
+            if (debtors[i] >= 0) {
+                if (debtors[i] == user) {
+                    nets.merge(creditors[i], amounts[i], Long::sum);
+                } else if (creditors[i] == user) {
+                    nets.merge(debtors[i], -amounts[i], Long::sum);
+                }
+                continue;
+            }
+            GroupEntry entry = groupEntries.get(-1 - debtors[i]);
+            int payer = creditors[i];
+            if (payer == user) {
+                for (int m = 0; m < entry.memberIndexes.length; m++) {
+                    int member = entry.memberIndexes[m];
+                    if (member != payer) {
+                        nets.merge(member, -entry.shareCents(m), Long::sum);
+                    }
+                }
+            } else {
+                int m = entry.split.getGroup().indexOf(userId);
+                if (m >= 0) {
+                    nets.merge(payer, entry.shareCents(m), Long::sum);
+                }
+            }
+        }
+
+        int count = 0;
+        for (Map.Entry<Integer, Long> net : nets.entrySet()) {
+            long cents = net.getValue();
+            if (cents > 1) {
+                visitor.visit(userId, userIds.get(net.getKey()), cents / 100.0);
+                count++;
+            } else if (cents < -1) {
+                visitor.visit(userIds.get(net.getKey()), userId, -cents / 100.0);
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Visits every non-zero balance as of the given time.
+     *
+     * @return Number of balances visited
+     */
+    public int forEachBalanceAsOf(long time, BalanceVisitor visitor) {
+        int end = positionAt(time);
+        Checkpoint checkpoint = checkpointAt(end);
+        Map<Long, Long> nets = new HashMap<>();
+        for (int user = 0; user + 1 < checkpoint.offsets.length; user++) {
+            for (int i = checkpoint.offsets[user]; i < checkpoint.offsets[user + 1]; i++) {
+                if (user < checkpoint.counterparties[i]) {
+                    nets.put(pairKey(user, checkpoint.counterparties[i]), checkpoint.cents[i]);
+                }
+            }
+        }
+        for (int i = checkpoint.position; i < end; i++) {
+            apply(i, nets);
+        }
+
+        int count = 0;
+        for (Map.Entry<Long, Long> net : nets.entrySet()) {
+            long cents = net.getValue();
+            if (Math.abs(cents) <= 1) {
+                continue;
+            }
+            String low = userIds.get((int) (net.getKey() >>> 32));
+            String high = userIds.get((int) (long) net.getKey());
+            if (cents > 0) {
+                visitor.visit(low, high, cents / 100.0);
+            } else {
+                visitor.visit(high, low, -cents / 100.0);
+            }
+            count++;
+        }
+        return count;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int getCheckpointCount() {
+        return checkpoints.size();
+    }
+
+    private void append(long time, int debtor, int creditor, long cents) {
+        if (size == times.length) {
+            int capacity = size * 2;
+            times = Arrays.copyOf(times, capacity);
+            debtors = Arrays.copyOf(debtors, capacity);
+            creditors = Arrays.copyOf(creditors, capacity);
+            amounts = Arrays.copyOf(amounts, capacity);
+        }
+        times[size] = size > 0 ? Math.max(time, times[size - 1]) : time;
+        debtors[size] = debtor;
+        creditors[size] = creditor;
+        amounts[size] = cents;
+        size++;
+
+        int sinceCheckpoint = size - checkpoints.get(checkpoints.size() - 1).position;
+        if (sinceCheckpoint >= Math.max(minCheckpointInterval, ledger.size())) {
+            checkpoint();
+        }
+    }
+
+    private void checkpoint() {
+        for (; ledgerPosition < size; ledgerPosition++) {
+            apply(ledgerPosition, ledger);
+        }
+        ledger.values().removeIf(cents -> cents == 0);
+
+        int users = userIds.size();
+        int[] offsets = new int[users + 1];
+        for (long key : ledger.keySet()) {
+            offsets[(int) (key >>> 32) + 1]++;
+            offsets[(int) key + 1]++;
+        }
+        for (int i = 0; i < users; i++) {
+            offsets[i + 1] += offsets[i];
+        }
+        int[] next = Arrays.copyOf(offsets, users);
+        int[] counterparties = new int[offsets[users]];
+        long[] cents = new long[offsets[users]];
+        for (Map.Entry<Long, Long> entry : ledger.entrySet()) {
+            int low = (int) (entry.getKey() >>> 32);
+            int high = (int) (long) entry.getKey();
+            counterparties[next[low]] = high;
+            cents[next[low]++] = entry.getValue();
+            counterparties[next[high]] = low;
+            cents[next[high]++] = -entry.getValue();
+        }
+        checkpoints.add(new Checkpoint(size, offsets, counterparties, cents));
+    }
+
+    private void apply(int i, Map<Long, Long> nets) {
+        if (debtors[i] >= 0) {
+            addNet(nets, debtors[i], creditors[i], amounts[i]);
+            return;
+        }
+        GroupEntry entry = groupEntries.get(-1 - debtors[i]);
+        for (int m = 0; m < entry.memberIndexes.length; m++) {
+            int member = entry.memberIndexes[m];
+            if (member != creditors[i]) {
+                addNet(nets, member, creditors[i], entry.shareCents(m));
+            }
+        }
+    }
+
+    private static void addNet(Map<Long, Long> nets, int debtor, int creditor, long cents) {
+        if (debtor < creditor) {
+            nets.merge(pairKey(debtor, creditor), cents, Long::sum);
+        } else {
+            nets.merge(pairKey(creditor, debtor), -cents, Long::sum);
+        }
+    }
+
+    private static long pairKey(int low, int high) {
+        return ((long) low << 32) | high;
+    }
+
+    /**
+     * Returns the number of log entries at or before the given time.
+     */
+    private int positionAt(long time) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (times[mid] <= time) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private Checkpoint checkpointAt(int position) {
+        int low = 0;
+        int high = checkpoints.size() - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (checkpoints.get(mid).position <= position) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return checkpoints.get(low);
+    }
+
+    private int indexOf(String userId) {
+        Integer index = userIndexes.get(userId);
+        if (index == null) {
+            index = userIds.size();
+            userIndexes.put(userId, index);
+            userIds.add(userId);
+        }
+        return index;
+    }
+
+    private static final class GroupEntry {
+        private final GroupSplit split;
+        private final double baseRate;
+        private final int[] memberIndexes; // user index of each group member
+
+        private GroupEntry(GroupSplit split, double baseRate, int[] memberIndexes) {
+            this.split = split;
+            this.baseRate = baseRate;
+            this.memberIndexes = memberIndexes;
+        }
+
+        private long shareCents(int memberIndex) {
+            return SplitKernel.roundToCents(split.getShare(memberIndex) * baseRate);
+        }
+    }
+
+    /**
+     * Net ledger after the first position log entries, as adjacency lists per user index.
+     * Cents are positive when the user owes the counterparty.
+     */
+    private static final class Checkpoint {
+        private final int position;
+        private final int[] offsets;
+        private final int[] counterparties;
+        private final long[] cents;
+
+        private Checkpoint(int position, int[] offsets, int[] counterparties, long[] cents) {
+            this.position = position;
+            this.offsets = offsets;
+            this.counterparties = counterparties;
+            this.cents = cents;
+        }
+    }
+}
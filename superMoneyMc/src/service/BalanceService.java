@@ -1,7 +1,13 @@
 package service;
 
-import model.Transaction;
+import model.Expense;
+import model.NetPosition;
+import model.PairContribution;
+import model.SpendTotals;
 
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -15,22 +21,91 @@ public class BalanceService {
     }
 
     public void showAllBalances() {
-        Map<String, Map<String, Transaction>> allBalances = expenseService.getAllBalances();
+        if (expenseService.forEachBalance(this::printBalance) == 0) {
+            System.out.println("No balances");
+        }
+    }
+
+    public void showUserBalances(String userId) {
+        String homeCurrency = expenseService.getHomeCurrency(userId);
+        if (homeCurrency != null) {
+            showUserBalancesInCurrency(userId, homeCurrency);
+            return;
+        }
+
+        if (expenseService.forEachUserBalance(userId, this::printBalance) == 0) {
+            System.out.println("No balances");
+        }
+    }
+
+    /**
+     * Prints all pairwise balances as they stood at the given time.
+     */
+    public void showAllBalancesAsOf(LocalDateTime time) {
+        if (expenseService.forEachBalanceAsOf(time, this::printBalance) == 0) {
+            System.out.println("No balances");
+        }
+    }
+
+    /**
+     * Prints the user's pairwise balances as they stood at the given time.
+     */
+    public void showUserBalancesAsOf(String userId, LocalDateTime time) {
+        if (expenseService.forEachUserBalanceAsOf(userId, time, this::printBalance) == 0) {
+            System.out.println("No balances");
+        }
+    }
+
+    /**
+     * Prints the user's spend in one category between the two dates.
+     */
+    public void showSpend(String userId, String category, LocalDate from, LocalDate to) {
+        SpendTotals totals = expenseService.getSpend(userId, category, from, to);
+        if (totals.isEmpty()) {
+            System.out.println("No spend");
+            return;
+        }
+        printSpend(category.toLowerCase(), totals);
+    }
+
+    /**
+     * Prints the user's spend per category between the two dates, followed by the total.
+     */
+    public void showSpendByCategory(String userId, LocalDate from, LocalDate to) {
+        Map<String, SpendTotals> byCategory = expenseService.getSpendByCategory(userId, from, to);
+        if (byCategory.isEmpty()) {
+            System.out.println("No spend");
+            return;
+        }
+        for (Map.Entry<String, SpendTotals> entry : byCategory.entrySet()) {
+            printSpend(entry.getKey(), entry.getValue());
+        }
+        printSpend("Total", expenseService.getSpend(userId, null, from, to));
+    }
+
+    private void printSpend(String label, SpendTotals totals) {
+        System.out.println(label + ": paid " + formatAmount(roundToTwoDecimals(totals.getPaid()))
+                + ", share " + formatAmount(roundToTwoDecimals(totals.getShare())));
+    }
+
+    private void printBalance(String debtorId, String creditorId, double amount) {
+        System.out.println(debtorId + " owes " + creditorId + ": " + formatAmount(amount));
+    }
+
+    private void showUserBalancesInCurrency(String userId, String homeCurrency) {
+        Map<String, Double> homeBalances = expenseService.getHomeCurrencyBalances(userId);
         boolean hasBalances = false;
 
-        for (Map.Entry<String, Map<String, Transaction>> userEntry : allBalances.entrySet()) {
-            Map<String, Transaction> userBalances = userEntry.getValue();
-
-            for (Transaction transaction : userBalances.values()) {
-                if (Math.abs(transaction.getAmount()) > 0.01) {
-                    hasBalances = true;
-                    double amount = transaction.getAmount();
-                    String amountStr = amount == Math.floor(amount) 
-                            ? String.format("%.0f", amount) 
-                            : String.format("%.2f", amount);
-                    System.out.println(transaction.getFromUser().getUserId() + 
-                            " owes " + transaction.getToUser().getUserId() + 
-                            ": " + amountStr);
+        for (Map.Entry<String, Double> entry : homeBalances.entrySet()) {
+            double amount = entry.getValue();
+            if (Math.abs(amount) > 0.01) {
+                hasBalances = true;
+                if (amount > 0) {
+                    System.out.println(entry.getKey() + " owes " + userId + ": "
+                            + formatAmount(roundToTwoDecimals(amount)) + " " + homeCurrency);
+                } else {
+                    System.out.println(userId + " owes " + entry.getKey() + ": "
+                            + formatAmount(roundToTwoDecimals(-amount)) + " " + homeCurrency);
                 }
             }
         }
@@ -40,25 +115,62 @@ public class BalanceService {
         }
     }
 
-    public void showUserBalances(String userId) {
-        Map<String, Transaction> userBalances = expenseService.getUserBalances(userId);
-        
-        if (userBalances.isEmpty()) {
+    public void showTopDebtors(int n) {
+        List<NetPosition> debtors = expenseService.getTopDebtors(n);
+        if (debtors.isEmpty()) {
             System.out.println("No balances");
             return;
         }
+        for (NetPosition position : debtors) {
+            System.out.println(position.getUserId() + " owes: " + formatAmount(-position.getAmount()));
+        }
+    }
 
-        for (Transaction transaction : userBalances.values()) {
-            if (Math.abs(transaction.getAmount()) > 0.01) {
-                double amount = transaction.getAmount();
-                String amountStr = amount == Math.floor(amount) 
-                        ? String.format("%.0f", amount) 
-                        : String.format("%.2f", amount);
-                System.out.println(transaction.getFromUser().getUserId() + 
-                        " owes " + transaction.getToUser().getUserId() + 
-                        ": " + amountStr);
-            }
+    public void showTopCreditors(int n) {
+        List<NetPosition> creditors = expenseService.getTopCreditors(n);
+        if (creditors.isEmpty()) {
+            System.out.println("No balances");
+            return;
+        }
+        for (NetPosition position : creditors) {
+            System.out.println(position.getUserId() + " is owed: " + formatAmount(position.getAmount()));
         }
     }
-}
 
+    /**
+     * Lists the expenses behind the balance between two users, followed by the net amount.
+     */
+    public void showPairDetail(String userId, String counterpartyId) {
+        List<PairContribution> history = expenseService.getPairHistory(userId, counterpartyId);
+        if (history.isEmpty()) {
+            System.out.println("No shared expenses");
+            return;
+        }
+
+        double net = 0.0;
+        for (PairContribution contribution : history) {
+            Expense expense = expenseService.getExpenseAt(contribution.getOrdinal());
+            System.out.println(contribution.getExpenseId() + " " + expense.getExpenseName() + ": "
+                    + formatOwes(userId, counterpartyId, contribution.getAmount()));
+            net += contribution.getAmount();
+        }
+        net = roundToTwoDecimals(net);
+        System.out.println("Net: " + (net == 0 ? "settled" : formatOwes(userId, counterpartyId, net)));
+    }
+
+    private String formatOwes(String userId, String counterpartyId, double amount) {
+        return amount > 0
+                ? userId + " owes " + counterpartyId + ": " + formatAmount(roundToTwoDecimals(amount))
+                : counterpartyId + " owes " + userId + ": " + formatAmount(roundToTwoDecimals(-amount));
+    }
+
+    private double roundToTwoDecimals(double value) {
+        return Math.round(value * 100.0) / 100.0;
+    }
+
+    private String formatAmount(double amount) {
+        return amount == Math.floor(amount)
+                ? String.format("%.0f", amount)
+                : String.format("%.2f", amount);
+    }
+}
@@ -0,0 +1,11 @@
+package service;
+
+/**
+ * Receives balances one at a time from the query API, without intermediate collections.
+ */
+public interface BalanceVisitor {
+    /**
+     * @param amount Amount the debtor owes the creditor, in the base currency
+     */
+    void visit(String debtorId, String creditorId, double amount);
+}
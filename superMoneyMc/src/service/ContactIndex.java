@@ -0,0 +1,100 @@
+package service;
+
+import model.User;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Hash indexes from normalized email addresses and mobile numbers to user ids.
+ * The first user registered with an address or number keeps it.
+ */
+class ContactIndex {
+    static final int PHONE_DIGITS = 10; // numbers match on their last 10 digits, so country codes are ignored
+    private static final int MIN_PHONE_DIGITS = 7;
+
+    private final Map<String, String> byEmail;
+    private final Map<String, String> byPhone;
+
+    ContactIndex() {
+        this.byEmail = new HashMap<>();
+        this.byPhone = new HashMap<>();
+    }
+
+    /**
+     * Indexes the user's email and mobile number, skipping values that do not normalize.
+     */
+    void add(User user) {
+        String email = normalizeEmail(user.getEmail());
+        if (email != null) {
+            byEmail.putIfAbsent(email, user.getUserId());
+        }
+        String phone = normalizeMobileNumber(user.getMobileNumber());
+        if (phone != null) {
+            byPhone.putIfAbsent(phone, user.getUserId());
+        }
+    }
+
+    /**
+     * Merges entries staged by a bulk import. Keys already indexed keep their user.
+     */
+    void addAll(Map<String, String> emails, Map<String, String> phones) {
+        emails.keySet().removeAll(byEmail.keySet());
+        phones.keySet().removeAll(byPhone.keySet());
+        byEmail.putAll(emails);
+        byPhone.putAll(phones);
+    }
+
+    String findByEmail(String email) {
+        String normalized = normalizeEmail(email);
+        return normalized == null ? null : byEmail.get(normalized);
+    }
+
+    String findByMobileNumber(String mobileNumber) {
+        String normalized = normalizeMobileNumber(mobileNumber);
+        return normalized == null ? null : byPhone.get(normalized);
+    }
+
+    /**
+     * Trims and lower-cases an email address.
+     *
+     * @return The normalized address, or null if it has no text on both sides of a single '@'
+     */
+    static String normalizeEmail(String email) {
+        if (email == null) {
+            return null;
+        }
+        String normalized = email.trim().toLowerCase(Locale.ROOT);
+        int at = normalized.indexOf('@');
+        if (at <= 0 || at != normalized.lastIndexOf('@') || at == normalized.length() - 1) {
+            return null;
+        }
+        return normalized;
+    }
+
+    /**
+     * Keeps the last {@value #PHONE_DIGITS} digits of a mobile number, dropping spaces, punctuation and
+     * country codes.
+     *
+     * @return The normalized number, or null if it has fewer than 7 digits
+     */
+    static String normalizeMobileNumber(String mobileNumber) {
+        if (mobileNumber == null) {
+            return null;
+        }
+        char[] digits = new char[mobileNumber.length()];
+        int count = 0;
+        for (int i = 0; i < mobileNumber.length(); i++) {
+            char c = mobileNumber.charAt(i);
+            if (c >= '0' && c <= '9') {
+                digits[count++] = c;
+            }
+        }
+        if (count < MIN_PHONE_DIGITS) {
+            return null;
+        }
+        int from = Math.max(0, count - PHONE_DIGITS);
+        return new String(digits, from, count - from);
+    }
+}
@@ -0,0 +1,127 @@
+package service;
+
+import fx.FxConversionCache;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Per-currency net ledgers between pairs of users.
+ * Amounts are stored in cents of the original expense currency. Each user can also have a
+ * precomputed view of their balances converted into a home currency, which is updated
+ * incrementally on every write and only rebuilt when the FX rate bucket changes.
+ */
+public class CurrencyLedger {
+    private final FxConversionCache fxCache;
+    // currency -> userId -> counterpartyId -> cents (positive = counterparty owes user)
+    private final Map<String, Map<String, Map<String, Long>>> subLedgers;
+    private final Map<String, HomeView> homeViews;
+
+    public CurrencyLedger(FxConversionCache fxCache) {
+        this.fxCache = fxCache;
+        this.subLedgers = new HashMap<>();
+        this.homeViews = new HashMap<>();
+    }
+
+    /**
+     * Records that the debtor owes the creditor the given amount in the given currency.
+     */
+    public void record(String currency, String debtorId, String creditorId, double amount) {
+        long cents = Math.round(amount * 100.0);
+        if (cents == 0 || debtorId.equals(creditorId)) {
+            return;
+        }
+        Map<String, Map<String, Long>> ledger = subLedgers.computeIfAbsent(currency, c -> new HashMap<>());
+        addCents(ledger, creditorId, debtorId, cents);
+        addCents(ledger, debtorId, creditorId, -cents);
+
+        updateHomeView(creditorId, debtorId, currency, cents);
+        updateHomeView(debtorId, creditorId, currency, -cents);
+    }
+
+    /**
+     * Returns the net amount between the user and the counterparty in one currency.
+     * Positive means the counterparty owes the user.
+     */
+    public double getNet(String currency, String userId, String counterpartyId) {
+        Map<String, Map<String, Long>> ledger = subLedgers.get(currency);
+        if (ledger == null || !ledger.containsKey(userId)) {
+            return 0.0;
+        }
+        return ledger.get(userId).getOrDefault(counterpartyId, 0L) / 100.0;
+    }
+
+    /**
+     * Returns the user's balances with every counterparty converted into the home currency.
+     * Positive means the counterparty owes the user.
+     */
+    public Map<String, Double> getHomeBalances(String userId, String homeCurrency) {
+        long bucket = fxCache.currentBucket();
+        HomeView view = homeViews.get(userId);
+        if (view == null || view.bucket != bucket || !view.currency.equals(homeCurrency)) {
+            view = buildHomeView(userId, homeCurrency, bucket);
+            homeViews.put(userId, view);
+        }
+        return Collections.unmodifiableMap(view.totals);
+    }
+
+    private HomeView buildHomeView(String userId, String homeCurrency, long bucket) {
+        HomeView view = new HomeView(homeCurrency, bucket);
+        for (Map.Entry<String, Map<String, Map<String, Long>>> currencyEntry : subLedgers.entrySet()) {
+            Map<String, Long> userLedger = currencyEntry.getValue().get(userId);
+            if (userLedger == null || userLedger.isEmpty()) {
+                continue;
+            }
+            double rate = fxCache.getRate(currencyEntry.getKey(), homeCurrency);
+            for (Map.Entry<String, Long> entry : userLedger.entrySet()) {
+                view.totals.merge(entry.getKey(), entry.getValue() * rate / 100.0, Double::sum);
+            }
+        }
+        return view;
+    }
+
+    /**
+     * Drops every home-currency view, so they are rebuilt with fresh rates on next read.
+     */
+    public void clearHomeViews() {
+        homeViews.clear();
+    }
+
+    private void updateHomeView(String userId, String counterpartyId, String currency, long cents) {
+        HomeView view = homeViews.get(userId);
+        if (view == null) {
+            return;
+        }
+        if (view.bucket != fxCache.currentBucket()) {
+            // Stale rates; rebuild lazily on next read
+            homeViews.remove(userId);
+            return;
+        }
+        double converted = cents * fxCache.getRate(currency, view.currency) / 100.0;
+        view.totals.merge(counterpartyId, converted, Double::sum);
+    }
+
+    private static void addCents(Map<String, Map<String, Long>> ledger, String userId,
+                                 String counterpartyId, long cents) {
+        Map<String, Long> userLedger = ledger.computeIfAbsent(userId, u -> new HashMap<>());
+        long updated = userLedger.getOrDefault(counterpartyId, 0L) + cents;
+        if (updated == 0) {
+            userLedger.remove(counterpartyId);
+        } else {
+            userLedger.put(counterpartyId, updated);
+        }
+    }
+
+    private static final class HomeView {
+        private final String currency;
+        private final long bucket;
+        private final Map<String, Double> totals;
+
+        private HomeView(String currency, long bucket) {
+            this.currency = currency;
+            this.bucket = bucket;
+            this.totals = new HashMap<>();
+        }
+    }
+}
@@ -0,0 +1,371 @@
+package service;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Debt graph that can be simplified without creating debts between users who are not
+ * allowed to owe each other.
+ *
+ * Nodes are dense integer ids and edges live in primitive adjacency arrays, with amounts in
+ * cents. Every permitted (debtor, creditor) pair is an edge; existing debts have positive
+ * capacity and allowed contacts start at zero. For each permitted edge u -> v, the maximum
+ * flow from u to v (Dinic's algorithm) is rerouted onto the direct edge, which removes the
+ * intermediate debts it saturates. A previously empty edge is only used if that removes at
+ * least two other debts, so the number of debts never grows. Net positions are preserved.
+ */
+public class DebtFlowGraph {
+    private final int nodeCount;
+    private final Map<Long, Integer> edgeIds;
+    private int edgeCount;
+
+    // Per edge: endpoints, remaining debt, and flow pushed back during the current max-flow run
+    private int[] debtor;
+    private int[] creditor;
+    private long[] cap;
+    private long[] flow;
+    private final int[] outHead;
+    private int[] outNext;
+
+    // Residual reverse edges, listed on the creditor only while they carry flow in this round
+    private final int[] revHead;
+    private final int[] revHeadRound;
+    private int[] revNext;
+    private int[] edgeRound;
+    private long[] savedCap;
+    private int[] touched;
+    private int touchedCount;
+    private int round;
+
+    // Dinic scratch state; stamps avoid clearing per-node arrays for every phase
+    private final int[] level;
+    private final int[] levelStamp;
+    private final int[] iter;
+    private final boolean[] iterReverse;
+    private final int[] iterStamp;
+    private final int[] queue;
+    private int[] path;
+    private int stamp;
+
+    public DebtFlowGraph(int nodeCount) {
+        this.nodeCount = nodeCount;
+        this.edgeIds = new HashMap<>();
+        int capacity = 16;
+        this.debtor = new int[capacity];
+        this.creditor = new int[capacity];
+        this.cap = new long[capacity];
+        this.flow = new long[capacity];
+        this.outNext = new int[capacity];
+        this.revNext = new int[capacity];
+        this.edgeRound = new int[capacity];
+        this.savedCap = new long[capacity];
+        this.touched = new int[capacity];
+        this.outHead = new int[nodeCount];
+        Arrays.fill(outHead, -1);
+        this.revHead = new int[nodeCount];
+        this.revHeadRound = new int[nodeCount];
+        this.level = new int[nodeCount];
+        this.levelStamp = new int[nodeCount];
+        this.iter = new int[nodeCount];
+        this.iterReverse = new boolean[nodeCount];
+        this.iterStamp = new int[nodeCount];
+        this.queue = new int[nodeCount];
+        this.path = new int[16];
+    }
+
+    /**
+     * Adds a debt from debtor to creditor. Debts on the same pair are summed.
+     */
+    public void addDebt(int debtorNode, int creditorNode, long cents) {
+        if (cents < 0) {
+            throw new IllegalArgumentException("Debt amount cannot be negative");
+        }
+        int edge = edgeFor(debtorNode, creditorNode);
+        cap[edge] += cents;
+    }
+
+    /**
+     * Allows debts to be moved onto the pair in either direction.
+     */
+    public void allowContact(int a, int b) {
+        edgeFor(a, b);
+        edgeFor(b, a);
+    }
+
+    /**
+     * Reroutes debts onto permitted direct edges.
+     *
+     * @param maxHops Longest chain of debts that may be collapsed into one, or 0 for no limit
+     * @return Number of non-zero debts after simplification
+     */
+    public int simplify(int maxHops) {
+        int hopLimit = maxHops <= 0 ? Integer.MAX_VALUE : maxHops;
+        for (int edge = 0; edge < edgeCount; edge++) {
+            boolean existed = cap[edge] > 0;
+            if (existed && !hasOtherDebt(debtor[edge], edge)) {
+                // The direct debt is the only way out of the debtor
+                continue;
+            }
+
+            round++;
+            touchedCount = 0;
+            long total = maxFlow(debtor[edge], creditor[edge], hopLimit);
+            if (total == 0) {
+                continue;
+            }
+
+            int removed = 0;
+            for (int i = 0; i < touchedCount; i++) {
+                int changed = touched[i];
+                if (changed != edge && savedCap[changed] > 0 && cap[changed] == 0) {
+                    removed++;
+                }
+            }
+            boolean accept = existed || removed >= 2;
+            for (int i = 0; i < touchedCount; i++) {
+                int changed = touched[i];
+                if (!accept) {
+                    cap[changed] = savedCap[changed];
+                }
+                flow[changed] = 0;
+            }
+            if (accept) {
+                cap[edge] += total;
+            }
+        }
+        return getDebtCount();
+    }
+
+    public int getNodeCount() {
+        return nodeCount;
+    }
+
+    /**
+     * Returns the number of permitted (debtor, creditor) pairs.
+     */
+    public int getEdgeCount() {
+        return edgeCount;
+    }
+
+    public int getDebtCount() {
+        int count = 0;
+        for (int edge = 0; edge < edgeCount; edge++) {
+            if (cap[edge] > 0) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    public int getDebtor(int edge) {
+        return debtor[edge];
+    }
+
+    public int getCreditor(int edge) {
+        return creditor[edge];
+    }
+
+    public long getAmount(int edge) {
+        return cap[edge];
+    }
+
+    private int edgeFor(int from, int target) {
+        if (from < 0 || from >= nodeCount || target < 0 || target >= nodeCount) {
+            throw new IllegalArgumentException("Node out of range");
+        }
+        if (from == target) {
+            throw new IllegalArgumentException("A user cannot owe themselves");
+        }
+        long key = ((long) from << 32) | target;
+        Integer existing = edgeIds.get(key);
+        if (existing != null) {
+            return existing;
+        }
+        if (edgeCount == debtor.length) {
+            grow(edgeCount * 2);
+        }
+        int edge = edgeCount++;
+        debtor[edge] = from;
+        creditor[edge] = target;
+        outNext[edge] = outHead[from];
+        outHead[from] = edge;
+        edgeIds.put(key, edge);
+        return edge;
+    }
+
+    private void grow(int capacity) {
+        debtor = Arrays.copyOf(debtor, capacity);
+        creditor = Arrays.copyOf(creditor, capacity);
+        cap = Arrays.copyOf(cap, capacity);
+        flow = Arrays.copyOf(flow, capacity);
+        outNext = Arrays.copyOf(outNext, capacity);
+        revNext = Arrays.copyOf(revNext, capacity);
+        edgeRound = Arrays.copyOf(edgeRound, capacity);
+        savedCap = Arrays.copyOf(savedCap, capacity);
+        touched = Arrays.copyOf(touched, capacity);
+    }
+
+    private boolean hasOtherDebt(int node, int except) {
+        for (int edge = outHead[node]; edge != -1; edge = outNext[edge]) {
+            if (edge != except && cap[edge] > 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private long maxFlow(int source, int sink, int hopLimit) {
+        long total = 0;
+        while (buildLevels(source, sink, hopLimit)) {
+            long pushed;
+            while ((pushed = augment(source, sink)) > 0) {
+                total += pushed;
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Breadth-first search from the source over edges with spare capacity. Stops at the
+     * sink's level, and fails if the sink is unreachable within the hop limit.
+     */
+    private boolean buildLevels(int source, int sink, int hopLimit) {
+        stamp++;
+        int front = 0;
+        int back = 0;
+        queue[back++] = source;
+        levelStamp[source] = stamp;
+        level[source] = 0;
+        while (front < back) {
+            int node = queue[front++];
+            if (levelStamp[sink] == stamp && level[node] >= level[sink] - 1 || level[node] >= hopLimit) {
+                continue;
+            }
+            for (int edge = outHead[node]; edge != -1; edge = outNext[edge]) {
+                if (cap[edge] > 0) {
+                    back = visit(creditor[edge], level[node] + 1, back);
+                }
+            }
+            if (revHeadRound[node] == round) {
+                for (int edge = revHead[node]; edge != -1; edge = revNext[edge]) {
+                    if (flow[edge] > 0) {
+                        back = visit(debtor[edge], level[node] + 1, back);
+                    }
+                }
+            }
+        }
+        return levelStamp[sink] == stamp;
+    }
+
+    private int visit(int node, int nodeLevel, int back) {
+        if (levelStamp[node] != stamp) {
+            levelStamp[node] = stamp;
+            level[node] = nodeLevel;
+            queue[back++] = node;
+        }
+        return back;
+    }
+
+    /**
+     * Finds one augmenting path in the level graph with an iterative depth-first search
+     * and pushes the bottleneck amount along it. Path steps are encoded as edge * 2 for a
+     * debt and edge * 2 + 1 for pushing back flow.
+     */
+    private long augment(int source, int sink) {
+        int depth = 0;
+        int node = source;
+        while (true) {
+            if (node == sink) {
+                long bottleneck = Long.MAX_VALUE;
+                for (int i = 0; i < depth; i++) {
+                    int step = path[i];
+                    bottleneck = Math.min(bottleneck, (step & 1) == 0 ? cap[step >> 1] : flow[step >> 1]);
+                }
+                for (int i = 0; i < depth; i++) {
+                    push(path[i], bottleneck);
+                }
+                return bottleneck;
+            }
+
+            int step = nextStep(node);
+            if (step != -1) {
+                if (depth == path.length) {
+                    path = Arrays.copyOf(path, depth * 2);
+                }
+                path[depth++] = step;
+                node = (step & 1) == 0 ? creditor[step >> 1] : debtor[step >> 1];
+            } else {
+                if (node == source) {
+                    return 0;
+                }
+                // Dead end: drop the node from the level graph and advance the parent past it
+                levelStamp[node] = 0;
+                int previous = path[--depth];
+                int edge = previous >> 1;
+                node = (previous & 1) == 0 ? debtor[edge] : creditor[edge];
+                iter[node] = (previous & 1) == 0 ? outNext[edge] : revNext[edge];
+            }
+        }
+    }
+
+    /**
+     * Returns the next usable step out of the node in the level graph, or -1 if there is none.
+     */
+    private int nextStep(int node) {
+        if (iterStamp[node] != stamp) {
+            iterStamp[node] = stamp;
+            iter[node] = outHead[node];
+            iterReverse[node] = false;
+        }
+        int nextLevel = level[node] + 1;
+        while (true) {
+            int edge = iter[node];
+            if (!iterReverse[node]) {
+                if (edge == -1) {
+                    iterReverse[node] = true;
+                    iter[node] = revHeadRound[node] == round ? revHead[node] : -1;
+                    continue;
+                }
+                int target = creditor[edge];
+                if (cap[edge] > 0 && levelStamp[target] == stamp && level[target] == nextLevel) {
+                    return edge * 2;
+                }
+                iter[node] = outNext[edge];
+            } else {
+                if (edge == -1) {
+                    return -1;
+                }
+                int target = debtor[edge];
+                if (flow[edge] > 0 && levelStamp[target] == stamp && level[target] == nextLevel) {
+                    return edge * 2 + 1;
+                }
+                iter[node] = revNext[edge];
+            }
+        }
+    }
+
+    private void push(int step, long amount) {
+        int edge = step >> 1;
+        if (edgeRound[edge] != round) {
+            // First change to this edge in the round: remember it and list its reverse edge
+            edgeRound[edge] = round;
+            savedCap[edge] = cap[edge];
+            touched[touchedCount++] = edge;
+            int node = creditor[edge];
+            if (revHeadRound[node] != round) {
+                revHeadRound[node] = round;
+                revHead[node] = -1;
+            }
+            revNext[edge] = revHead[node];
+            revHead[node] = edge;
+        }
+        if ((step & 1) == 0) {
+            cap[edge] -= amount;
+            flow[edge] += amount;
+        } else {
+            flow[edge] -= amount;
+            cap[edge] += amount;
+        }
+    }
+}
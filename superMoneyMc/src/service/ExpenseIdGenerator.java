@@ -0,0 +1,67 @@
+package service;
+
+import model.ExpenseId;
+
+import java.time.Clock;
+
+/**
+ * Generates unique, monotonically increasing 64-bit expense ids.
+ * An id packs 41 bits of milliseconds since 2024-01-01 UTC, a 10-bit node id and a 12-bit sequence.
+ * If the clock goes backwards, or more than 4096 ids are requested in one millisecond, the
+ * generator keeps counting from its last timestamp instead of waiting.
+ */
+public class ExpenseIdGenerator {
+    private static final long EPOCH_MILLIS = 1_704_067_200_000L;
+    private static final int NODE_BITS = 10;
+    private static final int SEQUENCE_BITS = 12;
+    private static final long MAX_NODE = (1L << NODE_BITS) - 1;
+    private static final long MAX_SEQUENCE = (1L << SEQUENCE_BITS) - 1;
+    private static final long MAX_TIMESTAMP = (1L << (63 - NODE_BITS - SEQUENCE_BITS)) - 1;
+
+    private final Clock clock;
+    private final long node;
+    private long lastTimestamp;
+    private long sequence;
+
+    public ExpenseIdGenerator(Clock clock, int node) {
+        if (node < 0 || node > MAX_NODE) {
+            throw new IllegalArgumentException("Node id must be between 0 and " + MAX_NODE);
+        }
+        this.clock = clock;
+        this.node = node;
+        this.lastTimestamp = -1;
+    }
+
+    public synchronized long next() {
+        long timestamp = Math.max(clock.millis() - EPOCH_MILLIS, 0);
+        if (timestamp > lastTimestamp) {
+            lastTimestamp = timestamp;
+            sequence = 0;
+        } else if (++sequence > MAX_SEQUENCE) {
+            lastTimestamp++;
+            sequence = 0;
+        }
+        if (lastTimestamp > MAX_TIMESTAMP) {
+            throw new IllegalStateException("Expense id timestamp overflow");
+        }
+        return (lastTimestamp << (NODE_BITS + SEQUENCE_BITS)) | (node << SEQUENCE_BITS) | sequence;
+    }
+
+    /**
+     * Returns the next id in its text form.
+     */
+    public String nextId() {
+        return ExpenseId.toText(next());
+    }
+
+    /**
+     * Returns the creation time in epoch milliseconds encoded in an id.
+     */
+    public static long timestampOf(long id) {
+        return (id >>> (NODE_BITS + SEQUENCE_BITS)) + EPOCH_MILLIS;
+    }
+
+    public static int nodeOf(long id) {
+        return (int) ((id >>> SEQUENCE_BITS) & MAX_NODE);
+    }
+}
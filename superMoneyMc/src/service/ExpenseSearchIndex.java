@@ -0,0 +1,263 @@
+package service;
+
+import model.Expense;
+import model.SearchPage;
+import model.User;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.IntFunction;
+
+/**
+ * In-memory inverted index over expense names and notes.
+ * Tokens map to posting lists of expense ordinals (position in creation order), kept sorted
+ * so that multi-term queries intersect by merging. Tokens are held in a sorted map so that
+ * prefix queries only visit matching tokens. Each user also has a posting list of the expenses
+ * they paid for or took part in, so a per-user query is one more merge and only the expenses on
+ * the requested page are read from the store.
+ */
+public class ExpenseSearchIndex {
+    private final TreeMap<String, PostingList> postings;
+    private final Map<String, PostingList> userPostings;
+    private final IntFunction<Expense> expenseResolver;
+
+    /**
+     * @param expenseResolver Looks up an expense by its ordinal
+     */
+    public ExpenseSearchIndex(IntFunction<Expense> expenseResolver) {
+        this.postings = new TreeMap<>();
+        this.userPostings = new HashMap<>();
+        this.expenseResolver = expenseResolver;
+    }
+
+    /**
+     * Indexes a newly created expense at the given ordinal.
+     */
+    public void add(Expense expense, int ordinal) {
+        for (String token : tokenize(expense.getExpenseName(), expense.getNotes())) {
+            postings.computeIfAbsent(token, t -> new PostingList()).add(ordinal);
+        }
+        userPostings.computeIfAbsent(expense.getPaidBy().getUserId(), u -> new PostingList()).add(ordinal);
+        for (User participant : expense.getParticipants()) {
+            userPostings.computeIfAbsent(participant.getUserId(), u -> new PostingList()).add(ordinal);
+        }
+    }
+
+    /**
+     * Re-indexes the expense at the given ordinal after its name or notes changed.
+     * Only tokens that were added or removed are touched.
+     */
+    public void update(Expense expense, int ordinal, String oldName, String oldNotes) {
+        Set<String> oldTokens = tokenize(oldName, oldNotes);
+        Set<String> newTokens = tokenize(expense.getExpenseName(), expense.getNotes());
+
+        for (String token : oldTokens) {
+            if (!newTokens.contains(token)) {
+                PostingList list = postings.get(token);
+                if (list != null) {
+                    list.remove(ordinal);
+                    if (list.size() == 0) {
+                        postings.remove(token);
+                    }
+                }
+            }
+        }
+        for (String token : newTokens) {
+            if (!oldTokens.contains(token)) {
+                postings.computeIfAbsent(token, t -> new PostingList()).add(ordinal);
+            }
+        }
+    }
+
+    /**
+     * Finds expenses whose name or notes contain every query term.
+     *
+     * @param query    Space-separated terms
+     * @param prefix   Whether each term matches any token it is a prefix of
+     * @param userId   Only return expenses this user paid for or took part in, or null for all
+     * @param page     Zero-based page number
+     * @param pageSize Number of ids per page
+     */
+    public SearchPage search(String query, boolean prefix, String userId, int page, int pageSize) {
+        if (page < 0 || pageSize <= 0) {
+            throw new IllegalArgumentException("Invalid page request");
+        }
+        Set<String> terms = tokenize(query, null);
+        if (terms.isEmpty()) {
+            return new SearchPage(new ArrayList<>(), new int[0], page, pageSize, 0);
+        }
+
+        int[] matches = null;
+        for (String term : terms) {
+            int[] termMatches = prefix ? prefixMatches(term) : exactMatches(term);
+            matches = matches == null ? termMatches : intersect(matches, termMatches, termMatches.length);
+            if (matches.length == 0) {
+                break;
+            }
+        }
+        if (userId != null) {
+            PostingList userList = userPostings.get(userId);
+            matches = userList == null ? new int[0] : intersect(matches, userList.ordinals, userList.size);
+        }
+
+        // Newest first; only the expenses on the requested page are resolved
+        long first = matches.length - 1 - (long) page * pageSize;
+        int count = (int) Math.max(0, Math.min(pageSize, first + 1));
+        List<String> ids = new ArrayList<>(count);
+        int[] ordinals = new int[count];
+        for (int i = 0; i < count; i++) {
+            ordinals[i] = matches[(int) first - i];
+            ids.add(expenseResolver.apply(ordinals[i]).getExpenseId());
+        }
+        return new SearchPage(ids, ordinals, page, pageSize, matches.length);
+    }
+
+    public int getTokenCount() {
+        return postings.size();
+    }
+
+    private int[] exactMatches(String term) {
+        PostingList list = postings.get(term);
+        return list == null ? new int[0] : list.toArray();
+    }
+
+    /**
+     * Unions the posting lists of every token starting with the term in one k-way merge.
+     */
+    private int[] prefixMatches(String term) {
+        Collection<PostingList> matching = postings.subMap(term, true, term + Character.MAX_VALUE, false).values();
+        if (matching.isEmpty()) {
+            return new int[0];
+        }
+        if (matching.size() == 1) {
+            return matching.iterator().next().toArray();
+        }
+        PriorityQueue<Cursor> heads = new PriorityQueue<>(matching.size(), Comparator.comparingInt(Cursor::head));
+        int total = 0;
+        for (PostingList list : matching) {
+            if (list.size > 0) {
+                heads.add(new Cursor(list));
+                total += list.size;
+            }
+        }
+        int[] result = new int[total];
+        int n = 0;
+        while (!heads.isEmpty()) {
+            Cursor cursor = heads.poll();
+            int ordinal = cursor.head();
+            if (n == 0 || result[n - 1] != ordinal) {
+                result[n++] = ordinal;
+            }
+            if (++cursor.position < cursor.list.size) {
+                heads.add(cursor);
+            }
+        }
+        return Arrays.copyOf(result, n);
+    }
+
+    static Set<String> tokenize(String first, String second) {
+        Set<String> tokens = new LinkedHashSet<>();
+        addTokens(tokens, first);
+        addTokens(tokens, second);
+        return tokens;
+    }
+
+    private static void addTokens(Set<String> tokens, String text) {
+        if (text == null || text.isEmpty()) {
+            return;
+        }
+        for (String token : text.toLowerCase(Locale.ROOT).split("[^\\p{L}\\p{N}]+")) {
+            if (!token.isEmpty()) {
+                tokens.add(token);
+            }
+        }
+    }
+
+    private static int[] intersect(int[] a, int[] b, int bLength) {
+        int[] result = new int[Math.min(a.length, bLength)];
+        int i = 0, j = 0, n = 0;
+        while (i < a.length && j < bLength) {
+            if (a[i] < b[j]) {
+                i++;
+            } else if (a[i] > b[j]) {
+                j++;
+            } else {
+                result[n++] = a[i];
+                i++;
+                j++;
+            }
+        }
+        return Arrays.copyOf(result, n);
+    }
+
+    /**
+     * Sorted, growable list of ordinals. Appends in ordinal order are O(1).
+     */
+    private static final class PostingList {
+        private int[] ordinals = new int[4];
+        private int size;
+
+        private void add(int ordinal) {
+            if (size > 0 && ordinals[size - 1] >= ordinal) {
+                int index = Arrays.binarySearch(ordinals, 0, size, ordinal);
+                if (index >= 0) {
+                    return;
+                }
+                insertAt(-index - 1, ordinal);
+                return;
+            }
+            insertAt(size, ordinal);
+        }
+
+        private void insertAt(int index, int ordinal) {
+            if (size == ordinals.length) {
+                ordinals = Arrays.copyOf(ordinals, size * 2);
+            }
+            System.arraycopy(ordinals, index, ordinals, index + 1, size - index);
+            ordinals[index] = ordinal;
+            size++;
+        }
+
+        private void remove(int ordinal) {
+            int index = Arrays.binarySearch(ordinals, 0, size, ordinal);
+            if (index >= 0) {
+                System.arraycopy(ordinals, index + 1, ordinals, index, size - index - 1);
+                size--;
+            }
+        }
+
+        private int size() {
+            return size;
+        }
+
+        private int[] toArray() {
+            return Arrays.copyOf(ordinals, size);
+        }
+    }
+
+    /**
+     * Read position in one posting list during a merge.
+     */
+    private static final class Cursor {
+        private final PostingList list;
+        private int position;
+
+        private Cursor(PostingList list) {
+            this.list = list;
+        }
+
+        private int head() {
+            return list.ordinals[position];
+        }
+    }
+}
@@ -1,64 +1,512 @@
 package service;
 
 import factory.SplitStrategyFactory;
+import fx.FixedFxRateProvider;
+import fx.FxConversionCache;
 import model.Expense;
+import model.GroupSplit;
+import model.NetPosition;
+import model.PairContribution;
+import model.SearchPage;
+import model.SpendTotals;
 import model.Transaction;
 import model.User;
-import strategy.SplitStrategy;
+import storage.BalanceExporter;
+import storage.BalanceFormat;
+import storage.BalanceSnapshot;
+import storage.ExpenseCodec;
+import storage.ExpenseStore;
+import strategy.SplitKernel;
+import telemetry.BalanceUpdateEvent;
+import telemetry.PassbookQueryEvent;
+import telemetry.SimplifyEvent;
 
+import java.io.IOException;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Consumer;
 
 /**
  * Service class for managing expenses and transactions.
  */
 public class ExpenseService {
+    private static final int IDEMPOTENCY_CACHE_SIZE = 100_000;
+    private static final long IDEMPOTENCY_TTL_MILLIS = 24 * 60 * 60 * 1000L;
+    private static final double SETTLED = 0.005; // balances below this round to zero cents and are reclaimed
+    private static final int SWEEP_INTERVAL = 256; // writes between dust sweeps
+    private static final int HISTORY_CHECKPOINT_INTERVAL = 1024;
+
     private final UserService userService;
-    private final Map<String, Expense> expenses;
+    private final ExpenseStore expenseStore;
     private Map<String, Map<String, Transaction>> balances; // userId -> (userId -> Transaction)
-    private final List<Expense> expenseHistory;
+    private Map<String, Map<String, Transaction>> owedTo; // creditorId -> (debtorId -> same Transaction)
+    private final NetPositionIndex netPositionIndex;
+    private long netSumCents; // sum of all net positions, zero unless the ledger is broken
+    private LedgerInvariantChecker invariantChecker;
+    private ShadowLedger shadowLedger;
+    private final FxConversionCache fxCache;
+    private final CurrencyLedger currencyLedger;
+    private final GroupLedger groupLedger;
+    private final IdempotencyCache idempotencyCache;
+    private final ExpenseSearchIndex searchIndex;
+    private final PairHistoryIndex pairHistoryIndex;
+    private final BalanceHistory balanceHistory;
+    private final SpendRollup spendRollup;
+    private final Map<String, Set<String>> contacts; // userId -> users it may settle with directly
+    private final BalanceComponents components;
+    private final Map<String, Map<String, Transaction>> simplifiedView; // cached per component, inner maps read-only
+    private final Map<String, Map<String, Transaction>> readOnlySimplifiedView;
+    private final Set<String> dustCandidates; // debtors that may hold balances below SETTLED
+    private int writesSinceSweep;
+    private long reclaimedPairs;
+    private BalanceSnapshot snapshot; // loaded balances not yet copied into the mutable ledgers
     private boolean simplifyExpenses;
+    private boolean constrainedSimplification;
 
     public ExpenseService(UserService userService) {
+        this(userService, new FxConversionCache(new FixedFxRateProvider(),
+                FxConversionCache.DEFAULT_BUCKET_MILLIS, Clock.systemUTC()));
+    }
+
+    public ExpenseService(UserService userService, FxConversionCache fxCache) {
         if (userService == null) {
             throw new IllegalArgumentException("UserService cannot be null");
         }
+        if (fxCache == null) {
+            throw new IllegalArgumentException("FxConversionCache cannot be null");
+        }
         this.userService = userService;
-        this.expenses = new HashMap<>();
+        this.fxCache = fxCache;
+        this.currencyLedger = new CurrencyLedger(fxCache);
+        this.groupLedger = new GroupLedger();
+        this.searchIndex = new ExpenseSearchIndex(this::getExpenseAt);
+        this.pairHistoryIndex = new PairHistoryIndex(this::getExpenseAt);
+        this.balanceHistory = new BalanceHistory(HISTORY_CHECKPOINT_INTERVAL);
+        this.spendRollup = new SpendRollup();
+        this.idempotencyCache = new IdempotencyCache(IDEMPOTENCY_CACHE_SIZE, IDEMPOTENCY_TTL_MILLIS, Clock.systemUTC());
+        this.expenseStore = new ExpenseStore();
         this.balances = new HashMap<>();
-        this.expenseHistory = new ArrayList<>();
+        this.owedTo = new HashMap<>();
+        this.netPositionIndex = new NetPositionIndex();
+        this.contacts = new HashMap<>();
+        this.components = new BalanceComponents();
+        this.simplifiedView = new HashMap<>();
+        this.readOnlySimplifiedView = Collections.unmodifiableMap(simplifiedView);
+        this.dustCandidates = new LinkedHashSet<>();
         this.simplifyExpenses = false;
+        this.constrainedSimplification = false;
     }
 
     /**
      * Ensures a balance entry exists for a user (lazy initialization).
      */
-    private void ensureBalanceEntry(String userId) {
-        balances.putIfAbsent(userId, new HashMap<>());
+    private Map<String, Transaction> ensureBalanceEntry(String userId) {
+        return balances.computeIfAbsent(userId, u -> new HashMap<>());
     }
 
     public void addExpense(Expense expense) {
-        expenses.put(expense.getExpenseId(), expense);
-        expenseHistory.add(expense);
-        
-        SplitStrategy strategy = SplitStrategyFactory.createStrategy(expense.getSplitType());
-        Map<User, Double> splitMap = strategy.calculateSplit(expense);
-        
-        updateBalances(expense.getPaidBy(), splitMap);
+        // Resolve the rate first so an unknown currency is rejected before anything is stored
+        double baseRate = fxCache.getRate(expense.getCurrency(), Expense.DEFAULT_CURRENCY);
+
+        if (isGroupSplit(expense)) {
+            addGroupExpense(expense, baseRate);
+        } else {
+            int ordinal = recordExpense(expense, baseRate);
+
+            Map<User, Double> splitMap = SplitStrategyFactory.calculateSplit(expense);
+
+            applySplit(expense, ordinal, splitMap, baseRate);
+        }
         
         if (simplifyExpenses) {
             simplifyBalances();
         }
+        checkInvariantsAfter(expense);
+    }
+
+    /**
+     * Adds an expense unless the idempotency key has already been used, in which case the
+     * ledger is left untouched.
+     *
+     * @param idempotencyKey Client-supplied key, or null to always add
+     * @return Id of the expense recorded for the key
+     */
+    public String addExpense(Expense expense, String idempotencyKey) {
+        if (idempotencyKey == null) {
+            addExpense(expense);
+            return expense.getExpenseId();
+        }
+        String existingId = idempotencyCache.get(idempotencyKey);
+        if (existingId != null) {
+            return existingId;
+        }
+        addExpense(expense);
+        idempotencyCache.put(idempotencyKey, expense.getExpenseId());
+        return expense.getExpenseId();
+    }
+
+    /**
+     * Returns the id of the expense created with the idempotency key, or null if none.
+     */
+    public String findExpenseIdByIdempotencyKey(String idempotencyKey) {
+        return idempotencyCache.get(idempotencyKey);
+    }
+
+    /**
+     * Adds a batch of expenses whose splits have already been calculated.
+     * Split maps may be shared between expenses of the same template. Group splits (see
+     * {@link #isGroupSplit(Expense)}) are recorded on the group path and their split map may be null.
+     * All currencies are resolved before anything is stored, and simplification runs once for the whole batch.
+     */
+    public void addExpenses(List<Expense> batch, List<Map<User, Double>> splits) {
+        if (batch.size() != splits.size()) {
+            throw new IllegalArgumentException("Number of expenses must match number of splits");
+        }
+        double[] baseRates = new double[batch.size()];
+        for (int i = 0; i < batch.size(); i++) {
+            baseRates[i] = fxCache.getRate(batch.get(i).getCurrency(), Expense.DEFAULT_CURRENCY);
+        }
+
+        for (int i = 0; i < batch.size(); i++) {
+            Expense expense = batch.get(i);
+            if (isGroupSplit(expense)) {
+                addGroupExpense(expense, baseRates[i]);
+                continue;
+            }
+            int ordinal = recordExpense(expense, baseRates[i]);
+            applySplit(expense, ordinal, splits.get(i), baseRates[i]);
+        }
+
+        if (simplifyExpenses && !batch.isEmpty()) {
+            simplifyBalances();
+        }
+        for (Expense expense : batch) {
+            checkInvariantsAfter(expense);
+        }
+    }
+
+    /**
+     * Runs a sampled invariant check every interval expenses on up to sampleSize of the users they touched.
+     * See {@link LedgerInvariantChecker}.
+     */
+    public void enableInvariantChecks(int interval, int sampleSize) {
+        invariantChecker = new LedgerInvariantChecker(this, interval, sampleSize);
+    }
+
+    /**
+     * Returns the sampled checker, or null if sampled checks are not enabled.
+     */
+    public LedgerInvariantChecker getInvariantChecker() {
+        return invariantChecker;
+    }
+
+    /**
+     * Checks the ledger invariants for every user.
+     *
+     * @return Violations found, empty if the ledger is consistent
+     */
+    public List<LedgerInvariantChecker.Violation> checkInvariants() {
+        LedgerInvariantChecker checker = invariantChecker != null ? invariantChecker
+                : new LedgerInvariantChecker(this, 1, 1);
+        return checker.checkAll(userService.getAllUsers().keySet());
+    }
+
+    /**
+     * Starts forwarding every balance write to a secondary engine and comparing every
+     * sampleInterval-th net position or user balance read against it. See {@link ShadowLedger}.
+     */
+    public ShadowLedger enableShadowEngine(BalanceEngine engine, int sampleInterval) {
+        return enableShadowEngine(new ShadowLedger(engine, sampleInterval));
+    }
+
+    /**
+     * Starts a shadow engine that may fall behind the primary by at most queueCapacity writes and comparisons.
+     */
+    public ShadowLedger enableShadowEngine(BalanceEngine engine, int sampleInterval, int queueCapacity) {
+        return enableShadowEngine(new ShadowLedger(engine, sampleInterval, queueCapacity));
+    }
+
+    private ShadowLedger enableShadowEngine(ShadowLedger shadow) {
+        materializeSnapshot();
+        Map<String, Map<String, Long>> pairs = new HashMap<>();
+        for (Map.Entry<String, Map<String, Transaction>> entry : balances.entrySet()) {
+            Map<String, Long> debts = new HashMap<>();
+            for (Transaction transaction : entry.getValue().values()) {
+                debts.put(transaction.getToUser().getUserId(), Math.round(transaction.getAmount() * 100.0));
+            }
+            pairs.put(entry.getKey(), debts);
+        }
+        // Pending group shares reach the shadow as writes when they are expanded
+        Map<String, Long> pendingNets = groupLedger.getPendingNetCents();
+        Map<String, Long> nets = new HashMap<>();
+        for (String userId : userService.getAllUsers().keySet()) {
+            nets.put(userId, netPositionIndex.getNetCents(userId) - pendingNets.getOrDefault(userId, 0L));
+        }
+        shadow.seed(pairs, nets);
+        disableShadowEngine();
+        shadowLedger = shadow;
+        return shadow;
+    }
+
+    /**
+     * Stops the shadow engine, if one is running.
+     */
+    public void disableShadowEngine() {
+        if (shadowLedger != null) {
+            shadowLedger.close();
+            shadowLedger = null;
+        }
+    }
+
+    /**
+     * Returns the running shadow, or null if no shadow engine is enabled.
+     */
+    public ShadowLedger getShadowLedger() {
+        return shadowLedger;
+    }
+
+    /**
+     * Returns the user's pairwise balances in cents keyed by counterparty, positive when the counterparty owes the user.
+     */
+    private Map<String, Long> pairCentsOf(String userId) {
+        Map<String, Long> pairs = new HashMap<>();
+        for (Transaction transaction : debtsOf(userId).values()) {
+            pairs.merge(transaction.getToUser().getUserId(), -Math.round(transaction.getAmount() * 100.0), Long::sum);
+        }
+        for (Transaction transaction : creditsOf(userId).values()) {
+            pairs.merge(transaction.getFromUser().getUserId(), Math.round(transaction.getAmount() * 100.0), Long::sum);
+        }
+        return pairs;
+    }
+
+    private void checkInvariantsAfter(Expense expense) {
+        if (invariantChecker != null) {
+            invariantChecker.onExpense(expense);
+        }
+    }
+
+    /**
+     * Brings the pairwise and net ledgers up to date before they are checked.
+     */
+    void prepareForCheck() {
+        expandGroupSplits();
+    }
+
+    Map<String, Transaction> debtsOf(String userId) {
+        return balances.getOrDefault(userId, Collections.emptyMap());
+    }
+
+    Map<String, Transaction> creditsOf(String userId) {
+        return owedTo.getOrDefault(userId, Collections.emptyMap());
+    }
+
+    long getNetCents(String userId) {
+        return netPositionIndex.getNetCents(userId);
+    }
+
+    long getNetSumCents() {
+        return netSumCents;
+    }
+
+    /**
+     * Returns the part of the user's net position that comes from group splits not yet expanded into pairs.
+     */
+    long getPendingGroupNetCents(String userId) {
+        return groupLedger.getPendingNetCents(userId);
+    }
+
+    /**
+     * Stores an expense, with the base rate it is recorded at, in the expense store and the
+     * search index and returns its ordinal.
+     */
+    private int recordExpense(Expense expense, double baseRate) {
+        materializeSnapshot();
+        expense.setBaseRate(baseRate);
+        int ordinal = expenseStore.add(expense);
+        searchIndex.add(expense, ordinal);
+        return ordinal;
+    }
+
+    /**
+     * Spills older expenses to segment files in the given directory, keeping the newest
+     * hotLimit expenses on the heap. See {@link ExpenseStore}.
+     */
+    public void enableTieredStorage(Path directory, int hotLimit, int cacheSize,
+                                    GroupService groupService) throws IOException {
+        expenseStore.enableTiering(directory, hotLimit, cacheSize,
+                new ExpenseCodec(userService::getUser, groupService::getGroup));
+    }
+
+    public ExpenseStore getExpenseStore() {
+        return expenseStore;
+    }
+
+    /**
+     * Returns whether the expense is kept as a compact split over its participant group
+     * rather than as per-member balances.
+     */
+    public static boolean isGroupSplit(Expense expense) {
+        return expense.getParticipantGroup() != null
+                && (expense.getSplitType() == Expense.SplitType.EQUAL
+                    || expense.getSplitType() == Expense.SplitType.SHARE);
+    }
+
+    /**
+     * Records a group expense as a compact descriptor and applies it to the net positions.
+     * Per-member shares are only expanded into pairwise balances when a pairwise view is requested.
+     */
+    private void addGroupExpense(Expense expense, double baseRate) {
+        GroupSplit split = new GroupSplit(expense.getParticipantGroup(), expense.getSplitType(),
+                expense.getAmount(), expense.getSplitValues());
+
+        int ordinal = recordExpense(expense, baseRate);
+        groupLedger.add(split, expense.getPaidBy(), expense.getCurrency(), baseRate);
+        adjustGroupNets(expense.getPaidBy().getUserId(), split, baseRate);
+        pairHistoryIndex.recordGroup(ordinal, expense.getPaidBy().getUserId(), split.getGroup());
+        balanceHistory.recordGroup(historyTime(expense.getCreatedAt()), expense.getPaidBy().getUserId(), split, baseRate);
+        rollUpGroupSpend(expense, expense.getCategory(), split, baseRate, 1);
+    }
+
+    /**
+     * Moves each member's share of a group split from the member's net position to the payer's,
+     * using the same per-expense rounding as {@link GroupLedger}.
+     */
+    private void adjustGroupNets(String paidById, GroupSplit split, double baseRate) {
+        List<User> members = split.getGroup().getMembers();
+        long credit = 0;
+        for (int i = 0; i < members.size(); i++) {
+            String memberId = members.get(i).getUserId();
+            if (!memberId.equals(paidById)) {
+                long cents = SplitKernel.roundToCents(split.getShare(i) * baseRate);
+                netPositionIndex.adjustCents(memberId, -cents);
+                credit += cents;
+            }
+        }
+        netPositionIndex.adjustCents(paidById, credit);
+    }
+
+    /**
+     * Expands pending group splits into the pairwise and currency ledgers. Their net positions
+     * were applied when the expenses were added.
+     */
+    private void expandGroupSplits() {
+        materializeSnapshot();
+        if (groupLedger.isEmpty()) {
+            return;
+        }
+        for (GroupLedger.Aggregate aggregate : groupLedger.drain()) {
+            String paidById = aggregate.getPaidBy().getUserId();
+            for (Map.Entry<User, Double> entry : aggregate.toSplitMap().entrySet()) {
+                currencyLedger.record(aggregate.getCurrency(), entry.getKey().getUserId(), paidById, entry.getValue());
+            }
+            updateBalances(aggregate.getPaidBy(), aggregate.toBaseSplitMap(), false);
+        }
+    }
+
+    private void applySplit(Expense expense, int ordinal, Map<User, Double> splitMap, double baseRate) {
+        recordInCurrencyLedger(expense, splitMap);
+        if (baseRate != 1.0) {
+            splitMap = convertSplit(splitMap, baseRate);
+        }
+        String paidById = expense.getPaidBy().getUserId();
+        long time = historyTime(expense.getCreatedAt());
+        for (Map.Entry<User, Double> entry : splitMap.entrySet()) {
+            pairHistoryIndex.record(ordinal, entry.getKey().getUserId(), paidById, entry.getValue());
+            balanceHistory.record(time, entry.getKey().getUserId(), paidById, Math.round(entry.getValue() * 100.0));
+        }
+        rollUpSpend(expense, expense.getCategory(), splitMap, baseRate, 1);
+        updateBalances(expense.getPaidBy(), splitMap, true);
+    }
+
+    /**
+     * Adds (sign 1) or removes (sign -1) an expense's paid amount and shares in the spend rollup.
+     */
+    private void rollUpSpend(Expense expense, String category, Map<User, Double> baseSplit, double baseRate, int sign) {
+        LocalDate date = expense.getCreatedAt().toLocalDate();
+        spendRollup.addPaid(expense.getPaidBy().getUserId(), category, date,
+                sign * SplitKernel.roundToCents(expense.getAmount() * baseRate));
+        for (Map.Entry<User, Double> entry : baseSplit.entrySet()) {
+            spendRollup.addShare(entry.getKey().getUserId(), category, date, sign * Math.round(entry.getValue() * 100.0));
+        }
+    }
+
+    private void rollUpGroupSpend(Expense expense, String category, GroupSplit split, double baseRate, int sign) {
+        LocalDate date = expense.getCreatedAt().toLocalDate();
+        spendRollup.addPaid(expense.getPaidBy().getUserId(), category, date,
+                sign * SplitKernel.roundToCents(expense.getAmount() * baseRate));
+        List<User> members = split.getGroup().getMembers();
+        for (int i = 0; i < members.size(); i++) {
+            spendRollup.addShare(members.get(i).getUserId(), category, date,
+                    sign * SplitKernel.roundToCents(split.getShare(i) * baseRate));
+        }
+    }
+
+    /**
+     * Returns the user's spend between the two dates, inclusive, in the base currency.
+     *
+     * @param category Category to total, or null for all categories
+     */
+    public SpendTotals getSpend(String userId, String category, LocalDate from, LocalDate to) {
+        return spendRollup.getTotals(userId, category, from, to);
+    }
+
+    /**
+     * Returns the user's non-zero spend between the two dates for each category, by category name.
+     */
+    public Map<String, SpendTotals> getSpendByCategory(String userId, LocalDate from, LocalDate to) {
+        return spendRollup.getTotalsByCategory(userId, from, to);
+    }
+
+    private void recordInCurrencyLedger(Expense expense, Map<User, Double> splitMap) {
+        String paidById = expense.getPaidBy().getUserId();
+        for (Map.Entry<User, Double> entry : splitMap.entrySet()) {
+            currencyLedger.record(expense.getCurrency(), entry.getKey().getUserId(), paidById, entry.getValue());
+        }
+    }
+
+    /**
+     * Converts split amounts into the base currency at the given rate.
+     */
+    private Map<User, Double> convertSplit(Map<User, Double> splitMap, double rate) {
+        Map<User, Double> converted = new HashMap<>();
+        for (Map.Entry<User, Double> entry : splitMap.entrySet()) {
+            converted.put(entry.getKey(), Math.round(entry.getValue() * rate * 100.0) / 100.0);
+        }
+        return converted;
     }
 
     public Expense getExpense(String expenseId) {
-        return expenses.get(expenseId);
+        return expenseStore.get(expenseId);
     }
 
     public void updateExpense(String expenseId, String expenseName, String notes, List<String> imageUrls) {
-        Expense expense = expenses.get(expenseId);
-        if (expense == null) {
+        updateExpense(expenseId, expenseName, notes, imageUrls, null);
+    }
+
+    /**
+     * Updates expense details. A new category moves the expense's totals in the spend rollup.
+     *
+     * @param category New category, or null to keep the current one
+     */
+    public void updateExpense(String expenseId, String expenseName, String notes, List<String> imageUrls,
+                              String category) {
+        int ordinal = expenseStore.ordinalOf(expenseId);
+        if (ordinal < 0) {
             throw new IllegalArgumentException("Expense not found: " + expenseId);
         }
+        if (category != null && category.trim().isEmpty()) {
+            throw new IllegalArgumentException("Category cannot be empty");
+        }
+        Expense expense = expenseStore.getForUpdate(ordinal);
+        String oldName = expense.getExpenseName();
+        String oldNotes = expense.getNotes();
         
         if (expenseName != null && !expenseName.trim().isEmpty()) {
             expense.setExpenseName(expenseName);
@@ -74,9 +522,63 @@ public class ExpenseService {
                 expense.addImageUrl(imageUrl);
             }
         }
+        
+        if (!Objects.equals(oldName, expense.getExpenseName()) || !Objects.equals(oldNotes, expense.getNotes())) {
+            searchIndex.update(expense, ordinal, oldName, oldNotes);
+        }
+
+        String oldCategory = expense.getCategory();
+        if (category != null) {
+            expense.setCategory(category);
+        }
+        if (!oldCategory.equals(expense.getCategory())) {
+            moveSpend(expense, oldCategory);
+        }
     }
 
-    private void updateBalances(User paidBy, Map<User, Double> splitMap) {
+    private void moveSpend(Expense expense, String oldCategory) {
+        double baseRate = expense.getBaseRate();
+        if (isGroupSplit(expense)) {
+            GroupSplit split = new GroupSplit(expense.getParticipantGroup(), expense.getSplitType(),
+                    expense.getAmount(), expense.getSplitValues());
+            rollUpGroupSpend(expense, oldCategory, split, baseRate, -1);
+            rollUpGroupSpend(expense, expense.getCategory(), split, baseRate, 1);
+            return;
+        }
+        Map<User, Double> splitMap = SplitStrategyFactory.calculateSplit(expense);
+        if (baseRate != 1.0) {
+            splitMap = convertSplit(splitMap, baseRate);
+        }
+        rollUpSpend(expense, oldCategory, splitMap, baseRate, -1);
+        rollUpSpend(expense, expense.getCategory(), splitMap, baseRate, 1);
+    }
+
+    /**
+     * Returns the expenses that contributed to the balance between two users, oldest first.
+     * Positive amounts mean userId owes counterpartyId. Amounts are in the base currency and
+     * do not reflect simplification.
+     */
+    public List<PairContribution> getPairHistory(String userId, String counterpartyId) {
+        return pairHistoryIndex.getHistory(userId, counterpartyId);
+    }
+
+    /**
+     * Searches expense names and notes. See {@link ExpenseSearchIndex#search}.
+     */
+    public SearchPage searchExpenses(String query, boolean prefix, String userId, int page, int pageSize) {
+        return searchIndex.search(query, prefix, userId, page, pageSize);
+    }
+
+    /**
+     * @param adjustNets False when the net positions already include the split
+     */
+    private void updateBalances(User paidBy, Map<User, Double> splitMap, boolean adjustNets) {
+        BalanceUpdateEvent event = new BalanceUpdateEvent();
+        event.begin();
+        ShadowLedger shadow = shadowLedger;
+        if (shadow != null) {
+            shadow.beginWrite();
+        }
         for (Map.Entry<User, Double> entry : splitMap.entrySet()) {
             User participant = entry.getKey();
             double amount = entry.getValue();
@@ -89,123 +591,511 @@ public class ExpenseService {
             String participantId = participant.getUserId();
             String paidById = paidBy.getUserId();
             
-            // Ensure balance entries exist
-            ensureBalanceEntry(participantId);
-            ensureBalanceEntry(paidById);
+            // Keep the net-position index current (netting does not change net positions)
+            long debit = Math.round(-amount * 100.0);
+            long credit = Math.round(amount * 100.0);
+            if (adjustNets) {
+                netPositionIndex.adjustCents(participantId, debit);
+                netPositionIndex.adjustCents(paidById, credit);
+                netSumCents += debit + credit;
+            }
+            if (shadow != null) {
+                shadow.forward(participantId, paidById, credit);
+            }
+            components.connect(participantId, paidById);
             
             // Check if reverse transaction exists (paidBy owes participant)
-            Map<String, Transaction> paidByBalances = balances.get(paidById);
-            Transaction reverseTransaction = paidByBalances.get(participantId);
+            Transaction reverseTransaction = balances.getOrDefault(paidById, Collections.emptyMap()).get(participantId);
             
-            if (reverseTransaction != null && reverseTransaction.getAmount() > 0.01) {
+            if (reverseTransaction != null && reverseTransaction.getAmount() >= SETTLED) {
                 // Net out the amounts
                 double existingAmount = reverseTransaction.getAmount();
                 if (amount >= existingAmount) {
-                    // Participant now owes paidBy (net amount)
-                    reverseTransaction.setAmount(0);
-                    
-                    // Update participant's balance to paidBy
-                    Map<String, Transaction> participantBalances = balances.get(participantId);
-                    Transaction transaction = participantBalances.get(paidById);
-                    if (transaction == null) {
-                        transaction = new Transaction(participant, paidBy, amount - existingAmount);
-                        participantBalances.put(paidById, transaction);
-                    } else {
-                        transaction.setAmount(transaction.getAmount() + amount - existingAmount);
-                    }
+                    // Participant now owes paidBy (net amount); the settled pair is dropped
+                    removePair(paidById, participantId);
+                    addDebt(participant, paidBy, amount - existingAmount);
                 } else {
                     // PaidBy still owes participant (net amount)
                     reverseTransaction.setAmount(existingAmount - amount);
+                    noteIfDust(reverseTransaction);
                 }
             } else {
-                // No reverse transaction, create normal transaction
-                Map<String, Transaction> participantBalances = balances.get(participantId);
-                Transaction transaction = participantBalances.get(paidById);
-                if (transaction == null) {
-                    transaction = new Transaction(participant, paidBy, amount);
-                    participantBalances.put(paidById, transaction);
-                } else {
-                    transaction.addAmount(amount);
+                addDebt(participant, paidBy, amount);
+            }
+        }
+        boolean swept = ++writesSinceSweep >= SWEEP_INTERVAL;
+        if (swept) {
+            sweepDust();
+        }
+        if (shadow != null) {
+            shadow.endWrite();
+        }
+        event.end();
+        if (event.shouldCommit()) {
+            event.participantCount = splitMap.size();
+            event.swept = swept;
+            event.commit();
+        }
+    }
+
+    private void addDebt(User debtor, User creditor, double amount) {
+        Map<String, Transaction> debtorBalances = ensureBalanceEntry(debtor.getUserId());
+        Transaction transaction = debtorBalances.get(creditor.getUserId());
+        if (transaction == null) {
+            if (amount <= 0) {
+                if (debtorBalances.isEmpty()) {
+                    balances.remove(debtor.getUserId());
                 }
+                return;
+            }
+            transaction = new Transaction(debtor, creditor, amount);
+            debtorBalances.put(creditor.getUserId(), transaction);
+            indexCredit(transaction);
+        } else {
+            transaction.addAmount(amount);
+        }
+        noteIfDust(transaction);
+    }
+
+    private void noteIfDust(Transaction transaction) {
+        if (transaction.getAmount() < SETTLED) {
+            dustCandidates.add(transaction.getFromUser().getUserId());
+        }
+    }
+
+    /**
+     * Removes a settled pair from both balance indexes and drops per-user maps that become empty.
+     */
+    private void removePair(String debtorId, String creditorId) {
+        Map<String, Transaction> debts = balances.get(debtorId);
+        Transaction transaction = debts == null ? null : debts.remove(creditorId);
+        if (transaction == null) {
+            return;
+        }
+        if (debts.isEmpty()) {
+            balances.remove(debtorId);
+        }
+        unindexCredit(transaction);
+        reclaimedPairs++;
+    }
+
+    /**
+     * Removes floating-point dust left behind by netting for the debtors flagged since the last sweep.
+     * Runs every {@value #SWEEP_INTERVAL} writes.
+     *
+     * @return Number of pairs reclaimed
+     */
+    private int sweepDust() {
+        writesSinceSweep = 0;
+        int reclaimed = 0;
+        for (String debtorId : dustCandidates) {
+            reclaimed += sweepDebtor(debtorId, null);
+        }
+        dustCandidates.clear();
+        return reclaimed;
+    }
+
+    /**
+     * Removes every balance that rounds to zero cents and shrinks per-user maps that lost most of their entries.
+     *
+     * @return Number of pairs reclaimed by this call
+     */
+    public int compactBalances() {
+        Map<String, Integer> creditorSizes = new HashMap<>(); // creditorId -> size before compaction
+        int reclaimed = 0;
+        for (String debtorId : new ArrayList<>(balances.keySet())) {
+            reclaimed += sweepDebtor(debtorId, creditorSizes);
+        }
+        for (Map.Entry<String, Integer> entry : creditorSizes.entrySet()) {
+            Map<String, Transaction> credits = owedTo.get(entry.getKey());
+            if (credits != null && credits.size() * 4 < entry.getValue()) {
+                owedTo.put(entry.getKey(), new HashMap<>(credits));
             }
         }
+        dustCandidates.clear();
+        writesSinceSweep = 0;
+        return reclaimed;
+    }
+
+    /**
+     * Returns the number of settled or dust pairs removed from the balance indexes so far.
+     */
+    public long getReclaimedPairCount() {
+        return reclaimedPairs;
+    }
+
+    /**
+     * Returns the number of pairs currently held in the balance index, including dust not yet swept.
+     */
+    public int getStoredPairCount() {
+        int count = 0;
+        for (Map<String, Transaction> debts : balances.values()) {
+            count += debts.size();
+        }
+        return count;
     }
 
+    private int sweepDebtor(String debtorId, Map<String, Integer> creditorSizes) {
+        Map<String, Transaction> debts = balances.get(debtorId);
+        if (debts == null) {
+            return 0;
+        }
+        int before = debts.size();
+        int removed = 0;
+        Iterator<Transaction> it = debts.values().iterator();
+        while (it.hasNext()) {
+            Transaction transaction = it.next();
+            if (transaction.getAmount() < SETTLED) {
+                it.remove();
+                if (creditorSizes != null) {
+                    String creditorId = transaction.getToUser().getUserId();
+                    creditorSizes.putIfAbsent(creditorId, owedTo.get(creditorId).size());
+                }
+                unindexCredit(transaction);
+                removed++;
+            }
+        }
+        if (debts.isEmpty()) {
+            balances.remove(debtorId);
+        } else if (creditorSizes != null && debts.size() * 4 < before) {
+            balances.put(debtorId, new HashMap<>(debts));
+        }
+        reclaimedPairs += removed;
+        return removed;
+    }
+
+    /**
+     * Returns every user's balances keyed by debtor, then creditor. With simplification enabled
+     * the result is a read-only view of the cached simplified balances.
+     */
     public Map<String, Map<String, Transaction>> getAllBalances() {
+        if (snapshot != null && !simplifyExpenses) {
+            return getSnapshotBalances();
+        }
+        expandGroupSplits();
         if (simplifyExpenses) {
             return getSimplifiedBalances();
         }
         return balances;
     }
 
-    public Map<String, Transaction> getUserBalances(String userId) {
-        Map<String, Transaction> userBalances = new HashMap<>();
-        
-        if (!balances.containsKey(userId)) {
-            // Still check if others owe this user
-            for (Map.Entry<String, Map<String, Transaction>> entry : balances.entrySet()) {
-                if (!entry.getKey().equals(userId)) {
-                    Map<String, Transaction> otherBalances = entry.getValue();
-                    Transaction transaction = otherBalances.get(userId);
-                    if (transaction != null && Math.abs(transaction.getAmount()) > 0.01) {
-                        // Create reverse transaction for display
-                        User fromUser = userService.getUser(entry.getKey());
-                        User toUser = userService.getUser(userId);
-                        if (fromUser != null && toUser != null) {
-                            Transaction reverseTransaction = new Transaction(
-                                    fromUser, 
-                                    toUser, 
-                                    transaction.getAmount());
-                            userBalances.put(entry.getKey(), reverseTransaction);
-                        }
-                    }
+    /**
+     * Streams every non-zero balance to the channel and returns the number of records written.
+     *
+     * @param simplified Export simplified balances instead of the pairwise ledger
+     */
+    public long exportBalances(WritableByteChannel channel, BalanceFormat format, boolean simplified) throws IOException {
+        expandGroupSplits();
+        return new BalanceExporter(channel, format).export(simplified ? getSimplifiedBalances() : balances);
+    }
+
+    /**
+     * Visits every non-zero balance, simplified when simplification is enabled.
+     *
+     * @return Number of balances visited
+     */
+    public int forEachBalance(BalanceVisitor visitor) {
+        if (snapshot != null && !simplifyExpenses) {
+            int count = 0;
+            for (int i = 0; i < snapshot.getUserCount(); i++) {
+                String debtorId = snapshot.getUserId(i);
+                count += visitSnapshotPairs(i, true, debtorId, visitor);
+            }
+            return count;
+        }
+        expandGroupSplits();
+        int count = 0;
+        for (Map<String, Transaction> userBalances : (simplifyExpenses ? getSimplifiedBalances() : balances).values()) {
+            for (Transaction transaction : userBalances.values()) {
+                if (transaction.getAmount() > 0.01) {
+                    visitor.visit(transaction.getFromUser().getUserId(), transaction.getToUser().getUserId(),
+                            transaction.getAmount());
+                    count++;
                 }
             }
-            return userBalances;
         }
-        
-        Map<String, Transaction> directBalances = balances.get(userId);
-        
-        // Add balances where this user owes others
-        for (Transaction transaction : directBalances.values()) {
-            if (Math.abs(transaction.getAmount()) > 0.01) {
-                userBalances.put(transaction.getToUser().getUserId(), transaction);
+        return count;
+    }
+
+    /**
+     * Visits the user's non-zero pairwise balances: first what the user owes, then what the user is owed.
+     *
+     * @return Number of balances visited
+     */
+    public int forEachUserBalance(String userId, BalanceVisitor visitor) {
+        if (snapshot != null) {
+            int index = snapshot.indexOf(userId);
+            return index < 0 ? 0 : visitSnapshotPairs(index, true, userId, visitor)
+                    + visitSnapshotPairs(index, false, userId, visitor);
+        }
+        expandGroupSplits();
+        if (shadowLedger != null && shadowLedger.sampleRead()) {
+            shadowLedger.comparePairs(userId, pairCentsOf(userId));
+        }
+        int count = 0;
+        for (Transaction transaction : balances.getOrDefault(userId, Collections.emptyMap()).values()) {
+            if (transaction.getAmount() > 0.01) {
+                visitor.visit(userId, transaction.getToUser().getUserId(), transaction.getAmount());
+                count++;
             }
         }
-        
-        // Add balances where others owe this user
-        for (Map.Entry<String, Map<String, Transaction>> entry : balances.entrySet()) {
-            if (!entry.getKey().equals(userId)) {
-                Map<String, Transaction> otherBalances = entry.getValue();
-                Transaction transaction = otherBalances.get(userId);
-                if (transaction != null && Math.abs(transaction.getAmount()) > 0.01) {
-                    // Create reverse transaction for display
-                    User fromUser = userService.getUser(entry.getKey());
-                    User toUser = userService.getUser(userId);
-                    if (fromUser != null && toUser != null) {
-                        Transaction reverseTransaction = new Transaction(
-                                fromUser, 
-                                toUser, 
-                                transaction.getAmount());
-                        userBalances.put(entry.getKey(), reverseTransaction);
-                    }
-                }
+        for (Transaction transaction : owedTo.getOrDefault(userId, Collections.emptyMap()).values()) {
+            if (transaction.getAmount() > 0.01) {
+                visitor.visit(transaction.getFromUser().getUserId(), userId, transaction.getAmount());
+                count++;
             }
         }
-        
+        return count;
+    }
+
+    /**
+     * Returns the user's balances keyed by counterparty. Prefer {@link #forEachUserBalance},
+     * which does not allocate a map or transactions.
+     */
+    public Map<String, Transaction> getUserBalances(String userId) {
+        Map<String, Transaction> userBalances = new HashMap<>();
+        forEachUserBalance(userId, collectUserBalance(userId, userBalances));
         return userBalances;
     }
 
+    /**
+     * Visits the non-zero pairwise balances as they stood at the given time, before simplification.
+     *
+     * @return Number of balances visited
+     */
+    public int forEachBalanceAsOf(LocalDateTime time, BalanceVisitor visitor) {
+        materializeSnapshot();
+        return balanceHistory.forEachBalanceAsOf(historyTime(time), visitor);
+    }
+
+    /**
+     * Visits the user's non-zero pairwise balances as they stood at the given time.
+     *
+     * @return Number of balances visited
+     */
+    public int forEachUserBalanceAsOf(String userId, LocalDateTime time, BalanceVisitor visitor) {
+        materializeSnapshot();
+        return balanceHistory.forEachUserBalanceAsOf(userId, historyTime(time), visitor);
+    }
+
+    /**
+     * Returns the user's balances keyed by counterparty as they stood at the given time.
+     */
+    public Map<String, Transaction> getUserBalancesAsOf(String userId, LocalDateTime time) {
+        Map<String, Transaction> userBalances = new HashMap<>();
+        forEachUserBalanceAsOf(userId, time, collectUserBalance(userId, userBalances));
+        return userBalances;
+    }
+
+    private BalanceVisitor collectUserBalance(String userId, Map<String, Transaction> userBalances) {
+        return (debtorId, creditorId, amount) -> {
+            String counterpartyId = debtorId.equals(userId) ? creditorId : debtorId;
+            User fromUser = userService.getUser(debtorId);
+            User toUser = userService.getUser(creditorId);
+            if (fromUser != null && toUser != null) {
+                userBalances.put(counterpartyId, new Transaction(fromUser, toUser, amount));
+            }
+        };
+    }
+
+    private static long historyTime(LocalDateTime time) {
+        return time.toInstant(ZoneOffset.UTC).toEpochMilli();
+    }
+
+    private int visitSnapshotPairs(int index, boolean debts, String userId, BalanceVisitor visitor) {
+        int[] count = {0};
+        BalanceSnapshot.PairVisitor pairVisitor = (counterparty, cents) -> {
+            String counterpartyId = snapshot.getUserId(counterparty);
+            if (debts) {
+                visitor.visit(userId, counterpartyId, cents / 100.0);
+            } else {
+                visitor.visit(counterpartyId, userId, cents / 100.0);
+            }
+            count[0]++;
+        };
+        if (debts) {
+            snapshot.forEachDebt(index, pairVisitor);
+        } else {
+            snapshot.forEachCredit(index, pairVisitor);
+        }
+        return count[0];
+    }
+
+    /**
+     * Writes the users, the base-currency balances and the live idempotency keys to a
+     * memory-mappable snapshot. Expense history, groups and per-currency ledgers are not included.
+     */
+    public void saveSnapshot(Path path) throws IOException {
+        expandGroupSplits();
+        BalanceSnapshot.write(path, userService.getAllUsers().values(), balances,
+                visitor -> idempotencyCache.forEach(visitor::visit));
+    }
+
+    /**
+     * Maps a snapshot written by {@link #saveSnapshot}. Balance reads are served from the mapped
+     * file; the mutable ledgers are only rebuilt on the first write or on a read that needs them.
+     */
+    public void loadSnapshot(Path path) throws IOException {
+        if (snapshot != null || expenseStore.size() > 0 || !balances.isEmpty() || !groupLedger.isEmpty()) {
+            throw new IllegalArgumentException("Snapshot can only be loaded into an empty ledger");
+        }
+        BalanceSnapshot loaded = BalanceSnapshot.open(path);
+        userService.attachSnapshot(loaded);
+        loaded.forEachIdempotencyKey(idempotencyCache::restore);
+        this.snapshot = loaded;
+    }
+
+    private Map<String, Map<String, Transaction>> getSnapshotBalances() {
+        Map<String, Map<String, Transaction>> result = new HashMap<>();
+        for (int i = 0; i < snapshot.getUserCount(); i++) {
+            User debtor = userService.getUser(snapshot.getUserId(i));
+            snapshot.forEachDebt(i, (creditor, cents) -> {
+                User creditorUser = userService.getUser(snapshot.getUserId(creditor));
+                result.computeIfAbsent(debtor.getUserId(), u -> new HashMap<>())
+                        .put(creditorUser.getUserId(), new Transaction(debtor, creditorUser, cents / 100.0));
+            });
+        }
+        return result;
+    }
+
+    /**
+     * Copies a loaded snapshot into the mutable ledgers before the first write.
+     */
+    private void materializeSnapshot() {
+        if (snapshot == null) {
+            return;
+        }
+        BalanceSnapshot loaded = snapshot;
+        snapshot = null;
+        for (int i = 0; i < loaded.getUserCount(); i++) {
+            User debtor = userService.getUser(loaded.getUserId(i));
+            loaded.forEachDebt(i, (creditor, cents) -> {
+                User creditorUser = userService.getUser(loaded.getUserId(creditor));
+                currencyLedger.record(Expense.DEFAULT_CURRENCY, debtor.getUserId(), creditorUser.getUserId(), cents / 100.0);
+                // Snapshot balances have no creation time, so they count from the start of history
+                balanceHistory.record(Long.MIN_VALUE, debtor.getUserId(), creditorUser.getUserId(), cents);
+                updateBalances(creditorUser, Collections.singletonMap(debtor, cents / 100.0), true);
+            });
+        }
+    }
+
+    public int getExpenseCount() {
+        return expenseStore.size();
+    }
+
+    /**
+     * Returns the expense at the given position in creation order.
+     */
+    public Expense getExpenseAt(int index) {
+        return expenseStore.getAt(index);
+    }
+
     public List<Expense> getUserPassbook(String userId) {
         List<Expense> userExpenses = new ArrayList<>();
-        for (Expense expense : expenseHistory) {
-            if (expense.getPaidBy().getUserId().equals(userId) || 
-                expense.getParticipants().stream()
-                    .anyMatch(u -> u.getUserId().equals(userId))) {
-                userExpenses.add(expense);
+        forEachPassbookEntry(userId, userExpenses::add);
+        return userExpenses;
+    }
+
+    /**
+     * Visits the expenses involving the user in creation order.
+     *
+     * @return Number of expenses visited
+     */
+    public int forEachPassbookEntry(String userId, Consumer<Expense> visitor) {
+        PassbookQueryEvent event = new PassbookQueryEvent();
+        event.begin();
+        int[] count = {0};
+        expenseStore.forEach(expense -> {
+            if (expense.involves(userId)) {
+                visitor.accept(expense);
+                count[0]++;
             }
+        });
+        event.end();
+        if (event.shouldCommit()) {
+            event.userId = userId;
+            event.entryCount = count[0];
+            event.commit();
         }
-        return userExpenses;
+        return count[0];
+    }
+
+    /**
+     * Drops cached FX rates and home-currency views after the rate provider's rates changed.
+     * Expenses already recorded keep the base rate they were recorded with.
+     */
+    public void refreshFxRates() {
+        fxCache.invalidate();
+        currencyLedger.clearHomeViews();
+    }
+
+    /**
+     * Returns the user's home currency, or null if balances should be shown in the base currency.
+     */
+    public String getHomeCurrency(String userId) {
+        User user = userService.getUser(userId);
+        return user == null ? null : user.getHomeCurrency();
+    }
+
+    /**
+     * Returns the user's balances converted into their home currency.
+     * Positive amounts are owed to the user, negative amounts are owed by the user.
+     */
+    public Map<String, Double> getHomeCurrencyBalances(String userId) {
+        expandGroupSplits();
+        String homeCurrency = getHomeCurrency(userId);
+        return currencyLedger.getHomeBalances(userId,
+                homeCurrency == null ? Expense.DEFAULT_CURRENCY : homeCurrency);
+    }
+
+    /**
+     * Returns the net amount between two users in a single currency.
+     * Positive means the counterparty owes the user.
+     */
+    public double getCurrencyNet(String currency, String userId, String counterpartyId) {
+        expandGroupSplits();
+        return currencyLedger.getNet(currency, userId, counterpartyId);
+    }
+
+    public double getNetPosition(String userId) {
+        if (snapshot != null) {
+            int index = snapshot.indexOf(userId);
+            return index < 0 ? 0.0 : snapshot.getNetCents(index) / 100.0;
+        }
+        materializeSnapshot();
+        long cents = netPositionIndex.getNetCents(userId);
+        if (shadowLedger != null && shadowLedger.sampleRead()) {
+            // The shadow receives pending group shares when they are expanded
+            shadowLedger.compareNet(userId, cents - groupLedger.getPendingNetCents(userId));
+        }
+        return cents / 100.0;
+    }
+
+    public List<NetPosition> getTopDebtors(int n) {
+        materializeSnapshot();
+        return netPositionIndex.topDebtors(n);
+    }
+
+    public List<NetPosition> getTopCreditors(int n) {
+        materializeSnapshot();
+        return netPositionIndex.topCreditors(n);
+    }
+
+    public List<NetPosition> getNetPositionsInRange(double min, double max) {
+        materializeSnapshot();
+        return netPositionIndex.rangeQuery(min, max);
+    }
+
+    /**
+     * Returns a settlement plan seeded from the net-position index.
+     */
+    public List<Transaction> getSettlementPlan() {
+        materializeSnapshot();
+        return netPositionIndex.greedySettlement(userService);
+    }
+
+    public boolean isSimplifyExpenses() {
+        return simplifyExpenses;
     }
 
     public void setSimplifyExpenses(boolean simplifyExpenses) {
@@ -216,6 +1106,9 @@ public class ExpenseService {
     }
 
     private void simplifyBalances() {
+        expandGroupSplits();
+        SimplifyEvent event = new SimplifyEvent();
+        event.begin();
         Map<String, Map<String, Double>> netBalances = new HashMap<>();
         
         // Calculate net balances
@@ -288,22 +1181,231 @@ public class ExpenseService {
         }
         
         this.balances = simplified;
+        this.owedTo = new HashMap<>();
+        for (Map<String, Transaction> userBalances : simplified.values()) {
+            for (Transaction transaction : userBalances.values()) {
+                indexCredit(transaction);
+            }
+        }
+        event.end();
+        if (event.shouldCommit()) {
+            Set<String> nodes = new HashSet<>(netBalances.keySet());
+            nodes.addAll(owedTo.keySet());
+            event.mode = "netting";
+            event.nodeCount = nodes.size();
+            event.edgeCount = getStoredPairCount();
+            event.commit();
+        }
+    }
+
+    private void indexCredit(Transaction transaction) {
+        owedTo.computeIfAbsent(transaction.getToUser().getUserId(), u -> new HashMap<>())
+                .put(transaction.getFromUser().getUserId(), transaction);
+    }
+
+    private void unindexCredit(Transaction transaction) {
+        String creditorId = transaction.getToUser().getUserId();
+        Map<String, Transaction> credits = owedTo.get(creditorId);
+        if (credits != null) {
+            credits.remove(transaction.getFromUser().getUserId());
+            if (credits.isEmpty()) {
+                owedTo.remove(creditorId);
+            }
+        }
+    }
+
+    /**
+     * When enabled, simplification only moves debts onto pairs that already owe each other
+     * or have been allowed with {@link #allowContact}.
+     */
+    public void setConstrainedSimplification(boolean constrainedSimplification) {
+        if (this.constrainedSimplification != constrainedSimplification) {
+            components.markAllDirty();
+        }
+        this.constrainedSimplification = constrainedSimplification;
+    }
+
+    /**
+     * Allows constrained simplification to create debts between the two users.
+     */
+    public void allowContact(String userId, String otherUserId) {
+        if (userService.getUser(userId) == null) {
+            throw new IllegalArgumentException("User not found: " + userId);
+        }
+        if (userService.getUser(otherUserId) == null) {
+            throw new IllegalArgumentException("User not found: " + otherUserId);
+        }
+        if (userId.equals(otherUserId)) {
+            throw new IllegalArgumentException("A user cannot be their own contact");
+        }
+        contacts.computeIfAbsent(userId, u -> new HashSet<>()).add(otherUserId);
+        contacts.computeIfAbsent(otherUserId, u -> new HashSet<>()).add(userId);
+        components.markDirty(userId);
+        components.markDirty(otherUserId);
+    }
+
+    /**
+     * Returns the number of groups of users connected by shared balances.
+     */
+    public int getBalanceComponentCount() {
+        return components.getComponentCount();
     }
 
+    /**
+     * Returns a read-only view of the simplified balances. Each connected component of the debt
+     * graph is simplified independently and cached; only components whose balances changed since
+     * the last call are re-solved, in parallel on the common fork/join pool.
+     */
     private Map<String, Map<String, Transaction>> getSimplifiedBalances() {
+        List<Integer> changed = components.drainDirty();
+        if (changed.isEmpty()) {
+            return readOnlySimplifiedView;
+        }
+        List<Map<String, Map<String, Transaction>>> solved = new ArrayList<>(Collections.nCopies(changed.size(), null));
+        new ComponentSimplification(changed, solved, 0, changed.size()).invokeOrCompute();
+
+        for (int i = 0; i < changed.size(); i++) {
+            replaceSimplified(changed.get(i), solved.get(i));
+        }
+        return readOnlySimplifiedView;
+    }
+
+    /**
+     * Returns the simplified net positions of the given users. Only the components those users
+     * belong to are re-solved, so the cost depends on their components rather than the whole ledger.
+     */
+    Map<String, Double> getSimplifiedNets(Set<String> userIds) {
+        Map<String, Double> nets = new HashMap<>();
+        Set<Integer> visited = new HashSet<>();
+        for (String userId : userIds) {
+            int component = components.componentOf(userId);
+            if (component < 0 || !visited.add(component)) {
+                continue;
+            }
+            if (components.clearDirty(component)) {
+                replaceSimplified(component, simplifyComponent(component));
+            }
+            for (String member : components.getMembers(component)) {
+                for (Transaction transaction : simplifiedView.getOrDefault(member, Collections.emptyMap()).values()) {
+                    if (userIds.contains(member)) {
+                        nets.merge(member, -transaction.getAmount(), Double::sum);
+                    }
+                    String creditorId = transaction.getToUser().getUserId();
+                    if (userIds.contains(creditorId)) {
+                        nets.merge(creditorId, transaction.getAmount(), Double::sum);
+                    }
+                }
+            }
+        }
+        return nets;
+    }
+
+    private void replaceSimplified(int component, Map<String, Map<String, Transaction>> solved) {
+        for (String member : components.getMembers(component)) {
+            simplifiedView.remove(member);
+        }
+        for (Map.Entry<String, Map<String, Transaction>> entry : solved.entrySet()) {
+            simplifiedView.put(entry.getKey(), Collections.unmodifiableMap(entry.getValue()));
+        }
+    }
+
+    private Map<String, Map<String, Transaction>> simplifyComponent(int component) {
+        SimplifyEvent event = new SimplifyEvent();
+        event.begin();
         // First, calculate net balances (already done in simplifyBalances)
         // Then apply graph-based simplification to minimize number of transactions
-        return simplifyBalancesGraph();
+        List<String> members = components.getMembers(component);
+        Map<String, Map<String, Transaction>> componentBalances = new HashMap<>();
+        for (String member : members) {
+            Map<String, Transaction> memberBalances = balances.get(member);
+            if (memberBalances != null) {
+                componentBalances.put(member, memberBalances);
+            }
+        }
+        Map<String, Map<String, Transaction>> result = constrainedSimplification
+                ? simplifyBalancesConstrained(componentBalances)
+                : simplifyBalancesGraph(componentBalances);
+        event.end();
+        if (event.shouldCommit()) {
+            int edges = 0;
+            for (Map<String, Transaction> memberBalances : componentBalances.values()) {
+                edges += memberBalances.size();
+            }
+            event.mode = constrainedSimplification ? "constrained" : "graph";
+            event.nodeCount = members.size();
+            event.edgeCount = edges;
+            event.commit();
+        }
+        return result;
+    }
+
+    /**
+     * Simplifies balances with max-flow, only using permitted pairs. See {@link DebtFlowGraph}.
+     */
+    private Map<String, Map<String, Transaction>> simplifyBalancesConstrained(Map<String, Map<String, Transaction>> source) {
+        Map<String, Integer> nodes = new HashMap<>();
+        List<String> userIds = new ArrayList<>();
+        for (Map.Entry<String, Map<String, Transaction>> userEntry : source.entrySet()) {
+            for (Transaction transaction : userEntry.getValue().values()) {
+                if (transaction.getAmount() > 0.01) {
+                    nodeFor(userEntry.getKey(), nodes, userIds);
+                    nodeFor(transaction.getToUser().getUserId(), nodes, userIds);
+                }
+            }
+        }
+
+        DebtFlowGraph graph = new DebtFlowGraph(userIds.size());
+        for (Map.Entry<String, Map<String, Transaction>> userEntry : source.entrySet()) {
+            for (Transaction transaction : userEntry.getValue().values()) {
+                if (transaction.getAmount() > 0.01) {
+                    graph.addDebt(nodes.get(userEntry.getKey()), nodes.get(transaction.getToUser().getUserId()),
+                            Math.round(transaction.getAmount() * 100.0));
+                }
+            }
+        }
+        for (int node = 0; node < userIds.size(); node++) {
+            for (String contactId : contacts.getOrDefault(userIds.get(node), Collections.emptySet())) {
+                Integer contactNode = nodes.get(contactId);
+                // Users without balances cannot take part in a reroute
+                if (contactNode != null && node < contactNode) {
+                    graph.allowContact(node, contactNode);
+                }
+            }
+        }
+        graph.simplify(0);
+
+        Map<String, Map<String, Transaction>> result = new HashMap<>();
+        for (int edge = 0; edge < graph.getEdgeCount(); edge++) {
+            long cents = graph.getAmount(edge);
+            if (cents == 0) {
+                continue;
+            }
+            User fromUser = userService.getUser(userIds.get(graph.getDebtor(edge)));
+            User toUser = userService.getUser(userIds.get(graph.getCreditor(edge)));
+            result.computeIfAbsent(fromUser.getUserId(), u -> new HashMap<>())
+                    .put(toUser.getUserId(), new Transaction(fromUser, toUser, cents / 100.0));
+        }
+        return result;
+    }
+
+    private static int nodeFor(String userId, Map<String, Integer> nodes, List<String> userIds) {
+        Integer node = nodes.get(userId);
+        if (node == null) {
+            node = userIds.size();
+            nodes.put(userId, node);
+            userIds.add(userId);
+        }
+        return node;
     }
 
     /**
      * Simplifies balances using graph algorithms to minimize the number of transactions.
      */
-    private Map<String, Map<String, Transaction>> simplifyBalancesGraph() {
+    private Map<String, Map<String, Transaction>> simplifyBalancesGraph(Map<String, Map<String, Transaction>> source) {
         // Step 1: Calculate net balances for each pair
         Map<String, Map<String, Double>> netBalances = new HashMap<>();
         
-        for (Map.Entry<String, Map<String, Transaction>> userEntry : balances.entrySet()) {
+        for (Map.Entry<String, Map<String, Transaction>> userEntry : source.entrySet()) {
             String userId = userEntry.getKey();
             netBalances.putIfAbsent(userId, new HashMap<>());
             
@@ -416,5 +1518,44 @@ public class ExpenseService {
         
         return result;
     }
+
+    /**
+     * Simplifies a range of dirty components, splitting the range across fork/join workers.
+     * Components only read shared state, and each writes its own result slot.
+     */
+    @SuppressWarnings("serial") // never serialized
+    private final class ComponentSimplification extends RecursiveAction {
+        private final List<Integer> changed;
+        private final List<Map<String, Map<String, Transaction>>> solved;
+        private final int from;
+        private final int to;
+
+        private ComponentSimplification(List<Integer> changed, List<Map<String, Map<String, Transaction>>> solved,
+                                        int from, int to) {
+            this.changed = changed;
+            this.solved = solved;
+            this.from = from;
+            this.to = to;
+        }
+
+        private void invokeOrCompute() {
+            if (to - from == 1) {
+                compute();
+            } else {
+                ForkJoinPool.commonPool().invoke(this);
+            }
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from == 1) {
+                solved.set(from, simplifyComponent(changed.get(from)));
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new ComponentSimplification(changed, solved, from, middle),
+                    new ComponentSimplification(changed, solved, middle, to));
+        }
+    }
 }
 
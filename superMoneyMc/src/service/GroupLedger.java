@@ -0,0 +1,199 @@
+package service;
+
+import model.Expense;
+import model.GroupSplit;
+import model.ParticipantGroup;
+import model.User;
+import strategy.SplitKernel;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Holds group splits that have not yet been expanded into pairwise balances.
+ * Splits are folded into one aggregate per (group, payer, currency). EQUAL splits only touch
+ * two running totals, so adding one costs O(1) regardless of group size; per-member amounts
+ * are produced when the aggregates are drained. Net positions do not wait for the drain;
+ * {@link #getPendingNetCents} tells how much of a user's net position has no pairwise balance yet.
+ */
+public class GroupLedger {
+    private final Map<String, Aggregate> pending;
+
+    public GroupLedger() {
+        this.pending = new LinkedHashMap<>();
+    }
+
+    /**
+     * Adds a group split paid by the given user.
+     *
+     * @param baseRate Rate from the expense currency to the base currency
+     */
+    public void add(GroupSplit split, User paidBy, String currency, double baseRate) {
+        String key = split.getGroup().getGroupId() + "|" + paidBy.getUserId() + "|" + currency;
+        Aggregate aggregate = pending.get(key);
+        if (aggregate == null) {
+            aggregate = new Aggregate(split.getGroup(), paidBy, currency);
+            pending.put(key, aggregate);
+        }
+        aggregate.add(split, baseRate);
+    }
+
+    public boolean isEmpty() {
+        return pending.isEmpty();
+    }
+
+    /**
+     * Returns what the user is owed (positive) or owes (negative) across pending aggregates,
+     * in base-currency cents. Costs O(1) per EQUAL aggregate.
+     */
+    public long getPendingNetCents(String userId) {
+        long cents = 0;
+        for (Aggregate aggregate : pending.values()) {
+            cents += aggregate.getNetCents(userId);
+        }
+        return cents;
+    }
+
+    /**
+     * Returns the non-zero pending net position of every user involved in a pending aggregate.
+     */
+    public Map<String, Long> getPendingNetCents() {
+        Map<String, Long> nets = new HashMap<>();
+        for (Aggregate aggregate : pending.values()) {
+            List<User> members = aggregate.group.getMembers();
+            String paidById = aggregate.paidBy.getUserId();
+            for (int i = 0; i < members.size(); i++) {
+                String memberId = members.get(i).getUserId();
+                if (!memberId.equals(paidById)) {
+                    long cents = aggregate.memberBaseCents(i);
+                    nets.merge(memberId, -cents, Long::sum);
+                    nets.merge(paidById, cents, Long::sum);
+                }
+            }
+        }
+        nets.values().removeIf(cents -> cents == 0);
+        return nets;
+    }
+
+    /**
+     * Removes and returns all pending aggregates.
+     */
+    public List<Aggregate> drain() {
+        List<Aggregate> drained = new ArrayList<>(pending.values());
+        pending.clear();
+        return drained;
+    }
+
+    /**
+     * Running totals owed by the members of one group to one payer in one currency.
+     */
+    public static final class Aggregate {
+        private final ParticipantGroup group;
+        private final User paidBy;
+        private final String currency;
+        private double equalShare;
+        private double equalShareBase;
+        private double equalLast;
+        private double equalLastBase;
+        private double[] shares;
+        private double[] sharesBase;
+
+        private Aggregate(ParticipantGroup group, User paidBy, String currency) {
+            this.group = group;
+            this.paidBy = paidBy;
+            this.currency = currency;
+        }
+
+        private void add(GroupSplit split, double baseRate) {
+            if (split.getRule() == Expense.SplitType.EQUAL) {
+                double share = split.getEqualShare();
+                double last = split.getLastShare();
+                equalShare = SplitKernel.roundToTwoDecimals(equalShare + share);
+                equalShareBase = SplitKernel.roundToTwoDecimals(equalShareBase + SplitKernel.roundToTwoDecimals(share * baseRate));
+                equalLast = SplitKernel.roundToTwoDecimals(equalLast + last);
+                equalLastBase = SplitKernel.roundToTwoDecimals(equalLastBase + SplitKernel.roundToTwoDecimals(last * baseRate));
+                return;
+            }
+            if (shares == null) {
+                shares = new double[group.size()];
+                sharesBase = new double[group.size()];
+            }
+            for (int i = 0; i < shares.length; i++) {
+                double share = split.getShare(i);
+                shares[i] = SplitKernel.roundToTwoDecimals(shares[i] + share);
+                sharesBase[i] = SplitKernel.roundToTwoDecimals(sharesBase[i] + SplitKernel.roundToTwoDecimals(share * baseRate));
+            }
+        }
+
+        public User getPaidBy() {
+            return paidBy;
+        }
+
+        public String getCurrency() {
+            return currency;
+        }
+
+        /**
+         * Returns what the user is owed (positive) or owes (negative) in base-currency cents.
+         */
+        private long getNetCents(String userId) {
+            int index = group.indexOf(userId);
+            long owed = index < 0 ? 0 : memberBaseCents(index);
+            if (!userId.equals(paidBy.getUserId())) {
+                return -owed;
+            }
+            // The payer's own share is not a debt
+            return totalBaseCents() - owed;
+        }
+
+        private long memberBaseCents(int index) {
+            double amount = index == group.size() - 1 ? equalLastBase : equalShareBase;
+            if (sharesBase != null) {
+                amount = SplitKernel.roundToTwoDecimals(amount + sharesBase[index]);
+            }
+            return Math.round(amount * 100.0);
+        }
+
+        private long totalBaseCents() {
+            if (sharesBase == null) {
+                return Math.round(equalShareBase * 100.0) * (group.size() - 1) + Math.round(equalLastBase * 100.0);
+            }
+            long total = 0;
+            for (int i = 0; i < group.size(); i++) {
+                total += memberBaseCents(i);
+            }
+            return total;
+        }
+
+        /**
+         * Returns what each member owes in the expense currency.
+         */
+        public Map<User, Double> toSplitMap() {
+            return expand(equalShare, equalLast, shares);
+        }
+
+        /**
+         * Returns what each member owes in the base currency.
+         */
+        public Map<User, Double> toBaseSplitMap() {
+            return expand(equalShareBase, equalLastBase, sharesBase);
+        }
+
+        private Map<User, Double> expand(double share, double last, double[] perMember) {
+            List<User> members = group.getMembers();
+            int lastIndex = members.size() - 1;
+            Map<User, Double> splitMap = new HashMap<>();
+            for (int i = 0; i < members.size(); i++) {
+                double amount = i == lastIndex ? last : share;
+                if (perMember != null) {
+                    amount = SplitKernel.roundToTwoDecimals(amount + perMember[i]);
+                }
+                splitMap.put(members.get(i), amount);
+            }
+            return splitMap;
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package service;
+
+import model.ParticipantGroup;
+import model.User;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Service class for managing participant groups.
+ */
+public class GroupService {
+    private final UserService userService;
+    private final Map<String, ParticipantGroup> groups;
+
+    public GroupService(UserService userService) {
+        if (userService == null) {
+            throw new IllegalArgumentException("UserService cannot be null");
+        }
+        this.userService = userService;
+        this.groups = new HashMap<>();
+    }
+
+    public ParticipantGroup createGroup(String groupId, List<String> userIds) {
+        if (groupId == null || groupId.trim().isEmpty()) {
+            throw new IllegalArgumentException("Group ID cannot be null or empty");
+        }
+        if (groups.containsKey(groupId)) {
+            throw new IllegalArgumentException("Group with ID " + groupId + " already exists");
+        }
+        if (userIds.isEmpty()) {
+            throw new IllegalArgumentException("Group must have at least one member");
+        }
+
+        List<User> members = new ArrayList<>(userIds.size());
+        Set<String> seen = new HashSet<>();
+        for (String userId : userIds) {
+            User user = userService.getUser(userId);
+            if (user == null) {
+                throw new IllegalArgumentException("User not found: " + userId);
+            }
+            if (!seen.add(userId)) {
+                throw new IllegalArgumentException("Duplicate group member: " + userId);
+            }
+            members.add(user);
+        }
+
+        ParticipantGroup group = new ParticipantGroup(groupId, members);
+        groups.put(groupId, group);
+        return group;
+    }
+
+    public ParticipantGroup getGroup(String groupId) {
+        return groups.get(groupId);
+    }
+
+    public boolean groupExists(String groupId) {
+        return groupId != null && groups.containsKey(groupId);
+    }
+}
@@ -0,0 +1,106 @@
+package service;
+
+import java.time.Clock;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded cache mapping client-supplied idempotency keys to the expense id they created.
+ * Entries expire after a fixed time to live, and the oldest entries are evicted once the
+ * cache is full. Entries are kept in insertion order, which is also expiry order.
+ */
+public class IdempotencyCache {
+    private final int maxEntries;
+    private final long ttlMillis;
+    private final Clock clock;
+    private final LinkedHashMap<String, Entry> entries;
+
+    public IdempotencyCache(int maxEntries, long ttlMillis, Clock clock) {
+        if (maxEntries <= 0) {
+            throw new IllegalArgumentException("Cache size must be positive");
+        }
+        if (ttlMillis <= 0) {
+            throw new IllegalArgumentException("Time to live must be positive");
+        }
+        this.maxEntries = maxEntries;
+        this.ttlMillis = ttlMillis;
+        this.clock = clock;
+        this.entries = new LinkedHashMap<>();
+    }
+
+    /**
+     * Returns the expense id recorded for the key, or null if the key is unknown or expired.
+     */
+    public String get(String key) {
+        evictExpired();
+        Entry entry = entries.get(key);
+        return entry == null ? null : entry.expenseId;
+    }
+
+    public void put(String key, String expenseId) {
+        put(key, expenseId, clock.millis());
+    }
+
+    /**
+     * Receives one live entry of the cache.
+     */
+    public interface EntryVisitor {
+        void visit(String key, String expenseId, long createdAtMillis);
+    }
+
+    /**
+     * Re-adds an entry created at the given time, e.g. one read back from a snapshot.
+     * It expires as if it had never left the cache.
+     */
+    public void restore(String key, String expenseId, long createdAtMillis) {
+        put(key, expenseId, createdAtMillis);
+        evictExpired();
+    }
+
+    /**
+     * Visits live entries, oldest first.
+     */
+    public void forEach(EntryVisitor visitor) {
+        evictExpired();
+        for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+            visitor.visit(entry.getKey(), entry.getValue().expenseId, entry.getValue().createdAtMillis);
+        }
+    }
+
+    private void put(String key, String expenseId, long createdAtMillis) {
+        entries.remove(key);
+        entries.put(key, new Entry(expenseId, createdAtMillis));
+        while (entries.size() > maxEntries) {
+            Iterator<String> eldest = entries.keySet().iterator();
+            eldest.next();
+            eldest.remove();
+        }
+    }
+
+    public int size() {
+        evictExpired();
+        return entries.size();
+    }
+
+    private void evictExpired() {
+        long cutoff = clock.millis() - ttlMillis;
+        Iterator<Entry> it = entries.values().iterator();
+        while (it.hasNext()) {
+            if (it.next().createdAtMillis > cutoff) {
+                break;
+            }
+            it.remove();
+        }
+    }
+
+    private static final class Entry {
+        private final String expenseId;
+        private final long createdAtMillis;
+
+        private Entry(String expenseId, long createdAtMillis) {
+            this.expenseId = expenseId;
+            this.createdAtMillis = createdAtMillis;
+        }
+    }
+}
@@ -0,0 +1,230 @@
+package service;
+
+import model.Expense;
+import model.Transaction;
+import model.User;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Verifies the balance ledgers of an {@link ExpenseService}:
+ * <ul>
+ *   <li>net positions sum to zero (tracked incrementally, O(1) to check);</li>
+ *   <li>each user's pairwise balances add up to their net position;</li>
+ *   <li>no pair owes in both directions;</li>
+ *   <li>with simplification enabled, each user's simplified balances add up to the same net.</li>
+ * </ul>
+ * In sampled mode a check runs every interval expenses and covers at most sampleSize of the
+ * users touched by those expenses. It does not expand pending group splits, and with
+ * simplification enabled it only re-solves the components of the sampled users, so its cost
+ * depends on the sample rather than the size of the ledger. Violations name the recent
+ * expenses involving the offending users.
+ */
+public class LedgerInvariantChecker {
+    private static final double TOLERANCE = 0.005;
+    private static final double SETTLED = 0.005; // pairs below this round to zero cents
+    private static final double HIDDEN = 0.01; // balances at or below this are left out of the simplified view
+    private static final int MAX_VIOLATIONS = 100;
+    private static final int MAX_EXPENSE_IDS = 5;
+
+    private final ExpenseService expenseService;
+    private final int interval;
+    private final int sampleSize;
+    private final String[] recent; // ring of the last interval expense ids
+    private int recentCount;
+    private final Set<String> sample; // users touched since the last sampled check
+    private final List<Violation> violations;
+    private long violationCount;
+    private long checkCount;
+    private long checkNanos;
+
+    /**
+     * @param interval   Expenses between sampled checks
+     * @param sampleSize Maximum number of users verified per sampled check
+     */
+    public LedgerInvariantChecker(ExpenseService expenseService, int interval, int sampleSize) {
+        if (interval <= 0 || sampleSize <= 0) {
+            throw new IllegalArgumentException("Check interval and sample size must be positive");
+        }
+        this.expenseService = expenseService;
+        this.interval = interval;
+        this.sampleSize = sampleSize;
+        this.recent = new String[interval];
+        this.sample = new LinkedHashSet<>();
+        this.violations = new ArrayList<>();
+    }
+
+    /**
+     * Notes an added expense and runs a sampled check once interval expenses have been added.
+     */
+    public void onExpense(Expense expense) {
+        recent[recentCount++ % interval] = expense.getExpenseId();
+        addSample(expense.getPaidBy().getUserId());
+        for (User participant : expense.getParticipants()) {
+            if (sample.size() >= sampleSize) {
+                break;
+            }
+            addSample(participant.getUserId());
+        }
+        if (recentCount % interval == 0) {
+            check(sample);
+            sample.clear();
+        }
+    }
+
+    /**
+     * Brings every ledger up to date and checks every user.
+     *
+     * @return Violations found by this check
+     */
+    public List<Violation> checkAll(Collection<String> userIds) {
+        expenseService.prepareForCheck();
+        return check(new HashSet<>(userIds));
+    }
+
+    /**
+     * Returns the most recent violations, oldest first, up to a fixed limit.
+     */
+    public List<Violation> getViolations() {
+        return Collections.unmodifiableList(violations);
+    }
+
+    public long getViolationCount() {
+        return violationCount;
+    }
+
+    public long getCheckCount() {
+        return checkCount;
+    }
+
+    /**
+     * Returns the total time spent checking, in nanoseconds.
+     */
+    public long getCheckNanos() {
+        return checkNanos;
+    }
+
+    private void addSample(String userId) {
+        if (sample.size() < sampleSize) {
+            sample.add(userId);
+        }
+    }
+
+    private List<Violation> check(Set<String> userIds) {
+        long start = System.nanoTime();
+        checkCount++;
+        List<Violation> found = new ArrayList<>();
+        long netSum = expenseService.getNetSumCents();
+        if (netSum != 0) {
+            report(found, "Net positions sum to " + netSum / 100.0 + " instead of 0", null);
+        }
+
+        Map<String, Double> pairwiseNets = new HashMap<>();
+        Map<String, Integer> hiddenPairs = new HashMap<>();
+        for (String userId : userIds) {
+            double pairwise = 0.0;
+            int hidden = 0;
+            Map<String, Transaction> credits = expenseService.creditsOf(userId);
+            for (Transaction debt : expenseService.debtsOf(userId).values()) {
+                pairwise -= debt.getAmount();
+                hidden += debt.getAmount() <= HIDDEN ? 1 : 0;
+                Transaction reverse = credits.get(debt.getToUser().getUserId());
+                if (debt.getAmount() >= SETTLED && reverse != null && reverse.getAmount() >= SETTLED) {
+                    report(found, userId + " and " + debt.getToUser().getUserId() + " owe each other "
+                            + debt.getAmount() + " and " + reverse.getAmount(), userId, debt.getToUser().getUserId());
+                }
+            }
+            for (Transaction credit : credits.values()) {
+                pairwise += credit.getAmount();
+                hidden += credit.getAmount() <= HIDDEN ? 1 : 0;
+            }
+            // Group splits reach the net positions before they are expanded into pairs
+            pairwise += expenseService.getPendingGroupNetCents(userId) / 100.0;
+            double net = expenseService.getNetCents(userId) / 100.0;
+            if (Math.abs(pairwise - net) > TOLERANCE) {
+                report(found, "Pairwise balances of " + userId + " add up to " + round(pairwise)
+                        + " but the net position is " + round(net), userId);
+            }
+            pairwiseNets.put(userId, pairwise);
+            hiddenPairs.put(userId, hidden);
+        }
+
+        if (expenseService.isSimplifyExpenses() && !userIds.isEmpty()) {
+            Map<String, Double> simplifiedNets = expenseService.getSimplifiedNets(userIds);
+            for (Map.Entry<String, Double> entry : pairwiseNets.entrySet()) {
+                double simplified = simplifiedNets.getOrDefault(entry.getKey(), 0.0);
+                // Balances of a cent or less are not carried into the simplified view
+                double tolerance = TOLERANCE + HIDDEN * hiddenPairs.get(entry.getKey());
+                if (Math.abs(simplified - entry.getValue()) > tolerance) {
+                    report(found, "Simplified balances of " + entry.getKey() + " add up to " + round(simplified)
+                            + " but pairwise balances add up to " + round(entry.getValue()), entry.getKey());
+                }
+            }
+        }
+        checkNanos += System.nanoTime() - start;
+        return found;
+    }
+
+    private void report(List<Violation> found, String description, String userId, String... otherUserIds) {
+        List<String> expenseIds = new ArrayList<>();
+        for (int i = 0; i < Math.min(recentCount, interval) && expenseIds.size() < MAX_EXPENSE_IDS; i++) {
+            String id = recent[Math.floorMod(recentCount - 1 - i, interval)];
+            Expense expense = expenseService.getExpense(id);
+            if (expense == null) {
+                continue;
+            }
+            boolean involved = userId == null || expense.involves(userId);
+            for (String other : otherUserIds) {
+                involved &= expense.involves(other);
+            }
+            if (involved) {
+                expenseIds.add(id);
+            }
+        }
+        Violation violation = new Violation(description, expenseIds);
+        found.add(violation);
+        violationCount++;
+        violations.add(violation);
+        if (violations.size() > MAX_VIOLATIONS) {
+            violations.remove(0);
+        }
+    }
+
+    private static double round(double value) {
+        return Math.round(value * 100.0) / 100.0;
+    }
+
+    /**
+     * A broken invariant and the most recent expenses, newest first, that involved the users concerned.
+     */
+    public static final class Violation {
+        private final String description;
+        private final List<String> expenseIds;
+
+        private Violation(String description, List<String> expenseIds) {
+            this.description = description;
+            this.expenseIds = expenseIds;
+        }
+
+        public String getDescription() {
+            return description;
+        }
+
+        public List<String> getExpenseIds() {
+            return expenseIds;
+        }
+
+        @Override
+        public String toString() {
+            return description + (expenseIds.isEmpty() ? "" : " (recent expenses: " + String.join(", ", expenseIds) + ")");
+        }
+    }
+}
@@ -0,0 +1,173 @@
+package service;
+
+import model.NetPosition;
+import model.Transaction;
+import model.User;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.TreeSet;
+
+/**
+ * Ordered index of users by net balance.
+ * Amounts are kept in cents so that ordering is not affected by floating point drift.
+ * Users with a zero net position are not kept in the index.
+ */
+public class NetPositionIndex {
+    private static final Comparator<Entry> ORDER = Comparator
+            .comparingLong((Entry e) -> e.cents)
+            .thenComparing(e -> e.userId);
+
+    private final Map<String, Long> positions;
+    private final TreeSet<Entry> ordered;
+
+    public NetPositionIndex() {
+        this.positions = new HashMap<>();
+        this.ordered = new TreeSet<>(ORDER);
+    }
+
+    /**
+     * Adjusts the net position of a user by the given cents.
+     */
+    public void adjustCents(String userId, long deltaCents) {
+        if (deltaCents == 0) {
+            return;
+        }
+        Long current = positions.get(userId);
+        long updated = deltaCents;
+        if (current != null) {
+            ordered.remove(new Entry(userId, current));
+            updated += current;
+        }
+        if (updated == 0) {
+            positions.remove(userId);
+        } else {
+            positions.put(userId, updated);
+            ordered.add(new Entry(userId, updated));
+        }
+    }
+
+    public long getNetCents(String userId) {
+        Long cents = positions.get(userId);
+        return cents == null ? 0L : cents;
+    }
+
+    /**
+     * Returns up to n users who owe the most, largest debt first.
+     */
+    public List<NetPosition> topDebtors(int n) {
+        List<NetPosition> result = new ArrayList<>();
+        Iterator<Entry> it = ordered.iterator();
+        while (it.hasNext() && result.size() < n) {
+            Entry entry = it.next();
+            if (entry.cents >= 0) {
+                break;
+            }
+            result.add(entry.toNetPosition());
+        }
+        return result;
+    }
+
+    /**
+     * Returns up to n users who are owed the most, largest credit first.
+     */
+    public List<NetPosition> topCreditors(int n) {
+        List<NetPosition> result = new ArrayList<>();
+        Iterator<Entry> it = ordered.descendingIterator();
+        while (it.hasNext() && result.size() < n) {
+            Entry entry = it.next();
+            if (entry.cents <= 0) {
+                break;
+            }
+            result.add(entry.toNetPosition());
+        }
+        return result;
+    }
+
+    /**
+     * Returns users whose net position lies in [min, max], in ascending order.
+     */
+    public List<NetPosition> rangeQuery(double min, double max) {
+        if (min > max) {
+            throw new IllegalArgumentException("Range minimum cannot be greater than maximum");
+        }
+        NavigableSet<Entry> range = ordered.subSet(
+                new Entry("", toCents(min)), true,
+                new Entry("\uffff", toCents(max)), true);
+        List<NetPosition> result = new ArrayList<>(range.size());
+        for (Entry entry : range) {
+            result.add(entry.toNetPosition());
+        }
+        return result;
+    }
+
+    /**
+     * Builds a greedy settlement plan by repeatedly matching the largest debtor
+     * with the largest creditor. Produces at most (users - 1) transactions.
+     */
+    public List<Transaction> greedySettlement(UserService userService) {
+        List<Transaction> plan = new ArrayList<>();
+        TreeSet<Entry> work = new TreeSet<>(ordered);
+
+        while (!work.isEmpty()) {
+            Entry debtor = work.first();
+            Entry creditor = work.last();
+            if (debtor.cents >= 0 || creditor.cents <= 0) {
+                break;
+            }
+            work.remove(debtor);
+            work.remove(creditor);
+
+            long settled = Math.min(-debtor.cents, creditor.cents);
+            User fromUser = userService.getUser(debtor.userId);
+            User toUser = userService.getUser(creditor.userId);
+            if (fromUser != null && toUser != null) {
+                plan.add(new Transaction(fromUser, toUser, fromCents(settled)));
+            }
+
+            if (debtor.cents + settled != 0) {
+                work.add(new Entry(debtor.userId, debtor.cents + settled));
+            }
+            if (creditor.cents - settled != 0) {
+                work.add(new Entry(creditor.userId, creditor.cents - settled));
+            }
+        }
+        return plan;
+    }
+
+    public int size() {
+        return positions.size();
+    }
+
+    public void clear() {
+        positions.clear();
+        ordered.clear();
+    }
+
+    private static long toCents(double amount) {
+        return Math.round(amount * 100.0);
+    }
+
+    private static double fromCents(long cents) {
+        return cents / 100.0;
+    }
+
+    private static final class Entry {
+        private final String userId;
+        private final long cents;
+
+        private Entry(String userId, long cents) {
+            this.userId = userId;
+            this.cents = cents;
+        }
+
+        private NetPosition toNetPosition() {
+            return new NetPosition(userId, fromCents(cents));
+        }
+    }
+}
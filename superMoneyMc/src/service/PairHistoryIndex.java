@@ -0,0 +1,143 @@
+package service;
+
+import model.Expense;
+import model.GroupSplit;
+import model.PairContribution;
+import model.ParticipantGroup;
+import strategy.SplitKernel;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntFunction;
+
+/**
+ * Index of the expenses that contributed to the balance between each pair of users.
+ * Regular expenses are recorded per pair as they are applied. Group expenses are recorded
+ * once per (payer, group) and a member's share is only computed when the pair is queried,
+ * so a drill-down costs time proportional to the pair's history rather than the full history.
+ * Expenses are referenced by ordinal and amounts are held in base-currency cents; group
+ * expenses keep only their ordinal, and their split and base rate are read from the stored
+ * expense when queried.
+ */
+public class PairHistoryIndex {
+    private final IntFunction<Expense> expenses; // ordinal -> expense
+    // "lowId|highId" -> entries; positive cents = low id owes high id
+    private final Map<String, List<Entry>> pairs;
+    // payerId -> groupId -> group expenses paid by that user
+    private final Map<String, Map<String, GroupEntries>> groupExpenses;
+
+    public PairHistoryIndex(IntFunction<Expense> expenses) {
+        this.expenses = expenses;
+        this.pairs = new HashMap<>();
+        this.groupExpenses = new HashMap<>();
+    }
+
+    /**
+     * Records that the debtor owes the creditor the given base-currency amount because of an expense.
+     */
+    public void record(int ordinal, String debtorId, String creditorId, double amount) {
+        long cents = Math.round(amount * 100.0);
+        if (cents == 0 || debtorId.equals(creditorId)) {
+            return;
+        }
+        boolean debtorFirst = debtorId.compareTo(creditorId) < 0;
+        String key = debtorFirst ? debtorId + "|" + creditorId : creditorId + "|" + debtorId;
+        pairs.computeIfAbsent(key, k -> new ArrayList<>())
+                .add(new Entry(ordinal, debtorFirst ? cents : -cents));
+    }
+
+    /**
+     * Records a group expense paid by the given user.
+     */
+    public void recordGroup(int ordinal, String paidById, ParticipantGroup group) {
+        groupExpenses.computeIfAbsent(paidById, p -> new LinkedHashMap<>())
+                .computeIfAbsent(group.getGroupId(), g -> new GroupEntries(group))
+                .add(ordinal);
+    }
+
+    /**
+     * Returns the contributions to the balance between two users in creation order.
+     * Positive amounts mean userId owes counterpartyId.
+     */
+    public List<PairContribution> getHistory(String userId, String counterpartyId) {
+        if (userId.equals(counterpartyId)) {
+            return Collections.emptyList();
+        }
+        List<Entry> entries = new ArrayList<>();
+        boolean userFirst = userId.compareTo(counterpartyId) < 0;
+        String key = userFirst ? userId + "|" + counterpartyId : counterpartyId + "|" + userId;
+        for (Entry entry : pairs.getOrDefault(key, Collections.emptyList())) {
+            entries.add(userFirst ? entry : new Entry(entry.ordinal, -entry.cents));
+        }
+        // Group expenses paid by the counterparty add debt for the user, and vice versa
+        collectGroupEntries(counterpartyId, userId, 1, entries);
+        collectGroupEntries(userId, counterpartyId, -1, entries);
+
+        entries.sort(Comparator.comparingInt(e -> e.ordinal));
+        List<PairContribution> history = new ArrayList<>(entries.size());
+        for (Entry entry : entries) {
+            history.add(new PairContribution(expenses.apply(entry.ordinal).getExpenseId(), entry.ordinal,
+                    entry.cents / 100.0));
+        }
+        return history;
+    }
+
+    private void collectGroupEntries(String paidById, String memberId, int sign, List<Entry> entries) {
+        Map<String, GroupEntries> byGroup = groupExpenses.get(paidById);
+        if (byGroup == null) {
+            return;
+        }
+        for (GroupEntries groupEntries : byGroup.values()) {
+            int memberIndex = groupEntries.group.indexOf(memberId);
+            if (memberIndex < 0) {
+                continue;
+            }
+            for (int i = 0; i < groupEntries.count; i++) {
+                Expense expense = expenses.apply(groupEntries.ordinals[i]);
+                GroupSplit split = new GroupSplit(groupEntries.group, expense.getSplitType(),
+                        expense.getAmount(), expense.getSplitValues());
+                long cents = SplitKernel.roundToCents(split.getShare(memberIndex) * expense.getBaseRate());
+                if (cents != 0) {
+                    entries.add(new Entry(groupEntries.ordinals[i], sign * cents));
+                }
+            }
+        }
+    }
+
+    private static final class Entry {
+        private final int ordinal;
+        private final long cents;
+
+        private Entry(int ordinal, long cents) {
+            this.ordinal = ordinal;
+            this.cents = cents;
+        }
+    }
+
+    /**
+     * Ordinals of the expenses one user paid for one group.
+     */
+    private static final class GroupEntries {
+        private final ParticipantGroup group;
+        private int[] ordinals;
+        private int count;
+
+        private GroupEntries(ParticipantGroup group) {
+            this.group = group;
+            this.ordinals = new int[4];
+        }
+
+        private void add(int ordinal) {
+            if (count == ordinals.length) {
+                ordinals = Arrays.copyOf(ordinals, count * 2);
+            }
+            ordinals[count++] = ordinal;
+        }
+    }
+}
@@ -1,6 +1,8 @@
 package service;
 
 import model.Expense;
+import model.SearchPage;
+import model.User;
 
 import java.util.List;
 
@@ -15,33 +17,65 @@ public class PassbookService {
     }
 
     public void showPassbook(String userId) {
-        List<Expense> expenses = expenseService.getUserPassbook(userId);
-        
-        if (expenses.isEmpty()) {
+        boolean[] headerPrinted = {false};
+        int count = expenseService.forEachPassbookEntry(userId, expense -> {
+            if (!headerPrinted[0]) {
+                System.out.println("\n=== Passbook for " + userId + " ===");
+                headerPrinted[0] = true;
+            }
+            printEntry(expense);
+        });
+
+        if (count == 0) {
             System.out.println("No transactions found for user: " + userId);
             return;
         }
+        System.out.println("\n================================\n");
+    }
 
-        System.out.println("\n=== Passbook for " + userId + " ===");
-        for (Expense expense : expenses) {
-            System.out.println("\nExpense ID: " + expense.getExpenseId());
-            System.out.println("Name: " + expense.getExpenseName());
-            System.out.println("Paid by: " + expense.getPaidBy().getUserId());
-            System.out.println("Amount: " + String.format("%.2f", expense.getAmount()));
-            System.out.println("Split Type: " + expense.getSplitType());
-            System.out.println("Participants: " + expense.getParticipants().stream()
-                    .map(u -> u.getUserId())
-                    .reduce((a, b) -> a + ", " + b)
-                    .orElse(""));
-            if (!expense.getNotes().isEmpty()) {
-                System.out.println("Notes: " + expense.getNotes());
-            }
-            if (!expense.getImageUrls().isEmpty()) {
-                System.out.println("Images: " + expense.getImageUrls().size() + " image(s)");
-            }
-            System.out.println("Date: " + expense.getCreatedAt());
+    private void printEntry(Expense expense) {
+        System.out.println("\nExpense ID: " + expense.getExpenseId());
+        System.out.println("Name: " + expense.getExpenseName());
+        System.out.println("Paid by: " + expense.getPaidBy().getUserId());
+        String currencySuffix = Expense.DEFAULT_CURRENCY.equals(expense.getCurrency())
+                ? "" : " " + expense.getCurrency();
+        System.out.println("Amount: " + String.format("%.2f", expense.getAmount()) + currencySuffix);
+        System.out.println("Split Type: " + expense.getSplitType());
+        System.out.print("Participants: ");
+        List<User> participants = expense.getParticipants();
+        for (int i = 0; i < participants.size(); i++) {
+            System.out.print(i == 0 ? participants.get(i).getUserId() : ", " + participants.get(i).getUserId());
         }
-        System.out.println("\n================================\n");
+        System.out.println();
+        if (!expense.getNotes().isEmpty()) {
+            System.out.println("Notes: " + expense.getNotes());
+        }
+        if (!expense.getImageUrls().isEmpty()) {
+            System.out.println("Images: " + expense.getImageUrls().size() + " image(s)");
+        }
+        System.out.println("Date: " + expense.getCreatedAt());
     }
-}
 
+    public void showSearchResults(SearchPage results) {
+        if (results.getTotalMatches() == 0) {
+            System.out.println("No matching expenses");
+            return;
+        }
+        if (results.getExpenseIds().isEmpty()) {
+            System.out.println("No matches on page " + results.getPage() + " of " + results.getTotalMatches() + " matches");
+            return;
+        }
+
+        int first = results.getPage() * results.getPageSize() + 1;
+        System.out.println("Matches " + first + "-" + (first + results.getExpenseIds().size() - 1)
+                + " of " + results.getTotalMatches() + ":");
+        for (int i = 0; i < results.getExpenseIds().size(); i++) {
+            Expense expense = expenseService.getExpenseAt(results.getOrdinal(i));
+            System.out.println(expense.getExpenseId() + " " + expense.getExpenseName()
+                    + " (" + String.format("%.2f", expense.getAmount()) + ")");
+        }
+        if (results.hasMore()) {
+            System.out.println("More results on page " + (results.getPage() + 1));
+        }
+    }
+}
@@ -0,0 +1,384 @@
+package service;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs a secondary {@link BalanceEngine} in the background behind the ledger of an {@link ExpenseService}.
+ * Every balance write on the primary is forwarded to the shadow on a single worker thread, so the shadow
+ * sees writes in the primary's order. Every sampleInterval-th read also has its primary
+ * result queued for comparison. The comparison runs on the worker after all earlier writes
+ * and checks the shadow's value at that same point. Latency and allocated bytes per write are recorded for both sides.
+ *
+ * The worker's queue is bounded, so a slow shadow cannot grow the heap. When a write does not fit,
+ * the shadow has missed it and stops: later writes are dropped and later comparisons skipped, and both are counted.
+ */
+public class ShadowLedger {
+    private static final int MAX_DIVERGENCES = 100;
+    private static final int DEFAULT_QUEUE_CAPACITY = 4096;
+    private static final Runnable STOP = () -> { };
+
+    private final BalanceEngine engine;
+    private final int sampleInterval;
+    private final BlockingQueue<Runnable> queue;
+    private final Thread worker;
+    private volatile Throwable failure;
+    private boolean closed;
+    private boolean inSync; // false once a write has been dropped
+    private long droppedWrites;
+    private long skippedComparisons;
+    private final WriteStats primaryStats;
+    private final WriteStats shadowStats;
+    private final List<String> divergences;
+    private final AtomicLong divergenceCount;
+    private final AtomicLong comparisonCount;
+    private long reads;
+
+    // Writes of the primary update in progress, handed to the worker when it ends
+    private String[] pendingDebtors;
+    private String[] pendingCreditors;
+    private long[] pendingCents;
+    private int pendingCount;
+    private long writeStartNanos;
+    private long writeStartBytes;
+
+    public ShadowLedger(BalanceEngine engine, int sampleInterval) {
+        this(engine, sampleInterval, DEFAULT_QUEUE_CAPACITY);
+    }
+
+    /**
+     * @param sampleInterval Reads between comparisons; 1 compares every read
+     * @param queueCapacity  Writes and comparisons the worker may fall behind by
+     */
+    public ShadowLedger(BalanceEngine engine, int sampleInterval, int queueCapacity) {
+        if (engine == null) {
+            throw new IllegalArgumentException("Shadow engine cannot be null");
+        }
+        if (sampleInterval <= 0) {
+            throw new IllegalArgumentException("Sample interval must be positive");
+        }
+        if (queueCapacity <= 0) {
+            throw new IllegalArgumentException("Queue capacity must be positive");
+        }
+        this.engine = engine;
+        this.sampleInterval = sampleInterval;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.inSync = true;
+        this.primaryStats = new WriteStats();
+        this.shadowStats = new WriteStats();
+        this.divergences = new ArrayList<>();
+        this.divergenceCount = new AtomicLong();
+        this.comparisonCount = new AtomicLong();
+        this.pendingDebtors = new String[16];
+        this.pendingCreditors = new String[16];
+        this.pendingCents = new long[16];
+        // Started last so the worker only ever sees a fully constructed ledger
+        this.worker = new Thread(this::runWorker, "shadow-ledger");
+        this.worker.setDaemon(true);
+        this.worker.start();
+    }
+
+    public BalanceEngine getEngine() {
+        return engine;
+    }
+
+    /**
+     * Loads the primary's current state into the shadow.
+     *
+     * @param pairs Outstanding balances as (debtor, creditor) -> cents
+     * @param nets  Net position of every user; differences from the pairwise sums are applied as net adjustments
+     */
+    void seed(Map<String, Map<String, Long>> pairs, Map<String, Long> nets) {
+        put(() -> {
+            for (Map.Entry<String, Map<String, Long>> debtor : pairs.entrySet()) {
+                for (Map.Entry<String, Long> creditor : debtor.getValue().entrySet()) {
+                    engine.record(debtor.getKey(), creditor.getKey(), creditor.getValue());
+                }
+            }
+            for (Map.Entry<String, Long> net : nets.entrySet()) {
+                engine.adjustNet(net.getKey(), net.getValue() - engine.getNetCents(net.getKey()));
+            }
+        });
+    }
+
+    /**
+     * Marks the start of a primary balance update.
+     */
+    void beginWrite() {
+        pendingCount = 0;
+        writeStartBytes = allocatedBytes();
+        writeStartNanos = System.nanoTime();
+    }
+
+    /**
+     * Queues one balance change of the current update for the shadow.
+     */
+    void forward(String debtorId, String creditorId, long cents) {
+        if (pendingCount == pendingCents.length) {
+            pendingDebtors = Arrays.copyOf(pendingDebtors, pendingCount * 2);
+            pendingCreditors = Arrays.copyOf(pendingCreditors, pendingCount * 2);
+            pendingCents = Arrays.copyOf(pendingCents, pendingCount * 2);
+        }
+        pendingDebtors[pendingCount] = debtorId;
+        pendingCreditors[pendingCount] = creditorId;
+        pendingCents[pendingCount] = cents;
+        pendingCount++;
+    }
+
+    /**
+     * Marks the end of a primary balance update and hands its changes to the shadow.
+     */
+    void endWrite() {
+        long nanos = System.nanoTime() - writeStartNanos;
+        primaryStats.record(nanos, allocatedBytes() - writeStartBytes);
+        if (!inSync) {
+            droppedWrites++;
+            return;
+        }
+        int count = pendingCount;
+        String[] debtors = Arrays.copyOf(pendingDebtors, count);
+        String[] creditors = Arrays.copyOf(pendingCreditors, count);
+        long[] cents = Arrays.copyOf(pendingCents, count);
+        boolean queued = queue.offer(() -> {
+            long startBytes = allocatedBytes();
+            long start = System.nanoTime();
+            for (int i = 0; i < count; i++) {
+                engine.record(debtors[i], creditors[i], cents[i]);
+            }
+            long elapsed = System.nanoTime() - start;
+            shadowStats.record(elapsed, allocatedBytes() - startBytes);
+        });
+        if (!queued) {
+            inSync = false;
+            droppedWrites++;
+        }
+    }
+
+    /**
+     * Returns true if the current read should be compared.
+     */
+    boolean sampleRead() {
+        if (++reads % sampleInterval != 0) {
+            return false;
+        }
+        if (!inSync) {
+            skippedComparisons++;
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Queues a comparison of a user's net position.
+     */
+    void compareNet(String userId, long primaryCents) {
+        offerComparison(() -> {
+            comparisonCount.incrementAndGet();
+            long shadowCents = engine.getNetCents(userId);
+            if (shadowCents != primaryCents) {
+                diverge("Net position of " + userId + ": primary " + primaryCents / 100.0
+                        + ", shadow " + shadowCents / 100.0);
+            }
+        });
+    }
+
+    /**
+     * Queues a comparison of a user's pairwise balances, keyed by counterparty.
+     * Positive cents mean the counterparty owes the user.
+     */
+    void comparePairs(String userId, Map<String, Long> primaryPairs) {
+        offerComparison(() -> {
+            comparisonCount.incrementAndGet();
+            Map<String, Long> shadowPairs = engine.getPairCents(userId);
+            Set<String> counterparties = new HashSet<>(primaryPairs.keySet());
+            counterparties.addAll(shadowPairs.keySet());
+            for (String counterpartyId : counterparties) {
+                long primaryCents = primaryPairs.getOrDefault(counterpartyId, 0L);
+                long shadowCents = shadowPairs.getOrDefault(counterpartyId, 0L);
+                if (primaryCents != shadowCents) {
+                    diverge("Balance between " + userId + " and " + counterpartyId + ": primary "
+                            + primaryCents / 100.0 + ", shadow " + shadowCents / 100.0);
+                }
+            }
+        });
+    }
+
+    private void offerComparison(Runnable comparison) {
+        if (!queue.offer(comparison)) {
+            skippedComparisons++;
+        }
+    }
+
+    /**
+     * Waits until the shadow has applied every forwarded write and finished every queued comparison.
+     */
+    public void flush() {
+        try {
+            if (closed) {
+                worker.join();
+            } else {
+                FutureTask<Void> marker = new FutureTask<>(() -> { }, null);
+                queue.put(marker);
+                marker.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Shadow engine failed", e.getCause());
+        }
+        if (failure != null) {
+            throw new IllegalStateException("Shadow engine failed", failure);
+        }
+    }
+
+    /**
+     * Stops the worker. Writes and comparisons already queued still run.
+     */
+    public void close() {
+        if (!closed) {
+            closed = true;
+            put(STOP);
+        }
+    }
+
+    private void put(Runnable task) {
+        try {
+            queue.put(task);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void runWorker() {
+        try {
+            for (Runnable task = queue.take(); task != STOP; task = queue.take()) {
+                try {
+                    task.run();
+                } catch (RuntimeException e) {
+                    if (failure == null) {
+                        failure = e;
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Returns false once a write has been dropped because the queue was full. The shadow then
+     * stops receiving writes and comparisons; enable it again to reseed it from the primary.
+     */
+    public boolean isInSync() {
+        return inSync;
+    }
+
+    /**
+     * Returns the number of primary writes the shadow did not receive.
+     */
+    public long getDroppedWriteCount() {
+        return droppedWrites;
+    }
+
+    /**
+     * Returns the number of sampled reads that were not compared because the queue was full or
+     * the shadow was out of sync.
+     */
+    public long getSkippedComparisonCount() {
+        return skippedComparisons;
+    }
+
+    public WriteStats getPrimaryStats() {
+        return primaryStats;
+    }
+
+    public WriteStats getShadowStats() {
+        return shadowStats;
+    }
+
+    public long getComparisonCount() {
+        return comparisonCount.get();
+    }
+
+    public long getDivergenceCount() {
+        return divergenceCount.get();
+    }
+
+    /**
+     * Returns the most recent divergences, oldest first, up to a fixed limit.
+     */
+    public List<String> getDivergences() {
+        synchronized (divergences) {
+            return Collections.unmodifiableList(new ArrayList<>(divergences));
+        }
+    }
+
+    private void diverge(String description) {
+        divergenceCount.incrementAndGet();
+        synchronized (divergences) {
+            divergences.add(description);
+            if (divergences.size() > MAX_DIVERGENCES) {
+                divergences.remove(0);
+            }
+        }
+    }
+
+    /**
+     * Returns the bytes allocated so far by the current thread, or 0 if the JVM cannot tell.
+     */
+    private static long allocatedBytes() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean hotspot = (com.sun.management.ThreadMXBean) threads;
+            if (hotspot.isThreadAllocatedMemorySupported() && hotspot.isThreadAllocatedMemoryEnabled()) {
+                return hotspot.getThreadAllocatedBytes(Thread.currentThread().getId());
+            }
+        }
+        return 0L;
+    }
+
+    /**
+     * Latency and allocation totals for the writes applied by one engine.
+     */
+    public static final class WriteStats {
+        private long writes;
+        private long totalNanos;
+        private long maxNanos;
+        private long totalBytes;
+
+        private synchronized void record(long nanos, long bytes) {
+            writes++;
+            totalNanos += nanos;
+            maxNanos = Math.max(maxNanos, nanos);
+            totalBytes += bytes;
+        }
+
+        public synchronized long getWrites() {
+            return writes;
+        }
+
+        public synchronized double getMeanNanos() {
+            return writes == 0 ? 0.0 : (double) totalNanos / writes;
+        }
+
+        public synchronized long getMaxNanos() {
+            return maxNanos;
+        }
+
+        public synchronized double getBytesPerWrite() {
+            return writes == 0 ? 0.0 : (double) totalBytes / writes;
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package service;
+
+import model.SpendTotals;
+
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * Pre-aggregated spend per user, category and period, in cents of the base currency.
+ * Every change updates a day bucket and a month bucket for the category and for the user's
+ * total, so a range query sums whole months plus the days in the partial months at either end.
+ */
+public class SpendRollup {
+    private static final String ALL_CATEGORIES = ""; // categories are never empty
+    private static final int PAID = 0;
+    private static final int SHARE = 1;
+
+    private final Map<String, Map<String, Series>> series; // userId -> category -> series
+
+    public SpendRollup() {
+        this.series = new HashMap<>();
+    }
+
+    public void addPaid(String userId, String category, LocalDate date, long cents) {
+        add(userId, category, date, PAID, cents);
+    }
+
+    public void addShare(String userId, String category, LocalDate date, long cents) {
+        add(userId, category, date, SHARE, cents);
+    }
+
+    /**
+     * Returns the user's totals between the two dates, inclusive.
+     *
+     * @param category Category to total, or null for all categories
+     */
+    public SpendTotals getTotals(String userId, String category, LocalDate from, LocalDate to) {
+        if (from.isAfter(to)) {
+            throw new IllegalArgumentException("Start date cannot be after end date");
+        }
+        Series userSeries = series.getOrDefault(userId, Map.of())
+                .get(category == null ? ALL_CATEGORIES : category.toLowerCase());
+        return userSeries == null ? new SpendTotals(0.0, 0.0) : userSeries.sum(from, to);
+    }
+
+    /**
+     * Returns the user's non-zero totals between the two dates for each category, by category name.
+     */
+    public Map<String, SpendTotals> getTotalsByCategory(String userId, LocalDate from, LocalDate to) {
+        if (from.isAfter(to)) {
+            throw new IllegalArgumentException("Start date cannot be after end date");
+        }
+        Map<String, SpendTotals> totals = new TreeMap<>();
+        for (Map.Entry<String, Series> entry : series.getOrDefault(userId, Map.of()).entrySet()) {
+            if (!entry.getKey().equals(ALL_CATEGORIES)) {
+                SpendTotals categoryTotals = entry.getValue().sum(from, to);
+                if (!categoryTotals.isEmpty()) {
+                    totals.put(entry.getKey(), categoryTotals);
+                }
+            }
+        }
+        return totals;
+    }
+
+    private void add(String userId, String category, LocalDate date, int component, long cents) {
+        if (cents == 0) {
+            return;
+        }
+        Map<String, Series> userSeries = series.computeIfAbsent(userId, u -> new HashMap<>());
+        userSeries.computeIfAbsent(category, c -> new Series()).add(date, component, cents);
+        userSeries.computeIfAbsent(ALL_CATEGORIES, c -> new Series()).add(date, component, cents);
+    }
+
+    private static long monthIndex(YearMonth month) {
+        return month.getYear() * 12L + month.getMonthValue() - 1;
+    }
+
+    /**
+     * Paid and share cents bucketed by epoch day and by month.
+     */
+    private static final class Series {
+        private final TreeMap<Long, long[]> days = new TreeMap<>();
+        private final TreeMap<Long, long[]> months = new TreeMap<>();
+
+        private void add(LocalDate date, int component, long cents) {
+            bump(days, date.toEpochDay(), component, cents);
+            bump(months, monthIndex(YearMonth.from(date)), component, cents);
+        }
+
+        private SpendTotals sum(LocalDate from, LocalDate to) {
+            long[] total = new long[2];
+            YearMonth first = YearMonth.from(from);
+            YearMonth last = YearMonth.from(to);
+            if (first.equals(last)) {
+                addRange(days, from.toEpochDay(), to.toEpochDay(), total);
+            } else {
+                addRange(days, from.toEpochDay(), first.atEndOfMonth().toEpochDay(), total);
+                addRange(months, monthIndex(first) + 1, monthIndex(last) - 1, total);
+                addRange(days, last.atDay(1).toEpochDay(), to.toEpochDay(), total);
+            }
+            return new SpendTotals(total[PAID] / 100.0, total[SHARE] / 100.0);
+        }
+
+        private static void bump(TreeMap<Long, long[]> buckets, long key, int component, long cents) {
+            long[] bucket = buckets.computeIfAbsent(key, k -> new long[2]);
+            bucket[component] += cents;
+            if (bucket[PAID] == 0 && bucket[SHARE] == 0) {
+                buckets.remove(key);
+            }
+        }
+
+        private static void addRange(TreeMap<Long, long[]> buckets, long from, long to, long[] total) {
+            if (from > to) {
+                return;
+            }
+            NavigableMap<Long, long[]> range = buckets.subMap(from, true, to, true);
+            for (long[] bucket : range.values()) {
+                total[PAID] += bucket[PAID];
+                total[SHARE] += bucket[SHARE];
+            }
+        }
+    }
+}
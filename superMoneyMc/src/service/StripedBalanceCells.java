@@ -0,0 +1,115 @@
+package service;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Thread-safe net balances per user, in cents.
+ * Each user starts with a single base counter. The first time two writers collide on a user, that
+ * user gets an array of counters spread over separate cache lines, and later writers add to the
+ * slot picked by their thread. Reads add the base and all slots. A read is exact for every write
+ * that completed before it started, like {@link java.util.concurrent.atomic.LongAdder#sum()}.
+ */
+public class StripedBalanceCells {
+    private static final int PAD = 8; // longs per cache line
+
+    private final ConcurrentHashMap<String, Cell> cells;
+    private final int stripeMask;
+
+    public StripedBalanceCells() {
+        this(Runtime.getRuntime().availableProcessors() * 2);
+    }
+
+    /**
+     * @param stripes Counters per contended user, rounded up to a power of two
+     */
+    public StripedBalanceCells(int stripes) {
+        if (stripes <= 0) {
+            throw new IllegalArgumentException("Stripe count must be positive");
+        }
+        this.cells = new ConcurrentHashMap<>();
+        this.stripeMask = (stripes == 1 ? 1 : Integer.highestOneBit(stripes - 1) << 1) - 1;
+    }
+
+    /**
+     * Moves cents from the debtor's net balance to the creditor's.
+     */
+    public void transfer(String debtorId, String creditorId, long cents) {
+        add(debtorId, -cents);
+        add(creditorId, cents);
+    }
+
+    public void add(String userId, long cents) {
+        if (cents == 0) {
+            return;
+        }
+        Cell cell = cells.computeIfAbsent(userId, u -> new Cell());
+        AtomicLongArray stripes = cell.stripes;
+        if (stripes == null) {
+            long base = cell.base.get();
+            if (cell.base.compareAndSet(base, base + cents)) {
+                return;
+            }
+            stripes = cell.inflate((stripeMask + 1) * PAD);
+        }
+        stripes.getAndAdd(stripeIndex(), cents);
+    }
+
+    /**
+     * Returns the user's net balance in cents. Positive means the user is owed money.
+     */
+    public long getCents(String userId) {
+        Cell cell = cells.get(userId);
+        return cell == null ? 0 : cell.sum();
+    }
+
+    public int size() {
+        return cells.size();
+    }
+
+    /**
+     * Returns the number of users whose writes have been spread over striped counters.
+     */
+    public int getStripedCount() {
+        int count = 0;
+        for (Cell cell : cells.values()) {
+            if (cell.stripes != null) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    public void clear() {
+        cells.clear();
+    }
+
+    private int stripeIndex() {
+        long threadId = Thread.currentThread().getId();
+        return ((int) ((threadId * 0x9E3779B97F4A7C15L) >>> 40) & stripeMask) * PAD;
+    }
+
+    private static final class Cell {
+        private final AtomicLong base = new AtomicLong();
+        private volatile AtomicLongArray stripes;
+
+        private synchronized AtomicLongArray inflate(int length) {
+            if (stripes == null) {
+                stripes = new AtomicLongArray(length);
+            }
+            return stripes;
+        }
+
+        private long sum() {
+            long sum = base.get();
+            AtomicLongArray current = stripes;
+            if (current != null) {
+                for (int i = 0; i < current.length(); i += PAD) {
+                    sum += current.get(i);
+                }
+            }
+            return sum;
+        }
+    }
+}
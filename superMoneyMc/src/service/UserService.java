@@ -1,18 +1,28 @@
 package service;
 
 import model.User;
+import storage.BalanceSnapshot;
 
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.stream.IntStream;
 
 /**
  Service class for managing users.
  */
 public class UserService {
+    private static final int IMPORT_CHUNK = 4096; // users validated in parallel at a time
+
     private final Map<String, User> users;
+    private final ContactIndex contactIndex;
+    private BalanceSnapshot snapshot; // users not yet read from a loaded snapshot
 
     public UserService() {
         this.users = new HashMap<>();
+        this.contactIndex = new ContactIndex();
     }
 
     public void addUser(User user) {
@@ -22,25 +32,180 @@ public class UserService {
         if (user.getUserId() == null || user.getUserId().trim().isEmpty()) {
             throw new IllegalArgumentException("User ID cannot be null or empty");
         }
-        if (users.containsKey(user.getUserId())) {
+        if (userExists(user.getUserId())) {
             throw new IllegalArgumentException("User with ID " + user.getUserId() + " already exists");
         }
         users.put(user.getUserId(), user);
+        contactIndex.add(user);
+    }
+
+    /**
+     * Imports users from a stream, validating and normalizing each chunk in parallel.
+     * Users are staged in maps sized for expectedCount and merged once the whole stream has
+     * been read. The import is all or nothing: an invalid user, a malformed email or mobile number,
+     * or a taken user ID rejects the whole import.
+     *
+     * @param expectedCount Expected number of users, or 0 if unknown
+     * @return Number of users imported
+     */
+    public int importUsers(Iterator<User> source, int expectedCount) {
+        int capacity = (int) Math.min(1 << 30, Math.max(16, expectedCount / 0.75 + 1));
+        Map<String, User> staged = new HashMap<>(capacity);
+        Map<String, String> emails = new HashMap<>(capacity);
+        Map<String, String> phones = new HashMap<>(capacity);
+        User[] chunk = new User[IMPORT_CHUNK];
+        ImportRow[] rows = new ImportRow[IMPORT_CHUNK];
+        int position = 0;
+        while (source.hasNext()) {
+            int count = 0;
+            while (count < IMPORT_CHUNK && source.hasNext()) {
+                chunk[count++] = source.next();
+            }
+            IntStream.range(0, count).parallel().forEach(i -> rows[i] = new ImportRow(chunk[i]));
+            for (int i = 0; i < count; i++) {
+                ImportRow row = rows[i];
+                if (row.error != null) {
+                    throw new IllegalArgumentException("Invalid user at position " + (position + i + 1) + ": " + row.error);
+                }
+                String userId = row.user.getUserId();
+                if (staged.containsKey(userId) || userExists(userId)) {
+                    throw new IllegalArgumentException("User with ID " + userId + " already exists");
+                }
+                staged.put(userId, row.user);
+                if (row.email != null) {
+                    emails.putIfAbsent(row.email, userId);
+                }
+                if (row.phone != null) {
+                    phones.putIfAbsent(row.phone, userId);
+                }
+            }
+            position += count;
+        }
+        users.putAll(staged);
+        contactIndex.addAll(emails, phones);
+        return staged.size();
+    }
+
+    /**
+     * Finds a user by email address, ignoring case and surrounding spaces.
+     */
+    public User findUserByEmail(String email) {
+        loadSnapshotUsers();
+        String userId = contactIndex.findByEmail(email);
+        return userId == null ? null : users.get(userId);
+    }
+
+    /**
+     * Finds a user by mobile number, ignoring formatting and country code.
+     */
+    public User findUserByMobileNumber(String mobileNumber) {
+        loadSnapshotUsers();
+        String userId = contactIndex.findByMobileNumber(mobileNumber);
+        return userId == null ? null : users.get(userId);
+    }
+
+    /**
+     * Matches a batch of mobile numbers, such as an address book, against registered users.
+     *
+     * @return Matched numbers, as given, mapped to user IDs in input order
+     */
+    public Map<String, String> matchMobileNumbers(Collection<String> mobileNumbers) {
+        loadSnapshotUsers();
+        Map<String, String> matches = new LinkedHashMap<>();
+        for (String mobileNumber : mobileNumbers) {
+            String userId = contactIndex.findByMobileNumber(mobileNumber);
+            if (userId != null) {
+                matches.put(mobileNumber, userId);
+            }
+        }
+        return matches;
     }
 
     public User getUser(String userId) {
         if (userId == null || userId.trim().isEmpty()) {
             return null;
         }
-        return users.get(userId);
+        User user = users.get(userId);
+        if (user == null && snapshot != null) {
+            int index = snapshot.indexOf(userId);
+            if (index >= 0) {
+                user = snapshot.readUser(index);
+                users.put(userId, user);
+                contactIndex.add(user);
+            }
+        }
+        return user;
     }
 
     public boolean userExists(String userId) {
-        return userId != null && users.containsKey(userId);
+        return userId != null && (users.containsKey(userId) || snapshot != null && snapshot.indexOf(userId) >= 0);
     }
 
     public Map<String, User> getAllUsers() {
+        loadSnapshotUsers();
         return new HashMap<>(users);
     }
+
+    /**
+     * Reads every user still held only in an attached snapshot.
+     */
+    private void loadSnapshotUsers() {
+        if (snapshot != null) {
+            for (int i = 0; i < snapshot.getUserCount(); i++) {
+                getUser(snapshot.getUserId(i));
+            }
+            snapshot = null;
+        }
+    }
+
+    /**
+     * Serves users from a snapshot, reading each one from the mapped file on first access.
+     * Only users already in the registry are looked up in the snapshot, so attaching to an
+     * empty registry does not read the snapshot's user table.
+     *
+     * @throws IllegalArgumentException if a registered user is also in the snapshot
+     */
+    public void attachSnapshot(BalanceSnapshot snapshot) {
+        loadSnapshotUsers();
+        for (String userId : users.keySet()) {
+            if (snapshot.indexOf(userId) >= 0) {
+                throw new IllegalArgumentException("User with ID " + userId + " already exists");
+            }
+        }
+        this.snapshot = snapshot;
+    }
+
+    /**
+     * A user validated and normalized by a bulk import worker.
+     */
+    private static final class ImportRow {
+        private final User user;
+        private String email;
+        private String phone;
+        private String error;
+
+        private ImportRow(User user) {
+            this.user = user;
+            if (user == null) {
+                error = "User cannot be null";
+            } else if (user.getUserId() == null || user.getUserId().trim().isEmpty()) {
+                error = "User ID cannot be null or empty";
+            } else if (user.getName() == null || user.getName().trim().isEmpty()) {
+                error = "Name cannot be null or empty";
+            } else {
+                email = ContactIndex.normalizeEmail(user.getEmail());
+                phone = ContactIndex.normalizeMobileNumber(user.getMobileNumber());
+                if (email == null && !isBlank(user.getEmail())) {
+                    error = "Invalid email: " + user.getEmail();
+                } else if (phone == null && !isBlank(user.getMobileNumber())) {
+                    error = "Invalid mobile number: " + user.getMobileNumber();
+                }
+            }
+        }
+
+        private static boolean isBlank(String value) {
+            return value == null || value.trim().isEmpty();
+        }
+    }
 }
 
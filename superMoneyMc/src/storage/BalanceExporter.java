@@ -0,0 +1,154 @@
+package storage;
+
+import model.Transaction;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Streams a balance ledger to a channel through a direct buffer that is flushed in chunks.
+ *
+ * Binary layout: magic, version, then one record per debt (tag 1, debtor ref, creditor ref,
+ * amount in cents), then tag 0 and the record count. A user id ref is 0 followed by the id
+ * the first time the id appears, and its dictionary index + 1 after that. All integers
+ * after the header are unsigned varints.
+ */
+public class BalanceExporter {
+    static final int MAGIC = 0x42414C58; // "BALX"
+    static final byte VERSION = 1;
+    static final int BUFFER_SIZE = 64 * 1024;
+    static final String CSV_HEADER = "debtor,creditor,amount\n";
+
+    private final WritableByteChannel channel;
+    private final BalanceFormat format;
+    private final ByteBuffer buffer;
+    private final Map<String, Integer> dictionary;
+    private long recordCount;
+
+    public BalanceExporter(WritableByteChannel channel, BalanceFormat format) {
+        this.channel = channel;
+        this.format = format;
+        this.buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        this.dictionary = new HashMap<>();
+    }
+
+    /**
+     * Writes every non-zero balance (debtor -> creditor -> transaction) and returns the record count.
+     */
+    public long export(Map<String, Map<String, Transaction>> balances) throws IOException {
+        writeHeader();
+        for (Map<String, Transaction> userBalances : balances.values()) {
+            for (Transaction transaction : userBalances.values()) {
+                long cents = Math.round(transaction.getAmount() * 100.0);
+                if (cents > 0) {
+                    write(transaction.getFromUser().getUserId(), transaction.getToUser().getUserId(), cents);
+                }
+            }
+        }
+        finish();
+        return recordCount;
+    }
+
+    private void writeHeader() throws IOException {
+        if (format == BalanceFormat.BINARY) {
+            ensure(5);
+            buffer.putInt(MAGIC);
+            buffer.put(VERSION);
+        } else {
+            putAscii(CSV_HEADER);
+        }
+    }
+
+    private void write(String debtorId, String creditorId, long cents) throws IOException {
+        if (format == BalanceFormat.BINARY) {
+            ensure(1);
+            buffer.put((byte) 1);
+            putUserRef(debtorId);
+            putUserRef(creditorId);
+            putVarint(cents);
+        } else {
+            putCsvField(debtorId);
+            putAscii(",");
+            putCsvField(creditorId);
+            putAscii("," + (cents / 100) + "." + (cents % 100 < 10 ? "0" : "") + (cents % 100) + "\n");
+        }
+        recordCount++;
+    }
+
+    private void finish() throws IOException {
+        if (format == BalanceFormat.BINARY) {
+            ensure(1);
+            buffer.put((byte) 0);
+            putVarint(recordCount);
+        }
+        flush();
+    }
+
+    private void putUserRef(String userId) throws IOException {
+        Integer index = dictionary.get(userId);
+        if (index != null) {
+            putVarint(index + 1L);
+            return;
+        }
+        dictionary.put(userId, dictionary.size());
+        byte[] bytes = userId.getBytes(StandardCharsets.UTF_8);
+        putVarint(0);
+        putVarint(bytes.length);
+        putBytes(bytes);
+    }
+
+    private void putVarint(long value) throws IOException {
+        ensure(10);
+        while ((value & ~0x7FL) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    private void putCsvField(String value) throws IOException {
+        boolean quote = value.indexOf(',') >= 0 || value.indexOf('"') >= 0
+                || value.indexOf('\n') >= 0 || value.indexOf('\r') >= 0;
+        if (quote) {
+            value = "\"" + value.replace("\"", "\"\"") + "\"";
+        }
+        putBytes(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private void putAscii(String value) throws IOException {
+        ensure(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            buffer.put((byte) value.charAt(i));
+        }
+    }
+
+    private void putBytes(byte[] bytes) throws IOException {
+        int offset = 0;
+        while (offset < bytes.length) {
+            if (!buffer.hasRemaining()) {
+                flush();
+            }
+            int length = Math.min(buffer.remaining(), bytes.length - offset);
+            buffer.put(bytes, offset, length);
+            offset += length;
+        }
+    }
+
+    private void ensure(int bytes) throws IOException {
+        if (buffer.remaining() < bytes) {
+            flush();
+        }
+    }
+
+    private void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+}
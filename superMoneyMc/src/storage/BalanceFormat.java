@@ -0,0 +1,11 @@
+package storage;
+
+/**
+ * File formats for balance dumps.
+ */
+public enum BalanceFormat {
+    /** Varint-encoded records with a user id dictionary. */
+    BINARY,
+    /** "debtor,creditor,amount" lines with a header row. */
+    CSV
+}
@@ -0,0 +1,212 @@
+package storage;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Reads balance dumps written by {@link BalanceExporter}, refilling a direct buffer in chunks.
+ */
+public class BalanceImporter {
+    /**
+     * Receives each imported balance.
+     */
+    public interface Handler {
+        void accept(String debtorId, String creditorId, long cents);
+    }
+
+    private final ReadableByteChannel channel;
+    private final BalanceFormat format;
+    private final ByteBuffer buffer;
+    private boolean endOfInput;
+
+    public BalanceImporter(ReadableByteChannel channel, BalanceFormat format) {
+        this.channel = channel;
+        this.format = format;
+        this.buffer = ByteBuffer.allocateDirect(BalanceExporter.BUFFER_SIZE);
+        this.buffer.flip();
+    }
+
+    /**
+     * Reads every record into the handler and returns the record count.
+     */
+    public long read(Handler handler) throws IOException {
+        return format == BalanceFormat.BINARY ? readBinary(handler) : readCsv(handler);
+    }
+
+    private long readBinary(Handler handler) throws IOException {
+        require(5);
+        if (buffer.getInt() != BalanceExporter.MAGIC) {
+            throw new IllegalArgumentException("Not a binary balance dump");
+        }
+        byte version = buffer.get();
+        if (version != BalanceExporter.VERSION) {
+            throw new IllegalArgumentException("Unsupported balance dump version: " + version);
+        }
+
+        List<String> dictionary = new ArrayList<>();
+        long count = 0;
+        while (true) {
+            require(1);
+            byte tag = buffer.get();
+            if (tag == 0) {
+                break;
+            }
+            if (tag != 1) {
+                throw new IllegalArgumentException("Corrupt balance dump at record " + count);
+            }
+            String debtorId = readUserRef(dictionary);
+            String creditorId = readUserRef(dictionary);
+            handler.accept(debtorId, creditorId, readVarint());
+            count++;
+        }
+        long expected = readVarint();
+        if (expected != count) {
+            throw new IllegalArgumentException("Balance dump is truncated: expected " + expected
+                    + " records, read " + count);
+        }
+        return count;
+    }
+
+    private String readUserRef(List<String> dictionary) throws IOException {
+        long ref = readVarint();
+        if (ref > 0) {
+            if (ref > dictionary.size()) {
+                throw new IllegalArgumentException("Corrupt balance dump: unknown user reference " + ref);
+            }
+            return dictionary.get((int) (ref - 1));
+        }
+        int length = (int) readVarint();
+        if (length > buffer.capacity()) {
+            throw new IllegalArgumentException("Corrupt balance dump: user id too long");
+        }
+        require(length);
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        String userId = new String(bytes, StandardCharsets.UTF_8);
+        dictionary.add(userId);
+        return userId;
+    }
+
+    private long readVarint() throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            require(1);
+            byte b = buffer.get();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Corrupt balance dump: varint too long");
+    }
+
+    private long readCsv(Handler handler) throws IOException {
+        byte[] header = BalanceExporter.CSV_HEADER.getBytes(StandardCharsets.US_ASCII);
+        for (byte expected : header) {
+            if (!fill(1) || buffer.get() != expected) {
+                throw new IllegalArgumentException("Missing balance CSV header");
+            }
+        }
+
+        String[] ids = new String[2];
+        byte[] field = new byte[64];
+        long count = 0;
+        while (fill(1)) {
+            for (int i = 0; i < 3; i++) {
+                int length = 0;
+                boolean quoted = false;
+                if (fill(1) && buffer.get(buffer.position()) == '"') {
+                    buffer.get();
+                    quoted = true;
+                }
+                while (true) {
+                    if (!fill(1)) {
+                        if (quoted || i < 2) {
+                            throw new IllegalArgumentException("Truncated balance CSV at line " + (count + 2));
+                        }
+                        break;
+                    }
+                    byte b = buffer.get();
+                    if (quoted && b == '"') {
+                        if (fill(1) && buffer.get(buffer.position()) == '"') {
+                            buffer.get();
+                        } else {
+                            quoted = false;
+                            continue;
+                        }
+                    } else if (!quoted && (b == ',' || b == '\n')) {
+                        if ((b == ',') != (i < 2)) {
+                            throw new IllegalArgumentException("Wrong number of fields in balance CSV at line " + (count + 2));
+                        }
+                        break;
+                    }
+                    if (length == field.length) {
+                        field = Arrays.copyOf(field, length * 2);
+                    }
+                    field[length++] = b;
+                }
+                if (i == 2 && length > 0 && field[length - 1] == '\r') {
+                    length--;
+                }
+                if (i < 2) {
+                    ids[i] = new String(field, 0, length, StandardCharsets.UTF_8);
+                } else {
+                    handler.accept(ids[0], ids[1], parseCents(field, length, count + 2));
+                }
+            }
+            count++;
+        }
+        return count;
+    }
+
+    private static long parseCents(byte[] text, int length, long line) {
+        long cents = 0;
+        int decimals = -1;
+        for (int i = 0; i < length; i++) {
+            byte b = text[i];
+            if (b == '.' && decimals < 0) {
+                decimals = 0;
+            } else if (b >= '0' && b <= '9' && decimals < 2) {
+                cents = cents * 10 + (b - '0');
+                if (decimals >= 0) {
+                    decimals++;
+                }
+            } else {
+                throw new IllegalArgumentException("Invalid amount in balance CSV at line " + line);
+            }
+        }
+        if (length == 0) {
+            throw new IllegalArgumentException("Invalid amount in balance CSV at line " + line);
+        }
+        for (int i = Math.max(decimals, 0); i < 2; i++) {
+            cents *= 10;
+        }
+        return cents;
+    }
+
+    private void require(int bytes) throws IOException {
+        if (!fill(bytes)) {
+            throw new IllegalArgumentException("Balance dump ended unexpectedly");
+        }
+    }
+
+    /**
+     * Makes at least the given number of bytes available, refilling from the channel.
+     * Returns false if the input ends first.
+     */
+    private boolean fill(int bytes) throws IOException {
+        while (buffer.remaining() < bytes && !endOfInput) {
+            buffer.compact();
+            if (channel.read(buffer) < 0) {
+                endOfInput = true;
+            }
+            buffer.flip();
+        }
+        return buffer.remaining() >= bytes;
+    }
+}
@@ -0,0 +1,376 @@
+package storage;
+
+import model.Transaction;
+import model.User;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Read-only, memory-mapped snapshot of the user registry, the base-currency balances and the
+ * idempotency keys of recent expenses.
+ *
+ * Layout:
+ * <pre>
+ * header   magic, version, user count, pair count, section positions, key count
+ * users    per user (sorted by id): offset and length of id, name, email, mobile, home currency
+ * net      per user: net position in cents
+ * debts    per user start index, then (creditor index, cents) pairs grouped by debtor
+ * credits  per user start index, then (debtor index, cents) pairs grouped by creditor
+ * keys     per idempotency key: offset and length of key and expense id, creation time in millis
+ * strings  UTF-8 bytes referenced by the user and key tables
+ * </pre>
+ * Everything is addressed by position, so opening a snapshot only maps the file. Version 1
+ * snapshots, which have no key table, can still be opened.
+ */
+public class BalanceSnapshot {
+    private static final int MAGIC = 0x42534E50; // "BSNP"
+    private static final int VERSION = 2;
+    private static final int HEADER_SIZE = 88;
+    private static final int USER_FIELDS = 5;
+    private static final int USER_ENTRY_SIZE = USER_FIELDS * 8;
+    private static final int PAIR_ENTRY_SIZE = 12;
+    private static final int KEY_ENTRY_SIZE = 24;
+
+    /**
+     * Receives one balance of a user: the other user's index and the amount in cents.
+     */
+    public interface PairVisitor {
+        void visit(int counterpartyIndex, long cents);
+    }
+
+    /**
+     * Receives one idempotency key and the id of the expense it created.
+     */
+    public interface KeyVisitor {
+        void visit(String key, String expenseId, long createdAtMillis);
+    }
+
+    private final MappedByteBuffer buffer;
+    private final int userCount;
+    private final int pairCount;
+    private final int usersPosition;
+    private final int netPosition;
+    private final int debtIndexPosition;
+    private final int debtPairsPosition;
+    private final int creditIndexPosition;
+    private final int creditPairsPosition;
+    private final int stringsPosition;
+    private final int keysPosition;
+    private final int keyCount;
+
+    private BalanceSnapshot(Path path, MappedByteBuffer buffer) {
+        this.buffer = buffer;
+        int version = buffer.getInt(4);
+        if (buffer.getInt(0) != MAGIC || version < 1 || version > VERSION) {
+            throw new IllegalArgumentException("Not a balance snapshot: " + path);
+        }
+        this.userCount = buffer.getInt(8);
+        this.pairCount = buffer.getInt(12);
+        this.usersPosition = (int) buffer.getLong(16);
+        this.netPosition = (int) buffer.getLong(24);
+        this.debtIndexPosition = (int) buffer.getLong(32);
+        this.debtPairsPosition = (int) buffer.getLong(40);
+        this.creditIndexPosition = (int) buffer.getLong(48);
+        this.creditPairsPosition = (int) buffer.getLong(56);
+        this.stringsPosition = (int) buffer.getLong(64);
+        this.keysPosition = version >= 2 ? (int) buffer.getLong(72) : 0;
+        this.keyCount = version >= 2 ? buffer.getInt(80) : 0;
+    }
+
+    public static BalanceSnapshot open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return new BalanceSnapshot(path, channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * Writes a snapshot of the users and their balances (debtor -> creditor -> transaction).
+     */
+    public static void write(Path path, Collection<User> users,
+                             Map<String, Map<String, Transaction>> balances) throws IOException {
+        write(path, users, balances, visitor -> { });
+    }
+
+    /**
+     * Writes a snapshot that also holds the idempotency keys passed to the visitor by keys.
+     */
+    public static void write(Path path, Collection<User> users, Map<String, Map<String, Transaction>> balances,
+                             Consumer<KeyVisitor> keys) throws IOException {
+        List<User> sorted = new ArrayList<>(users);
+        sorted.sort(Comparator.comparing(User::getUserId));
+        Map<String, Integer> indexes = new HashMap<>();
+        for (int i = 0; i < sorted.size(); i++) {
+            indexes.put(sorted.get(i).getUserId(), i);
+        }
+
+        // Collect pairs as (debtor, creditor, cents) and count per debtor and creditor
+        List<long[]> pairs = new ArrayList<>();
+        long[] net = new long[sorted.size()];
+        int[] debtCounts = new int[sorted.size() + 1];
+        int[] creditCounts = new int[sorted.size() + 1];
+        for (Map<String, Transaction> userBalances : balances.values()) {
+            for (Transaction transaction : userBalances.values()) {
+                long cents = Math.round(transaction.getAmount() * 100.0);
+                Integer debtor = indexes.get(transaction.getFromUser().getUserId());
+                Integer creditor = indexes.get(transaction.getToUser().getUserId());
+                if (cents <= 0 || debtor == null || creditor == null) {
+                    continue;
+                }
+                pairs.add(new long[]{debtor, creditor, cents});
+                net[debtor] -= cents;
+                net[creditor] += cents;
+                debtCounts[debtor + 1]++;
+                creditCounts[creditor + 1]++;
+            }
+        }
+        for (int i = 0; i < sorted.size(); i++) {
+            debtCounts[i + 1] += debtCounts[i];
+            creditCounts[i + 1] += creditCounts[i];
+        }
+        long[][] debts = new long[pairs.size()][];
+        long[][] credits = new long[pairs.size()][];
+        int[] debtFill = debtCounts.clone();
+        int[] creditFill = creditCounts.clone();
+        for (long[] pair : pairs) {
+            debts[debtFill[(int) pair[0]]++] = pair;
+            credits[creditFill[(int) pair[1]]++] = pair;
+        }
+
+        ByteArrayOutputStream strings = new ByteArrayOutputStream();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.write(new byte[HEADER_SIZE]);
+
+        long usersPosition = out.size();
+        for (User user : sorted) {
+            String[] fields = {user.getUserId(), user.getName(), user.getEmail(),
+                    user.getMobileNumber(), user.getHomeCurrency()};
+            for (String field : fields) {
+                writeString(out, strings, field);
+            }
+        }
+        long netPosition = out.size();
+        for (long cents : net) {
+            out.writeLong(cents);
+        }
+        long debtIndexPosition = out.size();
+        for (int start : debtCounts) {
+            out.writeInt(start);
+        }
+        long debtPairsPosition = out.size();
+        for (long[] pair : debts) {
+            out.writeInt((int) pair[1]);
+            out.writeLong(pair[2]);
+        }
+        long creditIndexPosition = out.size();
+        for (int start : creditCounts) {
+            out.writeInt(start);
+        }
+        long creditPairsPosition = out.size();
+        for (long[] pair : credits) {
+            out.writeInt((int) pair[0]);
+            out.writeLong(pair[2]);
+        }
+        long keysPosition = out.size();
+        int[] keyCount = {0};
+        IOException[] failure = {null};
+        keys.accept((key, expenseId, createdAtMillis) -> {
+            try {
+                writeString(out, strings, key);
+                writeString(out, strings, expenseId);
+                out.writeLong(createdAtMillis);
+                keyCount[0]++;
+            } catch (IOException e) {
+                failure[0] = e;
+            }
+        });
+        if (failure[0] != null) {
+            throw failure[0];
+        }
+        long stringsPosition = out.size();
+        strings.writeTo(out);
+        out.flush();
+
+        ByteBuffer contents = ByteBuffer.wrap(bytes.toByteArray());
+        contents.putInt(0, MAGIC);
+        contents.putInt(4, VERSION);
+        contents.putInt(8, sorted.size());
+        contents.putInt(12, pairs.size());
+        contents.putLong(16, usersPosition);
+        contents.putLong(24, netPosition);
+        contents.putLong(32, debtIndexPosition);
+        contents.putLong(40, debtPairsPosition);
+        contents.putLong(48, creditIndexPosition);
+        contents.putLong(56, creditPairsPosition);
+        contents.putLong(64, stringsPosition);
+        contents.putLong(72, keysPosition);
+        contents.putInt(80, keyCount[0]);
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (contents.hasRemaining()) {
+                channel.write(contents);
+            }
+            FileSync.force(channel, path);
+        }
+    }
+
+    private static void writeString(DataOutputStream out, ByteArrayOutputStream strings, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(0);
+            out.writeInt(-1);
+        } else {
+            byte[] encoded = value.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(strings.size());
+            out.writeInt(encoded.length);
+            strings.write(encoded);
+        }
+    }
+
+    public int getUserCount() {
+        return userCount;
+    }
+
+    public int getIdempotencyKeyCount() {
+        return keyCount;
+    }
+
+    /**
+     * Visits the idempotency keys in the order they were written.
+     */
+    public void forEachIdempotencyKey(KeyVisitor visitor) {
+        for (int i = 0; i < keyCount; i++) {
+            int position = keysPosition + i * KEY_ENTRY_SIZE;
+            visitor.visit(readString(position), readString(position + 8), buffer.getLong(position + 16));
+        }
+    }
+
+    public int getPairCount() {
+        return pairCount;
+    }
+
+    /**
+     * Returns the index of the user, or -1 if the user is not in the snapshot.
+     * Ids are compared as UTF-8 bytes in the mapped file, so the search allocates nothing per step.
+     */
+    public int indexOf(String userId) {
+        byte[] id = userId.getBytes(StandardCharsets.UTF_8);
+        int low = 0;
+        int high = userCount - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int compare = compareUserId(mid, id);
+            if (compare < 0) {
+                low = mid + 1;
+            } else if (compare > 0) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    public String getUserId(int index) {
+        return readField(index, 0);
+    }
+
+    public User readUser(int index) {
+        User user = new User(readField(index, 0), readField(index, 1), readField(index, 2), readField(index, 3));
+        user.setHomeCurrency(readField(index, 4));
+        return user;
+    }
+
+    public long getNetCents(int index) {
+        return buffer.getLong(netPosition + index * 8);
+    }
+
+    /**
+     * Visits the users that the given user owes.
+     */
+    public void forEachDebt(int index, PairVisitor visitor) {
+        visitPairs(debtIndexPosition, debtPairsPosition, index, visitor);
+    }
+
+    /**
+     * Visits the users that owe the given user.
+     */
+    public void forEachCredit(int index, PairVisitor visitor) {
+        visitPairs(creditIndexPosition, creditPairsPosition, index, visitor);
+    }
+
+    private void visitPairs(int indexPosition, int pairsPosition, int index, PairVisitor visitor) {
+        int start = buffer.getInt(indexPosition + index * 4);
+        int end = buffer.getInt(indexPosition + (index + 1) * 4);
+        for (int pair = start; pair < end; pair++) {
+            int position = pairsPosition + pair * PAIR_ENTRY_SIZE;
+            visitor.visit(buffer.getInt(position), buffer.getLong(position + 4));
+        }
+    }
+
+    /**
+     * Compares the id of the user at the index with an id encoded as UTF-8, in the
+     * {@link String#compareTo} order the users were sorted by when written.
+     */
+    private int compareUserId(int index, byte[] id) {
+        int position = usersPosition + index * USER_ENTRY_SIZE;
+        int start = stringsPosition + buffer.getInt(position);
+        int length = buffer.getInt(position + 4);
+        int common = Math.min(length, id.length);
+        for (int i = 0; i < common; i++) {
+            int stored = buffer.get(start + i) & 0xFF;
+            int given = id[i] & 0xFF;
+            if (stored != given) {
+                return Integer.compare(utf16Rank(stored), utf16Rank(given));
+            }
+        }
+        return Integer.compare(length, id.length);
+    }
+
+    /**
+     * Unsigned UTF-8 byte order is code point order, but String order puts supplementary
+     * characters (surrogate pairs) before U+E000..U+FFFF. Two ids first differ either inside
+     * characters with the same lead byte or at two lead bytes, so ranking the lead bytes of
+     * U+E000..U+FFFF (0xEE, 0xEF) after those of supplementary characters (0xF0..0xF4) is enough.
+     */
+    private static int utf16Rank(int b) {
+        if (b >= 0xF0) {
+            return b - 2;
+        }
+        if (b >= 0xEE) {
+            return b + 5;
+        }
+        return b;
+    }
+
+    private String readField(int index, int field) {
+        return readString(usersPosition + index * USER_ENTRY_SIZE + field * 8);
+    }
+
+    private String readString(int position) {
+        int length = buffer.getInt(position + 4);
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        ByteBuffer view = buffer.duplicate();
+        view.position(stringsPosition + buffer.getInt(position));
+        view.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
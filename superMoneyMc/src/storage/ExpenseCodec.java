@@ -0,0 +1,145 @@
+package storage;
+
+import model.Expense;
+import model.ParticipantGroup;
+import model.User;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Binary encoding of expenses for segment files.
+ * Users and groups are stored by id and resolved again when a record is decoded.
+ * The expense id is written first so it can be read without decoding the whole record.
+ */
+public class ExpenseCodec {
+    private static final Expense.SplitType[] SPLIT_TYPES = Expense.SplitType.values();
+
+    private final Function<String, User> userResolver;
+    private final Function<String, ParticipantGroup> groupResolver;
+
+    public ExpenseCodec(Function<String, User> userResolver, Function<String, ParticipantGroup> groupResolver) {
+        this.userResolver = userResolver;
+        this.groupResolver = groupResolver;
+    }
+
+    public void encode(Expense expense, DataOutputStream out) throws IOException {
+        writeString(out, expense.getExpenseId());
+        writeString(out, expense.getPaidBy().getUserId());
+        out.writeDouble(expense.getAmount());
+        writeString(out, expense.getCurrency());
+        out.writeDouble(expense.getBaseRate());
+        writeString(out, expense.getExpenseName());
+        writeString(out, expense.getNotes());
+        writeString(out, expense.getCategory());
+        out.writeLong(expense.getCreatedAt().toEpochSecond(ZoneOffset.UTC));
+        out.writeInt(expense.getCreatedAt().getNano());
+        out.writeByte(expense.getSplitType().ordinal());
+
+        ParticipantGroup group = expense.getParticipantGroup();
+        writeString(out, group == null ? "" : group.getGroupId());
+        if (group == null) {
+            out.writeInt(expense.getParticipants().size());
+            for (User participant : expense.getParticipants()) {
+                writeString(out, participant.getUserId());
+            }
+        } else {
+            out.writeInt(0);
+        }
+
+        out.writeInt(expense.getSplitValues().size());
+        for (Double value : expense.getSplitValues()) {
+            out.writeDouble(value);
+        }
+        out.writeInt(expense.getImageUrls().size());
+        for (String imageUrl : expense.getImageUrls()) {
+            writeString(out, imageUrl);
+        }
+    }
+
+    /**
+     * Decodes the record starting at the buffer's position.
+     */
+    public Expense decode(ByteBuffer in) {
+        String expenseId = readString(in);
+        User paidBy = resolveUser(readString(in));
+        double amount = in.getDouble();
+        String currency = readString(in);
+        double baseRate = in.getDouble();
+        String name = readString(in);
+        String notes = readString(in);
+        String category = readString(in);
+        LocalDateTime createdAt = LocalDateTime.ofEpochSecond(in.getLong(), in.getInt(), ZoneOffset.UTC);
+        Expense.SplitType splitType = SPLIT_TYPES[in.get()];
+
+        String groupId = readString(in);
+        ParticipantGroup group = null;
+        List<User> participants;
+        int participantCount = in.getInt();
+        if (groupId.isEmpty()) {
+            participants = new ArrayList<>(participantCount);
+            for (int i = 0; i < participantCount; i++) {
+                participants.add(resolveUser(readString(in)));
+            }
+        } else {
+            group = groupResolver.apply(groupId);
+            if (group == null) {
+                throw new IllegalStateException("Unknown group in expense segment: " + groupId);
+            }
+            participants = group.getMembers();
+        }
+
+        int splitValueCount = in.getInt();
+        List<Double> splitValues = new ArrayList<>(splitValueCount);
+        for (int i = 0; i < splitValueCount; i++) {
+            splitValues.add(in.getDouble());
+        }
+
+        Expense expense = new Expense(expenseId, paidBy, amount, name, splitType, participants, splitValues);
+        expense.setCurrency(currency);
+        expense.setBaseRate(baseRate);
+        expense.setNotes(notes);
+        expense.setCategory(category);
+        expense.setCreatedAt(createdAt);
+        expense.setParticipantGroup(group);
+        int imageCount = in.getInt();
+        for (int i = 0; i < imageCount; i++) {
+            expense.addImageUrl(readString(in));
+        }
+        return expense;
+    }
+
+    /**
+     * Reads only the expense id of the record starting at the buffer's position.
+     */
+    public String decodeId(ByteBuffer in) {
+        return readString(in);
+    }
+
+    private User resolveUser(String userId) {
+        User user = userResolver.apply(userId);
+        if (user == null) {
+            throw new IllegalStateException("Unknown user in expense segment: " + userId);
+        }
+        return user;
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer in) {
+        byte[] bytes = new byte[in.getInt()];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,191 @@
+package storage;
+
+import model.Expense;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Immutable, memory-mapped file holding a contiguous range of expenses.
+ *
+ * Layout:
+ * <pre>
+ * header   magic, version, record count, first ordinal, offsets position, id table position
+ * records  encoded expenses in ordinal order
+ * offsets  one long per record with its position in the file
+ * id table (id hash, record index) pairs sorted by hash
+ * </pre>
+ * Only every {@value #SPARSE_INTERVAL}th id table hash is kept on the heap; a lookup
+ * binary-searches that sparse index and scans one block of the mapped table.
+ */
+public class ExpenseSegment {
+    private static final int MAGIC = 0x45585347; // "EXSG"
+    private static final int VERSION = 2; // 2: records carry the category and the base rate
+    private static final int HEADER_SIZE = 32;
+    private static final int ID_ENTRY_SIZE = 12;
+    private static final int SPARSE_INTERVAL = 64;
+
+    private final Path path;
+    private final MappedByteBuffer buffer;
+    private final int recordCount;
+    private final int firstOrdinal;
+    private final long offsetsPosition;
+    private final long idTablePosition;
+    private final long[] sparseHashes;
+
+    private ExpenseSegment(Path path, MappedByteBuffer buffer) {
+        this.path = path;
+        this.buffer = buffer;
+        if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+            throw new IllegalStateException("Not an expense segment: " + path);
+        }
+        this.recordCount = buffer.getInt(8);
+        this.firstOrdinal = buffer.getInt(12);
+        this.offsetsPosition = buffer.getLong(16);
+        this.idTablePosition = buffer.getLong(24);
+
+        this.sparseHashes = new long[(recordCount + SPARSE_INTERVAL - 1) / SPARSE_INTERVAL];
+        for (int i = 0; i < sparseHashes.length; i++) {
+            sparseHashes[i] = buffer.getLong((int) (idTablePosition + (long) i * SPARSE_INTERVAL * ID_ENTRY_SIZE));
+        }
+    }
+
+    /**
+     * Writes expenses with consecutive ordinals starting at firstOrdinal to a segment file,
+     * replacing its contents if it exists.
+     */
+    public static ExpenseSegment write(Path path, List<Expense> expenses, int firstOrdinal,
+                                       ExpenseCodec codec) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.write(new byte[HEADER_SIZE]);
+
+        long[] offsets = new long[expenses.size()];
+        for (int i = 0; i < expenses.size(); i++) {
+            offsets[i] = out.size();
+            codec.encode(expenses.get(i), out);
+        }
+
+        long offsetsPosition = out.size();
+        for (long offset : offsets) {
+            out.writeLong(offset);
+        }
+
+        long idTablePosition = out.size();
+        Integer[] order = new Integer[expenses.size()];
+        long[] hashes = new long[expenses.size()];
+        for (int i = 0; i < expenses.size(); i++) {
+            order[i] = i;
+            hashes[i] = hash(expenses.get(i).getExpenseId());
+        }
+        Arrays.sort(order, Comparator.comparingLong(i -> hashes[i]));
+        for (int index : order) {
+            out.writeLong(hashes[index]);
+            out.writeInt(index);
+        }
+        out.flush();
+
+        ByteBuffer contents = ByteBuffer.wrap(bytes.toByteArray());
+        contents.putInt(0, MAGIC);
+        contents.putInt(4, VERSION);
+        contents.putInt(8, expenses.size());
+        contents.putInt(12, firstOrdinal);
+        contents.putLong(16, offsetsPosition);
+        contents.putLong(24, idTablePosition);
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            while (contents.hasRemaining()) {
+                channel.write(contents);
+            }
+            FileSync.force(channel, path);
+        }
+        return open(path);
+    }
+
+    public static ExpenseSegment open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return new ExpenseSegment(path, channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    public int getFirstOrdinal() {
+        return firstOrdinal;
+    }
+
+    public int getRecordCount() {
+        return recordCount;
+    }
+
+    public boolean containsOrdinal(int ordinal) {
+        return ordinal >= firstOrdinal && ordinal < firstOrdinal + recordCount;
+    }
+
+    public Expense read(int ordinal, ExpenseCodec codec) {
+        return codec.decode(recordAt(ordinal - firstOrdinal));
+    }
+
+    /**
+     * Returns the ordinal of the expense with the given id, or -1 if it is not in this segment.
+     */
+    public int findOrdinal(String expenseId, ExpenseCodec codec) {
+        long target = hash(expenseId);
+        int block = Arrays.binarySearch(sparseHashes, target);
+        if (block < 0) {
+            block = -block - 2;
+        } else {
+            // Equal hashes may start in an earlier block
+            while (block > 0 && sparseHashes[block - 1] == target) {
+                block--;
+            }
+            block--;
+        }
+        int entry = Math.max(block, 0) * SPARSE_INTERVAL;
+
+        for (; entry < recordCount; entry++) {
+            int position = (int) (idTablePosition + (long) entry * ID_ENTRY_SIZE);
+            long entryHash = buffer.getLong(position);
+            if (entryHash > target) {
+                break;
+            }
+            if (entryHash == target) {
+                int index = buffer.getInt(position + 8);
+                if (codec.decodeId(recordAt(index)).equals(expenseId)) {
+                    return firstOrdinal + index;
+                }
+            }
+        }
+        return -1;
+    }
+
+    private ByteBuffer recordAt(int index) {
+        long offset = buffer.getLong((int) (offsetsPosition + (long) index * 8));
+        ByteBuffer record = buffer.duplicate();
+        record.position((int) offset);
+        return record;
+    }
+
+    private static long hash(String value) {
+        // 64-bit FNV-1a
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < value.length(); i++) {
+            hash ^= value.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+}
@@ -0,0 +1,321 @@
+package storage;
+
+import model.Expense;
+import model.ExpenseId;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Expense storage addressed by ordinal (position in creation order).
+ *
+ * By default every expense stays on the heap. Once tiering is enabled, the oldest expenses
+ * are spilled to immutable memory-mapped segment files whenever the hot tier would grow past twice
+ * its limit. The spill happens before the new expense is appended, so a failed spill leaves the
+ * store unchanged. Segment files get unique names, so files left in the directory by an earlier
+ * run are never overwritten or reused. Cold reads go through a small LRU cache of decoded expenses.
+ * A cold expense that is fetched for update is pinned on the heap so that the change is not lost;
+ * once hotLimit expenses are pinned, the segments holding them are rewritten with the changes and
+ * the pins released.
+ *
+ * Hot expenses with generated ids (see {@link ExpenseId}) are looked up by their numeric id in a
+ * sorted primitive index; other ids fall back to a hash map. Generated ids that arrived in order
+ * increase with the ordinal, so for cold expenses a sparse index holding the last such id of each
+ * segment picks the one segment to search. Only segments that also hold other ids are scanned.
+ */
+public class ExpenseStore {
+    private final List<Expense> hot;
+    private final LongOrdinalIndex hotIdOrdinals;
+    private final Map<String, Integer> hotOrdinals; // ids that are not generated or arrived out of order
+    private int hotStart;
+    private final Map<Integer, Expense> pinned;
+    private final List<ExpenseSegment> segments;
+    private long[] segmentLastIds; // last in-order generated id up to and including each segment
+    private final BitSet irregularSegments; // segments holding ids not covered by segmentLastIds
+
+    private Path directory;
+    private int hotLimit;
+    private ExpenseCodec codec;
+    private Map<Integer, Expense> coldCache;
+
+    public ExpenseStore() {
+        this.hot = new ArrayList<>();
+        this.hotIdOrdinals = new LongOrdinalIndex();
+        this.hotOrdinals = new HashMap<>();
+        this.hotStart = 0;
+        this.pinned = new HashMap<>();
+        this.segments = new ArrayList<>();
+        this.segmentLastIds = new long[16];
+        this.irregularSegments = new BitSet();
+    }
+
+    /**
+     * Enables spilling to segment files in the given directory.
+     *
+     * @param hotLimit  Number of most recent expenses kept on the heap after a spill
+     * @param cacheSize Number of decoded cold expenses kept in the LRU cache
+     */
+    public void enableTiering(Path directory, int hotLimit, int cacheSize, ExpenseCodec codec) throws IOException {
+        if (hotLimit <= 0) {
+            throw new IllegalArgumentException("Hot tier limit must be positive");
+        }
+        if (cacheSize < 0) {
+            throw new IllegalArgumentException("Cache size cannot be negative");
+        }
+        Files.createDirectories(directory);
+        this.directory = directory;
+        this.hotLimit = hotLimit;
+        this.codec = codec;
+        this.coldCache = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, Expense> eldest) {
+                return size() > cacheSize;
+            }
+        };
+        if (hot.size() >= 2 * hotLimit) {
+            spill(hot.size() - hotLimit);
+        }
+    }
+
+    public boolean isTieringEnabled() {
+        return codec != null;
+    }
+
+    /**
+     * Appends an expense and returns its ordinal.
+     *
+     * @throws UncheckedIOException if older expenses had to be spilled and the segment could not
+     *                              be written; the expense is not stored
+     */
+    public int add(Expense expense) {
+        if (isTieringEnabled() && hot.size() + 1 >= 2 * hotLimit) {
+            spill(hot.size() + 1 - hotLimit);
+        }
+        int ordinal = size();
+        hot.add(expense);
+        long id = ExpenseId.parse(expense.getExpenseId());
+        if (id < 0 || !hotIdOrdinals.append(id, ordinal)) {
+            hotOrdinals.put(expense.getExpenseId(), ordinal);
+        }
+        return ordinal;
+    }
+
+    public int size() {
+        return hotStart + hot.size();
+    }
+
+    public int getHotCount() {
+        return hot.size();
+    }
+
+    public int getSegmentCount() {
+        return segments.size();
+    }
+
+    public Expense get(String expenseId) {
+        int ordinal = ordinalOf(expenseId);
+        return ordinal < 0 ? null : getAt(ordinal);
+    }
+
+    /**
+     * Returns the ordinal of the expense with the given id, or -1 if it does not exist.
+     */
+    public int ordinalOf(String expenseId) {
+        long id = ExpenseId.parse(expenseId);
+        if (id >= 0) {
+            int found = hotIdOrdinals.find(id);
+            if (found >= 0) {
+                return found;
+            }
+        }
+        // Pinned expenses keep their ids, so the segment lookup below still finds them
+        Integer ordinal = hotOrdinals.get(expenseId);
+        if (ordinal != null) {
+            return ordinal;
+        }
+        if (id >= 0) {
+            int candidate = firstSegmentReaching(id);
+            if (candidate >= 0) {
+                int found = segments.get(candidate).findOrdinal(expenseId, codec);
+                if (found >= 0) {
+                    return found;
+                }
+            }
+        }
+        for (int i = irregularSegments.previousSetBit(segments.size() - 1); i >= 0;
+             i = irregularSegments.previousSetBit(i - 1)) {
+            int found = segments.get(i).findOrdinal(expenseId, codec);
+            if (found >= 0) {
+                return found;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the first segment whose last in-order id is at least the given id, or -1 if none.
+     */
+    private int firstSegmentReaching(long id) {
+        int low = 0;
+        int high = segments.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (segmentLastIds[mid] < id) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low < segments.size() ? low : -1;
+    }
+
+    public Expense getAt(int ordinal) {
+        if (ordinal < 0 || ordinal >= size()) {
+            throw new IndexOutOfBoundsException("Expense ordinal out of range: " + ordinal);
+        }
+        if (ordinal >= hotStart) {
+            return hot.get(ordinal - hotStart);
+        }
+        Expense expense = pinned.get(ordinal);
+        if (expense == null) {
+            expense = coldCache.get(ordinal);
+        }
+        if (expense == null) {
+            expense = segments.get(segmentIndexFor(ordinal)).read(ordinal, codec);
+            coldCache.put(ordinal, expense);
+        }
+        return expense;
+    }
+
+    /**
+     * Returns an expense that the caller is going to modify. Cold expenses are pinned on the heap.
+     */
+    public Expense getForUpdate(int ordinal) {
+        if (ordinal >= 0 && ordinal < hotStart && !pinned.containsKey(ordinal) && pinned.size() >= hotLimit) {
+            unpinAll();
+        }
+        Expense expense = getAt(ordinal);
+        if (ordinal < hotStart && !pinned.containsKey(ordinal)) {
+            coldCache.remove(ordinal);
+            pinned.put(ordinal, expense);
+        }
+        return expense;
+    }
+
+    /**
+     * Visits every expense in creation order. Cold expenses are decoded sequentially
+     * without going through the LRU cache.
+     */
+    public void forEach(Consumer<Expense> action) {
+        for (ExpenseSegment segment : segments) {
+            int end = segment.getFirstOrdinal() + segment.getRecordCount();
+            for (int ordinal = segment.getFirstOrdinal(); ordinal < end; ordinal++) {
+                Expense expense = pinned.get(ordinal);
+                action.accept(expense != null ? expense : segment.read(ordinal, codec));
+            }
+        }
+        for (Expense expense : hot) {
+            action.accept(expense);
+        }
+    }
+
+    /**
+     * Writes the oldest count hot expenses to a new segment and drops them from the heap.
+     */
+    private void spill(int count) {
+        List<Expense> spilled = hot.subList(0, count);
+        long lastId = segments.isEmpty() ? Long.MIN_VALUE : segmentLastIds[segments.size() - 1];
+        boolean irregular = false;
+        for (int i = 0; i < count; i++) {
+            long id = ExpenseId.parse(spilled.get(i).getExpenseId());
+            if (id >= 0 && hotIdOrdinals.find(id) == hotStart + i) {
+                lastId = id;
+            } else {
+                irregular = true;
+            }
+        }
+        ExpenseSegment segment = writeSegment(spilled, hotStart);
+        if (segments.size() == segmentLastIds.length) {
+            segmentLastIds = Arrays.copyOf(segmentLastIds, segmentLastIds.length * 2);
+        }
+        segmentLastIds[segments.size()] = lastId;
+        irregularSegments.set(segments.size(), irregular);
+        segments.add(segment);
+        for (Expense expense : spilled) {
+            hotOrdinals.remove(expense.getExpenseId());
+        }
+        spilled.clear();
+        hotStart += count;
+        hotIdOrdinals.dropBelow(hotStart);
+    }
+
+    /**
+     * Rewrites every segment holding a pinned expense with the pinned version and releases the pins.
+     */
+    private void unpinAll() {
+        BitSet touched = new BitSet();
+        for (int ordinal : pinned.keySet()) {
+            touched.set(segmentIndexFor(ordinal));
+        }
+        for (int i = touched.nextSetBit(0); i >= 0; i = touched.nextSetBit(i + 1)) {
+            ExpenseSegment old = segments.get(i);
+            List<Expense> expenses = new ArrayList<>(old.getRecordCount());
+            int end = old.getFirstOrdinal() + old.getRecordCount();
+            for (int ordinal = old.getFirstOrdinal(); ordinal < end; ordinal++) {
+                Expense expense = pinned.get(ordinal);
+                expenses.add(expense != null ? expense : old.read(ordinal, codec));
+            }
+            segments.set(i, writeSegment(expenses, old.getFirstOrdinal()));
+            try {
+                Files.deleteIfExists(old.getPath());
+            } catch (IOException e) {
+                // Some platforms refuse to delete a mapped file; the new segment supersedes it
+            }
+        }
+        pinned.clear();
+    }
+
+    private ExpenseSegment writeSegment(List<Expense> expenses, int firstOrdinal) {
+        Path file = null;
+        try {
+            file = Files.createTempFile(directory, String.format("expenses-%010d-", firstOrdinal), ".seg");
+            return ExpenseSegment.write(file, expenses, firstOrdinal, codec);
+        } catch (IOException e) {
+            if (file != null) {
+                try {
+                    Files.deleteIfExists(file);
+                } catch (IOException suppressed) {
+                    e.addSuppressed(suppressed);
+                }
+            }
+            throw new UncheckedIOException("Failed to write expenses to a segment in " + directory, e);
+        }
+    }
+
+    private int segmentIndexFor(int ordinal) {
+        int low = 0;
+        int high = segments.size() - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            ExpenseSegment segment = segments.get(mid);
+            if (ordinal < segment.getFirstOrdinal()) {
+                high = mid - 1;
+            } else if (!segment.containsOrdinal(ordinal)) {
+                low = mid + 1;
+            } else {
+                return mid;
+            }
+        }
+        throw new IllegalStateException("No segment holds expense ordinal " + ordinal);
+    }
+}
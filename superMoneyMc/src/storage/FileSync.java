@@ -0,0 +1,30 @@
+package storage;
+
+import telemetry.FsyncEvent;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+
+/**
+ * Flushes storage files to disk and records each flush as an {@link FsyncEvent}.
+ */
+final class FileSync {
+    private FileSync() {
+    }
+
+    /**
+     * Flushes a written file's contents and metadata to disk.
+     */
+    static void force(FileChannel channel, Path path) throws IOException {
+        FsyncEvent event = new FsyncEvent();
+        event.begin();
+        channel.force(true);
+        event.end();
+        if (event.shouldCommit()) {
+            event.path = path.toString();
+            event.bytes = channel.size();
+            event.commit();
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package storage;
+
+import java.util.Arrays;
+
+/**
+ * Maps increasing primitive ids to increasing ordinals using two parallel sorted arrays.
+ * Entries are appended in order and dropped from the front, so lookups are a binary search
+ * and no object is allocated per entry.
+ */
+class LongOrdinalIndex {
+    private long[] ids;
+    private int[] ordinals;
+    private int start;
+    private int end;
+    private long last; // largest id ever appended, kept after its entry is dropped
+
+    LongOrdinalIndex() {
+        this.ids = new long[16];
+        this.ordinals = new int[16];
+        this.last = Long.MIN_VALUE;
+    }
+
+    /**
+     * Appends an entry if the id is greater than every id appended before, including dropped ones.
+     *
+     * @return false if the id is out of order and was not added
+     */
+    boolean append(long id, int ordinal) {
+        if (id <= last) {
+            return false;
+        }
+        last = id;
+        if (end == ids.length) {
+            grow();
+        }
+        ids[end] = id;
+        ordinals[end] = ordinal;
+        end++;
+        return true;
+    }
+
+    /**
+     * Returns the ordinal for the id, or -1 if it is not present.
+     */
+    int find(long id) {
+        int index = Arrays.binarySearch(ids, start, end, id);
+        return index < 0 ? -1 : ordinals[index];
+    }
+
+    /**
+     * Drops every entry whose ordinal is below the given one.
+     */
+    void dropBelow(int ordinal) {
+        while (start < end && ordinals[start] < ordinal) {
+            start++;
+        }
+    }
+
+    int size() {
+        return end - start;
+    }
+
+    private void grow() {
+        int live = end - start;
+        int capacity = live * 2 < ids.length ? ids.length : ids.length * 2;
+        long[] newIds = capacity == ids.length ? ids : new long[capacity];
+        int[] newOrdinals = capacity == ordinals.length ? ordinals : new int[capacity];
+        System.arraycopy(ids, start, newIds, 0, live);
+        System.arraycopy(ordinals, start, newOrdinals, 0, live);
+        ids = newIds;
+        ordinals = newOrdinals;
+        start = 0;
+        end = live;
+    }
+}
@@ -3,8 +3,6 @@ package strategy;
 import model.Expense;
 import model.User;
 
-import java.math.BigDecimal;
-import java.math.RoundingMode;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -24,9 +22,7 @@ public class EqualSplitStrategy implements SplitStrategy {
         double sharePerPerson = amount / participantCount;
         
         // Round to 2 decimal places
-        BigDecimal bd = new BigDecimal(sharePerPerson);
-        bd = bd.setScale(2, RoundingMode.HALF_UP);
-        double roundedShare = bd.doubleValue();
+        double roundedShare = SplitKernel.roundToTwoDecimals(sharePerPerson);
 
         // Distribute the amount ensuring total equals the expense amount
         double totalDistributed = 0.0;
@@ -36,16 +32,10 @@ public class EqualSplitStrategy implements SplitStrategy {
         }
         
         // Last person gets the remaining amount to ensure exact total
-        double lastPersonShare = roundToTwoDecimals(amount - totalDistributed);
+        double lastPersonShare = SplitKernel.roundToTwoDecimals(amount - totalDistributed);
         splitMap.put(participants.get(participantCount - 1), lastPersonShare);
 
         return splitMap;
     }
-
-    private double roundToTwoDecimals(double value) {
-        BigDecimal bd = new BigDecimal(value);
-        bd = bd.setScale(2, RoundingMode.HALF_UP);
-        return bd.doubleValue();
-    }
 }
 
@@ -3,8 +3,6 @@ package strategy;
 import model.Expense;
 import model.User;
 
-import java.math.BigDecimal;
-import java.math.RoundingMode;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -34,27 +32,20 @@ public class PercentSplitStrategy implements SplitStrategy {
                     String.format("Sum of percentages (%.2f) does not equal 100", sumPercent));
         }
 
-        Map<User, Double> splitMap = new HashMap<>();
-        double totalDistributed = 0.0;
-        
-        for (int i = 0; i < participants.size() - 1; i++) {
-            double percent = splitValues.get(i);
-            double amount = roundToTwoDecimals((totalAmount * percent) / 100.0);
-            splitMap.put(participants.get(i), amount);
-            totalDistributed += amount;
+        // Shares are rounded in cents on primitive arrays; see SplitKernel
+        int count = participants.size();
+        double[] weights = new double[count];
+        for (int i = 0; i < count; i++) {
+            weights[i] = splitValues.get(i);
         }
-        
-        // Last person gets the remaining amount to ensure exact total
-        double lastPersonAmount = roundToTwoDecimals(totalAmount - totalDistributed);
-        splitMap.put(participants.get(participants.size() - 1), lastPersonAmount);
+        long[] cents = new long[count];
+        SplitKernel.split(totalAmount, 100.0, weights, 0, count, cents);
 
+        Map<User, Double> splitMap = new HashMap<>();
+        for (int i = 0; i < count; i++) {
+            splitMap.put(participants.get(i), cents[i] / 100.0);
+        }
         return splitMap;
     }
-
-    private double roundToTwoDecimals(double value) {
-        BigDecimal bd = new BigDecimal(value);
-        bd = bd.setScale(2, RoundingMode.HALF_UP);
-        return bd.doubleValue();
-    }
 }
 
@@ -0,0 +1,61 @@
+package strategy;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * Proportional split arithmetic on primitive arrays, shared by {@link PercentSplitStrategy} and
+ * {@link ShareSplitStrategy}. Each share is (amount * weight) / divisor rounded half-up to cents,
+ * and the last participant gets the rounded remainder. Results are bit-identical to rounding each
+ * share with {@code new BigDecimal(value).setScale(2, RoundingMode.HALF_UP)}. The BigDecimal
+ * path is only taken for values within rounding error of a half cent.
+ */
+public final class SplitKernel {
+    private static final double MAX_FAST_CENTS = 1e15; // well inside the exact long and double range
+
+    private SplitKernel() {
+    }
+
+    /**
+     * Splits one expense. Fills cents[from..to) with each participant's share in cents.
+     *
+     * @param weights Percentages or share values, one per participant
+     * @param divisor 100 for percentages, the total of the share values for shares
+     */
+    public static void split(double amount, double divisor, double[] weights, int from, int to, long[] cents) {
+        if (from >= to) {
+            return;
+        }
+        double distributed = 0.0;
+        for (int i = from; i < to - 1; i++) {
+            long share = roundToCents((amount * weights[i]) / divisor);
+            cents[i] = share;
+            distributed += share / 100.0;
+        }
+        cents[to - 1] = roundToCents(amount - distributed);
+    }
+
+    /**
+     * Rounds half-up (away from zero) to cents, judged on the exact binary value like BigDecimal.
+     */
+    public static long roundToCents(double value) {
+        double scaled = Math.abs(value) * 100.0;
+        if (scaled < MAX_FAST_CENTS) {
+            double whole = Math.floor(scaled);
+            double fraction = scaled - whole;
+            // scaled is within half an ulp of the exact product, so this side of the half cent is certain
+            if (Math.abs(fraction - 0.5) > Math.ulp(scaled)) {
+                long cents = (long) whole + (fraction > 0.5 ? 1 : 0);
+                return value < 0 ? -cents : cents;
+            }
+        }
+        return new BigDecimal(value).setScale(2, RoundingMode.HALF_UP).unscaledValue().longValueExact();
+    }
+
+    /**
+     * Rounds half-up to two decimals; identical to the BigDecimal rounding the strategies used before.
+     */
+    public static double roundToTwoDecimals(double value) {
+        return roundToCents(value) / 100.0;
+    }
+}
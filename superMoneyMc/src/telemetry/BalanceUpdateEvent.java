@@ -0,0 +1,21 @@
+package telemetry;
+
+import jdk.jfr.Category;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * One split applied to the pairwise and net-position ledgers.
+ */
+@Name("supermoney.BalanceUpdate")
+@Label("Balance Update")
+@Category({"SuperMoney", "Ledger"})
+@StackTrace(false)
+public class BalanceUpdateEvent extends jdk.jfr.Event {
+    @Label("Participants")
+    public int participantCount;
+
+    @Label("Dust Sweep")
+    public boolean swept;
+}
@@ -0,0 +1,28 @@
+package telemetry;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * One command processed by the app, from parsing to the end of its handler.
+ */
+@Name("supermoney.Command")
+@Label("Command")
+@Category({"SuperMoney", "App"})
+@StackTrace(false)
+public class CommandEvent extends jdk.jfr.Event {
+    @Label("Action")
+    public String action;
+
+    @Label("Arguments")
+    public int argumentCount;
+
+    @Label("Parse Time")
+    @Description("Time spent tokenizing the command line")
+    @Timespan(Timespan.NANOSECONDS)
+    public long parseNanos;
+}
@@ -0,0 +1,21 @@
+package telemetry;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * One fsync of a file written by the storage layer.
+ */
+@Name("supermoney.Fsync")
+@Label("Fsync")
+@Category({"SuperMoney", "Storage"})
+public class FsyncEvent extends jdk.jfr.Event {
+    @Label("Path")
+    public String path;
+
+    @Label("Size")
+    @DataAmount
+    public long bytes;
+}
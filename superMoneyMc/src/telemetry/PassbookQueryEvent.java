@@ -0,0 +1,21 @@
+package telemetry;
+
+import jdk.jfr.Category;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * One scan of the expense store for a user's passbook.
+ */
+@Name("supermoney.PassbookQuery")
+@Label("Passbook Query")
+@Category({"SuperMoney", "Query"})
+@StackTrace(false)
+public class PassbookQueryEvent extends jdk.jfr.Event {
+    @Label("User")
+    public String userId;
+
+    @Label("Entries")
+    public int entryCount;
+}
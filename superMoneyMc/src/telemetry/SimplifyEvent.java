@@ -0,0 +1,22 @@
+package telemetry;
+
+import jdk.jfr.Category;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * One simplification run over the whole ledger or a single balance component.
+ */
+@Name("supermoney.Simplify")
+@Label("Simplification")
+@Category({"SuperMoney", "Ledger"})
+public class SimplifyEvent extends jdk.jfr.Event {
+    @Label("Mode")
+    public String mode;
+
+    @Label("Nodes")
+    public int nodeCount;
+
+    @Label("Edges")
+    public int edgeCount;
+}
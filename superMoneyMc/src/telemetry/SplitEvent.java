@@ -0,0 +1,27 @@
+package telemetry;
+
+import jdk.jfr.Category;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * One split calculated by a {@link strategy.SplitStrategy}.
+ */
+@Name("supermoney.Split")
+@Label("Split Calculation")
+@Category({"SuperMoney", "Ledger"})
+@StackTrace(false)
+public class SplitEvent extends jdk.jfr.Event {
+    @Label("Split Type")
+    public String splitType;
+
+    @Label("Strategy")
+    public String strategy;
+
+    @Label("Participants")
+    public int participantCount;
+
+    @Label("Currency")
+    public String currency;
+}
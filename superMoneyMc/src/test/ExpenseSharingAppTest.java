@@ -2,16 +2,66 @@ package test;
 
 import app.ExpenseSharingApp;
 import factory.UserFactory;
+import fx.FixedFxRateProvider;
 import model.Expense;
+import model.ExpenseId;
+import model.NetPosition;
+import model.PairContribution;
+import model.SearchPage;
+import model.SpendTotals;
 import model.Transaction;
 import model.User;
+import recurring.RecurringExpenseScheduler;
+import service.ArrayBalanceEngine;
+import service.DebtFlowGraph;
+import service.ExpenseIdGenerator;
 import service.ExpenseService;
+import service.IdempotencyCache;
+import service.LedgerInvariantChecker;
+import service.ShadowLedger;
+import service.StripedBalanceCells;
 import service.UserService;
+import storage.BalanceExporter;
+import storage.BalanceFormat;
+import storage.BalanceImporter;
+import storage.BalanceSnapshot;
+import storage.ExpenseStore;
+import strategy.SplitKernel;
+import workload.AllocationBudget;
+import workload.AllocationReport;
+import workload.ReplayReport;
+import workload.Workload;
+import workload.WorkloadConfig;
+import workload.WorkloadGenerator;
+import workload.WorkloadReplayer;
 
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.PrintStream;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
 
 /**
  * Unit tests for Expense Sharing Application.
@@ -428,6 +478,1483 @@ public class ExpenseSharingAppTest {
         // u2 should owe u1: 50 + 100 = 150
         assertEquals(150.0, balances.get("u2").get("u1").getAmount(), 0.01);
     }
+
+    // ========== Net Position Index Tests ==========
+
+    // @Test
+    public void testTopDebtorsAndCreditors() {
+        app.processCommand("EXPENSE u1 1000 4 u1 u2 u3 u4 EQUAL");
+        app.processCommand("EXPENSE u1 1250 2 u2 u3 EXACT 370 880");
+
+        List<NetPosition> creditors = expenseService.getTopCreditors(1);
+        assertEquals(1, creditors.size());
+        assertEquals("u1", creditors.get(0).getUserId());
+        assertEquals(2000.0, creditors.get(0).getAmount(), 0.01);
+
+        List<NetPosition> debtors = expenseService.getTopDebtors(2);
+        assertEquals(2, debtors.size());
+        assertEquals("u3", debtors.get(0).getUserId());
+        assertEquals(-1130.0, debtors.get(0).getAmount(), 0.01);
+        assertEquals("u2", debtors.get(1).getUserId());
+
+        app.processCommand("TOP DEBTORS 1");
+        assertTrue(outputStream.toString().contains("u3 owes: 1130"));
+    }
+
+    // @Test
+    public void testNetPositionRangeQuery() {
+        app.processCommand("EXPENSE u1 1000 4 u1 u2 u3 u4 EQUAL");
+        app.processCommand("EXPENSE u4 1200 4 u1 u2 u3 u4 PERCENT 40 20 20 20");
+
+        // u1: +750 - 480 = 270, u2: -490, u3: -490, u4: +900 - 250 = 710
+        List<NetPosition> range = expenseService.getNetPositionsInRange(-500, 300);
+        assertEquals(3, range.size());
+        assertEquals(-490.0, range.get(0).getAmount(), 0.01);
+        assertEquals("u1", range.get(2).getUserId());
+        assertEquals(270.0, expenseService.getNetPosition("u1"), 0.01);
+    }
+
+    // @Test
+    public void testSettlementPlan() {
+        app.processCommand("EXPENSE u2 250 2 u1 u2 EQUAL");
+        app.processCommand("EXPENSE u3 200 2 u2 u3 EQUAL");
+
+        // u1: -125, u2: +125 - 100 = 25, u3: +100
+        List<Transaction> plan = expenseService.getSettlementPlan();
+        assertEquals(2, plan.size());
+        double total = 0.0;
+        for (Transaction t : plan) {
+            assertEquals("u1", t.getFromUser().getUserId());
+            total += t.getAmount();
+        }
+        assertEquals(125.0, total, 0.01);
+    }
+
+    // ========== Multi-Currency Tests ==========
+
+    // @Test
+    public void testMultiCurrencyExpense() {
+        FixedFxRateProvider rates = new FixedFxRateProvider();
+        rates.setRate("USD", "INR", 80.0);
+        ExpenseSharingApp fxApp = new ExpenseSharingApp(rates);
+        fxApp.addUser(u1);
+        fxApp.addUser(u2);
+        ExpenseService fxService = fxApp.getExpenseService();
+
+        fxApp.processCommand("EXPENSE u1 100 2 u1 u2 EQUAL Dinner --currency USD");
+
+        // Base-currency ledger holds the converted amount, the USD sub-ledger the original one
+        assertEquals(4000.0, fxService.getAllBalances().get("u2").get("u1").getAmount(), 0.01);
+        assertEquals(50.0, fxService.getCurrencyNet("USD", "u1", "u2"), 0.01);
+        assertEquals(-50.0, fxService.getCurrencyNet("USD", "u2", "u1"), 0.01);
+        assertEquals("USD", fxService.getUserPassbook("u1").get(0).getCurrency());
+        assertEquals("Dinner", fxService.getUserPassbook("u1").get(0).getExpenseName());
+
+        fxApp.processCommand("HOME_CURRENCY u2 USD");
+        fxApp.processCommand("SHOW u2");
+        assertTrue(outputStream.toString().contains("u2 owes u1: 50 USD"));
+
+        // Home-currency totals are updated incrementally after the first read
+        fxApp.processCommand("EXPENSE u1 800 2 u1 u2 EQUAL");
+        assertEquals(-55.0, fxService.getHomeCurrencyBalances("u2").get("u1"), 0.01);
+    }
+
+    // @Test
+    public void testUnknownCurrencyRejected() {
+        app.processCommand("EXPENSE u1 100 2 u1 u2 EQUAL --currency XYZ");
+
+        String output = outputStream.toString();
+        assertTrue(output.contains("No FX rate"));
+        assertTrue(expenseService.getUserPassbook("u1").isEmpty());
+    }
+
+    // @Test
+    public void testFxRatesLoadedFromFile() throws Exception {
+        Path file = Files.createTempFile("rates", ".txt");
+        Files.write(file, Arrays.asList("# base rates", "USD INR 80", "", "EUR INR 90"));
+        app.processCommand("FX_RATES " + file);
+        assertTrue(outputStream.toString().contains("Loaded 2 FX rates from " + file));
+
+        app.processCommand("EXPENSE u1 100 2 u1 u2 EQUAL Dinner --currency USD");
+        assertEquals(4000.0, expenseService.getAllBalances().get("u2").get("u1").getAmount(), 0.01);
+        app.processCommand("HOME_CURRENCY u2 INR");
+        assertEquals(-4000.0, expenseService.getHomeCurrencyBalances("u2").get("u1"), 0.01);
+
+        // Reloading replaces rates right away, not at the next rate bucket
+        Files.write(file, Arrays.asList("USD INR 100"));
+        app.processCommand("FX_RATES " + file);
+        assertEquals(-5000.0, expenseService.getHomeCurrencyBalances("u2").get("u1"), 0.01);
+
+        // A bad entry leaves the loaded rates untouched
+        Files.write(file, Arrays.asList("USD INR 50", "EUR INR"));
+        app.processCommand("FX_RATES " + file);
+        assertTrue(outputStream.toString().contains("Error: Invalid rate entry at line 2: EUR INR"));
+        assertEquals(-5000.0, expenseService.getHomeCurrencyBalances("u2").get("u1"), 0.01);
+        Files.delete(file);
+    }
+
+    // ========== Recurring Expense Tests ==========
+
+    // @Test
+    public void testRecurringExpense() {
+        app.processCommand("RECURRING 30 EXPENSE u1 900 3 u1 u2 u3 EQUAL Rent");
+        assertTrue(outputStream.toString().contains("Recurring expense registered: R1"));
+        assertTrue(expenseService.getUserPassbook("u1").isEmpty());
+
+        app.processCommand("TICK 29");
+        assertTrue(expenseService.getUserPassbook("u1").isEmpty());
+
+        app.processCommand("TICK");
+        assertEquals(300.0, expenseService.getAllBalances().get("u2").get("u1").getAmount(), 0.01);
+
+        app.processCommand("TICK 60");
+        List<Expense> passbook = expenseService.getUserPassbook("u2");
+        assertEquals(3, passbook.size());
+        assertEquals("R1-3", passbook.get(2).getExpenseId());
+        assertEquals("Rent", passbook.get(2).getExpenseName());
+        assertEquals(900.0, expenseService.getAllBalances().get("u2").get("u1").getAmount(), 0.01);
+    }
+
+    // @Test
+    public void testRecurringExpenseBatch() {
+        RecurringExpenseScheduler scheduler = app.getRecurringScheduler();
+        app.processCommand("RECURRING 2 EXPENSE u1 100 2 u1 u2 EQUAL");
+        app.processCommand("RECURRING 1 EXPENSE u2 40 2 u1 u2 EXACT 20 20");
+        app.processCommand("RECURRING 600 EXPENSE u3 100 2 u3 u4 PERCENT 50 50");
+        assertEquals(3, scheduler.getTemplateCount());
+
+        // Ticks 1..4: template 1 fires twice, template 2 four times
+        assertEquals(6, scheduler.advance(4));
+        assertEquals(20.0, expenseService.getAllBalances().get("u2").get("u1").getAmount(), 0.01);
+
+        // Deadline beyond one wheel revolution
+        assertEquals(0, expenseService.getUserPassbook("u3").size());
+        scheduler.advance(596);
+        assertEquals(1, expenseService.getUserPassbook("u3").size());
+    }
+
+    // @Test
+    public void testRecurringExpenseInvalidSplit() {
+        app.processCommand("RECURRING 1 EXPENSE u1 100 2 u1 u2 PERCENT 40 40");
+        assertTrue(outputStream.toString().contains("Error"));
+        assertEquals(0, app.getRecurringScheduler().getTemplateCount());
+    }
+
+    // @Test
+    public void testRecurringGroupExpense() {
+        app.processCommand("GROUP trip 3 u1 u2 u3");
+        app.processCommand("RECURRING 1 EXPENSE u1 90 @trip EQUAL Rent");
+        app.processCommand("RECURRING 1 EXPENSE u1 90 @trip SHARE 0 0 0");
+        assertTrue(outputStream.toString().contains("Error"));
+        assertEquals(1, app.getRecurringScheduler().getTemplateCount());
+        assertTrue(app.getRecurringScheduler().getTemplate("R1").getSplit() == null);
+
+        app.processCommand("TICK 2");
+        Expense occurrence = expenseService.getUserPassbook("u2").get(0);
+        assertEquals("R1-1", occurrence.getExpenseId());
+        assertEquals("trip", occurrence.getParticipantGroup().getGroupId());
+        // Occurrences stay compact group splits until a pairwise view is requested
+        assertEquals(0, expenseService.getStoredPairCount());
+        assertEquals(60.0, expenseService.getAllBalances().get("u2").get("u1").getAmount(), 0.01);
+        assertEquals(60.0, expenseService.getAllBalances().get("u3").get("u1").getAmount(), 0.01);
+    }
+
+    // ========== Group Split Tests ==========
+
+    // @Test
+    public void testGroupSplitMatchesPerUserSplit() {
+        ExpenseSharingApp adHocApp = new ExpenseSharingApp();
+        adHocApp.addUser(u1);
+        adHocApp.addUser(u2);
+        adHocApp.addUser(u3);
+        adHocApp.addUser(u4);
+
+        app.processCommand("GROUP g1 4 u1 u2 u3 u4");
+        String[][] commands = {
+            {"EXPENSE u1 100 @g1 EQUAL", "EXPENSE u1 100 4 u1 u2 u3 u4 EQUAL"},
+            {"EXPENSE u1 1000 @g1 EQUAL", "EXPENSE u1 1000 4 u1 u2 u3 u4 EQUAL"},
+            {"EXPENSE u4 1200 @g1 SHARE 2 1 1 1", "EXPENSE u4 1200 4 u1 u2 u3 u4 SHARE 2 1 1 1"},
+            {"EXPENSE u2 10 @g1 SHARE 1 1 1 0", "EXPENSE u2 10 4 u1 u2 u3 u4 SHARE 1 1 1 0"}
+        };
+        for (String[] pair : commands) {
+            app.processCommand(pair[0]);
+            adHocApp.processCommand(pair[1]);
+        }
+
+        ExpenseService adHocService = adHocApp.getExpenseService();
+        for (User user : new User[]{u1, u2, u3, u4}) {
+            Map<String, Transaction> expected = adHocService.getUserBalances(user.getUserId());
+            Map<String, Transaction> actual = expenseService.getUserBalances(user.getUserId());
+            assertEquals(expected.size(), actual.size());
+            for (Map.Entry<String, Transaction> entry : expected.entrySet()) {
+                assertEquals(entry.getValue().getAmount(), actual.get(entry.getKey()).getAmount(), 0.001);
+            }
+            assertEquals(adHocService.getNetPosition(user.getUserId()),
+                    expenseService.getNetPosition(user.getUserId()), 0.001);
+        }
+        assertEquals(4, expenseService.getUserPassbook("u3").size());
+    }
+
+    // @Test
+    public void testGroupSplitLargeGroup() {
+        StringBuilder groupCommand = new StringBuilder("GROUP everyone 1000");
+        for (int i = 0; i < 1000; i++) {
+            String userId = "m" + i;
+            app.addUser(UserFactory.createUser(userId, "Member" + i, userId + "@example.com", "1"));
+            groupCommand.append(' ').append(userId);
+        }
+        app.processCommand(groupCommand.toString());
+        app.processCommand("EXPENSE m0 1000 @everyone EQUAL Offsite");
+        app.processCommand("EXPENSE m0 1000 @everyone EQUAL Offsite");
+
+        // 1000 / 1000 = 1 each; m0's own share is skipped
+        assertEquals(1998.0, expenseService.getNetPosition("m0"), 0.01);
+        assertEquals(-2.0, expenseService.getNetPosition("m999"), 0.01);
+        assertEquals("m0", expenseService.getTopCreditors(1).get(0).getUserId());
+        assertEquals(999, expenseService.getNetPositionsInRange(-2.0, -2.0).size());
+        // Net-position reads do not expand the group into pairs
+        assertEquals(0, expenseService.getStoredPairCount());
+        assertTrue(expenseService.checkInvariants().isEmpty());
+        assertEquals(2.0, expenseService.getAllBalances().get("m999").get("m0").getAmount(), 0.01);
+        assertEquals(999, expenseService.getStoredPairCount());
+        assertEquals(1998.0, expenseService.getNetPosition("m0"), 0.01);
+        assertEquals("everyone", expenseService.getUserPassbook("m500").get(0).getParticipantGroup().getGroupId());
+    }
+
+    // @Test
+    public void testGroupValidation() {
+        app.processCommand("GROUP g1 2 u1 nonexistent");
+        assertTrue(outputStream.toString().contains("User not found"));
+        app.processCommand("EXPENSE u1 100 @missing EQUAL");
+        assertTrue(outputStream.toString().contains("Group not found"));
+        app.processCommand("GROUP g2 2 u1 u2");
+        app.processCommand("EXPENSE u1 100 @g2 SHARE 0 0");
+        assertTrue(outputStream.toString().contains("Total shares cannot be zero"));
+    }
+
+    // ========== Workload Generator Tests ==========
+
+    // @Test
+    public void testWorkloadGeneratorDeterministic() {
+        WorkloadConfig config = new WorkloadConfig().setSeed(7).setUserCount(50).setGroupCount(5).setOperationCount(500);
+        Workload first = new WorkloadGenerator(config).generate();
+        Workload second = new WorkloadGenerator(config).generate();
+        assertEquals(first.getSetupCommands(), second.getSetupCommands());
+        assertEquals(first.getCommands(), second.getCommands());
+
+        Workload other = new WorkloadGenerator(config.setSeed(8)).generate();
+        assertFalse(first.getCommands().equals(other.getCommands()));
+
+        boolean[] seen = new boolean[4];
+        String[] splitTypes = {" EQUAL", " EXACT ", " PERCENT ", " SHARE "};
+        for (String command : first.getCommands()) {
+            for (int i = 0; i < splitTypes.length; i++) {
+                seen[i] |= command.startsWith("EXPENSE") && command.contains(splitTypes[i]);
+            }
+        }
+        for (boolean splitTypeSeen : seen) {
+            assertTrue(splitTypeSeen);
+        }
+    }
+
+    // @Test
+    public void testWorkloadReplay() {
+        Workload workload = new WorkloadGenerator(new WorkloadConfig()
+                .setUserCount(40).setGroupCount(4).setOperationCount(400).setUpdateRatio(0.2)).generate();
+        ExpenseSharingApp replayApp = new ExpenseSharingApp();
+        ReplayReport report = new WorkloadReplayer(replayApp).replay(workload, 0);
+
+        assertEquals(400, report.getOperations());
+        assertEquals(400, report.getOverall().getCount());
+        assertTrue(report.getByCommand().containsKey("EXPENSE"));
+        assertTrue(report.getOverall().percentile(99) >= report.getOverall().percentile(50));
+
+        // Edits resolved to real expense ids
+        boolean edited = false;
+        ExpenseService replayService = replayApp.getExpenseService();
+        for (int i = 0; i < replayService.getExpenseCount(); i++) {
+            edited |= replayService.getExpenseAt(i).getNotes().startsWith("edited-");
+        }
+        assertTrue(edited);
+    }
+
+    // ========== Idempotency Tests ==========
+
+    // @Test
+    public void testIdempotentExpense() {
+        app.processCommand("EXPENSE u1 1000 4 u1 u2 u3 u4 EQUAL --idempotency-key req-1");
+        app.processCommand("EXPENSE u1 1000 4 u1 u2 u3 u4 EQUAL --idempotency-key req-1");
+
+        assertEquals(1, expenseService.getExpenseCount());
+        assertEquals(250.0, expenseService.getAllBalances().get("u2").get("u1").getAmount(), 0.01);
+        String expenseId = expenseService.getExpenseAt(0).getExpenseId();
+        assertTrue(outputStream.toString().contains("Duplicate request, expense already recorded: " + expenseId));
+
+        app.processCommand("EXPENSE u1 1000 4 u1 u2 u3 u4 EQUAL --idempotency-key req-2");
+        assertEquals(2, expenseService.getExpenseCount());
+    }
+
+    // @Test
+    public void testIdempotencyCacheEviction() {
+        long[] now = {0L};
+        Clock clock = new Clock() {
+            public ZoneId getZone() { return ZoneOffset.UTC; }
+            public Clock withZone(ZoneId zone) { return this; }
+            public Instant instant() { return Instant.ofEpochMilli(now[0]); }
+        };
+        IdempotencyCache cache = new IdempotencyCache(2, 1000, clock);
+        cache.put("a", "e1");
+        cache.put("b", "e2");
+        cache.put("c", "e3");
+        assertEquals(null, cache.get("a"));
+        assertEquals("e2", cache.get("b"));
+
+        now[0] = 500;
+        cache.put("d", "e4");
+        assertEquals(2, cache.size());
+
+        now[0] = 1200;
+        // "c" was created at 0 and has expired, "d" is still live
+        assertEquals(null, cache.get("c"));
+        assertEquals("e4", cache.get("d"));
+        assertEquals(1, cache.size());
+    }
+
+    // ========== Expense Search Tests ==========
+
+    // @Test
+    public void testSearchExpenses() {
+        app.processCommand("EXPENSE u1 1000 3 u1 u2 u3 EQUAL Electricity-Bill Monthly-bill");
+        app.processCommand("EXPENSE u2 300 2 u2 u4 EQUAL Water-Bill Quarterly");
+        app.processCommand("EXPENSE u3 90 2 u3 u4 EQUAL Groceries Weekly-shopping");
+
+        SearchPage bills = expenseService.searchExpenses("bill", false, null, 0, 10);
+        assertEquals(2, bills.getTotalMatches());
+        // Newest first
+        assertEquals(expenseService.getExpenseAt(1).getExpenseId(), bills.getExpenseIds().get(0));
+
+        assertEquals(1, expenseService.searchExpenses("bill monthly", false, null, 0, 10).getTotalMatches());
+        assertEquals(1, expenseService.searchExpenses("bill", false, "u4", 0, 10).getTotalMatches());
+        assertEquals(0, expenseService.searchExpenses("groc", false, null, 0, 10).getTotalMatches());
+        assertEquals(1, expenseService.searchExpenses("groc", true, null, 0, 10).getTotalMatches());
+        assertEquals(0, expenseService.searchExpenses("WEEK QUART", true, null, 0, 10).getTotalMatches());
+        assertEquals(1, expenseService.searchExpenses("WEEK GROC", true, null, 0, 10).getTotalMatches());
+        // "w" matches both "water" and "weekly"
+        SearchPage w = expenseService.searchExpenses("w", true, null, 0, 10);
+        assertEquals(2, w.getTotalMatches());
+        assertEquals(expenseService.getExpenseAt(2).getExpenseId(), w.getExpenseIds().get(0));
+        assertEquals(expenseService.getExpenseAt(1).getExpenseId(), w.getExpenseIds().get(1));
+
+        app.processCommand("SEARCH water --user u2");
+        assertTrue(outputStream.toString().contains("Water-Bill"));
+    }
+
+    // @Test
+    public void testSearchFollowsUpdatesAndPages() {
+        for (int i = 0; i < 5; i++) {
+            app.processCommand("EXPENSE u1 100 2 u1 u2 EQUAL Taxi-" + i);
+        }
+        String firstId = expenseService.getExpenseAt(0).getExpenseId();
+
+        SearchPage page0 = expenseService.searchExpenses("taxi", false, null, 0, 2);
+        SearchPage page2 = expenseService.searchExpenses("taxi", false, null, 2, 2);
+        assertEquals(5, page0.getTotalMatches());
+        assertEquals(2, page0.getExpenseIds().size());
+        assertTrue(page0.hasMore());
+        assertEquals(1, page2.getExpenseIds().size());
+        assertEquals(firstId, page2.getExpenseIds().get(0));
+        assertEquals(0, page2.getOrdinal(0));
+        assertEquals(4, page0.getOrdinal(0));
+        assertFalse(page2.hasMore());
+        assertEquals(0, expenseService.searchExpenses("taxi", false, "u3", 0, 2).getTotalMatches());
+        assertEquals(5, expenseService.searchExpenses("taxi", false, "u2", 0, 2).getTotalMatches());
+
+        app.processCommand("SEARCH taxi --page 3");
+        assertTrue(outputStream.toString().contains("No matches on page 3 of 5 matches"));
+        assertFalse(outputStream.toString().contains("Matches 61-60"));
+
+        app.processCommand("UPDATE_EXPENSE " + firstId + " --name Airport-Cab --notes late-flight");
+        assertEquals(4, expenseService.searchExpenses("taxi", false, null, 0, 10).getTotalMatches());
+        SearchPage cab = expenseService.searchExpenses("cab flight", false, null, 0, 10);
+        assertEquals(1, cab.getTotalMatches());
+        assertEquals(firstId, cab.getExpenseIds().get(0));
+    }
+
+    // ========== Tiered Storage Tests ==========
+
+    // @Test
+    public void testTieredStorageSpillsOldExpenses() throws Exception {
+        Path dir = Files.createTempDirectory("expense-segments");
+        app.enableTieredStorage(dir, 10, 4);
+        for (int i = 0; i < 45; i++) {
+            app.processCommand("EXPENSE u" + (i % 3 + 1) + " 100 2 u1 u" + (i % 3 + 2) + " EQUAL Trip-" + i + " day-" + i);
+        }
+        ExpenseStore store = expenseService.getExpenseStore();
+        assertEquals(45, expenseService.getExpenseCount());
+        assertTrue(store.getSegmentCount() > 0);
+        assertTrue(store.getHotCount() < 20);
+
+        // Cold reads by ordinal and by id
+        Expense oldest = expenseService.getExpenseAt(0);
+        assertEquals("Trip-0", oldest.getExpenseName());
+        assertEquals("day-0", expenseService.getExpense(oldest.getExpenseId()).getNotes());
+        assertEquals(null, expenseService.getExpense("missing"));
+        assertEquals(15, expenseService.getUserPassbook("u4").size());
+
+        // Updates to cold expenses survive cache eviction and reach the search index
+        app.processCommand("UPDATE_EXPENSE " + oldest.getExpenseId() + " --notes refunded");
+        for (int i = 1; i < 30; i++) {
+            expenseService.getExpenseAt(i);
+        }
+        assertEquals("refunded", expenseService.getExpense(oldest.getExpenseId()).getNotes());
+        SearchPage refunded = expenseService.searchExpenses("refunded", false, null, 0, 10);
+        assertEquals(1, refunded.getTotalMatches());
+        assertEquals(oldest.getExpenseId(), refunded.getExpenseIds().get(0));
+        assertEquals(1, expenseService.searchExpenses("trip-3", false, null, 0, 10).getTotalMatches());
+    }
+
+    // @Test
+    public void testTieredStorageKeepsGroupsAndCurrencies() throws Exception {
+        FixedFxRateProvider rates = new FixedFxRateProvider();
+        rates.setRate("USD", "INR", 80.0);
+        ExpenseSharingApp fxApp = new ExpenseSharingApp(rates);
+        fxApp.addUser(u1);
+        fxApp.addUser(u2);
+        fxApp.addUser(u3);
+        fxApp.addUser(u4);
+        ExpenseService fxService = fxApp.getExpenseService();
+
+        fxApp.enableTieredStorage(Files.createTempDirectory("expense-segments"), 2, 0);
+        fxApp.processCommand("GROUP trip 3 u1 u2 u3");
+        fxApp.processCommand("EXPENSE u1 90 @trip EQUAL Hotel --currency USD");
+        for (int i = 0; i < 6; i++) {
+            fxApp.processCommand("EXPENSE u2 10 2 u2 u4 EXACT 5 5");
+        }
+        assertTrue(fxService.getExpenseStore().getSegmentCount() > 0);
+        Expense hotel = fxService.getExpenseAt(0);
+        assertEquals("USD", hotel.getCurrency());
+        assertEquals(80.0, hotel.getBaseRate(), 0.0);
+        assertEquals("trip", hotel.getParticipantGroup().getGroupId());
+        assertEquals(3, hotel.getParticipants().size());
+        assertTrue(hotel.involves("u3"));
+        assertEquals(Expense.SplitType.EXACT, fxService.getExpenseAt(1).getSplitType());
+        assertEquals(2400.0, fxService.getAllBalances().get("u2").get("u1").getAmount(), 0.01);
+    }
+
+    // @Test
+    public void testTieredStorageRestartPinsAndFailedSpill() throws Exception {
+        Path dir = Files.createTempDirectory("expense-segments");
+        app.enableTieredStorage(dir, 2, 0);
+        for (int i = 0; i < 6; i++) {
+            app.processCommand("EXPENSE u1 100 2 u1 u2 EQUAL");
+        }
+
+        // A second run on the same directory writes its own segment files
+        setUp();
+        app.enableTieredStorage(dir, 2, 0);
+        for (int i = 0; i < 9; i++) {
+            app.processCommand("EXPENSE u1 100 2 u1 u2 EQUAL Trip-" + i);
+        }
+        ExpenseStore store = expenseService.getExpenseStore();
+        assertEquals(9, expenseService.getExpenseCount());
+        assertTrue(store.getSegmentCount() > 0);
+        assertEquals(-450.0, expenseService.getNetPosition("u2"), 0.01);
+        assertTrue(!outputStream.toString().contains("error"));
+        for (int i = 0; i < 9; i++) {
+            Expense expense = expenseService.getExpenseAt(i);
+            assertEquals(expense.getExpenseName(), expenseService.getExpense(expense.getExpenseId()).getExpenseName());
+        }
+
+        // Editing more cold expenses than the hot limit rewrites their segments instead of pinning them all
+        for (int i = 0; i < 5; i++) {
+            app.processCommand("UPDATE_EXPENSE " + expenseService.getExpenseAt(i).getExpenseId() + " --notes edited-" + i);
+        }
+        for (int i = 0; i < 5; i++) {
+            assertEquals("edited-" + i, expenseService.getExpenseAt(i).getNotes());
+        }
+        assertEquals(1, expenseService.searchExpenses("edited-0", false, null, 0, 10).getTotalMatches());
+
+        // A spill that cannot be written rejects the new expense and leaves the ledger as it was
+        try (java.util.stream.Stream<Path> files = Files.list(dir)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(dir);
+        int before = expenseService.getExpenseCount();
+        for (int i = 0; i < 4; i++) {
+            app.processCommand("EXPENSE u1 100 2 u1 u2 EQUAL Late-" + i);
+        }
+        assertTrue(outputStream.toString().contains("Failed to write expenses to a segment"));
+        int stored = expenseService.getExpenseCount() - before;
+        assertTrue(stored < 4);
+        assertEquals(-450.0 - 50.0 * stored, expenseService.getNetPosition("u2"), 0.01);
+        assertEquals(0, expenseService.searchExpenses("late-" + stored, false, null, 0, 10).getTotalMatches());
+    }
+
+    // ========== Pair History Tests ==========
+
+    // @Test
+    public void testPairHistory() {
+        app.processCommand("EXPENSE u1 1000 4 u1 u2 u3 u4 EQUAL Electricity");
+        app.processCommand("EXPENSE u3 300 3 u1 u2 u3 EQUAL Snacks");
+        app.processCommand("GROUP trip 3 u1 u2 u4");
+        app.processCommand("EXPENSE u2 90 @trip EQUAL Taxi");
+        app.processCommand("EXPENSE u2 250 1 u1 EXACT 250 Settlement");
+
+        List<PairContribution> history = expenseService.getPairHistory("u2", "u1");
+        assertEquals(3, history.size());
+        assertEquals(expenseService.getExpenseAt(0).getExpenseId(), history.get(0).getExpenseId());
+        assertEquals(250.0, history.get(0).getAmount(), 0.01);
+        assertEquals(-30.0, history.get(1).getAmount(), 0.01);
+        assertEquals(2, history.get(1).getOrdinal());
+        assertEquals(-250.0, history.get(2).getAmount(), 0.01);
+        // Same history seen from the other side
+        assertEquals(30.0, expenseService.getPairHistory("u1", "u2").get(1).getAmount(), 0.01);
+        assertEquals(0, expenseService.getPairHistory("u3", "u4").size());
+
+        double net = 0;
+        for (PairContribution contribution : history) {
+            net += contribution.getAmount();
+        }
+        assertEquals(30.0, expenseService.getAllBalances().get("u1").get("u2").getAmount(), 0.01);
+        assertEquals(-30.0, net, 0.01);
+
+        app.processCommand("SHOW u2 u1 --detail");
+        String output = outputStream.toString();
+        assertTrue(output.contains("Electricity: u2 owes u1: 250"));
+        assertTrue(output.contains("Taxi: u1 owes u2: 30"));
+        assertTrue(output.contains("Net: u1 owes u2: 30"));
+        app.processCommand("SHOW u3 u4 --detail");
+        assertTrue(outputStream.toString().contains("No shared expenses"));
+    }
+
+    // @Test
+    public void testPairHistoryForConvertedGroupExpense() {
+        FixedFxRateProvider rates = new FixedFxRateProvider();
+        rates.setRate("USD", "INR", 1.1);
+        ExpenseSharingApp fxApp = new ExpenseSharingApp(rates);
+        for (User user : new User[]{u1, u2, u3}) {
+            fxApp.addUser(user);
+        }
+        ExpenseService fxService = fxApp.getExpenseService();
+
+        fxApp.processCommand("GROUP trip 3 u1 u2 u3");
+        fxApp.processCommand("EXPENSE u1 2.85 @trip EQUAL --currency USD");
+
+        // Each history entry is rounded the same way as the ledger, so they sum to the balance
+        double balance = fxService.getAllBalances().get("u2").get("u1").getAmount();
+        assertEquals(1.04, balance, 0.001);
+        double net = 0;
+        for (PairContribution contribution : fxService.getPairHistory("u2", "u1")) {
+            net += contribution.getAmount();
+        }
+        assertEquals(balance, net, 0.001);
+        // Spend rollups round the converted share the same way
+        LocalDate today = LocalDate.now();
+        assertEquals(1.04, fxService.getSpend("u2", null, today, today).getShare(), 0.001);
+    }
+
+    // ========== Constrained Simplification Tests ==========
+
+    // @Test
+    public void testConstrainedSimplificationKeepsStrangersApart() {
+        app.processCommand("EXPENSE u2 100 1 u1 EXACT 100");
+        app.processCommand("EXPENSE u3 100 1 u2 EXACT 100");
+        app.processCommand("SIMPLIFY constrained");
+
+        // u1 and u3 do not know each other, so the chain stays
+        Map<String, Map<String, Transaction>> balances = expenseService.getAllBalances();
+        assertEquals(100.0, balances.get("u1").get("u2").getAmount(), 0.01);
+        assertEquals(100.0, balances.get("u2").get("u3").getAmount(), 0.01);
+        assertFalse(balances.get("u1").containsKey("u3"));
+
+        app.processCommand("CONTACT u1 u3");
+        balances = expenseService.getAllBalances();
+        assertEquals(100.0, balances.get("u1").get("u3").getAmount(), 0.01);
+        assertEquals(1, balances.size());
+
+        app.processCommand("CONTACT u1 nonexistent");
+        assertTrue(outputStream.toString().contains("Error: User not found: nonexistent"));
+    }
+
+    // @Test
+    public void testConstrainedSimplificationUsesExistingEdges() {
+        app.processCommand("EXPENSE u2 100 1 u1 EXACT 100");
+        app.processCommand("EXPENSE u3 50 1 u2 EXACT 50");
+        app.processCommand("EXPENSE u3 50 1 u1 EXACT 50");
+        app.processCommand("SIMPLIFY constrained");
+
+        Map<String, Map<String, Transaction>> balances = expenseService.getAllBalances();
+        assertEquals(50.0, balances.get("u1").get("u2").getAmount(), 0.01);
+        assertEquals(100.0, balances.get("u1").get("u3").getAmount(), 0.01);
+        assertFalse(balances.containsKey("u2"));
+        assertEquals(-150.0, expenseService.getNetPosition("u1"), 0.01);
+    }
+
+    // @Test
+    public void testDebtFlowGraphPreservesNetPositions() {
+        Random random = new Random(11);
+        int nodes = 200;
+        DebtFlowGraph graph = new DebtFlowGraph(nodes);
+        long[] net = new long[nodes];
+        for (int i = 0; i < 2000; i++) {
+            int debtor = random.nextInt(nodes);
+            int creditor = random.nextInt(nodes);
+            if (debtor == creditor) {
+                continue;
+            }
+            long cents = 1 + random.nextInt(10_000);
+            graph.addDebt(debtor, creditor, cents);
+            net[debtor] -= cents;
+            net[creditor] += cents;
+        }
+        int before = graph.getDebtCount();
+        int after = graph.simplify(0);
+        assertTrue(after < before);
+
+        long[] simplifiedNet = new long[nodes];
+        for (int edge = 0; edge < graph.getEdgeCount(); edge++) {
+            simplifiedNet[graph.getDebtor(edge)] -= graph.getAmount(edge);
+            simplifiedNet[graph.getCreditor(edge)] += graph.getAmount(edge);
+        }
+        for (int node = 0; node < nodes; node++) {
+            assertEquals(net[node], simplifiedNet[node]);
+        }
+    }
+
+    // ========== Balance Component Tests ==========
+
+    // @Test
+    public void testSimplificationPerComponent() {
+        app.addUser(UserFactory.createUser("u5", "User5", "user5@example.com", "1234567894"));
+        app.addUser(UserFactory.createUser("u6", "User6", "user6@example.com", "1234567895"));
+        app.processCommand("EXPENSE u2 100 1 u1 EXACT 100");
+        app.processCommand("EXPENSE u3 100 1 u2 EXACT 100");
+        app.processCommand("EXPENSE u5 60 1 u4 EXACT 60");
+        app.processCommand("EXPENSE u6 60 1 u5 EXACT 60");
+        assertEquals(2, expenseService.getBalanceComponentCount());
+
+        app.processCommand("SIMPLIFY true");
+        Map<String, Map<String, Transaction>> balances = expenseService.getAllBalances();
+        assertEquals(100.0, balances.get("u1").get("u3").getAmount(), 0.01);
+        assertEquals(60.0, balances.get("u4").get("u6").getAmount(), 0.01);
+        Transaction untouched = balances.get("u4").get("u6");
+
+        // Only the first component changes; the second keeps its cached result
+        app.processCommand("EXPENSE u3 40 1 u2 EXACT 40");
+        balances = expenseService.getAllBalances();
+        assertEquals(100.0, balances.get("u1").get("u3").getAmount(), 0.01);
+        assertEquals(40.0, balances.get("u2").get("u3").getAmount(), 0.01);
+        assertTrue(untouched == balances.get("u4").get("u6"));
+
+        // The cached view cannot be modified by callers
+        try {
+            balances.get("u4").remove("u6");
+            throw new AssertionError("Expected the simplified view to be read-only");
+        } catch (UnsupportedOperationException e) {
+            assertTrue(expenseService.getAllBalances().get("u4").get("u6") == untouched);
+        }
+
+        // Joining the components re-solves the merged one
+        app.processCommand("EXPENSE u4 10 1 u3 EXACT 10");
+        assertEquals(1, expenseService.getBalanceComponentCount());
+        balances = expenseService.getAllBalances();
+        assertFalse(untouched == balances.get("u4").get("u6"));
+        Map<String, Double> net = new HashMap<>();
+        for (Map<String, Transaction> userBalances : balances.values()) {
+            for (Transaction transaction : userBalances.values()) {
+                net.merge(transaction.getFromUser().getUserId(), -transaction.getAmount(), Double::sum);
+                net.merge(transaction.getToUser().getUserId(), transaction.getAmount(), Double::sum);
+            }
+        }
+        for (String userId : new String[]{"u1", "u2", "u3", "u4", "u5", "u6"}) {
+            assertEquals(expenseService.getNetPosition(userId), net.getOrDefault(userId, 0.0), 0.01);
+        }
+    }
+
+    // ========== Balance Export Tests ==========
+
+    // @Test
+    public void testBalanceExportRoundTrip() throws Exception {
+        app.addUser(UserFactory.createUser("u,5", "User5", "user5@example.com", "1234567894"));
+        app.processCommand("EXPENSE u1 1000 4 u1 u2 u3 u4 EQUAL");
+        app.processCommand("EXPENSE u2 100.05 2 u2 u,5 EXACT 0 100.05");
+        Map<String, Long> expected = new HashMap<>();
+        for (Map<String, Transaction> userBalances : expenseService.getAllBalances().values()) {
+            for (Transaction transaction : userBalances.values()) {
+                if (transaction.getAmount() > 0.01) {
+                    expected.put(transaction.getFromUser().getUserId() + ">" + transaction.getToUser().getUserId(),
+                            Math.round(transaction.getAmount() * 100));
+                }
+            }
+        }
+
+        for (BalanceFormat format : BalanceFormat.values()) {
+            Path file = Files.createTempFile("balances", "." + format.name().toLowerCase());
+            try (FileChannel out = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                assertEquals(4L, expenseService.exportBalances(out, format, false));
+            }
+            Map<String, Long> imported = new HashMap<>();
+            try (FileChannel in = FileChannel.open(file, StandardOpenOption.READ)) {
+                long records = new BalanceImporter(in, format)
+                        .read((debtor, creditor, cents) -> imported.put(debtor + ">" + creditor, cents));
+                assertEquals(4L, records);
+            }
+            Files.delete(file);
+            assertEquals(expected, imported);
+        }
+        assertEquals(10005L, expected.get("u,5>u2"));
+    }
+
+    // @Test
+    public void testBalanceImportLargeAndCorrupt() throws Exception {
+        Map<String, Map<String, Transaction>> balances = new HashMap<>();
+        for (int i = 0; i < 20000; i++) {
+            User debtor = UserFactory.createUser("debtor-" + i, "D", "d@example.com", "1");
+            User creditor = UserFactory.createUser("creditor-" + (i % 100), "C", "c@example.com", "2");
+            balances.computeIfAbsent(debtor.getUserId(), u -> new HashMap<>())
+                    .put(creditor.getUserId(), new Transaction(debtor, creditor, i + 0.5));
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        assertEquals(20000L, new BalanceExporter(Channels.newChannel(bytes), BalanceFormat.BINARY).export(balances));
+
+        long[] total = {0};
+        long records = new BalanceImporter(Channels.newChannel(new ByteArrayInputStream(bytes.toByteArray())),
+                BalanceFormat.BINARY).read((debtor, creditor, cents) -> total[0] += cents);
+        assertEquals(20000L, records);
+        assertEquals(19999L * 20000 / 2 * 100 + 20000 * 50, total[0]);
+
+        byte[] truncated = Arrays.copyOf(bytes.toByteArray(), bytes.size() / 2);
+        try {
+            new BalanceImporter(Channels.newChannel(new ByteArrayInputStream(truncated)), BalanceFormat.BINARY)
+                    .read((debtor, creditor, cents) -> { });
+            throw new AssertionError("Expected truncated dump to be rejected");
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage().contains("ended unexpectedly"));
+        }
+    }
+
+    // ========== Snapshot Tests ==========
+
+    // @Test
+    public void testSnapshotServesReadsBeforeFirstWrite() throws Exception {
+        app.processCommand("EXPENSE u1 1000 4 u1 u2 u3 u4 EQUAL");
+        app.processCommand("EXPENSE u4 300 3 u1 u2 u4 EQUAL --idempotency-key req-1");
+        app.processCommand("HOME_CURRENCY u3 INR");
+        String keyedId = expenseService.findExpenseIdByIdempotencyKey("req-1");
+        Path file = Files.createTempFile("balances", ".snap");
+        app.processCommand("SNAPSHOT SAVE " + file);
+
+        ExpenseSharingApp restored = new ExpenseSharingApp();
+        ExpenseService restoredService = restored.getExpenseService();
+        restored.processCommand("SNAPSHOT LOAD " + file);
+
+        // Reads come straight from the mapped file
+        assertEquals(expenseService.getNetPosition("u1"), restoredService.getNetPosition("u1"), 0.001);
+        assertEquals(150.0, restoredService.getUserBalances("u1").get("u4").getAmount(), 0.01);
+        assertEquals(250.0, restoredService.getUserBalances("u1").get("u3").getAmount(), 0.01);
+        assertEquals(250.0, restoredService.getAllBalances().get("u2").get("u1").getAmount(), 0.01);
+
+        // Idempotency keys survive the snapshot, so a retried request is not applied twice
+        assertEquals(keyedId, restoredService.findExpenseIdByIdempotencyKey("req-1"));
+        restored.processCommand("EXPENSE u4 300 3 u1 u2 u4 EQUAL --idempotency-key req-1");
+        assertEquals(150.0, restoredService.getUserBalances("u1").get("u4").getAmount(), 0.01);
+
+        // First write rebuilds the mutable ledgers
+        restored.processCommand("EXPENSE u2 100 2 u1 u2 EQUAL");
+        assertEquals(200.0, restoredService.getAllBalances().get("u2").get("u1").getAmount(), 0.01);
+        assertEquals(-300.0, restoredService.getNetPosition("u2"), 0.01);
+        assertEquals("INR", restoredService.getHomeCurrency("u3"));
+        assertEquals(1, restoredService.getTopDebtors(1).size());
+
+        restored.processCommand("SNAPSHOT LOAD " + file);
+        assertTrue(outputStream.toString().contains("Error: Snapshot can only be loaded into an empty ledger"));
+
+        // Registered users are checked against the snapshot
+        ExpenseSharingApp clashing = new ExpenseSharingApp();
+        clashing.addUser(UserFactory.createUser("u9", "User9", "user9@example.com", "1234567899"));
+        clashing.addUser(u2);
+        clashing.processCommand("SNAPSHOT LOAD " + file);
+        assertTrue(outputStream.toString().contains("Error: User with ID u2 already exists"));
+        assertTrue(clashing.getExpenseService().getNetPosition("u1") == 0.0);
+        Files.delete(file);
+    }
+
+    // @Test
+    public void testSnapshotLooksUpNonAsciiIds() throws Exception {
+        // Ids whose UTF-8 byte order differs from their String order
+        String[] ids = {"u1", "\u00e9", "\u4e2d", "\ue000x", "\ud83d\ude00", "\ud83d\ude00b", "\uffff"};
+        List<User> users = new ArrayList<>();
+        for (String id : ids) {
+            users.add(UserFactory.createUser(id, "Name", "user@example.com", "1234567890"));
+        }
+        Path file = Files.createTempFile("users", ".snap");
+        BalanceSnapshot.write(file, users, new HashMap<>());
+        BalanceSnapshot snapshot = BalanceSnapshot.open(file);
+
+        assertEquals(ids.length, snapshot.getUserCount());
+        for (String id : ids) {
+            int index = snapshot.indexOf(id);
+            assertTrue(index >= 0);
+            assertEquals(id, snapshot.getUserId(index));
+        }
+        assertEquals(-1, snapshot.indexOf("u"));
+        assertEquals(-1, snapshot.indexOf("\ud83d\ude01"));
+        assertEquals(-1, snapshot.indexOf("\ue001"));
+        Files.delete(file);
+    }
+
+    // @Test
+    public void testQueryVisitorsMatchMaps() {
+        app.processCommand("EXPENSE u1 1000 4 u1 u2 u3 u4 EQUAL");
+        app.processCommand("EXPENSE u2 300 2 u1 u2 EXACT 100 200");
+        app.processCommand("EXPENSE u3 90 3 u1 u2 u3 EQUAL");
+
+        Map<String, Double> visited = new HashMap<>();
+        int count = expenseService.forEachBalance((debtorId, creditorId, amount) ->
+                visited.put(debtorId + ">" + creditorId, amount));
+        int expected = 0;
+        for (Map<String, Transaction> userBalances : expenseService.getAllBalances().values()) {
+            for (Transaction transaction : userBalances.values()) {
+                if (transaction.getAmount() > 0.01) {
+                    expected++;
+                    assertEquals(transaction.getAmount(), visited.get(transaction.getFromUser().getUserId()
+                            + ">" + transaction.getToUser().getUserId()), 0.001);
+                }
+            }
+        }
+        assertEquals(expected, count);
+
+        // Positive means the counterparty owes u1
+        Map<String, Double> forU1 = new HashMap<>();
+        int userCount = expenseService.forEachUserBalance("u1", (debtorId, creditorId, amount) ->
+                forU1.put(debtorId.equals("u1") ? creditorId : debtorId,
+                        debtorId.equals("u1") ? -amount : amount));
+        assertEquals(expenseService.getUserBalances("u1").size(), userCount);
+        assertEquals(250.0, forU1.get("u4"), 0.001);
+        assertEquals(220.0, forU1.get("u3"), 0.001);
+        assertEquals(150.0, forU1.get("u2"), 0.001);
+        assertEquals(0, expenseService.forEachUserBalance("nobody", (d, c, a) -> { }));
+    }
+
+    // @Test
+    public void testPassbookVisitor() {
+        app.processCommand("EXPENSE u1 100 2 u1 u2 EQUAL");
+        app.processCommand("EXPENSE u3 60 2 u3 u4 EQUAL");
+        app.processCommand("EXPENSE u2 40 2 u2 u3 EQUAL");
+
+        List<String> ids = new ArrayList<>();
+        assertEquals(2, expenseService.forEachPassbookEntry("u2", expense -> ids.add(expense.getExpenseId())));
+        assertEquals(2, ids.size());
+        assertEquals(0, expenseService.forEachPassbookEntry("nobody", expense -> ids.add("x")));
+
+        app.processCommand("PASSBOOK u2");
+        String output = outputStream.toString();
+        assertTrue(output.contains("=== Passbook for u2 ==="));
+        assertTrue(output.contains("Participants: u1, u2"));
+        assertEquals(output.indexOf("=== Passbook"), output.lastIndexOf("=== Passbook"));
+    }
+
+    // @Test
+    public void testSettledPairsAreReclaimed() {
+        app.processCommand("EXPENSE u1 100 2 u1 u2 EQUAL");
+        app.processCommand("EXPENSE u2 100 2 u1 u2 EQUAL");
+        // The pair nets to zero and is removed inline
+        assertEquals(0, expenseService.getStoredPairCount());
+        assertEquals(1L, expenseService.getReclaimedPairCount());
+        assertTrue(expenseService.getUserBalances("u1").isEmpty());
+
+        // A one-cent remainder is a real debt: hidden from reads but never reclaimed
+        app.processCommand("EXPENSE u1 100 2 u1 u2 EQUAL");
+        app.processCommand("EXPENSE u2 99.98 2 u1 u2 EQUAL");
+        assertEquals(1, expenseService.getStoredPairCount());
+        assertEquals(0, expenseService.forEachBalance((d, c, a) -> { }));
+
+        outputStream.reset();
+        app.processCommand("COMPACT");
+        assertTrue(outputStream.toString().contains("Reclaimed 0 balance pairs"));
+        assertEquals(1, expenseService.getStoredPairCount());
+
+        // The carried cent nets against later writes
+        app.processCommand("EXPENSE u2 40 2 u1 u2 EQUAL");
+        assertEquals(19.99, expenseService.getUserBalances("u1").get("u2").getAmount(), 0.001);
+        assertEquals(-19.99, expenseService.getNetPosition("u1"), 0.001);
+
+        // A precomputed share below half a cent leaves a zero-cent pair, which is reclaimed
+        Expense tiny = new Expense("tiny", u3, 0.004, "Tiny", Expense.SplitType.EXACT,
+                Arrays.asList(u4), Arrays.asList(0.004));
+        expenseService.addExpenses(Arrays.asList(tiny), Arrays.asList(Map.of(u4, 0.004)));
+        assertEquals(2, expenseService.getStoredPairCount());
+        assertEquals(1, expenseService.compactBalances());
+        assertEquals(1, expenseService.getStoredPairCount());
+        assertTrue(expenseService.getUserBalances("u3").isEmpty());
+    }
+
+    // @Test
+    public void testDustSweptInBackground() {
+        // Each precomputed share rounds to zero cents, leaving dust for the sweeper
+        for (int i = 0; i < 300; i++) {
+            User other = UserFactory.createUser("d" + i, "Dust" + i, "d" + i + "@example.com", "555" + i);
+            app.addUser(other);
+            Expense tiny = new Expense("tiny" + i, u1, 0.004, "Tiny", Expense.SplitType.EXACT,
+                    Arrays.asList(other), Arrays.asList(0.004));
+            expenseService.addExpenses(Arrays.asList(tiny), Arrays.asList(Map.of(other, 0.004)));
+        }
+        assertEquals(0, expenseService.forEachBalance((d, c, a) -> { }));
+        // Swept every 256 writes without an explicit COMPACT
+        assertTrue(expenseService.getReclaimedPairCount() >= 256);
+        assertEquals(300L, expenseService.getReclaimedPairCount() + expenseService.getStoredPairCount());
+    }
+
+    // @Test
+    public void testExpenseIdsAreTimeOrdered() {
+        Clock clock = Clock.fixed(Instant.parse("2026-03-01T10:00:00Z"), ZoneOffset.UTC);
+        ExpenseIdGenerator generator = new ExpenseIdGenerator(clock, 5);
+        long previous = -1;
+        String previousText = "";
+        // More ids than fit in one millisecond's sequence
+        for (int i = 0; i < 5000; i++) {
+            long id = generator.next();
+            String text = ExpenseId.toText(id);
+            assertTrue(id > previous);
+            assertTrue(text.compareTo(previousText) > 0);
+            assertEquals(id, ExpenseId.parse(text));
+            previous = id;
+            previousText = text;
+        }
+        assertEquals(5, ExpenseIdGenerator.nodeOf(previous));
+        assertEquals(clock.millis() + 1, ExpenseIdGenerator.timestampOf(previous));
+        assertEquals(-1L, ExpenseId.parse("e1"));
+        assertEquals(-1L, ExpenseId.parse("0000000000I00"));
+
+        app.processCommand("EXPENSE u1 100 2 u1 u2 EQUAL");
+        String id = expenseService.getExpenseAt(0).getExpenseId();
+        assertEquals(ExpenseId.TEXT_LENGTH, id.length());
+        assertTrue(ExpenseId.parse(id) >= 0);
+        assertTrue(expenseService.getExpense(id) != null);
+    }
+
+    // @Test
+    public void testExpenseStoreMixedIds() {
+        ExpenseStore store = new ExpenseStore();
+        ExpenseIdGenerator generator = new ExpenseIdGenerator(Clock.systemUTC(), 0);
+        String first = generator.nextId();
+        String second = generator.nextId();
+        store.add(new Expense(second, u1, 10, "b", Expense.SplitType.EQUAL, Arrays.asList(u1, u2), new ArrayList<>()));
+        // Out-of-order and non-generated ids fall back to the hash index
+        store.add(new Expense(first, u1, 10, "a", Expense.SplitType.EQUAL, Arrays.asList(u1, u2), new ArrayList<>()));
+        store.add(new Expense("custom-id", u1, 10, "c", Expense.SplitType.EQUAL, Arrays.asList(u1, u2), new ArrayList<>()));
+        assertEquals(0, store.ordinalOf(second));
+        assertEquals(1, store.ordinalOf(first));
+        assertEquals(2, store.ordinalOf("custom-id"));
+        assertEquals(-1, store.ordinalOf(generator.nextId()));
+    }
+
+    // @Test
+    public void testStripedBalanceCellsConcurrentTransfers() throws Exception {
+        StripedBalanceCells cells = new StripedBalanceCells(4);
+        Thread[] workers = new Thread[8];
+        for (int t = 0; t < workers.length; t++) {
+            String debtor = "d" + (t % 2);
+            workers[t] = new Thread(() -> {
+                for (int i = 0; i < 20_000; i++) {
+                    cells.transfer(debtor, "landlord", 3);
+                }
+            });
+        }
+        for (Thread worker : workers) {
+            worker.start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        assertEquals(8 * 20_000 * 3L, cells.getCents("landlord"));
+        assertEquals(-4 * 20_000 * 3L, cells.getCents("d0"));
+        assertEquals(-4 * 20_000 * 3L, cells.getCents("d1"));
+        assertEquals(0L, cells.getCents("nobody"));
+        assertEquals(3, cells.size());
+    }
+
+    // @Test
+    public void testBalancesAsOf() {
+        Expense rent = new Expense("rent", u1, 100, "Rent", Expense.SplitType.EQUAL,
+                Arrays.asList(u1, u2), new ArrayList<>());
+        rent.setCreatedAt(LocalDateTime.parse("2026-02-20T09:00"));
+        Expense dinner = new Expense("dinner", u1, 60, "Dinner", Expense.SplitType.EQUAL,
+                Arrays.asList(u1, u2), new ArrayList<>());
+        dinner.setCreatedAt(LocalDateTime.parse("2026-03-01T18:00"));
+        Expense trip = new Expense("trip", u2, 200, "Trip", Expense.SplitType.EQUAL,
+                Arrays.asList(u1, u2), new ArrayList<>());
+        trip.setCreatedAt(LocalDateTime.parse("2026-03-05T08:00"));
+        expenseService.addExpense(rent);
+        expenseService.addExpense(dinner);
+        expenseService.addExpense(trip);
+
+        assertEquals(0, expenseService.getUserBalancesAsOf("u2", LocalDateTime.parse("2026-02-19T00:00")).size());
+        assertEquals(50.0, expenseService.getUserBalancesAsOf("u2", LocalDateTime.parse("2026-03-01T12:00"))
+                .get("u1").getAmount(), 0.001);
+        Map<String, Transaction> march5 = expenseService.getUserBalancesAsOf("u1", LocalDateTime.parse("2026-03-05T08:00"));
+        assertEquals("u1", march5.get("u2").getFromUser().getUserId());
+        assertEquals(20.0, march5.get("u2").getAmount(), 0.001);
+
+        app.processCommand("SHOW u2 --as-of 2026-03-01");
+        app.processCommand("SHOW --as-of 2026-02-01");
+        app.processCommand("SHOW --as-of 2026-13-01");
+        String output = outputStream.toString();
+        assertTrue(output.contains("u2 owes u1: 80"));
+        assertTrue(output.contains("No balances"));
+        assertTrue(output.contains("Error: Invalid date: 2026-13-01"));
+    }
+
+    // @Test
+    public void testBalancesAsOfMatchesLiveLedgerAcrossCheckpoints() {
+        app.processCommand("GROUP g1 4 u1 u2 u3 u4");
+        Random random = new Random(11);
+        String[] users = {"u1", "u2", "u3", "u4"};
+        for (int i = 0; i < 1500; i++) {
+            String payer = users[random.nextInt(4)];
+            int amount = 4 * (1 + random.nextInt(500));
+            if (i % 10 == 0) {
+                app.processCommand("EXPENSE " + payer + " " + amount + " @g1 EQUAL");
+            } else {
+                String other = users[random.nextInt(4)];
+                app.processCommand("EXPENSE " + payer + " " + amount + " 2 " + payer + " " + other + " EQUAL");
+            }
+        }
+
+        Map<String, Double> live = new HashMap<>();
+        expenseService.forEachBalance((debtorId, creditorId, amount) -> live.put(debtorId + ">" + creditorId, amount));
+        Map<String, Double> asOf = new HashMap<>();
+        expenseService.forEachBalanceAsOf(LocalDateTime.now().plusDays(1),
+                (debtorId, creditorId, amount) -> asOf.put(debtorId + ">" + creditorId, amount));
+        assertEquals(live.size(), asOf.size());
+        for (Map.Entry<String, Double> entry : live.entrySet()) {
+            assertEquals(entry.getValue(), asOf.get(entry.getKey()), 0.001);
+        }
+        for (String user : users) {
+            assertEquals(expenseService.getUserBalances(user).size(),
+                    expenseService.getUserBalancesAsOf(user, LocalDateTime.now().plusDays(1)).size());
+        }
+    }
+
+    // @Test
+    public void testBalancesAsOfForGroupMembers() {
+        app.processCommand("GROUP trip 3 u1 u2 u3");
+        app.processCommand("EXPENSE u1 90 @trip EQUAL");
+
+        LocalDateTime tomorrow = LocalDateTime.now().plusDays(1);
+        Map<String, Transaction> u2AsOf = expenseService.getUserBalancesAsOf("u2", tomorrow);
+        assertEquals(expenseService.getUserBalances("u2").size(), u2AsOf.size());
+        assertEquals("u2", u2AsOf.get("u1").getFromUser().getUserId());
+        assertEquals(30.0, u2AsOf.get("u1").getAmount(), 0.001);
+        assertEquals(30.0, expenseService.getUserBalancesAsOf("u3", tomorrow).get("u1").getAmount(), 0.001);
+        assertEquals(2, expenseService.getUserBalancesAsOf("u1", tomorrow).size());
+        assertEquals(0, expenseService.getUserBalancesAsOf("u4", tomorrow).size());
+    }
+
+    // @Test
+    public void testSpendRollups() {
+        Expense groceries = new Expense("groceries", u1, 300, "Groceries", Expense.SplitType.EQUAL,
+                Arrays.asList(u1, u2, u3), new ArrayList<>());
+        groceries.setCategory("Food");
+        groceries.setCreatedAt(LocalDateTime.parse("2026-01-31T20:00"));
+        Expense rent = new Expense("rent", u2, 1000, "Rent", Expense.SplitType.EXACT,
+                Arrays.asList(u1, u2), Arrays.asList(600.0, 400.0));
+        rent.setCategory("housing");
+        rent.setCreatedAt(LocalDateTime.parse("2026-02-01T09:00"));
+        Expense lunch = new Expense("lunch", u1, 90, "Lunch", Expense.SplitType.EQUAL,
+                Arrays.asList(u1, u2), new ArrayList<>());
+        lunch.setCategory("food");
+        lunch.setCreatedAt(LocalDateTime.parse("2026-04-10T13:00"));
+        expenseService.addExpense(groceries);
+        expenseService.addExpense(rent);
+        expenseService.addExpense(lunch);
+
+        LocalDate jan1 = LocalDate.parse("2026-01-01");
+        LocalDate apr30 = LocalDate.parse("2026-04-30");
+        SpendTotals all = expenseService.getSpend("u1", null, jan1, apr30);
+        assertEquals(390.0, all.getPaid(), 0.001);
+        assertEquals(100.0 + 600.0 + 45.0, all.getShare(), 0.001);
+        assertEquals(145.0, expenseService.getSpend("u1", "FOOD", jan1, apr30).getShare(), 0.001);
+        // Partial months at both ends of the range
+        assertEquals(600.0, expenseService.getSpend("u1", null,
+                LocalDate.parse("2026-02-01"), LocalDate.parse("2026-04-09")).getShare(), 0.001);
+        assertEquals(1000.0, expenseService.getSpend("u2", "housing",
+                LocalDate.parse("2026-01-15"), LocalDate.parse("2026-03-15")).getPaid(), 0.001);
+        assertTrue(expenseService.getSpend("u4", null, jan1, apr30).isEmpty());
+
+        // Moving an expense to another category moves its totals
+        app.processCommand("UPDATE_EXPENSE lunch --category dining");
+        Map<String, SpendTotals> byCategory = expenseService.getSpendByCategory("u2", jan1, apr30);
+        assertEquals(Arrays.asList("dining", "food", "housing"), new ArrayList<>(byCategory.keySet()));
+        assertEquals(45.0, byCategory.get("dining").getShare(), 0.001);
+        assertEquals(100.0, byCategory.get("food").getShare(), 0.001);
+
+        app.processCommand("SPEND u2 2026-01-01 2026-04-30");
+        app.processCommand("SPEND u3 2026-02-01 2026-02-28 food");
+        app.processCommand("SPEND u3 2026-02-01 2026-01-01");
+        String output = outputStream.toString();
+        assertTrue(output.contains("housing: paid 1000, share 400"));
+        assertTrue(output.contains("Total: paid 1000, share 545"));
+        assertTrue(output.contains("No spend"));
+        assertTrue(output.contains("Error: Start date cannot be after end date"));
+    }
+
+    // @Test
+    public void testSpendRollupsForGroupAndForeignCurrency() {
+        FixedFxRateProvider rates = new FixedFxRateProvider();
+        rates.setRate("USD", "INR", 80.0);
+        ExpenseSharingApp fxApp = new ExpenseSharingApp(rates);
+        for (User user : new User[]{u1, u2, u3, u4}) {
+            fxApp.addUser(user);
+        }
+        ExpenseService fxService = fxApp.getExpenseService();
+
+        fxApp.processCommand("GROUP g1 4 u1 u2 u3 u4");
+        fxApp.processCommand("EXPENSE u1 100 @g1 EQUAL --category travel");
+        fxApp.processCommand("EXPENSE u2 10 2 u1 u2 EQUAL --currency USD --category Travel");
+        LocalDate today = LocalDate.now();
+        assertEquals(25.0, fxService.getSpend("u4", "travel", today, today).getShare(), 0.001);
+        assertEquals(800.0, fxService.getSpend("u2", "travel", today, today).getPaid(), 0.001);
+        assertEquals(25.0 + 400.0, fxService.getSpend("u2", "travel", today, today).getShare(), 0.001);
+
+        // The original rate is reused when the category changes, even if rates have moved
+        rates.setRate("USD", "INR", 90.0);
+        String id = fxService.getExpenseAt(1).getExpenseId();
+        fxApp.processCommand("UPDATE_EXPENSE " + id + " --category trips");
+        fxApp.processCommand("UPDATE_EXPENSE " + fxService.getExpenseAt(0).getExpenseId() + " --category trips");
+        assertEquals(425.0, fxService.getSpend("u1", "trips", today, today).getShare(), 0.001);
+        assertTrue(fxService.getSpend("u1", "travel", today, today).isEmpty());
+    }
+
+    // @Test
+    public void testInvariantChecksPassOnRandomWorkload() {
+        app.processCommand("GROUP g1 3 u1 u2 u3");
+        // A sampled check leaves pending group splits unexpanded
+        app.processCommand("CHECK SAMPLED 1 4");
+        app.processCommand("EXPENSE u1 90 @g1 EQUAL");
+        assertEquals(1L, expenseService.getInvariantChecker().getCheckCount());
+        assertEquals(0, expenseService.getStoredPairCount());
+
+        app.processCommand("CHECK SAMPLED 10 4");
+        Random random = new Random(3);
+        String[] users = {"u1", "u2", "u3", "u4"};
+        for (int i = 0; i < 600; i++) {
+            if (i == 300) {
+                app.processCommand("SIMPLIFY true");
+            }
+            String payer = users[random.nextInt(4)];
+            String other = users[random.nextInt(4)];
+            String amount = (1 + random.nextInt(9999)) / 100.0 + "";
+            if (i % 7 == 0) {
+                app.processCommand("EXPENSE " + payer + " " + amount + " @g1 EQUAL");
+            } else if (i % 5 == 0) {
+                app.processCommand("EXPENSE " + payer + " " + amount + " 3 u1 u2 u4 EQUAL");
+            } else {
+                app.processCommand("EXPENSE " + payer + " " + amount + " 2 " + payer + " " + other + " EQUAL");
+            }
+        }
+        LedgerInvariantChecker checker = expenseService.getInvariantChecker();
+        assertEquals(60L, checker.getCheckCount());
+        assertEquals(0L, checker.getViolationCount());
+        app.processCommand("CHECK");
+        assertTrue(outputStream.toString().contains("Ledger invariants hold"));
+    }
+
+    // @Test
+    public void testInvariantCheckReportsCorruption() {
+        app.processCommand("CHECK SAMPLED 100 4");
+        app.processCommand("EXPENSE u1 100 2 u1 u2 EQUAL");
+        app.processCommand("EXPENSE u3 40 2 u3 u4 EQUAL");
+        String id = expenseService.getExpenseAt(0).getExpenseId();
+        assertTrue(expenseService.checkInvariants().isEmpty());
+
+        // Corrupt the pairwise ledger behind the service's back
+        expenseService.getAllBalances().get("u2").get("u1").setAmount(70);
+        List<LedgerInvariantChecker.Violation> violations = expenseService.checkInvariants();
+        assertEquals(2, violations.size());
+        assertTrue(violations.get(0).getDescription().contains("add up to"));
+        app.processCommand("CHECK");
+        String output = outputStream.toString();
+        assertTrue(output.contains("Violation: Pairwise balances of u1 add up to 70.0 but the net position is 50.0"));
+        assertTrue(output.contains("(recent expenses: " + id + ")"));
+    }
+
+    // @Test
+    public void testShadowEngineMatchesPrimary() {
+        app.processCommand("GROUP g1 3 u1 u2 u3");
+        app.processCommand("EXPENSE u1 100 3 u1 u2 u3 EQUAL");
+        app.processCommand("EXPENSE u2 40 2 u1 u2 EQUAL");
+        // Enabled mid-stream, so the shadow is seeded from the current ledger
+        app.processCommand("SHADOW ON 1");
+        Random random = new Random(5);
+        String[] users = {"u1", "u2", "u3", "u4"};
+        for (int i = 0; i < 300; i++) {
+            String payer = users[random.nextInt(4)];
+            String other = users[random.nextInt(4)];
+            String amount = (1 + random.nextInt(9999)) / 100.0 + "";
+            if (i % 6 == 0) {
+                app.processCommand("EXPENSE " + payer + " " + amount + " @g1 EQUAL");
+            } else {
+                app.processCommand("EXPENSE " + payer + " " + amount + " 3 " + payer + " " + other + " u4 EQUAL");
+            }
+            expenseService.getNetPosition(users[i % 4]);
+            expenseService.getUserBalances(users[(i + 1) % 4]);
+        }
+        ShadowLedger shadow = expenseService.getShadowLedger();
+        shadow.flush();
+        assertEquals(600L, shadow.getComparisonCount());
+        assertEquals(0L, shadow.getDivergenceCount());
+        assertEquals(shadow.getPrimaryStats().getWrites(), shadow.getShadowStats().getWrites());
+        app.processCommand("SHADOW");
+        assertTrue(outputStream.toString().contains("Comparisons: 600, divergences: 0"));
+        app.processCommand("SHADOW OFF");
+        assertTrue(expenseService.getShadowLedger() == null);
+    }
+
+    // @Test
+    public void testShadowEngineReportsDivergence() {
+        // An engine that loses every write paid by u3
+        ShadowLedger shadow = expenseService.enableShadowEngine(new ArrayBalanceEngine() {
+            @Override
+            public void record(String debtorId, String creditorId, long cents) {
+                if (!creditorId.equals("u3")) {
+                    super.record(debtorId, creditorId, cents);
+                }
+            }
+        }, 1);
+        app.processCommand("EXPENSE u1 100 2 u1 u2 EQUAL");
+        app.processCommand("EXPENSE u3 30 2 u3 u4 EQUAL");
+        assertEquals(50.0, expenseService.getNetPosition("u1"), 0.001);
+        assertEquals(15.0, expenseService.getNetPosition("u3"), 0.001);
+        expenseService.getUserBalances("u4");
+        shadow.flush();
+        assertEquals(2L, shadow.getDivergenceCount());
+        assertEquals("Net position of u3: primary 15.0, shadow 0.0", shadow.getDivergences().get(0));
+        assertEquals("Balance between u4 and u3: primary -15.0, shadow 0.0", shadow.getDivergences().get(1));
+
+        // A one-cent difference is a divergence too
+        ShadowLedger centOff = expenseService.enableShadowEngine(new ArrayBalanceEngine() {
+            @Override
+            public void record(String debtorId, String creditorId, long cents) {
+                super.record(debtorId, creditorId, cents == 1000 ? 999 : cents);
+            }
+        }, 1);
+        app.processCommand("EXPENSE u2 20 2 u1 u2 EQUAL");
+        expenseService.getUserBalances("u1");
+        centOff.flush();
+        assertEquals(1L, centOff.getDivergenceCount());
+    }
+
+    // @Test
+    public void testShadowEngineDropsWritesWhenBehind() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        ShadowLedger shadow = expenseService.enableShadowEngine(new ArrayBalanceEngine() {
+            @Override
+            public void record(String debtorId, String creditorId, long cents) {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                super.record(debtorId, creditorId, cents);
+            }
+        }, 1, 2);
+        // The worker blocks on the first write, so the queue fills after two more
+        for (int i = 0; i < 10; i++) {
+            app.processCommand("EXPENSE u1 10 2 u1 u2 EQUAL");
+        }
+        assertFalse(shadow.isInSync());
+        assertTrue(shadow.getDroppedWriteCount() >= 7);
+        expenseService.getNetPosition("u1");
+        assertEquals(1L, shadow.getSkippedComparisonCount());
+
+        release.countDown();
+        app.processCommand("SHADOW");
+        String output = outputStream.toString();
+        assertTrue(output.contains("Comparisons: 0, divergences: 0"));
+        assertTrue(output.contains("Shadow engine fell behind and stopped"));
+    }
+
+    // @Test
+    public void testFlightRecorderEvents() throws Exception {
+        Path file = Files.createTempFile("pipeline", ".jfr");
+        Path snapshot = Files.createTempFile("balances", ".snap");
+        try (Recording recording = new Recording()) {
+            for (String event : new String[]{"Command", "Split", "BalanceUpdate", "Simplify", "PassbookQuery", "Fsync"}) {
+                recording.enable("supermoney." + event);
+            }
+            recording.start();
+            app.processCommand("EXPENSE u1 90 3 u1 u2 u3 EQUAL");
+            app.processCommand("EXPENSE u2 30 2 u2 u3 PERCENT 50 50");
+            app.processCommand("SIMPLIFY true");
+            app.processCommand("SHOW");
+            app.processCommand("PASSBOOK u2");
+            app.processCommand("SNAPSHOT SAVE " + snapshot);
+            recording.stop();
+            recording.dump(file);
+        }
+
+        Map<String, List<RecordedEvent>> byType = new HashMap<>();
+        for (RecordedEvent event : RecordingFile.readAllEvents(file)) {
+            byType.computeIfAbsent(event.getEventType().getName(), t -> new ArrayList<>()).add(event);
+        }
+        assertEquals(6, byType.get("supermoney.Command").size());
+        assertEquals("EXPENSE", byType.get("supermoney.Command").get(0).getString("action"));
+        assertEquals(7, byType.get("supermoney.Command").get(0).getInt("argumentCount"));
+
+        List<RecordedEvent> splits = byType.get("supermoney.Split");
+        assertEquals(2, splits.size());
+        assertEquals("EQUAL", splits.get(0).getString("splitType"));
+        assertEquals(3, splits.get(0).getInt("participantCount"));
+        assertEquals("PercentSplitStrategy", splits.get(1).getString("strategy"));
+        assertEquals(2, byType.get("supermoney.BalanceUpdate").size());
+
+        boolean netting = false;
+        for (RecordedEvent event : byType.get("supermoney.Simplify")) {
+            if (event.getString("mode").equals("netting")) {
+                netting = true;
+                assertEquals(3, event.getInt("nodeCount"));
+                assertEquals(3, event.getInt("edgeCount"));
+            }
+        }
+        assertTrue(netting);
+
+        RecordedEvent passbook = byType.get("supermoney.PassbookQuery").get(0);
+        assertEquals("u2", passbook.getString("userId"));
+        assertEquals(2, passbook.getInt("entryCount"));
+        RecordedEvent fsync = byType.get("supermoney.Fsync").get(0);
+        assertEquals(snapshot.toString(), fsync.getString("path"));
+        assertEquals(Files.size(snapshot), fsync.getLong("bytes"));
+    }
+
+    // @Test
+    public void testHotPathsStayWithinAllocationBudgets() {
+        if (!AllocationBudget.isSupported()) {
+            return;
+        }
+        AllocationBudget budget = AllocationReport.measureHotPaths(20_000, 5_000);
+        assertEquals(7, budget.getResults().size());
+        StringBuilder overBudget = new StringBuilder();
+        for (AllocationBudget.Result result : budget.getViolations()) {
+            overBudget.append(result).append('\n');
+        }
+        assertEquals("", overBudget.toString());
+    }
+
+    // @Test
+    public void testAllocationBudgetFlagsAllocatingPath() {
+        if (!AllocationBudget.isSupported()) {
+            return;
+        }
+        AllocationBudget budget = new AllocationBudget(1_000, 1_000);
+        long[][] sink = new long[1][];
+        long[] counter = new long[1];
+        AllocationBudget.Result allocating = budget.measure("allocating", 0, () -> sink[0] = new long[16]);
+        AllocationBudget.Result free = budget.measure("free", 0, () -> counter[0]++);
+
+        assertFalse(allocating.isWithinBudget());
+        assertTrue(allocating.getBytesPerOp() >= 16 * 8);
+        assertTrue(free.isWithinBudget());
+        assertEquals(1, budget.getViolations().size());
+        assertTrue(budget.report().contains("OVER BUDGET"));
+    }
+
+    // @Test
+    public void testSplitKernelMatchesBigDecimalRounding() {
+        Random random = new Random(11);
+        double[] ties = {0.005, 1.005, 2.675, 0.125, 1.115, -1.005, -0.005, 0.0, -0.0, 1e12 + 0.005};
+        for (double value : ties) {
+            assertEquals(referenceRound(value), SplitKernel.roundToTwoDecimals(value));
+        }
+        for (int i = 0; i < 200_000; i++) {
+            // Values on and around half cents, the only ones that can round differently
+            double value = (random.nextInt(2_000_000) - 1_000_000 + 0.5) / 100.0
+                    + (random.nextInt(3) - 1) * Math.ulp(1.0) * random.nextInt(1_000);
+            assertEquals(referenceRound(value), SplitKernel.roundToTwoDecimals(value));
+            double share = random.nextDouble() * 1_000_000 * random.nextDouble() / (1 + random.nextInt(97));
+            assertEquals(referenceRound(share), SplitKernel.roundToTwoDecimals(share));
+        }
+
+        // PERCENT splits stored back to back only touch their own range
+        double[] amounts = {100.0, 33.33, 1234.57};
+        double[] weights = {33.33, 33.33, 33.34, 50, 50, 12.5, 12.5, 75};
+        int[] offsets = {0, 3, 5, 8};
+        long[] cents = new long[weights.length];
+        for (int e = 0; e < amounts.length; e++) {
+            SplitKernel.split(amounts[e], 100.0, weights, offsets[e], offsets[e + 1], cents);
+        }
+        assertEquals("[3333, 3333, 3334, 1666, 1667, 15432, 15432, 92593]", Arrays.toString(cents));
+    }
+
+    private static double referenceRound(double value) {
+        return new BigDecimal(value).setScale(2, RoundingMode.HALF_UP).doubleValue();
+    }
+
+    // @Test
+    public void testBulkImportAndContactIndexes() {
+        List<User> imported = new ArrayList<>();
+        for (int i = 0; i < 10_000; i++) {
+            imported.add(new User("b" + i, "Bulk" + i, "Bulk" + i + "@Example.com",
+                    String.format("+91 98%03d %05d", i % 1000, i)));
+        }
+        // Shares a number with b7; the first user registered keeps it
+        imported.add(new User("late", "Late", null, "9800700007"));
+        assertEquals(10_001, userService.importUsers(imported.iterator(), imported.size()));
+        assertEquals(10_005, userService.getAllUsers().size());
+
+        assertEquals("b42", userService.findUserByEmail("  bulk42@EXAMPLE.com").getUserId());
+        assertEquals("u3", userService.findUserByEmail("USER3@example.com").getUserId());
+        assertEquals("b7", userService.findUserByMobileNumber("98007-00007").getUserId());
+        assertEquals("u2", userService.findUserByMobileNumber("+1 (123) 456-7891").getUserId());
+        assertTrue(userService.findUserByEmail("nobody@example.com") == null);
+
+        List<String> addressBook = new ArrayList<>();
+        for (int i = 0; i < 3_000; i++) {
+            // Every third number is unknown
+            addressBook.add(i % 3 == 2 ? "555 01" + i : String.format("0098%03d%05d", i % 1000, i));
+        }
+        Map<String, String> matches = userService.matchMobileNumbers(addressBook);
+        assertEquals(2_000, matches.size());
+        assertEquals("b1000", matches.get("009800001000"));
+        assertEquals(addressBook.get(0), matches.keySet().iterator().next());
+    }
+
+    // @Test
+    public void testBulkImportIsAllOrNothing() throws Exception {
+        List<User> batch = Arrays.asList(
+                new User("n1", "New1", "new1@example.com", "2223334441"),
+                new User("n2", "New2", "new2@example.com", "2223334442"),
+                new User("n3", "New3", "not-an-email", "2223334443"));
+        try {
+            userService.importUsers(batch.iterator(), 3);
+            throw new AssertionError("Expected invalid email to be rejected");
+        } catch (IllegalArgumentException e) {
+            assertEquals("Invalid user at position 3: Invalid email: not-an-email", e.getMessage());
+        }
+        try {
+            userService.importUsers(Arrays.asList(batch.get(0), u1).iterator(), 2);
+            throw new AssertionError("Expected duplicate ID to be rejected");
+        } catch (IllegalArgumentException e) {
+            assertEquals("User with ID u1 already exists", e.getMessage());
+        }
+        assertFalse(userService.userExists("n1"));
+        assertTrue(userService.findUserByMobileNumber("2223334441") == null);
+
+        Path file = Files.createTempFile("users", ".csv");
+        Files.write(file, Arrays.asList("# id,name,email,mobile", "n1,New1,new1@example.com,+1 222 333 4441",
+                "n2,New2,,", "", "n3,New3,NEW3@example.com,222-333-4443"));
+        app.processCommand("IMPORT_USERS " + file);
+        app.processCommand("FIND_USER new3@example.com");
+        app.processCommand("MATCH_CONTACTS 2223334441 (222)3334443 9990001111");
+        app.processCommand("IMPORT_USERS " + file);
+        String output = outputStream.toString();
+        assertTrue(output.contains("Imported 3 users"));
+        assertTrue(output.contains("n3: New3"));
+        assertTrue(output.contains("2223334441 -> n1\n(222)3334443 -> n3\nMatched 2 of 3 numbers"));
+        assertTrue(output.contains("Error: User with ID n1 already exists"));
+    }
     
     // Test runner (can be used without JUnit)
     public static void main(String[] args) {
@@ -447,7 +1974,32 @@ public class ExpenseSharingAppTest {
             "testExpenseSimplification", "testSimplificationToggle",
             "testExpenseWithSelfAsParticipant", "testInvalidExpenseCommand",
             "testInvalidUserInExpense", "testInvalidSplitType",
-            "testCompleteScenario", "testMultipleExpensesAccumulation"
+            "testCompleteScenario", "testMultipleExpensesAccumulation",
+            "testTopDebtorsAndCreditors", "testNetPositionRangeQuery", "testSettlementPlan",
+            "testMultiCurrencyExpense", "testUnknownCurrencyRejected", "testFxRatesLoadedFromFile",
+            "testRecurringExpense", "testRecurringExpenseBatch", "testRecurringExpenseInvalidSplit", "testRecurringGroupExpense",
+            "testGroupSplitMatchesPerUserSplit", "testGroupSplitLargeGroup", "testGroupValidation",
+            "testWorkloadGeneratorDeterministic", "testWorkloadReplay",
+            "testIdempotentExpense", "testIdempotencyCacheEviction",
+            "testSearchExpenses", "testSearchFollowsUpdatesAndPages",
+            "testTieredStorageSpillsOldExpenses", "testTieredStorageKeepsGroupsAndCurrencies", "testTieredStorageRestartPinsAndFailedSpill",
+            "testPairHistory", "testPairHistoryForConvertedGroupExpense",
+            "testConstrainedSimplificationKeepsStrangersApart", "testConstrainedSimplificationUsesExistingEdges", "testDebtFlowGraphPreservesNetPositions",
+            "testSimplificationPerComponent",
+            "testBalanceExportRoundTrip", "testBalanceImportLargeAndCorrupt",
+            "testSnapshotServesReadsBeforeFirstWrite", "testSnapshotLooksUpNonAsciiIds",
+            "testQueryVisitorsMatchMaps", "testPassbookVisitor",
+            "testSettledPairsAreReclaimed", "testDustSweptInBackground",
+            "testExpenseIdsAreTimeOrdered", "testExpenseStoreMixedIds",
+            "testStripedBalanceCellsConcurrentTransfers",
+            "testBalancesAsOf", "testBalancesAsOfMatchesLiveLedgerAcrossCheckpoints", "testBalancesAsOfForGroupMembers",
+            "testSpendRollups", "testSpendRollupsForGroupAndForeignCurrency",
+            "testInvariantChecksPassOnRandomWorkload", "testInvariantCheckReportsCorruption",
+            "testShadowEngineMatchesPrimary", "testShadowEngineReportsDivergence", "testShadowEngineDropsWritesWhenBehind",
+            "testFlightRecorderEvents",
+            "testHotPathsStayWithinAllocationBudgets", "testAllocationBudgetFlagsAllocatingPath",
+            "testSplitKernelMatchesBigDecimalRounding",
+            "testBulkImportAndContactIndexes", "testBulkImportIsAllOrNothing"
         };
         
         PrintStream originalOut = System.out;
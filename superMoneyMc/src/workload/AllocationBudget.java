@@ -0,0 +1,145 @@
+package workload;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Measures bytes allocated per operation on the calling thread and checks them against budgets.
+ * Each path is warmed up first so the JIT has compiled it and removed allocations that escape
+ * analysis can eliminate. It is then measured over several rounds, keeping the lowest round so a
+ * late compilation does not count against the path.
+ */
+public class AllocationBudget {
+    private static final int ROUNDS = 3;
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+    private final int warmupOps;
+    private final int measuredOps;
+    private final List<Result> results;
+
+    /**
+     * @param warmupOps   Operations run before measuring
+     * @param measuredOps Operations per measured round
+     */
+    public AllocationBudget(int warmupOps, int measuredOps) {
+        if (warmupOps < 0 || measuredOps <= 0) {
+            throw new IllegalArgumentException("Operation counts must be positive");
+        }
+        this.warmupOps = warmupOps;
+        this.measuredOps = measuredOps;
+        this.results = new ArrayList<>();
+    }
+
+    /**
+     * Returns true if the JVM can count bytes allocated per thread.
+     */
+    public static boolean isSupported() {
+        return THREADS instanceof com.sun.management.ThreadMXBean
+                && ((com.sun.management.ThreadMXBean) THREADS).isThreadAllocatedMemorySupported()
+                && ((com.sun.management.ThreadMXBean) THREADS).isThreadAllocatedMemoryEnabled();
+    }
+
+    /**
+     * Measures one path and records it against its budget.
+     *
+     * @param budgetBytes Maximum bytes allocated per operation
+     */
+    public Result measure(String path, long budgetBytes, Runnable operation) {
+        if (!isSupported()) {
+            throw new IllegalStateException("Per-thread allocation counters are not available");
+        }
+        for (int i = 0; i < warmupOps; i++) {
+            operation.run();
+        }
+        // Reading the counter allocates a little itself
+        long calibration = allocatedBytes();
+        long overhead = allocatedBytes() - calibration;
+        double best = Double.MAX_VALUE;
+        for (int round = 0; round < ROUNDS; round++) {
+            long start = allocatedBytes();
+            for (int i = 0; i < measuredOps; i++) {
+                operation.run();
+            }
+            long allocated = allocatedBytes() - start - overhead;
+            best = Math.min(best, (double) Math.max(0L, allocated) / measuredOps);
+        }
+        Result result = new Result(path, best, budgetBytes);
+        results.add(result);
+        return result;
+    }
+
+    public List<Result> getResults() {
+        return Collections.unmodifiableList(results);
+    }
+
+    /**
+     * Returns the measured paths that allocated more than their budget.
+     */
+    public List<Result> getViolations() {
+        List<Result> violations = new ArrayList<>();
+        for (Result result : results) {
+            if (!result.isWithinBudget()) {
+                violations.add(result);
+            }
+        }
+        return violations;
+    }
+
+    /**
+     * Returns one line per measured path.
+     */
+    public String report() {
+        StringBuilder report = new StringBuilder();
+        for (Result result : results) {
+            report.append(result).append('\n');
+        }
+        return report.toString();
+    }
+
+    private static long allocatedBytes() {
+        return ((com.sun.management.ThreadMXBean) THREADS).getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    /**
+     * Bytes allocated per operation on one path.
+     */
+    public static final class Result {
+        private final String path;
+        private final double bytesPerOp;
+        private final long budgetBytes;
+
+        private Result(String path, double bytesPerOp, long budgetBytes) {
+            this.path = path;
+            this.bytesPerOp = bytesPerOp;
+            this.budgetBytes = budgetBytes;
+        }
+
+        public String getPath() {
+            return path;
+        }
+
+        public double getBytesPerOp() {
+            return bytesPerOp;
+        }
+
+        public long getBudgetBytes() {
+            return budgetBytes;
+        }
+
+        /**
+         * Allows up to half a byte per operation for counter noise, such as a map resize during measurement.
+         */
+        public boolean isWithinBudget() {
+            return bytesPerOp <= budgetBytes + 0.5;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%-45s %9.1f bytes/op (budget %d)%s", path, bytesPerOp, budgetBytes,
+                    isWithinBudget() ? "" : " OVER BUDGET");
+        }
+    }
+}
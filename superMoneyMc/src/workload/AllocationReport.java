@@ -0,0 +1,87 @@
+package workload;
+
+import app.ExpenseSharingApp;
+import factory.UserFactory;
+import model.Expense;
+import model.User;
+import service.ArrayBalanceEngine;
+import service.BalanceVisitor;
+import service.ExpenseService;
+import service.StripedBalanceCells;
+import strategy.EqualSplitStrategy;
+import strategy.SplitStrategy;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Allocation budgets for the hot paths, measured with {@link AllocationBudget}.
+ * Every path runs in steady state: four users whose balance pairs already exist.
+ * Exits with status 1 if any path allocates more than its budget.
+ *
+ * Usage: java -cp out workload.AllocationReport [warmup-ops] [measured-ops]
+ */
+public class AllocationReport {
+    // Bytes per operation; raise a budget only together with the change that needs it
+    static final long EQUAL_SPLIT_BUDGET = 512;
+    static final long ADD_EXPENSE_BUDGET = 6144;
+    static final long USER_BALANCES_BUDGET = 1024;
+    static final long USER_BALANCE_VISIT_BUDGET = 80; // two map iterators when escape analysis keeps them
+
+    public static void main(String[] args) {
+        int warmupOps = args.length > 0 ? Integer.parseInt(args[0]) : 50_000;
+        int measuredOps = args.length > 1 ? Integer.parseInt(args[1]) : 20_000;
+
+        AllocationBudget budget = measureHotPaths(warmupOps, measuredOps);
+        System.out.print(budget.report());
+        if (!budget.getViolations().isEmpty()) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Measures every hot path against its budget.
+     */
+    public static AllocationBudget measureHotPaths(int warmupOps, int measuredOps) {
+        AllocationBudget budget = new AllocationBudget(warmupOps, measuredOps);
+
+        ExpenseSharingApp app = new ExpenseSharingApp();
+        List<User> users = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            User user = UserFactory.createUser("a" + i, "Alloc" + i, "alloc" + i + "@example.com", "555000000" + i);
+            app.addUser(user);
+            users.add(user);
+        }
+        ExpenseService expenseService = app.getExpenseService();
+
+        SplitStrategy equalSplit = new EqualSplitStrategy();
+        Expense sample = new Expense("alloc-sample", users.get(0), 100.0, "Dinner",
+                Expense.SplitType.EQUAL, users, null);
+        budget.measure("EqualSplitStrategy.calculateSplit (4 users)", EQUAL_SPLIT_BUDGET,
+                () -> equalSplit.calculateSplit(sample));
+
+        // Includes constructing the expense and its id
+        int[] next = {0};
+        budget.measure("ExpenseService.addExpense EQUAL (4 users)", ADD_EXPENSE_BUDGET, () -> {
+            int n = next[0]++;
+            expenseService.addExpense(new Expense("alloc-" + n, users.get(n & 3), 100.0 + (n & 7), "Dinner",
+                    Expense.SplitType.EQUAL, users, null));
+        });
+
+        budget.measure("ExpenseService.getUserBalances", USER_BALANCES_BUDGET,
+                () -> expenseService.getUserBalances("a1"));
+        BalanceVisitor ignore = (debtorId, creditorId, amount) -> { };
+        budget.measure("ExpenseService.forEachUserBalance", USER_BALANCE_VISIT_BUDGET,
+                () -> expenseService.forEachUserBalance("a1", ignore));
+        budget.measure("ExpenseService.getNetPosition", 0,
+                () -> expenseService.getNetPosition("a1"));
+
+        StripedBalanceCells cells = new StripedBalanceCells();
+        budget.measure("StripedBalanceCells.transfer", 0,
+                () -> cells.transfer("a1", "a2", 1250));
+        ArrayBalanceEngine engine = new ArrayBalanceEngine();
+        budget.measure("ArrayBalanceEngine.record", 0,
+                () -> engine.record("a1", "a2", 1250));
+        return budget;
+    }
+}
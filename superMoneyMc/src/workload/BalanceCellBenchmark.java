@@ -0,0 +1,123 @@
+package workload;
+
+import service.StripedBalanceCells;
+
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Benchmark for concurrent net-balance updates when a few payers receive most credits.
+ * Compares one atomic counter per user with {@link StripedBalanceCells}. Each operation moves an
+ * amount from a uniformly chosen debtor to a Zipf-distributed payer.
+ *
+ * Usage: java -cp out workload.BalanceCellBenchmark [threads] [ops-per-thread] [users] [zipf-exponent] [seed]
+ */
+public class BalanceCellBenchmark {
+    private static final int RUNS = 3;
+
+    public static void main(String[] args) throws InterruptedException {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+        int ops = args.length > 1 ? Integer.parseInt(args[1]) : 1_000_000;
+        int users = args.length > 2 ? Integer.parseInt(args[2]) : 10_000;
+        double exponent = args.length > 3 ? Double.parseDouble(args[3]) : 1.1;
+        long seed = args.length > 4 ? Long.parseLong(args[4]) : 42L;
+
+        System.out.println("Net balance updates: " + threads + " threads x " + ops + " ops, " + users
+                + " users, payer zipf exponent " + exponent + "\n");
+        int[][] debtors = new int[threads][ops];
+        int[][] payers = new int[threads][ops];
+        ZipfDistribution payerDistribution = new ZipfDistribution(users, exponent);
+        for (int t = 0; t < threads; t++) {
+            Random random = new Random(seed + t);
+            for (int i = 0; i < ops; i++) {
+                debtors[t][i] = random.nextInt(users);
+                payers[t][i] = payerDistribution.sample(random);
+            }
+        }
+        String[] userIds = new String[users];
+        for (int i = 0; i < users; i++) {
+            userIds[i] = "u" + i;
+        }
+
+        run("atomic per user", AtomicLedger::new, threads, ops, debtors, payers, userIds);
+        run("striped cells", StripedLedger::new, threads, ops, debtors, payers, userIds);
+    }
+
+    private interface Ledger {
+        void transfer(String debtorId, String creditorId, long cents);
+
+        long get(String userId);
+    }
+
+    private interface LedgerFactory {
+        Ledger create();
+    }
+
+    private static final class AtomicLedger implements Ledger {
+        private final ConcurrentHashMap<String, AtomicLong> totals = new ConcurrentHashMap<>();
+
+        @Override
+        public void transfer(String debtorId, String creditorId, long cents) {
+            totals.computeIfAbsent(debtorId, u -> new AtomicLong()).addAndGet(-cents);
+            totals.computeIfAbsent(creditorId, u -> new AtomicLong()).addAndGet(cents);
+        }
+
+        @Override
+        public long get(String userId) {
+            AtomicLong total = totals.get(userId);
+            return total == null ? 0 : total.get();
+        }
+    }
+
+    private static final class StripedLedger implements Ledger {
+        private final StripedBalanceCells cells = new StripedBalanceCells();
+
+        @Override
+        public void transfer(String debtorId, String creditorId, long cents) {
+            cells.transfer(debtorId, creditorId, cents);
+        }
+
+        @Override
+        public long get(String userId) {
+            return cells.getCents(userId);
+        }
+    }
+
+    private static void run(String name, LedgerFactory factory, int threads, int ops, int[][] debtors,
+                            int[][] payers, String[] userIds) throws InterruptedException {
+        long bestNanos = Long.MAX_VALUE;
+        long checksum = 0;
+        // The first run warms up
+        for (int run = 0; run <= RUNS; run++) {
+            Ledger ledger = factory.create();
+            Thread[] workers = new Thread[threads];
+            for (int t = 0; t < threads; t++) {
+                int[] threadDebtors = debtors[t];
+                int[] threadPayers = payers[t];
+                workers[t] = new Thread(() -> {
+                    for (int i = 0; i < ops; i++) {
+                        ledger.transfer(userIds[threadDebtors[i]], userIds[threadPayers[i]], 100 + (i & 1023));
+                    }
+                });
+            }
+            long start = System.nanoTime();
+            for (Thread worker : workers) {
+                worker.start();
+            }
+            for (Thread worker : workers) {
+                worker.join();
+            }
+            long elapsed = System.nanoTime() - start;
+            if (run > 0) {
+                bestNanos = Math.min(bestNanos, elapsed);
+            }
+            checksum = 0;
+            for (String userId : userIds) {
+                checksum += ledger.get(userId);
+            }
+        }
+        double opsPerSecond = (double) threads * ops / (bestNanos / 1e9);
+        System.out.printf("%-18s %10.2f M transfers/s  (sum of nets %d)%n", name, opsPerSecond / 1e6, checksum);
+    }
+}
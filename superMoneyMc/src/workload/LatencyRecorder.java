@@ -0,0 +1,60 @@
+package workload;
+
+import java.util.Arrays;
+
+/**
+ * Records latency samples in nanoseconds and reports percentiles.
+ */
+public class LatencyRecorder {
+    private long[] samples;
+    private int count;
+    private boolean sorted;
+
+    public LatencyRecorder() {
+        this.samples = new long[1024];
+        this.count = 0;
+        this.sorted = true;
+    }
+
+    public void record(long nanos) {
+        if (count == samples.length) {
+            samples = Arrays.copyOf(samples, samples.length * 2);
+        }
+        samples[count++] = nanos;
+        sorted = false;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * Returns the latency at the given percentile (0-100) using the nearest-rank method.
+     */
+    public long percentile(double percentile) {
+        if (count == 0) {
+            return 0;
+        }
+        if (!sorted) {
+            Arrays.sort(samples, 0, count);
+            sorted = true;
+        }
+        int rank = (int) Math.ceil(percentile / 100.0 * count);
+        return samples[Math.max(0, Math.min(count, rank) - 1)];
+    }
+
+    public long max() {
+        return percentile(100);
+    }
+
+    public double mean() {
+        if (count == 0) {
+            return 0.0;
+        }
+        double total = 0.0;
+        for (int i = 0; i < count; i++) {
+            total += samples[i];
+        }
+        return total / count;
+    }
+}
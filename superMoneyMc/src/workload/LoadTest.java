@@ -0,0 +1,29 @@
+package workload;
+
+import app.ExpenseSharingApp;
+
+/**
+ * Command-line entry point for reproducible load tests.
+ *
+ * Usage: java -cp out workload.LoadTest [operations] [target-ops-per-second] [seed] [users]
+ */
+public class LoadTest {
+    public static void main(String[] args) {
+        int operations = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+        double targetRate = args.length > 1 ? Double.parseDouble(args[1]) : 0;
+        long seed = args.length > 2 ? Long.parseLong(args[2]) : 42L;
+        int users = args.length > 3 ? Integer.parseInt(args[3]) : 1000;
+
+        WorkloadConfig config = new WorkloadConfig()
+                .setOperationCount(operations)
+                .setSeed(seed)
+                .setUserCount(users);
+
+        System.out.println("Generating workload (seed " + seed + ", " + users + " users)...");
+        Workload workload = new WorkloadGenerator(config).generate();
+
+        System.out.println("Replaying " + operations + " operations...\n");
+        ReplayReport report = new WorkloadReplayer(new ExpenseSharingApp()).replay(workload, targetRate);
+        System.out.println(report);
+    }
+}
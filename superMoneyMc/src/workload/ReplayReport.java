@@ -0,0 +1,71 @@
+package workload;
+
+import java.util.Collections;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Result of replaying a workload: throughput and latency percentiles per command type.
+ * Latencies are measured from each command's scheduled start, so queueing caused by
+ * slow commands is included rather than hidden.
+ */
+public class ReplayReport {
+    private final int operations;
+    private final long elapsedNanos;
+    private final double targetOpsPerSecond;
+    private final LatencyRecorder overall;
+    private final Map<String, LatencyRecorder> byCommand;
+
+    public ReplayReport(int operations, long elapsedNanos, double targetOpsPerSecond,
+                        LatencyRecorder overall, Map<String, LatencyRecorder> byCommand) {
+        this.operations = operations;
+        this.elapsedNanos = elapsedNanos;
+        this.targetOpsPerSecond = targetOpsPerSecond;
+        this.overall = overall;
+        this.byCommand = Collections.unmodifiableMap(byCommand);
+    }
+
+    public int getOperations() {
+        return operations;
+    }
+
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    public double getAchievedOpsPerSecond() {
+        return elapsedNanos == 0 ? 0.0 : operations * 1_000_000_000.0 / elapsedNanos;
+    }
+
+    public LatencyRecorder getOverall() {
+        return overall;
+    }
+
+    public Map<String, LatencyRecorder> getByCommand() {
+        return byCommand;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format(Locale.ROOT, "Operations: %d in %.2f s (target %s ops/s, achieved %.0f ops/s)%n",
+                operations, elapsedNanos / 1e9,
+                targetOpsPerSecond > 0 ? String.format(Locale.ROOT, "%.0f", targetOpsPerSecond) : "unlimited",
+                getAchievedOpsPerSecond()));
+        sb.append(String.format(Locale.ROOT, "%-16s %10s %10s %10s %10s %10s %10s%n",
+                "Command", "Count", "p50(us)", "p90(us)", "p99(us)", "p99.9(us)", "max(us)"));
+        appendRow(sb, "ALL", overall);
+        for (Map.Entry<String, LatencyRecorder> entry : byCommand.entrySet()) {
+            appendRow(sb, entry.getKey(), entry.getValue());
+        }
+        return sb.toString();
+    }
+
+    private static void appendRow(StringBuilder sb, String name, LatencyRecorder recorder) {
+        sb.append(String.format(Locale.ROOT, "%-16s %10d %10.1f %10.1f %10.1f %10.1f %10.1f%n",
+                name, recorder.getCount(),
+                recorder.percentile(50) / 1e3, recorder.percentile(90) / 1e3,
+                recorder.percentile(99) / 1e3, recorder.percentile(99.9) / 1e3,
+                recorder.max() / 1e3));
+    }
+}
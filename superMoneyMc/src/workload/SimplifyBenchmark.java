@@ -0,0 +1,68 @@
+package workload;
+
+import service.DebtFlowGraph;
+
+import java.util.Random;
+
+/**
+ * Benchmark for constrained simplification on large random debt graphs.
+ * Each scenario is run once to warm up and then timed over several runs.
+ *
+ * Usage: java -cp out workload.SimplifyBenchmark [edges] [users] [max-hops] [seed]
+ */
+public class SimplifyBenchmark {
+    private static final int RUNS = 3;
+
+    public static void main(String[] args) {
+        int edges = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+        int users = args.length > 1 ? Integer.parseInt(args[1]) : 20000;
+        int maxHops = args.length > 2 ? Integer.parseInt(args[2]) : 4;
+        long seed = args.length > 3 ? Long.parseLong(args[3]) : 42L;
+
+        System.out.println("Constrained simplification: " + edges + " debts, " + users + " users, max hops "
+                + (maxHops <= 0 ? "unlimited" : String.valueOf(maxHops)) + "\n");
+        run("uniform", edges, users, 0.0, 0, maxHops, seed);
+        run("zipf creditors", edges, users, 1.1, 0, maxHops, seed);
+        run("uniform + contacts", edges, users, 0.0, edges / 10, maxHops, seed);
+    }
+
+    private static void run(String name, int edges, int users, double zipfExponent, int contacts,
+                            int maxHops, long seed) {
+        buildGraph(edges, users, zipfExponent, contacts, seed).simplify(maxHops);
+
+        long totalNanos = 0;
+        int before = 0;
+        int after = 0;
+        for (int run = 0; run < RUNS; run++) {
+            DebtFlowGraph graph = buildGraph(edges, users, zipfExponent, contacts, seed);
+            before = graph.getDebtCount();
+            long start = System.nanoTime();
+            after = graph.simplify(maxHops);
+            totalNanos += System.nanoTime() - start;
+        }
+        System.out.printf("%-20s %8d -> %8d debts  %8.1f ms%n", name, before, after, totalNanos / 1e6 / RUNS);
+    }
+
+    private static DebtFlowGraph buildGraph(int edges, int users, double zipfExponent, int contacts, long seed) {
+        Random random = new Random(seed);
+        ZipfDistribution creditors = zipfExponent > 0 ? new ZipfDistribution(users, zipfExponent) : null;
+        DebtFlowGraph graph = new DebtFlowGraph(users);
+        int added = 0;
+        while (added < edges) {
+            int debtor = random.nextInt(users);
+            int creditor = creditors != null ? creditors.sample(random) : random.nextInt(users);
+            if (debtor != creditor) {
+                graph.addDebt(debtor, creditor, 100 + random.nextInt(100_000));
+                added++;
+            }
+        }
+        for (int i = 0; i < contacts; i++) {
+            int a = random.nextInt(users);
+            int b = random.nextInt(users);
+            if (a != b) {
+                graph.allowContact(a, b);
+            }
+        }
+        return graph;
+    }
+}
@@ -0,0 +1,114 @@
+package workload;
+
+import strategy.SplitKernel;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Random;
+
+/**
+ * Benchmark for PERCENT and SHARE split arithmetic. Compares rounding every share through
+ * BigDecimal, as the strategies used to, with {@link SplitKernel}, and checks that both produce
+ * bit-identical shares. Runs one large expense and a batch of small ones for each split type.
+ *
+ * Usage: java -cp out workload.SplitKernelBenchmark [participants] [batch-expenses] [batch-size] [seed]
+ */
+public class SplitKernelBenchmark {
+    private static final int RUNS = 5;
+    private static final int REPEATS = 20;
+
+    public static void main(String[] args) {
+        int participants = args.length > 0 ? Integer.parseInt(args[0]) : 10_000;
+        int batchExpenses = args.length > 1 ? Integer.parseInt(args[1]) : 2_000;
+        int batchSize = args.length > 2 ? Integer.parseInt(args[2]) : 50;
+        long seed = args.length > 3 ? Long.parseLong(args[3]) : 42L;
+
+        Random random = new Random(seed);
+        System.out.println("Split arithmetic, best of " + RUNS + " runs, ns per participant\n");
+        System.out.printf("%-34s %12s %12s %8s%n", "case", "BigDecimal", "SplitKernel", "speedup");
+        for (boolean percent : new boolean[]{true, false}) {
+            String type = percent ? "PERCENT" : "SHARE";
+            run(type + " 1 x " + participants, workload(random, percent, 1, participants));
+            run(type + " " + batchExpenses + " x " + batchSize, workload(random, percent, batchExpenses, batchSize));
+        }
+    }
+
+    private static Batch workload(Random random, boolean percent, int expenses, int size) {
+        Batch batch = new Batch(expenses, size);
+        for (int e = 0; e < expenses; e++) {
+            batch.amounts[e] = (1 + random.nextInt(10_000_000)) / 100.0;
+            double total = 0.0;
+            for (int i = 0; i < size; i++) {
+                double weight = percent ? random.nextInt(1_000) / 100.0 : 1 + random.nextInt(5);
+                batch.weights[e * size + i] = weight;
+                total += weight;
+            }
+            batch.divisors[e] = percent ? 100.0 : total;
+            batch.offsets[e + 1] = (e + 1) * size;
+        }
+        return batch;
+    }
+
+    private static void run(String name, Batch batch) {
+        double[] expected = new double[batch.weights.length];
+        long[] actual = new long[batch.weights.length];
+        long reference = Long.MAX_VALUE;
+        long kernel = Long.MAX_VALUE;
+        for (int run = 0; run < RUNS; run++) {
+            long start = System.nanoTime();
+            for (int r = 0; r < REPEATS; r++) {
+                for (int e = 0; e < batch.amounts.length; e++) {
+                    splitWithBigDecimal(batch.amounts[e], batch.divisors[e], batch.weights,
+                            batch.offsets[e], batch.offsets[e + 1], expected);
+                }
+            }
+            reference = Math.min(reference, System.nanoTime() - start);
+
+            start = System.nanoTime();
+            for (int r = 0; r < REPEATS; r++) {
+                for (int e = 0; e < batch.amounts.length; e++) {
+                    SplitKernel.split(batch.amounts[e], batch.divisors[e], batch.weights,
+                            batch.offsets[e], batch.offsets[e + 1], actual);
+                }
+            }
+            kernel = Math.min(kernel, System.nanoTime() - start);
+        }
+        for (int i = 0; i < expected.length; i++) {
+            if (Double.doubleToRawLongBits(expected[i]) != Double.doubleToRawLongBits(actual[i] / 100.0)) {
+                throw new IllegalStateException(name + ": participant " + i + " got " + actual[i] / 100.0
+                        + " instead of " + expected[i]);
+            }
+        }
+        double participants = (double) batch.weights.length * REPEATS;
+        System.out.printf("%-34s %12.1f %12.1f %7.1fx%n", name, reference / participants, kernel / participants,
+                (double) reference / kernel);
+    }
+
+    /**
+     * The per-participant BigDecimal rounding the strategies used before {@link SplitKernel}.
+     */
+    private static void splitWithBigDecimal(double amount, double divisor, double[] weights, int from, int to,
+                                            double[] shares) {
+        double distributed = 0.0;
+        for (int i = from; i < to - 1; i++) {
+            double share = new BigDecimal((amount * weights[i]) / divisor).setScale(2, RoundingMode.HALF_UP).doubleValue();
+            shares[i] = share;
+            distributed += share;
+        }
+        shares[to - 1] = new BigDecimal(amount - distributed).setScale(2, RoundingMode.HALF_UP).doubleValue();
+    }
+
+    private static final class Batch {
+        private final double[] amounts;
+        private final double[] divisors;
+        private final double[] weights;
+        private final int[] offsets;
+
+        private Batch(int expenses, int size) {
+            this.amounts = new double[expenses];
+            this.divisors = new double[expenses];
+            this.weights = new double[expenses * size];
+            this.offsets = new int[expenses + 1];
+        }
+    }
+}
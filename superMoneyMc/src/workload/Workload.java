@@ -0,0 +1,43 @@
+package workload;
+
+import model.User;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A generated workload: the users to register, setup commands such as GROUP, and the
+ * measured command stream. UPDATE_EXPENSE commands refer to earlier expenses through an
+ * {@code $EXPENSE[n]} placeholder, where n is the index of the expense in creation order.
+ */
+public class Workload {
+    public static final String EXPENSE_PLACEHOLDER_PREFIX = "$EXPENSE[";
+
+    private final long seed;
+    private final List<User> users;
+    private final List<String> setupCommands;
+    private final List<String> commands;
+
+    public Workload(long seed, List<User> users, List<String> setupCommands, List<String> commands) {
+        this.seed = seed;
+        this.users = Collections.unmodifiableList(users);
+        this.setupCommands = Collections.unmodifiableList(setupCommands);
+        this.commands = Collections.unmodifiableList(commands);
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    public List<User> getUsers() {
+        return users;
+    }
+
+    public List<String> getSetupCommands() {
+        return setupCommands;
+    }
+
+    public List<String> getCommands() {
+        return commands;
+    }
+}
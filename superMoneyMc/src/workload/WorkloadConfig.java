@@ -0,0 +1,163 @@
+package workload;
+
+/**
+ * Parameters for generating a synthetic workload.
+ * Every field has a default, so only the parameters of interest need to be set.
+ */
+public class WorkloadConfig {
+    private long seed = 42L;
+    private int userCount = 1000;
+    private int groupCount = 50;
+    private int operationCount = 10000;
+    private double payerZipfExponent = 1.1;
+    // Group sizes and the relative frequency of each size
+    private int[] groupSizes = {2, 4, 8, 20, 100};
+    private double[] groupSizeWeights = {0.35, 0.35, 0.15, 0.1, 0.05};
+    // Relative frequency of EQUAL, EXACT, PERCENT and SHARE expenses
+    private double[] splitTypeWeights = {0.55, 0.2, 0.15, 0.1};
+    private double readRatio = 0.5;
+    private double passbookShareOfReads = 0.2;
+    private double settlementRatio = 0.05;
+    private double updateRatio = 0.05;
+    private double groupExpenseRatio = 0.3;
+    private double minAmount = 10.0;
+    private double maxAmount = 5000.0;
+
+    public long getSeed() {
+        return seed;
+    }
+
+    public WorkloadConfig setSeed(long seed) {
+        this.seed = seed;
+        return this;
+    }
+
+    public int getUserCount() {
+        return userCount;
+    }
+
+    public WorkloadConfig setUserCount(int userCount) {
+        this.userCount = userCount;
+        return this;
+    }
+
+    public int getGroupCount() {
+        return groupCount;
+    }
+
+    public WorkloadConfig setGroupCount(int groupCount) {
+        this.groupCount = groupCount;
+        return this;
+    }
+
+    public int getOperationCount() {
+        return operationCount;
+    }
+
+    public WorkloadConfig setOperationCount(int operationCount) {
+        this.operationCount = operationCount;
+        return this;
+    }
+
+    public double getPayerZipfExponent() {
+        return payerZipfExponent;
+    }
+
+    public WorkloadConfig setPayerZipfExponent(double payerZipfExponent) {
+        this.payerZipfExponent = payerZipfExponent;
+        return this;
+    }
+
+    public int[] getGroupSizes() {
+        return groupSizes;
+    }
+
+    public double[] getGroupSizeWeights() {
+        return groupSizeWeights;
+    }
+
+    public WorkloadConfig setGroupSizeHistogram(int[] groupSizes, double[] groupSizeWeights) {
+        if (groupSizes.length != groupSizeWeights.length || groupSizes.length == 0) {
+            throw new IllegalArgumentException("Group sizes and weights must be non-empty and of equal length");
+        }
+        for (int size : groupSizes) {
+            if (size < 1) {
+                throw new IllegalArgumentException("Group sizes must be positive");
+            }
+        }
+        this.groupSizes = groupSizes;
+        this.groupSizeWeights = groupSizeWeights;
+        return this;
+    }
+
+    public double[] getSplitTypeWeights() {
+        return splitTypeWeights;
+    }
+
+    public WorkloadConfig setSplitTypeWeights(double equal, double exact, double percent, double share) {
+        this.splitTypeWeights = new double[]{equal, exact, percent, share};
+        return this;
+    }
+
+    public double getReadRatio() {
+        return readRatio;
+    }
+
+    public WorkloadConfig setReadRatio(double readRatio) {
+        this.readRatio = readRatio;
+        return this;
+    }
+
+    public double getPassbookShareOfReads() {
+        return passbookShareOfReads;
+    }
+
+    public WorkloadConfig setPassbookShareOfReads(double passbookShareOfReads) {
+        this.passbookShareOfReads = passbookShareOfReads;
+        return this;
+    }
+
+    public double getSettlementRatio() {
+        return settlementRatio;
+    }
+
+    public WorkloadConfig setSettlementRatio(double settlementRatio) {
+        this.settlementRatio = settlementRatio;
+        return this;
+    }
+
+    public double getUpdateRatio() {
+        return updateRatio;
+    }
+
+    public WorkloadConfig setUpdateRatio(double updateRatio) {
+        this.updateRatio = updateRatio;
+        return this;
+    }
+
+    public double getGroupExpenseRatio() {
+        return groupExpenseRatio;
+    }
+
+    public WorkloadConfig setGroupExpenseRatio(double groupExpenseRatio) {
+        this.groupExpenseRatio = groupExpenseRatio;
+        return this;
+    }
+
+    public double getMinAmount() {
+        return minAmount;
+    }
+
+    public double getMaxAmount() {
+        return maxAmount;
+    }
+
+    public WorkloadConfig setAmountRange(double minAmount, double maxAmount) {
+        if (minAmount <= 0 || maxAmount < minAmount) {
+            throw new IllegalArgumentException("Invalid amount range");
+        }
+        this.minAmount = minAmount;
+        this.maxAmount = maxAmount;
+        return this;
+    }
+}
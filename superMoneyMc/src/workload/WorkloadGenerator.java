@@ -0,0 +1,228 @@
+package workload;
+
+import factory.UserFactory;
+import model.User;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Generates deterministic synthetic workloads from a {@link WorkloadConfig}.
+ * The same configuration and seed always produce the same users and command stream.
+ */
+public class WorkloadGenerator {
+    private static final double ALL_BALANCES_SHARE_OF_SHOWS = 0.01;
+    private static final String[] SPLIT_TYPES = {"EQUAL", "EXACT", "PERCENT", "SHARE"};
+
+    private final WorkloadConfig config;
+    private final Random random;
+    private final ZipfDistribution payerDistribution;
+    private final List<List<Integer>> groups;
+    private int expensesGenerated;
+
+    public WorkloadGenerator(WorkloadConfig config) {
+        if (config.getUserCount() < 2) {
+            throw new IllegalArgumentException("Workload needs at least two users");
+        }
+        this.config = config;
+        this.random = new Random(config.getSeed());
+        this.payerDistribution = new ZipfDistribution(config.getUserCount(), config.getPayerZipfExponent());
+        this.groups = new ArrayList<>();
+        this.expensesGenerated = 0;
+    }
+
+    public Workload generate() {
+        List<User> users = new ArrayList<>(config.getUserCount());
+        for (int i = 0; i < config.getUserCount(); i++) {
+            String userId = userId(i);
+            users.add(UserFactory.createUser(userId, "User" + i, userId + "@example.com",
+                    String.format(Locale.ROOT, "9%09d", i)));
+        }
+
+        List<String> setupCommands = new ArrayList<>(config.getGroupCount());
+        for (int g = 0; g < config.getGroupCount(); g++) {
+            List<Integer> members = sampleDistinct(-1, sampleGroupSize());
+            groups.add(members);
+            StringBuilder command = new StringBuilder("GROUP g").append(g).append(' ').append(members.size());
+            for (int member : members) {
+                command.append(' ').append(userId(member));
+            }
+            setupCommands.add(command.toString());
+        }
+
+        List<String> commands = new ArrayList<>(config.getOperationCount());
+        for (int i = 0; i < config.getOperationCount(); i++) {
+            commands.add(nextCommand());
+        }
+        return new Workload(config.getSeed(), users, setupCommands, commands);
+    }
+
+    private String nextCommand() {
+        if (random.nextDouble() < config.getReadRatio()) {
+            return nextRead();
+        }
+        double writeKind = random.nextDouble();
+        if (writeKind < config.getSettlementRatio()) {
+            return nextSettlement();
+        }
+        if (writeKind < config.getSettlementRatio() + config.getUpdateRatio() && expensesGenerated > 0) {
+            return nextUpdate();
+        }
+        return nextExpense();
+    }
+
+    private String nextRead() {
+        int user = payerDistribution.sample(random);
+        if (random.nextDouble() < config.getPassbookShareOfReads()) {
+            return "PASSBOOK " + userId(user);
+        }
+        if (random.nextDouble() < ALL_BALANCES_SHARE_OF_SHOWS) {
+            return "SHOW";
+        }
+        return "SHOW " + userId(user);
+    }
+
+    /**
+     * Settlements are recorded the way this application expresses them: the debtor pays
+     * the creditor an EXACT expense, which nets against what the debtor owes.
+     */
+    private String nextSettlement() {
+        int creditor = payerDistribution.sample(random);
+        int debtor = random.nextInt(config.getUserCount() - 1);
+        if (debtor >= creditor) {
+            debtor++;
+        }
+        String amount = formatAmount(nextAmount() / 4);
+        expensesGenerated++;
+        return "EXPENSE " + userId(debtor) + " " + amount + " 1 " + userId(creditor)
+                + " EXACT " + amount + " Settlement";
+    }
+
+    private String nextUpdate() {
+        int target = random.nextInt(expensesGenerated);
+        return "UPDATE_EXPENSE " + Workload.EXPENSE_PLACEHOLDER_PREFIX + target + "] --notes edited-" + random.nextInt(1000);
+    }
+
+    private String nextExpense() {
+        int payer = payerDistribution.sample(random);
+        double amount = nextAmount();
+        String splitType = SPLIT_TYPES[sampleWeighted(config.getSplitTypeWeights())];
+        expensesGenerated++;
+
+        boolean groupSplitSupported = splitType.equals("EQUAL") || splitType.equals("SHARE");
+        if (groupSplitSupported && !groups.isEmpty() && random.nextDouble() < config.getGroupExpenseRatio()) {
+            int groupIndex = random.nextInt(groups.size());
+            StringBuilder command = new StringBuilder("EXPENSE ").append(userId(payer)).append(' ')
+                    .append(formatAmount(amount)).append(" @g").append(groupIndex).append(' ').append(splitType);
+            if (splitType.equals("SHARE")) {
+                appendShares(command, groups.get(groupIndex).size());
+            }
+            return command.toString();
+        }
+
+        List<Integer> participants = sampleDistinct(payer, sampleGroupSize());
+        StringBuilder command = new StringBuilder("EXPENSE ").append(userId(payer)).append(' ')
+                .append(formatAmount(amount)).append(' ').append(participants.size());
+        for (int participant : participants) {
+            command.append(' ').append(userId(participant));
+        }
+        command.append(' ').append(splitType);
+        switch (splitType) {
+            case "EXACT":
+                appendPartition(command, Math.round(amount * 100), participants.size());
+                break;
+            case "PERCENT":
+                appendPartition(command, 10000, participants.size());
+                break;
+            case "SHARE":
+                appendShares(command, participants.size());
+                break;
+            default:
+                break;
+        }
+        return command.toString();
+    }
+
+    /**
+     * Appends a random partition of the given number of hundredths across n values.
+     */
+    private void appendPartition(StringBuilder command, long hundredths, int n) {
+        double[] weights = new double[n];
+        double totalWeight = 0.0;
+        for (int i = 0; i < n; i++) {
+            weights[i] = 0.5 + random.nextDouble();
+            totalWeight += weights[i];
+        }
+        long distributed = 0;
+        for (int i = 0; i < n; i++) {
+            long part = i == n - 1
+                    ? hundredths - distributed
+                    : (long) Math.floor(hundredths * weights[i] / totalWeight);
+            distributed += part;
+            command.append(' ').append(formatAmount(part / 100.0));
+        }
+    }
+
+    private void appendShares(StringBuilder command, int n) {
+        for (int i = 0; i < n; i++) {
+            command.append(' ').append(1 + random.nextInt(5));
+        }
+    }
+
+    private double nextAmount() {
+        double logMin = Math.log(config.getMinAmount());
+        double logMax = Math.log(config.getMaxAmount());
+        return Math.round(Math.exp(logMin + random.nextDouble() * (logMax - logMin)) * 100) / 100.0;
+    }
+
+    private int sampleGroupSize() {
+        int size = config.getGroupSizes()[sampleWeighted(config.getGroupSizeWeights())];
+        return Math.min(size, config.getUserCount());
+    }
+
+    private int sampleWeighted(double[] weights) {
+        double total = 0.0;
+        for (double weight : weights) {
+            total += weight;
+        }
+        double target = random.nextDouble() * total;
+        for (int i = 0; i < weights.length; i++) {
+            target -= weights[i];
+            if (target < 0) {
+                return i;
+            }
+        }
+        return weights.length - 1;
+    }
+
+    /**
+     * Picks k distinct users. If include is a valid user index it is always part of the result.
+     */
+    private List<Integer> sampleDistinct(int include, int k) {
+        Set<Integer> chosen = new HashSet<>();
+        List<Integer> result = new ArrayList<>(k);
+        if (include >= 0) {
+            chosen.add(include);
+            result.add(include);
+        }
+        while (result.size() < k) {
+            int candidate = random.nextInt(config.getUserCount());
+            if (chosen.add(candidate)) {
+                result.add(candidate);
+            }
+        }
+        return result;
+    }
+
+    private static String formatAmount(double amount) {
+        return String.format(Locale.ROOT, "%.2f", amount);
+    }
+
+    private static String userId(int index) {
+        return "u" + index;
+    }
+}
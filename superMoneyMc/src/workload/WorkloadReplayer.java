@@ -0,0 +1,98 @@
+package workload;
+
+import app.ExpenseSharingApp;
+import model.User;
+import service.ExpenseService;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Drives an {@link ExpenseSharingApp} with a generated workload at a target rate and
+ * reports latency percentiles. Command output is discarded while replaying.
+ */
+public class WorkloadReplayer {
+    private final ExpenseSharingApp app;
+
+    public WorkloadReplayer(ExpenseSharingApp app) {
+        if (app == null) {
+            throw new IllegalArgumentException("ExpenseSharingApp cannot be null");
+        }
+        this.app = app;
+    }
+
+    /**
+     * Replays the workload.
+     *
+     * @param targetOpsPerSecond Rate to issue commands at, or 0 to run as fast as possible
+     */
+    public ReplayReport replay(Workload workload, double targetOpsPerSecond) {
+        ExpenseService expenseService = app.getExpenseService();
+        PrintStream originalOut = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        try {
+            for (User user : workload.getUsers()) {
+                app.addUser(user);
+            }
+            for (String command : workload.getSetupCommands()) {
+                app.processCommand(command);
+            }
+
+            List<String> expenseIds = new ArrayList<>();
+            LatencyRecorder overall = new LatencyRecorder();
+            Map<String, LatencyRecorder> byCommand = new TreeMap<>();
+            long intervalNanos = targetOpsPerSecond > 0 ? (long) (1_000_000_000L / targetOpsPerSecond) : 0;
+            List<String> commands = workload.getCommands();
+
+            long start = System.nanoTime();
+            for (int i = 0; i < commands.size(); i++) {
+                long scheduled = start + i * intervalNanos;
+                long now;
+                while ((now = System.nanoTime()) < scheduled) {
+                    LockSupport.parkNanos(scheduled - now);
+                }
+
+                String command = resolvePlaceholders(commands.get(i), expenseIds);
+                int expensesBefore = expenseService.getExpenseCount();
+                long begin = intervalNanos > 0 ? scheduled : System.nanoTime();
+                app.processCommand(command);
+                long latency = System.nanoTime() - begin;
+
+                for (int e = expensesBefore; e < expenseService.getExpenseCount(); e++) {
+                    expenseIds.add(expenseService.getExpenseAt(e).getExpenseId());
+                }
+                overall.record(latency);
+                byCommand.computeIfAbsent(commandType(command), c -> new LatencyRecorder()).record(latency);
+            }
+            long elapsed = System.nanoTime() - start;
+            return new ReplayReport(commands.size(), elapsed, targetOpsPerSecond, overall, byCommand);
+        } finally {
+            System.setOut(originalOut);
+        }
+    }
+
+    private static String resolvePlaceholders(String command, List<String> expenseIds) {
+        int start = command.indexOf(Workload.EXPENSE_PLACEHOLDER_PREFIX);
+        if (start < 0) {
+            return command;
+        }
+        int end = command.indexOf(']', start);
+        int index = Integer.parseInt(command.substring(start + Workload.EXPENSE_PLACEHOLDER_PREFIX.length(), end));
+        String expenseId = index < expenseIds.size() ? expenseIds.get(index) : "unknown-expense";
+        return command.substring(0, start) + expenseId + command.substring(end + 1);
+    }
+
+    private static String commandType(String command) {
+        int space = command.indexOf(' ');
+        String action = space < 0 ? command : command.substring(0, space);
+        if (action.equals("SHOW") && space < 0) {
+            return "SHOW_ALL";
+        }
+        return action;
+    }
+}
@@ -0,0 +1,38 @@
+package workload;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Samples ranks 0..n-1 with probability proportional to 1 / (rank + 1)^exponent.
+ * An exponent of 0 gives a uniform distribution.
+ */
+public class ZipfDistribution {
+    private final double[] cumulative;
+
+    public ZipfDistribution(int n, double exponent) {
+        if (n <= 0) {
+            throw new IllegalArgumentException("Zipf population must be positive");
+        }
+        if (exponent < 0) {
+            throw new IllegalArgumentException("Zipf exponent cannot be negative");
+        }
+        this.cumulative = new double[n];
+        double total = 0.0;
+        for (int i = 0; i < n; i++) {
+            total += 1.0 / Math.pow(i + 1, exponent);
+            cumulative[i] = total;
+        }
+        for (int i = 0; i < n; i++) {
+            cumulative[i] /= total;
+        }
+    }
+
+    public int sample(Random random) {
+        int index = Arrays.binarySearch(cumulative, random.nextDouble());
+        if (index < 0) {
+            index = -index - 1;
+        }
+        return Math.min(index, cumulative.length - 1);
+    }
+}